@@ -2,6 +2,7 @@ package com.tal.risk.analyser;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -10,7 +11,12 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 public class S3StorageApiApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(S3StorageApiApplication.class, args);
+        ConfigurableApplicationContext context = SpringApplication.run(S3StorageApiApplication.class, args);
+
+        // Training run for a class data sharing archive: start once to load the startup classes, then exit
+        if (Boolean.getBoolean("storage.startup.training-run")) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
     
     /**
@@ -24,8 +30,9 @@ public class S3StorageApiApplication {
             public void addCorsMappings(CorsRegistry registry) {
                 registry.addMapping("/api/**")
                         .allowedOrigins("*")  // Allow all origins
-                        .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
+                        .allowedMethods("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS")
                         .allowedHeaders("*")
+                        .exposedHeaders("ETag")
                         .allowCredentials(false)  // Disable credentials for wildcard origin
                         .maxAge(3600);
             }
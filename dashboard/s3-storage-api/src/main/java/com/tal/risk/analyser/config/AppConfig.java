@@ -1,14 +1,135 @@
 package com.tal.risk.analyser.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
+@EnableScheduling
 public class AppConfig {
 
+    /**
+     * Run requests and S3 fan-out on virtual threads, so threads blocked on S3 do not hold up other work
+     */
+    @Value("${storage.execution.virtual-threads:false}")
+    private boolean virtualThreads;
+
     @Bean
     public ObjectMapper objectMapper() {
         return new ObjectMapper();
     }
+
+    /**
+     * Hands each servlet request to a new virtual thread instead of Tomcat's worker pool
+     */
+    @Bean
+    @ConditionalOnProperty(name = "storage.execution.virtual-threads", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-virtual-", 0).factory()));
+    }
+
+    /**
+     * Executor for fanning out independent S3 requests (e.g. fetching several objects in parallel).
+     * With virtual threads, every task gets its own thread and the S3 connection pool is the limit.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService s3FanOutExecutor(@Value("${storage.s3.fan-out-threads:16}") int threads) {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(virtualThreadFactory("s3-fan-out-"));
+        }
+        return Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("s3-fan-out-"));
+    }
+
+    /**
+     * Runs the attempts of hedged S3 reads. Unbounded, since each attempt stands in for a caller
+     * already waiting on S3; the hedge budget and the S3 connection pool bound the extra work.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService s3HedgeExecutor() {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(virtualThreadFactory("s3-hedge-"));
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("s3-hedge-");
+        threadFactory.setDaemon(true);
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * Workers that store the records of a bulk import; kept apart from the fan-out executor,
+     * which the store methods themselves may wait on
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService importExecutor(@Value("${storage.import.workers:8}") int threads) {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(virtualThreadFactory("bulk-import-"));
+        }
+        return Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("bulk-import-"));
+    }
+
+    /**
+     * Workers that fetch the summaries of batch requests; kept apart from the fan-out executor,
+     * which reading a sectioned summary waits on. Bounded, so concurrent batches share the
+     * parallelism of one; with virtual threads the pool keeps its size, so the cap still holds.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService summaryBatchExecutor(@Value("${storage.summary-batch.parallelism:16}") int threads) {
+        if (virtualThreads) {
+            return Executors.newFixedThreadPool(threads, virtualThreadFactory("summary-batch-"));
+        }
+        return Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("summary-batch-"));
+    }
+
+    /**
+     * Low-priority workers that warm the cache ahead of requests. The queue is bounded and
+     * rejects work when full, so prefetching is dropped rather than allowed to pile up. With virtual
+     * threads the pool keeps its size and queue, so prefetching stays bounded.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor prefetchExecutor(@Value("${storage.prefetch.threads:1}") int threads,
+                                               @Value("${storage.prefetch.queue-capacity:16}") int queueCapacity) {
+        ThreadFactory threadFactory;
+        if (virtualThreads) {
+            threadFactory = virtualThreadFactory("prefetch-");
+        } else {
+            CustomizableThreadFactory platformThreadFactory = new CustomizableThreadFactory("prefetch-");
+            platformThreadFactory.setThreadPriority(Thread.MIN_PRIORITY);
+            platformThreadFactory.setDaemon(true);
+            threadFactory = platformThreadFactory;
+        }
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Workers for asynchronous store requests, sized to the uploads S3 should take at once. The
+     * queue is bounded and rejects work when full, so callers are turned away instead of jobs
+     * piling up. With virtual threads the pool keeps its size and queue. Queued jobs are drained
+     * on shutdown by StoreJobService.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor storeJobExecutor(@Value("${storage.jobs.workers:8}") int threads,
+                                               @Value("${storage.jobs.queue-capacity:1000}") int queueCapacity) {
+        ThreadFactory threadFactory = virtualThreads
+            ? virtualThreadFactory("store-job-")
+            : new CustomizableThreadFactory("store-job-");
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        return Thread.ofVirtual().name(prefix, 0).factory();
+    }
 }
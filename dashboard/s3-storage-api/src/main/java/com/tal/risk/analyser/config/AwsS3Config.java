@@ -4,16 +4,59 @@ import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
 @Configuration
 public class AwsS3Config {
 
     @Value("${aws.s3.region}")
     private String region;
 
+    /**
+     * Build the client on its first call instead of at startup
+     */
+    @Value("${storage.s3.lazy-client:false}")
+    private boolean lazyClient;
+
+    /**
+     * Send slow reads a second time and take the first answer; see {@link S3ReadHedger}
+     */
+    @Value("${storage.s3.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${storage.s3.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${storage.s3.hedge.min-samples:100}")
+    private int hedgeMinSamples;
+
+    @Value("${storage.s3.hedge.min-delay-ms:10}")
+    private long hedgeMinDelayMs;
+
+    @Value("${storage.s3.hedge.budget-ratio:0.05}")
+    private double hedgeBudgetRatio;
+
+    @Value("${storage.s3.hedge.budget-burst:10}")
+    private double hedgeBudgetBurst;
+
+    @Autowired
+    @Qualifier("s3HedgeExecutor")
+    private ExecutorService s3HedgeExecutor;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
     @Bean
     public AWSCredentialsProvider awsCredentialsProvider() {
         return new DefaultAWSCredentialsProviderChain();
@@ -21,9 +64,61 @@ public class AwsS3Config {
 
     @Bean
     public AmazonS3 amazonS3() {
+        AmazonS3 client = lazyClient ? lazy(awsCredentialsProvider()) : build(awsCredentialsProvider());
+        if (hedgeEnabled) {
+            return new S3ReadHedger(client, s3HedgeExecutor, hedgePercentile, hedgeMinSamples, hedgeMinDelayMs,
+                hedgeBudgetRatio, hedgeBudgetBurst, meterRegistry).proxy();
+        }
+        return client;
+    }
+
+    private AmazonS3 build(AWSCredentialsProvider credentialsProvider) {
         return AmazonS3ClientBuilder.standard()
                 .withRegion(region)
-                .withCredentials(awsCredentialsProvider())
+                .withCredentials(credentialsProvider)
                 .build();
     }
+
+    /**
+     * A client that is built, and its credentials resolved, on the first S3 call. Shutting it
+     * down before then does nothing.
+     */
+    private AmazonS3 lazy(AWSCredentialsProvider credentialsProvider) {
+        ReentrantLock lock = new ReentrantLock();
+        AtomicReference<AmazonS3> client = new AtomicReference<>();
+        return (AmazonS3) Proxy.newProxyInstance(AmazonS3.class.getClassLoader(), new Class<?>[]{AmazonS3.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Lazy AmazonS3 client for " + region;
+                    default:
+                        break;
+                }
+                AmazonS3 target = client.get();
+                if (target == null) {
+                    if ("shutdown".equals(method.getName())) {
+                        return null;
+                    }
+                    lock.lock();
+                    try {
+                        target = client.get();
+                        if (target == null) {
+                            target = build(credentialsProvider);
+                            client.set(target);
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
 }
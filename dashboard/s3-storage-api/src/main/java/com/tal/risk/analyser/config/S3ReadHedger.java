@@ -0,0 +1,319 @@
+package com.tal.risk.analyser.config;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.S3Object;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hedges idempotent S3 reads to cut their tail latency.
+ *
+ * A read (GET, HEAD or LIST) that has not been answered after the delay most reads of the same
+ * kind complete within (the {@code percentile} of recent latencies) is sent a second time. The
+ * first answer wins, whether a result or an error from S3, and the other attempt is cancelled.
+ * A GET that loses after all has its body aborted, so the connection is not left holding it.
+ *
+ * Hedges are paid for from a budget that every read tops up by {@code budgetRatio}, up to
+ * {@code budgetBurst}. When S3 is slow across the board, the budget runs out and reads simply
+ * wait, so hedging never adds more than that share of extra requests.
+ */
+@Slf4j
+public final class S3ReadHedger implements InvocationHandler {
+
+    /**
+     * Idempotent reads that are hedged; every other call goes straight to the client
+     */
+    private static final Set<String> HEDGED_METHODS = Set.of(
+        "getObject", "getObjectMetadata", "listObjects", "listObjectsV2", "listNextBatchOfObjects");
+
+    private final AmazonS3 target;
+    private final ExecutorService executor;
+    private final double percentile;
+    private final int minSamples;
+    private final long minDelayNanos;
+    private final double budgetRatio;
+    private final double budgetBurst;
+
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    private final ReentrantLock budgetLock = new ReentrantLock();
+    private double budget;
+
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+    private final Counter hedgesThrottled;
+
+    /**
+     * @param target      Client the reads are sent to
+     * @param executor    Runs the attempts, so the caller can stop waiting for the first one
+     * @param percentile  Latency percentile after which a read is hedged, e.g. 0.95
+     * @param minSamples  Reads of a kind observed before it is hedged at all
+     * @param minDelayMs  Lower bound of the hedge delay
+     * @param budgetRatio Hedges allowed per read, e.g. 0.05
+     * @param budgetBurst Hedges that can be saved up and sent in a row
+     * @param registry    Optional registry for the hedge counters
+     */
+    public S3ReadHedger(AmazonS3 target, ExecutorService executor, double percentile, int minSamples,
+                        long minDelayMs, double budgetRatio, double budgetBurst, MeterRegistry registry) {
+        this.target = target;
+        this.executor = executor;
+        this.percentile = percentile;
+        this.minSamples = minSamples;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMs);
+        this.budgetRatio = budgetRatio;
+        this.budgetBurst = budgetBurst;
+        this.budget = budgetBurst;
+        this.hedgesSent = registry != null ? Counter.builder("storage.s3.hedges").tag("outcome", "sent").register(registry) : null;
+        this.hedgesWon = registry != null ? Counter.builder("storage.s3.hedges").tag("outcome", "won").register(registry) : null;
+        this.hedgesThrottled = registry != null ? Counter.builder("storage.s3.hedges").tag("outcome", "throttled").register(registry) : null;
+    }
+
+    /**
+     * A client that hedges its reads through this hedger
+     */
+    public AmazonS3 proxy() {
+        return (AmazonS3) Proxy.newProxyInstance(AmazonS3.class.getClassLoader(), new Class<?>[]{AmazonS3.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Hedged " + target;
+            default:
+                break;
+        }
+        // getObject(request, file) writes to a file, which two attempts must not share
+        if (!HEDGED_METHODS.contains(method.getName())
+                || ("getObject".equals(method.getName()) && method.getReturnType() != S3Object.class)) {
+            return call(method, args);
+        }
+        return hedge(method, args);
+    }
+
+    private Object hedge(Method method, Object[] args) throws Throwable {
+        LatencyWindow window = latencies.computeIfAbsent(method.getName(), name -> new LatencyWindow(512));
+        topUpBudget();
+
+        long started = System.nanoTime();
+        long delay = window.percentile(percentile, minSamples);
+        if (delay < 0) {
+            // Not enough reads seen to tell a slow one apart yet
+            Object result = call(method, args);
+            window.record(System.nanoTime() - started);
+            return result;
+        }
+
+        CompletableFuture<Attempt> winner = new CompletableFuture<>();
+        Future<?> primary = executor.submit(() -> attempt(method, args, winner, window, started, false));
+        Future<?> hedge = null;
+        try {
+            try {
+                return winner.get(Math.max(delay, minDelayNanos), TimeUnit.NANOSECONDS).result();
+            } catch (TimeoutException e) {
+                if (!spendBudget()) {
+                    increment(hedgesThrottled);
+                    return winner.get().result();
+                }
+                increment(hedgesSent);
+                hedge = executor.submit(() -> attempt(method, copy(args), winner, window, started, true));
+                Attempt first = winner.get();
+                if (first.hedge) {
+                    increment(hedgesWon);
+                }
+                return first.result();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortedException("Interrupted while waiting for S3", e);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Sends one attempt of a read. The winner's latency is recorded from when the read started,
+     * not when the attempt did, so hedged reads still count as slow ones.
+     */
+    private void attempt(Method method, Object[] args, CompletableFuture<Attempt> winner, LatencyWindow window,
+                         long started, boolean hedge) {
+        Attempt attempt;
+        try {
+            attempt = new Attempt(call(method, args), null, hedge);
+        } catch (Throwable t) {
+            attempt = new Attempt(null, t, hedge);
+        }
+        if (winner.complete(attempt)) {
+            if (attempt.error == null) {
+                window.record(System.nanoTime() - started);
+            }
+        } else {
+            discard(attempt.value);
+        }
+    }
+
+    private Object call(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Gives the hedge its own copy of the request, since the SDK may decorate the one it is given
+     */
+    private static Object[] copy(Object[] args) {
+        Object[] copy = Arrays.copyOf(args, args.length);
+        for (int i = 0; i < copy.length; i++) {
+            if (copy[i] instanceof AmazonWebServiceRequest) {
+                copy[i] = ((AmazonWebServiceRequest) copy[i]).clone();
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Releases the connection of a GET that lost the race
+     */
+    private static void discard(Object value) {
+        if (value instanceof S3Object) {
+            S3Object s3Object = (S3Object) value;
+            try {
+                s3Object.getObjectContent().abort();
+                s3Object.close();
+            } catch (IOException e) {
+                log.debug("Could not close a hedged S3 response: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void topUpBudget() {
+        budgetLock.lock();
+        try {
+            budget = Math.min(budgetBurst, budget + budgetRatio);
+        } finally {
+            budgetLock.unlock();
+        }
+    }
+
+    private boolean spendBudget() {
+        budgetLock.lock();
+        try {
+            if (budget < 1) {
+                return false;
+            }
+            budget -= 1;
+            return true;
+        } finally {
+            budgetLock.unlock();
+        }
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private static final class Attempt {
+        private final Object value;
+        private final Throwable error;
+        private final boolean hedge;
+
+        private Attempt(Object value, Throwable error, boolean hedge) {
+            this.value = value;
+            this.error = error;
+            this.hedge = hedge;
+        }
+
+        private Object result() throws Throwable {
+            if (error != null) {
+                throw error;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * The latencies of the last {@code size} reads of one kind
+     */
+    private static final class LatencyWindow {
+        private final long[] samples;
+        private final ReentrantLock lock = new ReentrantLock();
+        private int count;
+        private int next;
+
+        /**
+         * Percentile computed at the last recalculation, redone every 64 samples rather than on every read
+         */
+        private long cached = -1;
+        private int sinceRecalculated;
+
+        private LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        private void record(long nanos) {
+            lock.lock();
+            try {
+                samples[next] = nanos;
+                next = (next + 1) % samples.length;
+                count = Math.min(count + 1, samples.length);
+                sinceRecalculated++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return The percentile in nanoseconds, or -1 while fewer than minSamples reads have been seen
+         */
+        private long percentile(double percentile, int minSamples) {
+            lock.lock();
+            try {
+                if (count < minSamples) {
+                    return -1;
+                }
+                if (cached < 0 || sinceRecalculated >= 64) {
+                    long[] sorted = Arrays.copyOf(samples, count);
+                    Arrays.sort(sorted);
+                    cached = sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+                    sinceRecalculated = 0;
+                }
+                return cached;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
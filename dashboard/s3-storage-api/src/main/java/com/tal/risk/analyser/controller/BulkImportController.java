@@ -0,0 +1,86 @@
+package com.tal.risk.analyser.controller;
+
+import com.tal.risk.analyser.model.ApiResponse;
+import com.tal.risk.analyser.model.ImportProgress;
+import com.tal.risk.analyser.service.BulkImportService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Controller for bulk imports of test-case files and summaries
+ */
+@RestController
+@RequestMapping("/api/v1")
+@Slf4j
+public class BulkImportController {
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    /**
+     * Endpoint to import many records from one streamed NDJSON or tar body
+     *
+     * @param format   ndjson or tar; defaults to the request content type
+     * @param importId Optional ID under which progress can be polled while the import runs
+     * @param request  The raw request, whose body is read incrementally
+     * @return Response with the import outcome, including any records that failed
+     */
+    @PostMapping("/import")
+    public ResponseEntity<ApiResponse> importRecords(
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "importId", required = false) String importId,
+            HttpServletRequest request) {
+        log.info("Received bulk import request (format: {}, content type: {}, import ID: {})",
+                format, request.getContentType(), importId);
+
+        try {
+            BulkImportService.Format importFormat = BulkImportService.detectFormat(format, request.getContentType());
+            ImportProgress progress = bulkImportService.importRecords(importId, request.getInputStream(), importFormat);
+
+            if (progress.getStatus() == ImportProgress.Status.FAILED) {
+                return new ResponseEntity<>(
+                        new ApiResponse("error", "Import stopped early: " + progress.getError(), progress),
+                        HttpStatus.BAD_REQUEST);
+            }
+            String message = progress.getFailed().get() == 0
+                    ? "Import completed successfully"
+                    : "Import completed with " + progress.getFailed() + " failed records";
+            return new ResponseEntity<>(
+                    ApiResponse.success(message, progress),
+                    HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            log.error("Error importing records", e);
+            return new ResponseEntity<>(
+                    ApiResponse.error("Failed to import records: " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Endpoint to poll the progress of a running or recent import
+     *
+     * @param importId ID passed when the import was started
+     * @return Response with the current progress
+     */
+    @GetMapping("/import/{importId}")
+    public ResponseEntity<ApiResponse> getImportProgress(@PathVariable String importId) {
+        ImportProgress progress = bulkImportService.getProgress(importId);
+        if (progress == null) {
+            return new ResponseEntity<>(
+                    ApiResponse.error("No import found with ID: " + importId),
+                    HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(
+                ApiResponse.success("Import progress retrieved successfully", progress),
+                HttpStatus.OK);
+    }
+}
@@ -0,0 +1,83 @@
+package com.tal.risk.analyser.controller;
+
+import com.tal.risk.analyser.model.ApiResponse;
+import com.tal.risk.analyser.service.ArchiveExportService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Controller for bulk export of PR data
+ */
+@RestController
+@RequestMapping("/api/v1")
+@Slf4j
+public class ExportController {
+
+    @Autowired
+    private ArchiveExportService archiveExportService;
+
+    /**
+     * Endpoint to stream the test cases and summaries of all matching PRs as an archive
+     *
+     * Entries are named after their S3 keys and written in key order. To resume an interrupted
+     * export, pass the name of the last complete entry as {@code startAfter}. A completed export
+     * ends with an {@value ArchiveExportService#MANIFEST_ENTRY} entry.
+     *
+     * @param prefix     Key prefix to export, e.g. a PR ID (optional)
+     * @param since      Only objects modified at or after this ISO-8601 date or instant (optional)
+     * @param format     tar.gz (default) or zip
+     * @param startAfter Resume cursor (optional)
+     * @param response   The archive is written directly to the response body
+     * @return Error response if the parameters are invalid; otherwise the archive is streamed
+     */
+    @GetMapping("/export")
+    public ResponseEntity<ApiResponse> export(
+            @RequestParam(value = "prefix", required = false, defaultValue = "") String prefix,
+            @RequestParam(value = "since", required = false) String since,
+            @RequestParam(value = "format", required = false, defaultValue = "tar.gz") String format,
+            @RequestParam(value = "startAfter", required = false) String startAfter,
+            HttpServletResponse response) {
+        log.info("Received request to export PR data (prefix: '{}', since: {}, format: {}, startAfter: {})",
+                prefix, since, format, startAfter);
+
+        ArchiveExportService.Format archiveFormat;
+        Instant sinceInstant;
+        try {
+            archiveFormat = ArchiveExportService.Format.of(format);
+            sinceInstant = ArchiveExportService.parseSince(since);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(archiveFormat.getContentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"export-" + System.currentTimeMillis() + "." + archiveFormat.getExtension() + "\"");
+        try {
+            archiveExportService.export(prefix, sinceInstant, startAfter, archiveFormat, response.getOutputStream());
+        } catch (IOException e) {
+            // Most likely the client disconnected; the archive is incomplete and can be resumed
+            log.warn("Export aborted (prefix: '{}'): {}", prefix, e.getMessage());
+        } catch (Exception e) {
+            log.error("Error exporting PR data (prefix: '{}')", prefix, e);
+            if (!response.isCommitted()) {
+                response.reset();
+                return new ResponseEntity<>(
+                        ApiResponse.error("Failed to export PR data: " + e.getMessage()),
+                        HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        }
+        // The response has been written directly
+        return null;
+    }
+}
@@ -0,0 +1,67 @@
+package com.tal.risk.analyser.controller;
+
+import com.tal.risk.analyser.model.ApiResponse;
+import com.tal.risk.analyser.service.PrBundleService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Controller for retrieving everything the dashboard shows for a PR in one request
+ */
+@RestController
+@RequestMapping("/api/v1")
+@Slf4j
+public class PrBundleController {
+
+    @Autowired
+    private PrBundleService prBundleService;
+
+    /**
+     * Endpoint to retrieve a PR's summary and all of its code files in one response
+     *
+     * @param prId     Pull Request ID
+     * @param response The bundle is streamed directly to the response body
+     * @return Error response if the PR does not exist; otherwise the bundle is streamed
+     */
+    @GetMapping("/pr/{prId}/bundle")
+    public ResponseEntity<ApiResponse> retrieveBundle(@PathVariable String prId, HttpServletResponse response) {
+        log.info("Received request to retrieve bundle for PR: {}", prId);
+
+        PrBundleService.PrBundle bundle;
+        try {
+            bundle = prBundleService.open(prId);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.NOT_FOUND);
+        } catch (Exception e) {
+            log.error("Error retrieving bundle for PR: {}", prId, e);
+            return new ResponseEntity<>(
+                    ApiResponse.error("Failed to retrieve PR bundle: " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        try {
+            prBundleService.write(bundle, response.getOutputStream());
+        } catch (IOException e) {
+            log.warn("Bundle for PR: {} was not fully delivered: {}", prId, e.getMessage());
+        }
+        // The response has been written directly
+        return null;
+    }
+}
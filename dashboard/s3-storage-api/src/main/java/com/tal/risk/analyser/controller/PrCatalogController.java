@@ -0,0 +1,52 @@
+package com.tal.risk.analyser.controller;
+
+import com.tal.risk.analyser.model.ApiResponse;
+import com.tal.risk.analyser.service.PrCatalogService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Controller for listing the stored PRs
+ */
+@RestController
+@RequestMapping("/api/v1")
+@Slf4j
+public class PrCatalogController {
+
+    @Autowired
+    private PrCatalogService prCatalogService;
+
+    /**
+     * Endpoint to list the stored PRs, with the time each was last modified
+     *
+     * @param prefix    Optional PR ID prefix to filter on
+     * @param pageSize  Optional number of PRs per page
+     * @param pageToken Optional token from the previous page
+     * @return One page of PRs, with a token for the next page unless it is the last
+     */
+    @GetMapping("/prs")
+    public ResponseEntity<ApiResponse> listPrs(
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @RequestParam(value = "pageSize", required = false) Integer pageSize,
+            @RequestParam(value = "pageToken", required = false) String pageToken) {
+        log.info("Received request to list PRs (prefix: {})", prefix);
+
+        try {
+            return new ResponseEntity<>(
+                    ApiResponse.success("PRs listed successfully", prCatalogService.listPrs(prefix, pageSize, pageToken)),
+                    HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            log.error("Error listing PRs (prefix: {})", prefix, e);
+            return new ResponseEntity<>(
+                    ApiResponse.error("Failed to list PRs: " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
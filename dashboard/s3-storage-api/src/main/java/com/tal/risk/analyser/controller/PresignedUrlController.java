@@ -0,0 +1,139 @@
+package com.tal.risk.analyser.controller;
+
+import com.tal.risk.analyser.model.ApiResponse;
+import com.tal.risk.analyser.model.PresignedFile;
+import com.tal.risk.analyser.model.PresignedUpload;
+import com.tal.risk.analyser.service.PresignedUrlService;
+import com.tal.risk.analyser.service.S3StorageService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Controller for presigned URLs, which let clients transfer file bodies directly with S3
+ */
+@RestController
+@RequestMapping("/api/v1")
+@Slf4j
+public class PresignedUrlController {
+
+    @Autowired
+    private PresignedUrlService presignedUrlService;
+
+    @Autowired
+    private S3StorageService s3StorageService;
+
+    /**
+     * Endpoint to retrieve the manifest of a PR's code files with presigned download URLs.
+     * Selected by {@code mode=presigned}; without it, /retrieve/{prId} returns the file bodies.
+     *
+     * @param prId Pull Request ID
+     * @return Response with one entry per file, each with a short-lived GET URL
+     */
+    @GetMapping(value = "/retrieve/{prId}", params = "mode=presigned")
+    public ResponseEntity<ApiResponse> retrievePresignedCodeFiles(@PathVariable String prId) {
+        log.info("Received request to retrieve presigned code file URLs for PR: {}", prId);
+
+        try {
+            List<PresignedFile> files = presignedUrlService.presignCodeFiles(prId);
+
+            Map<String, Object> responseData = new HashMap<>();
+            responseData.put("prId", prId);
+            responseData.put("files", files);
+            responseData.put("count", files.size());
+
+            return new ResponseEntity<>(
+                    ApiResponse.success("Code file URLs generated successfully", responseData),
+                    HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error("No files found for PR: " + prId),
+                    HttpStatus.NOT_FOUND);
+        } catch (Exception e) {
+            log.error("Error generating presigned URLs for PR: {}", prId, e);
+            return new ResponseEntity<>(
+                    ApiResponse.error("Failed to generate code file URLs: " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Endpoint to get a presigned URL for uploading a test-case file directly to S3
+     *
+     * @param prId    Pull Request ID
+     * @param request Request body containing the file name
+     * @return Response with the upload URL and the headers it must be used with
+     */
+    @PostMapping("/store/{prId}/upload-url")
+    public ResponseEntity<ApiResponse> createUploadUrl(
+            @PathVariable String prId,
+            @RequestBody Map<String, String> request) {
+        String fileName = request.get("fileName");
+        log.info("Received request for an upload URL for PR: {}, file: {}", prId, fileName);
+
+        try {
+            PresignedUpload upload = presignedUrlService.presignCodeUpload(prId, fileName);
+            return new ResponseEntity<>(
+                    ApiResponse.success("Upload URL generated successfully", upload),
+                    HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            log.error("Error generating upload URL for PR: {}, file: {}", prId, fileName, e);
+            return new ResponseEntity<>(
+                    ApiResponse.error("Failed to generate upload URL: " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Endpoint to confirm that a test-case file has been uploaded through a presigned URL
+     *
+     * @param prId    Pull Request ID
+     * @param request Request body containing the file name
+     * @return Response with the S3 key and ETag of the recorded file
+     */
+    @PostMapping("/store/{prId}/upload-complete")
+    public ResponseEntity<ApiResponse> completeUpload(
+            @PathVariable String prId,
+            @RequestBody Map<String, String> request) {
+        String fileName = request.get("fileName");
+        log.info("Received upload completion for PR: {}, file: {}", prId, fileName);
+
+        try {
+            Map<String, Object> responseData = new HashMap<>(s3StorageService.completeCodeUpload(prId, fileName));
+            responseData.put("prId", prId);
+            responseData.put("fileName", fileName);
+
+            return new ResponseEntity<>(
+                    ApiResponse.success("Code data stored successfully", responseData),
+                    HttpStatus.CREATED);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.NOT_FOUND);
+        } catch (Exception e) {
+            log.error("Error completing upload for PR: {}, file: {}", prId, fileName, e);
+            return new ResponseEntity<>(
+                    ApiResponse.error("Failed to record uploaded code data: " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
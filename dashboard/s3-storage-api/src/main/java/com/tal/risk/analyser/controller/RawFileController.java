@@ -0,0 +1,91 @@
+package com.tal.risk.analyser.controller;
+
+import com.tal.risk.analyser.model.ApiResponse;
+import com.tal.risk.analyser.service.RangeNotSatisfiableException;
+import com.tal.risk.analyser.service.RawFileService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Controller for the raw text of test-case files, for clients that page through them by byte range
+ */
+@RestController
+@RequestMapping("/api/v1")
+@Slf4j
+public class RawFileController {
+
+    @Autowired
+    private RawFileService rawFileService;
+
+    /**
+     * Endpoint to retrieve the raw text of a test-case file, whole or by byte range
+     *
+     * @param prId     Pull Request ID
+     * @param fileName Name of the test-case file
+     * @param range    Optional single byte range, e.g. bytes=0-65535
+     * @param response The file is streamed directly to the response body, as text/plain
+     * @return Null once the file has been streamed, or an error response
+     */
+    @GetMapping("/retrieve/{prId}/files/{fileName}")
+    public ResponseEntity<ApiResponse> getRawFile(
+            @PathVariable String prId,
+            @PathVariable String fileName,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            HttpServletResponse response) {
+        log.info("Received request to retrieve raw file {} for PR: {} (range: {})", fileName, prId, range);
+
+        RawFileService.RawFile file;
+        try {
+            file = rawFileService.open(prId, fileName, range);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.NOT_FOUND);
+        } catch (RangeNotSatisfiableException e) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + e.getLength())
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error retrieving raw file {} for PR: {}", fileName, prId, e);
+            return new ResponseEntity<>(
+                    ApiResponse.error("Failed to retrieve file: " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        try (RawFileService.RawFile body = file) {
+            response.setStatus(body.isPartial() ? HttpStatus.PARTIAL_CONTENT.value() : HttpStatus.OK.value());
+            response.setContentType("text/plain");
+            response.setCharacterEncoding("UTF-8");
+            response.setContentLengthLong(body.getContentLength());
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            if (body.isPartial()) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, body.contentRange());
+            }
+            if (body.getETag() != null) {
+                response.setHeader(HttpHeaders.ETAG, "\"" + body.getETag() + "\"");
+            }
+            try {
+                body.getContent().transferTo(response.getOutputStream());
+            } catch (IOException e) {
+                body.abort();
+                log.warn("Raw file {} for PR: {} was not fully delivered: {}", fileName, prId, e.getMessage());
+            }
+        } catch (IOException e) {
+            log.warn("Could not close raw file {} for PR: {}: {}", fileName, prId, e.getMessage());
+        }
+        // The response has been written directly
+        return null;
+    }
+}
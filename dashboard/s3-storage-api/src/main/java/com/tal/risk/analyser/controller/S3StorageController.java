@@ -1,17 +1,29 @@
 package com.tal.risk.analyser.controller;
 
 import com.tal.risk.analyser.model.ApiResponse;
+import com.tal.risk.analyser.model.CodeFileResult;
 import com.tal.risk.analyser.model.CodeStoreRequest;
+import com.tal.risk.analyser.model.StoreJob;
 import com.tal.risk.analyser.model.SummaryStoreRequest;
+import com.tal.risk.analyser.service.IdempotencyService;
 import com.tal.risk.analyser.service.S3StorageService;
+import com.tal.risk.analyser.service.StoreJobService;
+import com.tal.risk.analyser.service.StreamingCodeStoreService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/v1")
@@ -21,18 +33,36 @@ public class S3StorageController {
     @Autowired
     private S3StorageService s3StorageService;
 
+    @Autowired
+    private StoreJobService storeJobService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private StreamingCodeStoreService streamingCodeStoreService;
+
     /**
      * Endpoint to store code data in S3 bucket
      * 
      * @param prId Pull Request ID (path variable)
      * @param request Request body containing file name and code content
-     * @return Response with status and stored file information
+     * @param async Queue the upload and return 202 with a job to poll instead of waiting for it
+     * @param idempotencyKey Optional key; a retry with the same key gets the first response without storing again
+     * @return Response with status and stored file information, or the queued job
      */
     @PostMapping("/store/{prId}")
     public ResponseEntity<ApiResponse> storeCodeData(
             @PathVariable String prId,
-            @RequestBody CodeStoreRequest request) {
-        
+            @RequestBody CodeStoreRequest request,
+            @RequestParam(value = "async", defaultValue = "false") boolean async,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey,
+                () -> idempotencyService.fingerprint("store/" + prId + (async ? "?async" : ""), request),
+                () -> storeCode(prId, request, async));
+    }
+    
+    private ResponseEntity<ApiResponse> storeCode(String prId, CodeStoreRequest request, boolean async) {
         // Set PR ID from path variable if not provided in request
         if (request.getPrId() == null || request.getPrId().trim().isEmpty()) {
             request.setPrId(prId);
@@ -57,6 +87,10 @@ public class S3StorageController {
                         HttpStatus.BAD_REQUEST);
             }
             
+            if (async) {
+                return accepted(storeJobService.submitCodeData(request));
+            }
+            
             // Store the code data in S3
             String s3Key = s3StorageService.storeCodeData(request);
             
@@ -70,6 +104,8 @@ public class S3StorageController {
                     ApiResponse.success("Code data stored successfully", responseData), 
                     HttpStatus.CREATED);
             
+        } catch (RejectedExecutionException e) {
+            return queueFull();
         } catch (Exception e) {
             log.error("Error processing store code data request for PR: " + request.getPrId(), e);
             return new ResponseEntity<>(
@@ -82,11 +118,49 @@ public class S3StorageController {
      * Endpoint to store code data in S3 bucket (without path variable)
      * 
      * @param request Request body containing PR ID, file name and test cases
-     * @return Response with status and stored file information
+     * @param async Queue the upload and return 202 with a job to poll instead of waiting for it
+     * @param idempotencyKey Optional key; a retry with the same key gets the first response without storing again
+     * @return Response with status and stored file information, or the queued job
      */
     @PostMapping("/store")
-    public ResponseEntity<ApiResponse> storeCodeData(@RequestBody CodeStoreRequest request) {
-        return storeCodeData(request.getPrId(), request);
+    public ResponseEntity<ApiResponse> storeCodeData(
+            @RequestBody CodeStoreRequest request,
+            @RequestParam(value = "async", defaultValue = "false") boolean async,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return storeCodeData(request.getPrId(), request, async, idempotencyKey);
+    }
+    
+    /**
+     * Endpoint to store a large test-case file without buffering it: the body of /store/{prId} is
+     * read as it arrives and uploaded to S3 in parts
+     * 
+     * @param prId Pull Request ID (path variable)
+     * @param request The raw request, whose body is read incrementally
+     * @return Response with status and stored file information
+     */
+    @PostMapping("/store/{prId}/stream")
+    public ResponseEntity<ApiResponse> streamCodeData(
+            @PathVariable String prId,
+            HttpServletRequest request) {
+        log.info("Received request to stream code data for PR: {} ({} bytes)", prId, request.getContentLengthLong());
+        
+        try {
+            Map<String, Object> responseData = streamingCodeStoreService.storeCodeData(prId, request.getInputStream());
+            
+            return new ResponseEntity<>(
+                    ApiResponse.success("Code data stored successfully", responseData), 
+                    HttpStatus.CREATED);
+        } catch (IllegalArgumentException e) {
+            log.error("Validation error: " + e.getMessage());
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()), 
+                    HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            log.error("Error processing streamed code data request for PR: " + prId, e);
+            return new ResponseEntity<>(
+                    ApiResponse.error("Failed to store code data: " + e.getMessage()), 
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
     }
     
     /**
@@ -94,16 +168,29 @@ public class S3StorageController {
      * 
      * @param prId Pull Request ID (path variable)
      * @param request Request body containing github URL and key-value data
-     * @return Response with status and stored file information
+     * @param async Queue the upload and return 202 with a job to poll instead of waiting for it
+     * @param idempotencyKey Optional key; a retry with the same key gets the first response without storing again
+     * @return Response with status and stored file information, or the queued job
      */
     @PostMapping("/store/summary/{prId}")
     public ResponseEntity<ApiResponse> storeSummaryData(
             @PathVariable String prId,
-            @RequestBody SummaryStoreRequest request) {
-        
+            @RequestBody SummaryStoreRequest request,
+            @RequestParam(value = "async", defaultValue = "false") boolean async,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey,
+                () -> idempotencyService.fingerprint("store/summary/" + prId + (async ? "?async" : ""), request),
+                () -> storeSummary(prId, request, async));
+    }
+    
+    private ResponseEntity<ApiResponse> storeSummary(String prId, SummaryStoreRequest request, boolean async) {
         log.info("Received request to store summary data for PR: {}", prId);
         
         try {
+            if (async) {
+                return accepted(storeJobService.submitSummaryData(prId, request));
+            }
+            
             // Store the summary data in S3
             String s3Key = s3StorageService.storeSummaryData(prId, request);
             
@@ -120,6 +207,8 @@ public class S3StorageController {
             return new ResponseEntity<>(
                     ApiResponse.error(e.getMessage()), 
                     HttpStatus.BAD_REQUEST);
+        } catch (RejectedExecutionException e) {
+            return queueFull();
         } catch (Exception e) {
             log.error("Error processing store summary data request: " + e.getMessage(), e);
             return new ResponseEntity<>(
@@ -128,6 +217,28 @@ public class S3StorageController {
         }
     }
     
+    /**
+     * 202 response for a queued store job, pointing at its status
+     */
+    private ResponseEntity<ApiResponse> accepted(StoreJob job) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(URI.create("/api/v1/jobs/" + job.getJobId()));
+        return new ResponseEntity<>(
+                ApiResponse.success("Store request accepted", job),
+                headers,
+                HttpStatus.ACCEPTED);
+    }
+    
+    private ResponseEntity<ApiResponse> queueFull() {
+        log.warn("Store job queue is full; turning the request away");
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "5");
+        return new ResponseEntity<>(
+                ApiResponse.error("Too many store requests are queued; retry later"),
+                headers,
+                HttpStatus.SERVICE_UNAVAILABLE);
+    }
+    
     /**
      * Health check endpoint
      * 
@@ -144,16 +255,58 @@ public class S3StorageController {
      * Endpoint to retrieve all code files for a specific PR ID
      * 
      * @param prId Pull Request ID
-     * @return Response with status and code files
+     * @param fields Optional comma-separated JSON Pointers to return from each file (e.g. /fileName)
+     * @param pageSize Optional number of files per page
+     * @param pageToken Optional token from the previous page
+     * @param mode Optional "contentless" to list the files without their content
+     * @param response With the off-heap cache enabled, the files are streamed directly to the response body
+     * @return Response with status and code files, or null once the files have been streamed
      */
     @GetMapping("/retrieve/{prId}")
-    public ResponseEntity<ApiResponse> retrieveCodeFiles(@PathVariable String prId) {
+    public ResponseEntity<ApiResponse> retrieveCodeFiles(
+            @PathVariable String prId,
+            @RequestParam(value = "fields", required = false) java.util.List<String> fields,
+            @RequestParam(value = "pageSize", required = false) Integer pageSize,
+            @RequestParam(value = "pageToken", required = false) String pageToken,
+            @RequestParam(value = "mode", required = false) String mode,
+            HttpServletResponse response) {
         log.info("Received request to retrieve code files for PR: {}", prId);
         
         try {
-            // Get all code files for the specified PR ID
-            java.util.List<com.tal.risk.analyser.model.CodeFileResponse> files = 
-                s3StorageService.getAllCodeFilesForPR(prId);
+            boolean contentless = "contentless".equals(mode);
+            if (mode != null && !contentless) {
+                throw new IllegalArgumentException("Unsupported mode: " + mode);
+            }
+            if (pageSize != null || pageToken != null || contentless) {
+                if (fields != null && !fields.isEmpty()) {
+                    throw new IllegalArgumentException("fields cannot be combined with pages or contentless mode");
+                }
+                return new ResponseEntity<>(
+                        ApiResponse.success("Code files retrieved successfully",
+                            s3StorageService.getCodeFilePage(prId, pageSize, pageToken, contentless)),
+                        HttpStatus.OK);
+            }
+            
+            if ((fields == null || fields.isEmpty()) && response != null && s3StorageService.isStreamingRetrievalEnabled()) {
+                java.util.List<com.amazonaws.services.s3.model.S3ObjectSummary> objects = s3StorageService.listCodeFilesForPR(prId);
+                
+                response.setStatus(HttpStatus.OK.value());
+                response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                response.setCharacterEncoding("UTF-8");
+                try {
+                    s3StorageService.writeAllCodeFilesForPR(prId, objects, response.getOutputStream());
+                } catch (IOException e) {
+                    log.warn("Code files for PR: {} were not fully delivered: {}", prId, e.getMessage());
+                }
+                // The response has been written directly
+                return null;
+            }
+            
+
+            // Get all code files for the specified PR ID, projected to the requested fields if any
+            java.util.List<?> files = fields == null || fields.isEmpty()
+                ? s3StorageService.getAllCodeFilesForPR(prId)
+                : s3StorageService.getCodeFileFields(prId, fields);
             
             // Create response with files
             Map<String, Object> responseData = new HashMap<>();
@@ -164,6 +317,11 @@ public class S3StorageController {
             return new ResponseEntity<>(
                     ApiResponse.success("Code files retrieved successfully", responseData), 
                     HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            log.error("Validation error: " + e.getMessage());
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()), 
+                    HttpStatus.BAD_REQUEST);
         } catch (java.util.NoSuchElementException e) {
             log.error("No files found for PR: {}", prId);
             return new ResponseEntity<>(
@@ -177,14 +335,63 @@ public class S3StorageController {
         }
     }
     
+    /**
+     * Endpoint to retrieve a single code file by name, without listing the PR's files
+     * 
+     * @param prId Pull Request ID
+     * @param fileName Name of the file, as it was stored
+     * @param ifNoneMatch Optional ETag of the client's copy
+     * @return Response with the file and its ETag, or 304 if the client's copy is current
+     */
+    @GetMapping("/retrieve/{prId}/file/{fileName}")
+    public ResponseEntity<ApiResponse> retrieveCodeFile(
+            @PathVariable String prId,
+            @PathVariable String fileName,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        log.info("Received request to retrieve code file {} for PR: {}", fileName, prId);
+        
+        try {
+            CodeFileResult result = s3StorageService.getCodeFile(prId, fileName, ifNoneMatch);
+            if (result.isNotModified()) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(result.getEtag()).build();
+            }
+            
+            Map<String, Object> responseData = new HashMap<>();
+            responseData.put("prId", prId);
+            responseData.put("s3Key", result.getS3Key());
+            responseData.put("file", result.getFile());
+            
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (result.getEtag() != null) {
+                response.eTag(result.getEtag());
+            }
+            return response.body(ApiResponse.success("Code file retrieved successfully", responseData));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()), 
+                    HttpStatus.BAD_REQUEST);
+        } catch (java.util.NoSuchElementException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()), 
+                    HttpStatus.NOT_FOUND);
+        } catch (Exception e) {
+            log.error("Error retrieving code file {} for PR: {}", fileName, prId, e);
+            return new ResponseEntity<>(
+                    ApiResponse.error("Failed to retrieve code file: " + e.getMessage()), 
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
     /**
      * Endpoint to retrieve all code files for a specific PR ID (POST method)
      * 
      * @param request Request body containing PR ID
+     * @param response With the off-heap cache enabled, the files are streamed directly to the response body
      * @return Response with status and code files
      */
     @PostMapping("/retrieve")
-    public ResponseEntity<ApiResponse> retrieveCodeFilesPost(@RequestBody Map<String, String> request) {
+    public ResponseEntity<ApiResponse> retrieveCodeFilesPost(@RequestBody Map<String, String> request,
+                                                             HttpServletResponse response) {
         String prId = request.get("prId");
         if (prId == null || prId.trim().isEmpty()) {
             return new ResponseEntity<>(
@@ -192,6 +399,6 @@ public class S3StorageController {
                     HttpStatus.BAD_REQUEST);
         }
         
-        return retrieveCodeFiles(prId);
+        return retrieveCodeFiles(prId, null, null, null, null, response);
     }
 }
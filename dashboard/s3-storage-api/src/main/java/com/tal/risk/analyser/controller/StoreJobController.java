@@ -0,0 +1,39 @@
+package com.tal.risk.analyser.controller;
+
+import com.tal.risk.analyser.model.ApiResponse;
+import com.tal.risk.analyser.model.StoreJob;
+import com.tal.risk.analyser.service.StoreJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Controller for the status of store requests accepted asynchronously
+ */
+@RestController
+@RequestMapping("/api/v1")
+public class StoreJobController {
+
+    @Autowired
+    private StoreJobService storeJobService;
+
+    /**
+     * Endpoint to poll a store request accepted with async=true
+     *
+     * @param jobId ID returned in the 202 response
+     * @return Response with the job's status, and its S3 key or error once it has finished
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ApiResponse> getJob(@PathVariable String jobId) {
+        StoreJob job = storeJobService.getJob(jobId);
+        if (job == null) {
+            return new ResponseEntity<>(
+                    ApiResponse.error("No job found with ID: " + jobId),
+                    HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(
+                ApiResponse.success("Job retrieved successfully", job),
+                HttpStatus.OK);
+    }
+}
@@ -1,16 +1,29 @@
 package com.tal.risk.analyser.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.tal.risk.analyser.model.ApiResponse;
+import com.tal.risk.analyser.model.SummaryBatchRequest;
+import com.tal.risk.analyser.model.SummaryPatchResult;
 import com.tal.risk.analyser.model.SummaryRetrieveRequest;
 import com.tal.risk.analyser.model.SummaryStoreRequest;
+import com.tal.risk.analyser.service.CacheWarmupService;
+import com.tal.risk.analyser.service.IdempotencyService;
+import com.tal.risk.analyser.service.PreconditionFailedException;
 import com.tal.risk.analyser.service.S3StorageService;
+import com.tal.risk.analyser.service.SummaryBatchService;
+import com.tal.risk.analyser.service.TestCasePrefetchService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -21,14 +34,35 @@ public class SummaryRetrievalController {
     @Autowired
     private S3StorageService s3StorageService;
 
+    @Autowired
+    private TestCasePrefetchService testCasePrefetchService;
+
+    @Autowired
+    private CacheWarmupService cacheWarmupService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private SummaryBatchService summaryBatchService;
+
     /**
      * Endpoint to retrieve summary data for a specific PR ID
      *
      * @param request The request object containing the PR ID
+     * @param idempotencyKey Optional key; a retry with the same key gets the first response without storing again
      * @return ResponseEntity with summary data
      */
     @PostMapping("/summary/store")
-    public ResponseEntity<ApiResponse> storeSummary(@RequestBody SummaryStoreRequest request) {
+    public ResponseEntity<ApiResponse> storeSummary(
+            @RequestBody SummaryStoreRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey,
+                () -> idempotencyService.fingerprint("summary/store", request),
+                () -> storeSummary(request));
+    }
+    
+    private ResponseEntity<ApiResponse> storeSummary(SummaryStoreRequest request) {
         try {
             log.info("Received request to store summary data for PR: {}", request.getPrId());
             
@@ -71,8 +105,26 @@ public class SummaryRetrievalController {
                     .body(ApiResponse.error("PR ID cannot be empty"));
             }
             
-            // Retrieve summary data from S3
-            Map<String, Object> summaryData = s3StorageService.getSummaryData(request.getPrId());
+            boolean hasSections = request.getSections() != null && !request.getSections().isEmpty();
+            boolean hasFields = request.getFields() != null && !request.getFields().isEmpty();
+            if (hasSections && hasFields) {
+                return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("Sections and fields cannot be combined"));
+            }
+            
+            // Retrieve summary data from S3, narrowed to the requested sections or fields if any were named
+            Map<String, Object> summaryData;
+            if (hasFields) {
+                summaryData = s3StorageService.getSummaryFields(request.getPrId(), request.getFields());
+            } else if (hasSections) {
+                summaryData = s3StorageService.getSummarySections(request.getPrId(), request.getSections());
+            } else {
+                summaryData = s3StorageService.getSummaryData(request.getPrId());
+            }
+            
+            // The test-case files are usually requested next; start loading them in the background
+            testCasePrefetchService.onSummaryRead(request.getPrId());
+            cacheWarmupService.recordAccess(request.getPrId());
             
             // Create response
             Map<String, Object> responseData = new HashMap<>();
@@ -97,12 +149,105 @@ public class SummaryRetrievalController {
      * Alternative endpoint using GET method and path variable
      *
      * @param prId The PR ID path variable
+     * @param sections Optional comma-separated data sections to return (e.g. risk,modules)
+     * @param fields Optional comma-separated JSON Pointers to return (e.g. /githubUrl,/data/risk/score)
      * @return ResponseEntity with summary data
      */
     @GetMapping("/summary/retrieve/{prId}")
-    public ResponseEntity<ApiResponse> retrieveSummaryGet(@PathVariable String prId) {
+    public ResponseEntity<ApiResponse> retrieveSummaryGet(
+            @PathVariable String prId,
+            @RequestParam(value = "sections", required = false) List<String> sections,
+            @RequestParam(value = "fields", required = false) List<String> fields) {
         SummaryRetrieveRequest request = new SummaryRetrieveRequest();
         request.setPrId(prId);
+        request.setSections(sections);
+        request.setFields(fields);
         return retrieveSummary(request);
     }
+    
+    /**
+     * Endpoint to retrieve the summaries of several PRs in one request
+     *
+     * @param request  The PR IDs
+     * @param response The summaries are streamed directly to the response body as they are fetched
+     * @return Error response if the request is invalid; otherwise the summaries are streamed
+     */
+    @PostMapping("/summary/retrieve/batch")
+    public ResponseEntity<ApiResponse> retrieveSummaryBatch(
+            @RequestBody SummaryBatchRequest request,
+            HttpServletResponse response) {
+        int requested = request.getPrIds() != null ? request.getPrIds().size() : 0;
+        log.info("Received request to retrieve summary data for {} PR(s)", requested);
+
+        SummaryBatchService.SummaryBatch batch;
+        try {
+            batch = summaryBatchService.open(request.getPrIds());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(ApiResponse.error("Validation error: " + e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error retrieving summary data for {} PR(s): {}", requested, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(ApiResponse.error("Failed to retrieve summary data: " + e.getMessage()));
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        try {
+            summaryBatchService.write(batch, response.getOutputStream());
+        } catch (IOException e) {
+            log.warn("Summaries for {} PR(s) were not fully delivered: {}", requested, e.getMessage());
+        }
+        // The response has been written directly
+        return null;
+    }
+    
+    /**
+     * Endpoint to partially update summary data with a JSON Merge Patch (RFC 7396).
+     * Each agent can send only its own section; the merge is applied server-side and
+     * written conditionally so concurrent patches do not overwrite each other.
+     *
+     * @param prId    The PR ID path variable
+     * @param ifMatch Optional ETag the stored summary must match
+     * @param patch   The merge patch document
+     * @return ResponseEntity with the merged summary and its new ETag
+     */
+    @PatchMapping(value = "/summary/{prId}",
+            consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<ApiResponse> patchSummary(
+            @PathVariable String prId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody JsonNode patch) {
+        try {
+            log.info("Received request to patch summary data for PR: {}", prId);
+            
+            SummaryPatchResult result = s3StorageService.patchSummaryData(prId, patch, ifMatch);
+            
+            // Create response
+            Map<String, Object> responseData = new HashMap<>();
+            responseData.put("prId", prId);
+            responseData.put("s3Key", result.getS3Key());
+            responseData.put("summaryData", result.getSummaryData());
+            
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (result.getEtag() != null) {
+                response.eTag(result.getEtag());
+            }
+            return response.body(ApiResponse.success("Summary data patched successfully", responseData));
+            
+        } catch (IllegalArgumentException e) {
+            log.error("Validation error patching summary data: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                .body(ApiResponse.error("Validation error: " + e.getMessage()));
+        } catch (PreconditionFailedException e) {
+            log.warn("Precondition failed patching summary data: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error patching summary data: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(ApiResponse.error("Failed to patch summary data: " + e.getMessage()));
+        }
+    }
 }
@@ -0,0 +1,160 @@
+package com.tal.risk.analyser.controller;
+
+import com.tal.risk.analyser.model.ApiResponse;
+import com.tal.risk.analyser.model.TestCaseVersionHistory;
+import com.tal.risk.analyser.service.S3StorageService;
+import com.tal.risk.analyser.service.TestCaseVersionService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Controller for the version history of test-case files.
+ *
+ * File names "file" and "files" are excluded from these routes, so that
+ * /retrieve/{prId}/file/versions and /retrieve/{prId}/files/versions keep reaching the single
+ * file named "versions" rather than the history of a file named "file" or "files".
+ */
+@RestController
+@RequestMapping("/api/v1")
+@Slf4j
+public class TestCaseVersionController {
+
+    @Autowired
+    private S3StorageService s3StorageService;
+
+    @Autowired
+    private TestCaseVersionService versionService;
+
+    /**
+     * Any file name but those of the single-file routes
+     */
+    private static final String FILE_NAME = "{fileName:(?!files?$).+}";
+
+    /**
+     * Endpoint to list the stored revisions of a test-case file
+     *
+     * @param prId     Pull Request ID
+     * @param fileName Name of the test-case file
+     * @return Response with the version history
+     */
+    @GetMapping("/retrieve/{prId}/" + FILE_NAME + "/versions")
+    public ResponseEntity<ApiResponse> getVersions(@PathVariable String prId, @PathVariable String fileName) {
+        log.info("Received request to list versions of {} for PR: {}", fileName, prId);
+
+        try {
+            TestCaseVersionHistory history = versionService.getHistory(prId, S3StorageService.sanitizeFileName(fileName));
+            return new ResponseEntity<>(
+                    ApiResponse.success("Versions retrieved successfully", history),
+                    HttpStatus.OK);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.NOT_FOUND);
+        } catch (Exception e) {
+            log.error("Error listing versions of {} for PR: {}", fileName, prId, e);
+            return new ResponseEntity<>(
+                    ApiResponse.error("Failed to retrieve versions: " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Endpoint to retrieve a specific revision of a test-case file
+     *
+     * @param prId     Pull Request ID
+     * @param fileName Name of the test-case file
+     * @param version  Revision number, starting at 1
+     * @return Response with the test cases as they were at that revision
+     */
+    @GetMapping("/retrieve/{prId}/" + FILE_NAME + "/versions/{version}")
+    public ResponseEntity<ApiResponse> getVersion(
+            @PathVariable String prId,
+            @PathVariable String fileName,
+            @PathVariable int version) {
+        log.info("Received request to retrieve version {} of {} for PR: {}", version, fileName, prId);
+
+        try {
+            String latest = s3StorageService.getStoredTestCases(S3StorageService.codeFileKey(prId, fileName));
+            if (latest == null) {
+                throw new NoSuchElementException("File not found: " + fileName);
+            }
+            String testCases = versionService.getRevision(prId, S3StorageService.sanitizeFileName(fileName), version, latest);
+
+            Map<String, Object> responseData = new HashMap<>();
+            responseData.put("prId", prId);
+            responseData.put("fileName", fileName);
+            responseData.put("version", version);
+            responseData.put("testCases", testCases);
+
+            return new ResponseEntity<>(
+                    ApiResponse.success("Version retrieved successfully", responseData),
+                    HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.GONE);
+        } catch (Exception e) {
+            log.error("Error retrieving version {} of {} for PR: {}", version, fileName, prId, e);
+            return new ResponseEntity<>(
+                    ApiResponse.error("Failed to retrieve version: " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Endpoint to diff two revisions of a test-case file
+     *
+     * @param prId     Pull Request ID
+     * @param fileName Name of the test-case file
+     * @param from     Revision to diff from
+     * @param to       Revision to diff to
+     * @return Response with the line delta and its unified-diff rendering
+     */
+    @GetMapping("/retrieve/{prId}/" + FILE_NAME + "/versions/diff")
+    public ResponseEntity<ApiResponse> diffVersions(
+            @PathVariable String prId,
+            @PathVariable String fileName,
+            @RequestParam int from,
+            @RequestParam int to) {
+        log.info("Received request to diff versions {}..{} of {} for PR: {}", from, to, fileName, prId);
+
+        try {
+            Map<String, Object> diff = versionService.diff(prId, S3StorageService.sanitizeFileName(fileName), from, to);
+            return new ResponseEntity<>(
+                    ApiResponse.success("Diff computed successfully", diff),
+                    HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(e.getMessage()),
+                    HttpStatus.GONE);
+        } catch (Exception e) {
+            log.error("Error diffing versions of {} for PR: {}", fileName, prId, e);
+            return new ResponseEntity<>(
+                    ApiResponse.error("Failed to diff versions: " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
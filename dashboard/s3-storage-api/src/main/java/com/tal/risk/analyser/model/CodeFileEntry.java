@@ -0,0 +1,32 @@
+package com.tal.risk.analyser.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A stored test-case file as listed, without its content
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CodeFileEntry {
+
+    /**
+     * Sanitized file name, as used in the S3 key
+     */
+    private String id;
+
+    private String s3Key;
+
+    private long size;
+
+    private String etag;
+
+    /**
+     * Last modification time (ISO-8601)
+     */
+    private String lastModified;
+}
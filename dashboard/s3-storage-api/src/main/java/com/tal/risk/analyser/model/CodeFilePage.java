@@ -0,0 +1,32 @@
+package com.tal.risk.analyser.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a PR's test-case files
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CodeFilePage {
+
+    private String prId;
+
+    /**
+     * The files, as {@link CodeFileResponse} or, in contentless mode, as {@link CodeFileEntry}
+     */
+    private List<?> files;
+
+    private int count;
+
+    /**
+     * Token for the next page; absent on the last page
+     */
+    private String nextPageToken;
+}
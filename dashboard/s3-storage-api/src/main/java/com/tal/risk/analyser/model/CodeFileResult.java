@@ -0,0 +1,34 @@
+package com.tal.risk.analyser.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of looking up a single test-case file by name
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CodeFileResult {
+
+    /**
+     * S3 key of the file
+     */
+    private String s3Key;
+
+    /**
+     * ETag of the file as it was read
+     */
+    private String etag;
+
+    /**
+     * The file; null when the client's copy is current
+     */
+    private CodeFileResponse file;
+
+    /**
+     * Whether the ETag matched the client's If-None-Match
+     */
+    private boolean notModified;
+}
@@ -0,0 +1,38 @@
+package com.tal.risk.analyser.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A record of a bulk import that could not be stored
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImportFailure {
+
+    /**
+     * Where the record came from: "line N" for NDJSON, the entry name for tar
+     */
+    private String record;
+
+    /**
+     * Pull Request ID of the record, if it could be parsed
+     */
+    private String prId;
+
+    /**
+     * File name of a test-case record, or "summary"
+     */
+    private String target;
+
+    private String error;
+
+    /**
+     * Whether sending the record again may succeed (false for validation errors)
+     */
+    private boolean retryable;
+}
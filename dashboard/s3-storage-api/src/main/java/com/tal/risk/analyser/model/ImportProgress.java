@@ -0,0 +1,57 @@
+package com.tal.risk.analyser.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress and outcome of a bulk import. Counters are updated by the import workers
+ * while the import runs, so the object can be reported at any time.
+ */
+@Data
+@NoArgsConstructor
+public class ImportProgress {
+
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    private String importId;
+
+    private String format;
+
+    private volatile Status status = Status.RUNNING;
+
+    /**
+     * Records parsed from the request body so far
+     */
+    private final AtomicLong received = new AtomicLong();
+
+    /**
+     * Records written (or found already stored unchanged)
+     */
+    private final AtomicLong stored = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Details of failed records; capped, while {@link #failed} keeps counting
+     */
+    private final List<ImportFailure> failures = new CopyOnWriteArrayList<>();
+
+    private String startedAt;
+
+    private volatile String finishedAt;
+
+    /**
+     * Why the import stopped early, if the request body could not be read to the end
+     */
+    private volatile String error;
+
+    public ImportProgress(String importId, String format, String startedAt) {
+        this.importId = importId;
+        this.format = format;
+        this.startedAt = startedAt;
+    }
+}
@@ -0,0 +1,23 @@
+package com.tal.risk.analyser.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A stored PR as listed in the catalog
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PrCatalogEntry {
+
+    private String prId;
+
+    /**
+     * Last modification time of any of the PR's objects (ISO-8601); absent if the PR has no objects left
+     */
+    private String lastModified;
+}
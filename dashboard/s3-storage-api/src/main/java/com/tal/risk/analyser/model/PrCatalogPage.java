@@ -0,0 +1,27 @@
+package com.tal.risk.analyser.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of the stored PRs
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PrCatalogPage {
+
+    private List<PrCatalogEntry> prs;
+
+    private int count;
+
+    /**
+     * Token for the next page; absent on the last page
+     */
+    private String nextPageToken;
+}
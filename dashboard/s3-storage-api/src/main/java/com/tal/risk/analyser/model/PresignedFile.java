@@ -0,0 +1,48 @@
+package com.tal.risk.analyser.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A stored file together with a short-lived URL for fetching it directly from S3
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PresignedFile {
+
+    /**
+     * Sanitized file name, as used in the S3 key
+     */
+    private String id;
+
+    private String s3Key;
+
+    private long size;
+
+    private String etag;
+
+    /**
+     * Last modification time (ISO-8601)
+     */
+    private String lastModified;
+
+    /**
+     * Presigned GET URL of the stored JSON document ({"fileName", "testCases"})
+     */
+    private String url;
+
+    /**
+     * Presigned GET URL of the test cases as plain text, when they are stored in a shared blob
+     * and the JSON document only holds a reference
+     */
+    private String testCasesUrl;
+
+    /**
+     * When the URLs stop working (ISO-8601)
+     */
+    private String expiresAt;
+}
@@ -0,0 +1,42 @@
+package com.tal.risk.analyser.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * A presigned URL for uploading a test-case file directly to S3
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresignedUpload {
+
+    private String prId;
+
+    private String fileName;
+
+    /**
+     * Canonical key the file is stored under: {prId}/TestCases/{sanitizedFileName}.json
+     */
+    private String s3Key;
+
+    private String url;
+
+    /**
+     * HTTP method to use with the URL
+     */
+    private String method;
+
+    /**
+     * Headers the upload must send exactly as given, because they are part of the signature
+     */
+    private Map<String, String> headers;
+
+    /**
+     * When the URL stops working (ISO-8601)
+     */
+    private String expiresAt;
+}
@@ -0,0 +1,51 @@
+package com.tal.risk.analyser.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A store request accepted for asynchronous processing. The job is updated by the worker
+ * that runs it, so it can be reported at any time.
+ */
+@Data
+@NoArgsConstructor
+public class StoreJob {
+
+    public enum Type { CODE, SUMMARY }
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    private String jobId;
+
+    private Type type;
+
+    private String prId;
+
+    /**
+     * File name of a code job; null for summaries
+     */
+    private String fileName;
+
+    private volatile Status status = Status.QUEUED;
+
+    /**
+     * Key the data was stored under, once the job has succeeded
+     */
+    private volatile String s3Key;
+
+    private volatile String error;
+
+    private String submittedAt;
+
+    private volatile String startedAt;
+
+    private volatile String finishedAt;
+
+    public StoreJob(String jobId, Type type, String prId, String fileName, String submittedAt) {
+        this.jobId = jobId;
+        this.type = type;
+        this.prId = prId;
+        this.fileName = fileName;
+        this.submittedAt = submittedAt;
+    }
+}
@@ -0,0 +1,21 @@
+package com.tal.risk.analyser.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Request model for retrieving the summaries of several PRs at once
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SummaryBatchRequest {
+
+    /**
+     * The PR IDs whose summaries to retrieve; duplicates are retrieved once
+     */
+    private List<String> prIds;
+}
@@ -0,0 +1,31 @@
+package com.tal.risk.analyser.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Result of applying a merge patch to a stored summary
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SummaryPatchResult {
+
+    /**
+     * S3 key of the patched summary
+     */
+    private String s3Key;
+
+    /**
+     * ETag of the summary after the patch was written
+     */
+    private String etag;
+
+    /**
+     * The merged summary document
+     */
+    private Map<String, Object> summaryData;
+}
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 /**
  * Request model for retrieving summary data for a PR
  */
@@ -16,4 +18,18 @@ public class SummaryRetrieveRequest {
      * The PR ID for which to retrieve summary data
      */
     private String prId;
+    
+    /**
+     * Optional top-level data sections to return; all sections are returned when empty
+     */
+    private List<String> sections;
+    
+    /**
+     * Optional JSON Pointers selecting individual fields of the summary document
+     */
+    private List<String> fields;
+    
+    public SummaryRetrieveRequest(String prId) {
+        this.prId = prId;
+    }
 }
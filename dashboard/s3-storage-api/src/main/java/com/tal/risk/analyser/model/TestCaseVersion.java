@@ -0,0 +1,46 @@
+package com.tal.risk.analyser.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One revision in the version history of a test-case file
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TestCaseVersion {
+
+    /**
+     * Revision number, starting at 1
+     */
+    private int version;
+
+    /**
+     * SHA-256 of the revision's test cases
+     */
+    private String sha256;
+
+    /**
+     * Number of lines in the revision
+     */
+    private int lines;
+
+    /**
+     * Size of the revision in bytes (UTF-8)
+     */
+    private long bytes;
+
+    /**
+     * When the revision was stored (ISO-8601)
+     */
+    private String storedAt;
+
+    /**
+     * S3 key of the delta from this revision to the next one; absent for the latest revision
+     */
+    private String deltaKey;
+}
@@ -0,0 +1,20 @@
+package com.tal.risk.analyser.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Version history of a test-case file, oldest revision first
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TestCaseVersionHistory {
+    private String prId;
+    private String fileName;
+    private List<TestCaseVersion> versions = new ArrayList<>();
+}
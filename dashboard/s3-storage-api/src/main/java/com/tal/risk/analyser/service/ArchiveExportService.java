@@ -0,0 +1,400 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams PR data out of the bucket as a tar.gz or zip archive.
+ *
+ * Listing and object fetches run as a pipeline: the next listing page is requested while the
+ * current one is consumed, and up to {@code storage.export.prefetch} objects are fetched ahead
+ * of the entry being written. Entries are written in key order as they arrive, so memory use is
+ * bounded by the prefetch window rather than by the size of the export, and an interrupted
+ * export can be resumed from the name of the last complete entry.
+ */
+@Service
+@Slf4j
+public class ArchiveExportService {
+
+    /**
+     * Objects included in an export: test-case files and summaries, in either summary layout
+     */
+    static final Pattern EXPORTED_KEY = Pattern.compile(
+        "^[^/]+/(TestCases/[^/]+\\.json|Summary/summary\\.json|Summary/sections/[^/]+\\.json)$");
+
+    /**
+     * Name of the trailing archive entry that describes the export
+     */
+    public static final String MANIFEST_ENTRY = "export-manifest.json";
+
+    @Autowired
+    private AmazonS3 amazonS3;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("s3FanOutExecutor")
+    private ExecutorService s3FanOutExecutor;
+
+    @Autowired
+    private ContentAddressedBlobStore blobStore;
+
+    @Value("${storage.export.prefetch:8}")
+    private int prefetch;
+
+    @Value("${storage.export.list-page-size:1000}")
+    private int listPageSize;
+
+    public enum Format {
+        TAR_GZ("tar.gz", "application/gzip"),
+        ZIP("zip", "application/zip");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the format is not supported
+         */
+        public static Format of(String value) {
+            for (Format format : values()) {
+                if (format.extension.equalsIgnoreCase(value) || format.name().equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported export format: " + value + " (expected tar.gz or zip)");
+        }
+    }
+
+    /**
+     * Parses the {@code since} filter: an ISO-8601 instant or a date (start of day, UTC)
+     *
+     * @throws IllegalArgumentException if the value is neither
+     */
+    public static Instant parseSince(String since) {
+        if (since == null || since.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Instant.parse(since);
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDate.parse(since).atStartOfDay(ZoneOffset.UTC).toInstant();
+            } catch (DateTimeParseException ignored) {
+                throw new IllegalArgumentException("Invalid since value: " + since + " (expected ISO-8601 date or instant)");
+            }
+        }
+    }
+
+    /**
+     * Writes every matching object to the archive
+     *
+     * @param prefix     Key prefix to export (e.g. a PR ID or a common PR ID prefix); empty for everything
+     * @param since      Only objects modified at or after this instant; null for all
+     * @param startAfter Resume cursor: only keys after this one are exported; null to start at the beginning
+     * @param format     Archive format
+     * @param out        Destination; it is flushed but not closed
+     * @return Number of objects exported
+     */
+    public int export(String prefix, Instant since, String startAfter, Format format, OutputStream out) throws IOException {
+        ArchiveWriter writer = format == Format.ZIP ? new ZipWriter(out) : new TarGzWriter(out);
+        KeyLister lister = new KeyLister(prefix == null ? "" : prefix, since, startAfter);
+        Deque<CompletableFuture<Entry>> window = new ArrayDeque<>();
+        int exported = 0;
+        String lastKey = null;
+
+        try {
+            while (true) {
+                while (window.size() < Math.max(1, prefetch) && lister.hasNext()) {
+                    S3ObjectSummary summary = lister.next();
+                    window.add(CompletableFuture.supplyAsync(() -> fetch(summary), s3FanOutExecutor));
+                }
+                if (window.isEmpty()) {
+                    break;
+                }
+
+                CompletableFuture<Entry> head = window.peek();
+                if (!head.isDone()) {
+                    // Let the client see what has been written so far while we wait on S3
+                    writer.flush();
+                }
+                Entry entry = join(head);
+                window.poll();
+                if (entry != null) {
+                    writer.write(entry.key, entry.content, entry.lastModified);
+                    exported++;
+                    lastKey = entry.key;
+                }
+            }
+
+            Map<String, Object> manifest = new LinkedHashMap<>();
+            manifest.put("prefix", prefix);
+            manifest.put("since", since != null ? since.toString() : null);
+            manifest.put("startAfter", startAfter);
+            manifest.put("entries", exported);
+            manifest.put("lastKey", lastKey);
+            manifest.put("complete", true);
+            writer.write(MANIFEST_ENTRY, objectMapper.writeValueAsBytes(manifest), System.currentTimeMillis());
+            writer.finish();
+        } finally {
+            // Stop fetching ahead if the client went away or an object could not be read
+            window.forEach(future -> future.cancel(true));
+            lister.cancel();
+        }
+
+        log.info("Exported {} objects for prefix '{}' (since: {}, startAfter: {}, lastKey: {})",
+            exported, prefix, since, startAfter, lastKey);
+        return exported;
+    }
+
+    /**
+     * Reads an object for export, inlining the test cases of files stored as shared-blob or raw-file references
+     *
+     * @return The entry, or null if the object was deleted after it was listed
+     */
+    private Entry fetch(S3ObjectSummary summary) {
+        try {
+            S3Object s3Object = amazonS3.getObject(bucketName, summary.getKey());
+            byte[] content;
+            try (InputStream in = s3Object.getObjectContent()) {
+                content = in.readAllBytes();
+            }
+            if (s3Object.getObjectMetadata().getUserMetaDataOf(S3StorageService.BLOB_KEY_METADATA) != null
+                    || s3Object.getObjectMetadata().getUserMetaDataOf(S3StorageService.RAW_FILE_METADATA) != null) {
+                Map<String, Object> stored = objectMapper.readValue(content, new TypeReference<Map<String, Object>>() {});
+                Object blobKey = stored.remove(S3StorageService.TEST_CASES_BLOB);
+                if (blobKey == null) {
+                    blobKey = stored.remove(S3StorageService.TEST_CASES_FILE);
+                    stored.remove(S3StorageService.TEST_CASES_SHA256);
+                }
+                if (blobKey != null) {
+                    stored.put("testCases", blobStore.read(blobKey.toString()));
+                    content = objectMapper.writeValueAsBytes(stored);
+                }
+            }
+            return new Entry(summary.getKey(), content, summary.getLastModified().getTime());
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                log.warn("Skipping {}: deleted while the export was running", summary.getKey());
+                return null;
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final byte[] content;
+        private final long lastModified;
+
+        private Entry(String key, byte[] content, long lastModified) {
+            this.key = key;
+            this.content = content;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Iterates over the exported keys in order, requesting the next listing page while the current one is consumed
+     */
+    private final class KeyLister implements Iterator<S3ObjectSummary> {
+        private final String prefix;
+        private final Instant since;
+        private CompletableFuture<ListObjectsV2Result> nextPage;
+        private Iterator<S3ObjectSummary> current;
+        private S3ObjectSummary lookahead;
+
+        private KeyLister(String prefix, Instant since, String startAfter) {
+            this.prefix = prefix;
+            this.since = since;
+            ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(bucketName)
+                .withPrefix(prefix)
+                .withMaxKeys(listPageSize);
+            if (startAfter != null && !startAfter.isEmpty()) {
+                request.setStartAfter(startAfter);
+            }
+            this.nextPage = CompletableFuture.supplyAsync(() -> amazonS3.listObjectsV2(request), s3FanOutExecutor);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (lookahead == null) {
+                if (current != null && current.hasNext()) {
+                    S3ObjectSummary summary = current.next();
+                    if (EXPORTED_KEY.matcher(summary.getKey()).matches()
+                            && (since == null || !summary.getLastModified().toInstant().isBefore(since))) {
+                        lookahead = summary;
+                    }
+                } else if (nextPage != null) {
+                    ListObjectsV2Result page;
+                    try {
+                        page = join(nextPage);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    nextPage = null;
+                    if (page.isTruncated()) {
+                        ListObjectsV2Request request = new ListObjectsV2Request()
+                            .withBucketName(bucketName)
+                            .withPrefix(prefix)
+                            .withMaxKeys(listPageSize)
+                            .withContinuationToken(page.getNextContinuationToken());
+                        nextPage = CompletableFuture.supplyAsync(() -> amazonS3.listObjectsV2(request), s3FanOutExecutor);
+                    }
+                    current = page.getObjectSummaries().iterator();
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public S3ObjectSummary next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            S3ObjectSummary summary = lookahead;
+            lookahead = null;
+            return summary;
+        }
+
+        private void cancel() {
+            if (nextPage != null) {
+                nextPage.cancel(true);
+            }
+        }
+    }
+
+    private interface ArchiveWriter {
+        void write(String name, byte[] content, long modifiedMillis) throws IOException;
+
+        void flush() throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static final class ZipWriter implements ArchiveWriter {
+        private final ZipOutputStream zip;
+
+        private ZipWriter(OutputStream out) {
+            this.zip = new ZipOutputStream(out);
+        }
+
+        @Override
+        public void write(String name, byte[] content, long modifiedMillis) throws IOException {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setTime(modifiedMillis);
+            zip.putNextEntry(entry);
+            zip.write(content);
+            zip.closeEntry();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            zip.flush();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            zip.finish();
+            zip.flush();
+        }
+    }
+
+    private static final class TarGzWriter implements ArchiveWriter {
+        private final GZIPOutputStream gzip;
+        private final TarArchiveOutputStream tar;
+
+        private TarGzWriter(OutputStream out) throws IOException {
+            // Sync flush so that flush() pushes everything compressed so far to the client
+            this.gzip = new GZIPOutputStream(out, 64 * 1024, true);
+            this.tar = new TarArchiveOutputStream(gzip);
+        }
+
+        @Override
+        public void write(String name, byte[] content, long modifiedMillis) throws IOException {
+            tar.putEntry(name, content.length, modifiedMillis);
+            tar.write(content, 0, content.length);
+            tar.closeEntry();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            gzip.flush();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            tar.finish();
+            gzip.finish();
+            gzip.flush();
+        }
+    }
+}
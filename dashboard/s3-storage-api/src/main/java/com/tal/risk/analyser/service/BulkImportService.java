@@ -0,0 +1,351 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import com.tal.risk.analyser.model.ImportFailure;
+import com.tal.risk.analyser.model.ImportProgress;
+import com.tal.risk.analyser.model.SummaryStoreRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Imports many test-case files and summaries from a single streamed request body.
+ *
+ * Records are parsed one at a time and handed to a bounded worker pool. At most
+ * {@code storage.import.max-in-flight} records are queued or being stored; once that limit is
+ * reached the parser waits, which in turn stops reading the request body, so a fast client
+ * cannot make the service buffer the whole upload. Each record is stored through
+ * {@link S3StorageService}, so validation, deduplication and versioning behave exactly as for
+ * the single-record endpoints.
+ *
+ * Accepted formats:
+ *   NDJSON: one {"type": "code" | "summary", "prId": ..., "content": {...}} object per line,
+ *           where content is the body of /store/{prId} or /store/summary/{prId}
+ *   tar (optionally gzipped): entries named like the S3 keys of an export,
+ *           {PR_ID}/TestCases/{file}.json and {PR_ID}/Summary/summary.json
+ */
+@Service
+@Slf4j
+public class BulkImportService {
+
+    private static final Pattern CODE_ENTRY = Pattern.compile("^([^/]+)/TestCases/[^/]+\\.json$");
+    private static final Pattern SUMMARY_ENTRY = Pattern.compile("^([^/]+)/Summary/summary\\.json$");
+
+    /**
+     * Failure details kept per import; the failure count is always exact
+     */
+    static final int MAX_REPORTED_FAILURES = 1000;
+
+    private static final int MAX_TRACKED_IMPORTS = 100;
+
+    @Autowired
+    private S3StorageService s3StorageService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("importExecutor")
+    private ExecutorService importExecutor;
+
+    @Value("${storage.import.max-in-flight:32}")
+    private int maxInFlight;
+
+    @Value("${storage.import.max-attempts:3}")
+    private int maxAttempts;
+
+    /**
+     * Recent imports by ID, so progress can be polled while an import runs
+     */
+    private final Map<String, ImportProgress> imports = new LinkedHashMap<String, ImportProgress>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ImportProgress> eldest) {
+            return size() > MAX_TRACKED_IMPORTS;
+        }
+    };
+    private final ReentrantLock importsLock = new ReentrantLock();
+
+    public enum Format { NDJSON, TAR }
+
+    /**
+     * Picks the body format from an explicit parameter or the request content type
+     *
+     * @throws IllegalArgumentException if neither identifies a supported format
+     */
+    public static Format detectFormat(String format, String contentType) {
+        String value = format != null && !format.isEmpty() ? format : contentType;
+        if (value != null) {
+            String lower = value.toLowerCase();
+            if (lower.contains("ndjson") || lower.contains("jsonl") || lower.contains("json-seq")) {
+                return Format.NDJSON;
+            }
+            if (lower.contains("tar") || lower.contains("gzip")) {
+                return Format.TAR;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported import format: " + value
+            + " (send application/x-ndjson or application/x-tar, or pass format=ndjson|tar)");
+    }
+
+    /**
+     * Progress of a running or recent import
+     *
+     * @return The progress, or null if the import is unknown
+     */
+    public ImportProgress getProgress(String importId) {
+        importsLock.lock();
+        try {
+            return imports.get(importId);
+        } finally {
+            importsLock.unlock();
+        }
+    }
+
+    /**
+     * Imports every record in the body and waits until all of them have been stored or have failed
+     *
+     * @param importId Client-chosen ID for polling progress; generated if null
+     * @param body     The request body
+     * @param format   Body format
+     * @return Final progress, including the records that failed
+     * @throws IllegalArgumentException if an import with the same ID is still running
+     */
+    public ImportProgress importRecords(String importId, InputStream body, Format format) {
+        String id = importId != null && !importId.trim().isEmpty() ? importId : UUID.randomUUID().toString();
+        ImportProgress progress = new ImportProgress(id, format.name().toLowerCase(), Instant.now().toString());
+        importsLock.lock();
+        try {
+            ImportProgress running = imports.get(id);
+            if (running != null && running.getStatus() == ImportProgress.Status.RUNNING) {
+                throw new IllegalArgumentException("Import " + id + " is already running");
+            }
+            imports.put(id, progress);
+        } finally {
+            importsLock.unlock();
+        }
+
+        int permits = Math.max(1, maxInFlight);
+        Semaphore inFlight = new Semaphore(permits);
+        log.info("Starting {} import {}", progress.getFormat(), id);
+        try {
+            if (format == Format.NDJSON) {
+                readNdjson(body, progress, inFlight);
+            } else {
+                readTar(body, progress, inFlight);
+            }
+        } catch (IOException e) {
+            log.warn("Import {} stopped reading the request body: {}", id, e.getMessage());
+            progress.setError("Request body could not be read to the end: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.setError("Import was interrupted");
+        } finally {
+            // Wait for the records already handed to the workers
+            inFlight.acquireUninterruptibly(permits);
+            progress.setFinishedAt(Instant.now().toString());
+            progress.setStatus(progress.getError() == null ? ImportProgress.Status.COMPLETED : ImportProgress.Status.FAILED);
+        }
+
+        log.info("Finished import {}: {} received, {} stored, {} failed",
+            id, progress.getReceived(), progress.getStored(), progress.getFailed());
+        return progress;
+    }
+
+    private void readNdjson(InputStream body, ImportProgress progress, Semaphore inFlight) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            progress.getReceived().incrementAndGet();
+            String record = "line " + lineNumber;
+
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(line);
+            } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+                fail(progress, record, null, null, "Malformed JSON: " + e.getOriginalMessage(), false);
+                continue;
+            }
+            String prId = node.path("prId").asText(null);
+            JsonNode content = node.path("content");
+            String type = node.path("type").asText(content.has("testCases") || content.has("fileName") ? "code" : "summary");
+
+            if ("code".equals(type)) {
+                submitCode(record, prId, content, progress, inFlight);
+            } else if ("summary".equals(type)) {
+                submitSummary(record, prId, content, progress, inFlight);
+            } else {
+                fail(progress, record, prId, null, "Unknown record type: " + type, false);
+            }
+        }
+    }
+
+    private void readTar(InputStream body, ImportProgress progress, Semaphore inFlight) throws IOException, InterruptedException {
+        BufferedInputStream buffered = new BufferedInputStream(body);
+        buffered.mark(2);
+        boolean gzipped = buffered.read() == 0x1f && buffered.read() == 0x8b;
+        buffered.reset();
+        TarArchiveInputStream tar = new TarArchiveInputStream(gzipped ? new GZIPInputStream(buffered) : buffered);
+
+        String name;
+        while ((name = tar.nextEntry()) != null) {
+            if (name.equals(ArchiveExportService.MANIFEST_ENTRY)) {
+                continue;
+            }
+            progress.getReceived().incrementAndGet();
+            Matcher code = CODE_ENTRY.matcher(name);
+            Matcher summary = SUMMARY_ENTRY.matcher(name);
+            if (!code.matches() && !summary.matches()) {
+                fail(progress, name, null, null,
+                    "Unsupported entry; expected {prId}/TestCases/{file}.json or {prId}/Summary/summary.json", false);
+                continue;
+            }
+
+            JsonNode content;
+            try {
+                content = objectMapper.readTree(tar.readAllBytes());
+            } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+                fail(progress, name, null, null, "Malformed JSON: " + e.getOriginalMessage(), false);
+                continue;
+            }
+            if (code.matches()) {
+                submitCode(name, code.group(1), content, progress, inFlight);
+            } else {
+                submitSummary(name, summary.group(1), content, progress, inFlight);
+            }
+        }
+    }
+
+    private void submitCode(String record, String prId, JsonNode content, ImportProgress progress, Semaphore inFlight)
+            throws InterruptedException {
+        CodeStoreRequest.Content codeContent;
+        try {
+            codeContent = convert(content, CodeStoreRequest.Content.class);
+        } catch (IllegalArgumentException e) {
+            fail(progress, record, prId, null, "Invalid test-case content: " + e.getMessage(), false);
+            return;
+        }
+        String target = codeContent != null ? codeContent.getFileName() : null;
+        submit(record, prId, target, progress, inFlight,
+            () -> s3StorageService.storeCodeData(prId, new CodeStoreRequest(prId, codeContent)));
+    }
+
+    private void submitSummary(String record, String prId, JsonNode content, ImportProgress progress, Semaphore inFlight)
+            throws InterruptedException {
+        SummaryStoreRequest.Content summaryContent;
+        try {
+            summaryContent = convert(content, SummaryStoreRequest.Content.class);
+        } catch (IllegalArgumentException e) {
+            fail(progress, record, prId, "summary", "Invalid summary content: " + e.getMessage(), false);
+            return;
+        }
+        submit(record, prId, "summary", progress, inFlight,
+            () -> s3StorageService.storeSummaryData(prId, new SummaryStoreRequest(prId, summaryContent)));
+    }
+
+    /**
+     * Binds record content to a request model; missing content is left to the store method's validation
+     */
+    private <T> T convert(JsonNode content, Class<T> type) {
+        if (content == null || !content.isObject()) {
+            return null;
+        }
+        return objectMapper.convertValue(content, type);
+    }
+
+    /**
+     * Hands a record to the worker pool, blocking while the in-flight limit is reached
+     */
+    private void submit(String record, String prId, String target, ImportProgress progress, Semaphore inFlight,
+                        Runnable store) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            importExecutor.execute(() -> {
+                try {
+                    storeWithRetry(record, prId, target, progress, store);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            fail(progress, record, prId, target, "Import workers are shutting down", true);
+        }
+    }
+
+    private void storeWithRetry(String record, String prId, String target, ImportProgress progress, Runnable store) {
+        int attempts = Math.max(1, maxAttempts);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                store.run();
+                progress.getStored().incrementAndGet();
+                return;
+            } catch (RuntimeException e) {
+                IllegalArgumentException invalid = validationError(e);
+                if (invalid != null) {
+                    fail(progress, record, prId, target, invalid.getMessage(), false);
+                    return;
+                }
+                if (attempt >= attempts) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    fail(progress, record, prId, target, cause.getMessage(), true);
+                    return;
+                }
+                log.warn("Retrying {} of import {} ({}/{}): {}", record, progress.getImportId(), attempt + 1, attempts, e.getMessage());
+                try {
+                    Thread.sleep(100L * attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    fail(progress, record, prId, target, "Import was interrupted", true);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds a validation error in the cause chain; the store methods may wrap it
+     */
+    private static IllegalArgumentException validationError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IllegalArgumentException) {
+                return (IllegalArgumentException) cause;
+            }
+        }
+        return null;
+    }
+
+    private static void fail(ImportProgress progress, String record, String prId, String target, String error, boolean retryable) {
+        progress.getFailed().incrementAndGet();
+        if (progress.getFailures().size() < MAX_REPORTED_FAILURES) {
+            progress.getFailures().add(new ImportFailure(record, prId, target, error, retryable));
+        }
+        log.warn("Import {} failed to store {} (PR: {}, {}): {}", progress.getImportId(), record, prId, target, error);
+    }
+}
@@ -0,0 +1,52 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * A cached test-case file held outside the heap, pinned in its slab or segment until closed.
+ * The file name and test cases are kept as UTF-8 JSON string literals and can be written to a
+ * response as they are.
+ */
+interface CacheHit extends AutoCloseable {
+
+    JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Writes the file name as a JSON string literal
+     */
+    void writeFileName(OutputStream out) throws IOException;
+
+    /**
+     * Writes the test cases as a JSON string literal
+     */
+    void writeTestCases(OutputStream out) throws IOException;
+
+    String fileName();
+
+    String testCases();
+
+    /**
+     * Whether this is the first read of an entry that was stored by the prefetcher
+     */
+    boolean isFirstUseOfPrefetch();
+
+    @Override
+    void close();
+
+    /**
+     * Decodes a JSON string literal, or null
+     */
+    static String decode(byte[] json) {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            parser.nextToken();
+            return parser.getValueAsString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
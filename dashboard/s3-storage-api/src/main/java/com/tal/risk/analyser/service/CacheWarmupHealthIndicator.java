@@ -0,0 +1,32 @@
+package com.tal.risk.analyser.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports cache warm-up as {@code cacheWarmup}. Part of the readiness group, where it keeps the
+ * instance out of service while warm-up runs if {@code storage.warmup.hold-readiness} is set.
+ */
+@Component
+public class CacheWarmupHealthIndicator implements HealthIndicator {
+
+    @Autowired
+    private CacheWarmupService cacheWarmupService;
+
+    @Override
+    public Health health() {
+        Health.Builder health = cacheWarmupService.isHoldingReadiness() ? Health.outOfService() : Health.up();
+        health.withDetail("state", cacheWarmupService.getState());
+        CacheWarmupService.Result result = cacheWarmupService.getResult();
+        if (result != null) {
+            health.withDetail("warmedPrs", result.warmedPrs)
+                .withDetail("manifestPrs", result.manifestPrs)
+                .withDetail("files", result.files)
+                .withDetail("elapsedMs", result.elapsedMillis)
+                .withDetail("timedOut", result.timedOut);
+        }
+        return health.build();
+    }
+}
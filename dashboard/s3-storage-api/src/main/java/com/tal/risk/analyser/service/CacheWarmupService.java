@@ -0,0 +1,344 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Loads the test-case files of the PRs the dashboard read most recently into the {@link TestCaseCache}
+ * right after startup, so the first users after a deploy do not all pay for a cold cache.
+ *
+ * Summary reads are counted per PR. The most-read of the recently read PRs are written to a
+ * manifest file every {@code storage.warmup.manifest-interval-ms} and on shutdown. On the next
+ * start, the PRs in the manifest are warmed in parallel on {@code storage.warmup.concurrency}
+ * threads until {@code storage.warmup.time-budget-ms} runs out; whatever is left is skipped.
+ * Read counts carried over from the manifest are halved, so PRs that stop being read drop out.
+ *
+ * With {@code storage.warmup.hold-readiness}, the {@code cacheWarmup} health indicator reports
+ * the instance as out of service until warm-up has finished or given up.
+ */
+@Service
+@Slf4j
+public class CacheWarmupService {
+
+    @Autowired
+    private S3StorageService s3StorageService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${storage.cache.enabled:false}")
+    private boolean cacheEnabled;
+
+    @Value("${storage.warmup.enabled:false}")
+    private boolean warmupEnabled;
+
+    @Value("${storage.warmup.manifest-path:${java.io.tmpdir}/s3-storage-api-recent-prs.json}")
+    private String manifestPath;
+
+    @Value("${storage.warmup.max-prs:50}")
+    private int maxPrs;
+
+    @Value("${storage.warmup.tracked-prs:500}")
+    private int trackedPrs;
+
+    @Value("${storage.warmup.max-files:50}")
+    private int maxFiles;
+
+    @Value("${storage.warmup.concurrency:4}")
+    private int concurrency;
+
+    @Value("${storage.warmup.time-budget-ms:30000}")
+    private long timeBudgetMillis;
+
+    @Value("${storage.warmup.hold-readiness:false}")
+    private boolean holdReadiness;
+
+    @Value("${storage.execution.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    /**
+     * Read counts by PR, least recently read first
+     */
+    private final LinkedHashMap<String, Reads> reads = new LinkedHashMap<>(64, 0.75f, true);
+    private final ReentrantLock readsLock = new ReentrantLock();
+
+    private volatile State state = State.IDLE;
+    private volatile Result result;
+
+    public enum State { IDLE, WARMING, DONE, FAILED }
+
+    /**
+     * Counts a read of a PR's summary towards the manifest
+     */
+    public void recordAccess(String prId) {
+        if (!warmupEnabled || prId == null || prId.trim().isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        readsLock.lock();
+        try {
+            reads.computeIfAbsent(prId, id -> new Reads()).add(1, now);
+            trim();
+        } finally {
+            readsLock.unlock();
+        }
+    }
+
+    /**
+     * Starts warm-up in the background once the application is up
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!warmupEnabled || !cacheEnabled) {
+            return;
+        }
+        state = State.WARMING;
+        Thread thread = new Thread(() -> {
+            try {
+                warmUp();
+            } catch (RuntimeException e) {
+                log.warn("Cache warm-up failed: {}", e.getMessage());
+                state = State.FAILED;
+            }
+        }, "cache-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Warms the PRs in the manifest within the time and concurrency budget
+     *
+     * @return What was warmed
+     */
+    public Result warmUp() {
+        state = State.WARMING;
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+        List<String> prIds = loadManifest();
+
+        AtomicInteger warmedPrs = new AtomicInteger();
+        AtomicInteger files = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        boolean timedOut = false;
+        if (!prIds.isEmpty()) {
+            ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("cache-warmup-", 0).factory()
+                : new CustomizableThreadFactory("cache-warmup-");
+            ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, prIds.size())), threadFactory);
+            for (String prId : prIds) {
+                workers.execute(() -> {
+                    if (System.nanoTime() - deadline >= 0) {
+                        return;
+                    }
+                    try {
+                        files.addAndGet(s3StorageService.prefetchCodeFiles(prId, maxFiles, () -> System.nanoTime() - deadline < 0));
+                        warmedPrs.incrementAndGet();
+                    } catch (Exception e) {
+                        log.debug("Could not warm PR: {}: {}", prId, e.getMessage());
+                        failed.incrementAndGet();
+                    }
+                });
+            }
+            workers.shutdown();
+            try {
+                timedOut = !workers.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+                    || warmedPrs.get() + failed.get() < prIds.size();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                timedOut = true;
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+
+        Result finished = new Result(prIds.size(), warmedPrs.get(), failed.get(), files.get(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), timedOut);
+        log.info("Cache warm-up warmed {} of {} PRs ({} files, {} failed) in {} ms{}", finished.warmedPrs, finished.manifestPrs,
+            finished.files, finished.failedPrs, finished.elapsedMillis, timedOut ? "; stopped at the time budget" : "");
+        result = finished;
+        state = State.DONE;
+        return finished;
+    }
+
+    /**
+     * Writes the manifest of the most-read PRs
+     */
+    @Scheduled(initialDelayString = "${storage.warmup.manifest-interval-ms:300000}",
+        fixedDelayString = "${storage.warmup.manifest-interval-ms:300000}")
+    public void writeManifest() {
+        if (!warmupEnabled) {
+            return;
+        }
+        List<Map.Entry<String, Reads>> top;
+        readsLock.lock();
+        try {
+            if (reads.isEmpty()) {
+                return;
+            }
+            top = new ArrayList<>();
+            for (Map.Entry<String, Reads> entry : reads.entrySet()) {
+                top.add(Map.entry(entry.getKey(), entry.getValue().copy()));
+            }
+        } finally {
+            readsLock.unlock();
+        }
+        top.sort(Comparator.comparingLong((Map.Entry<String, Reads> entry) -> entry.getValue().count)
+            .thenComparingLong(entry -> entry.getValue().lastReadAt).reversed());
+
+        ObjectNode manifest = objectMapper.createObjectNode();
+        manifest.put("writtenAt", System.currentTimeMillis());
+        ArrayNode prs = manifest.putArray("prs");
+        for (Map.Entry<String, Reads> entry : top.subList(0, Math.min(maxPrs, top.size()))) {
+            prs.addObject()
+                .put("prId", entry.getKey())
+                .put("reads", entry.getValue().count)
+                .put("lastReadAt", entry.getValue().lastReadAt);
+        }
+
+        Path path = Paths.get(manifestPath);
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            objectMapper.writeValue(temporary.toFile(), manifest);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write the warm-up manifest {}: {}", manifestPath, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        writeManifest();
+    }
+
+    /**
+     * Whether readiness should still be held back for warm-up
+     */
+    public boolean isHoldingReadiness() {
+        return holdReadiness && state == State.WARMING;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * The outcome of the last warm-up, or null before it finished
+     */
+    public Result getResult() {
+        return result;
+    }
+
+    /**
+     * Reads the manifest, carrying its read counts over at half weight
+     *
+     * @return PR IDs to warm, most-read first
+     */
+    private List<String> loadManifest() {
+        List<String> prIds = new ArrayList<>();
+        Path path = Paths.get(manifestPath);
+        if (!Files.exists(path)) {
+            log.info("No warm-up manifest at {}; starting with a cold cache", manifestPath);
+            return prIds;
+        }
+        JsonNode manifest;
+        try {
+            manifest = objectMapper.readTree(path.toFile());
+        } catch (IOException e) {
+            log.warn("Could not read the warm-up manifest {}: {}", manifestPath, e.getMessage());
+            return prIds;
+        }
+
+        readsLock.lock();
+        try {
+            for (JsonNode pr : manifest.path("prs")) {
+                String prId = pr.path("prId").asText(null);
+                if (prId == null || prId.trim().isEmpty() || prIds.size() >= maxPrs) {
+                    continue;
+                }
+                prIds.add(prId);
+                reads.computeIfAbsent(prId, id -> new Reads()).add(pr.path("reads").asLong() / 2, pr.path("lastReadAt").asLong());
+            }
+            trim();
+        } finally {
+            readsLock.unlock();
+        }
+        return prIds;
+    }
+
+    private void trim() {
+        java.util.Iterator<Reads> eldest = reads.values().iterator();
+        while (reads.size() > trackedPrs && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private static final class Reads {
+        private long count;
+        private long lastReadAt;
+
+        private void add(long count, long readAt) {
+            this.count += count;
+            this.lastReadAt = Math.max(lastReadAt, readAt);
+        }
+
+        private Reads copy() {
+            Reads copy = new Reads();
+            copy.count = count;
+            copy.lastReadAt = lastReadAt;
+            return copy;
+        }
+    }
+
+    /**
+     * Outcome of a warm-up
+     */
+    public static final class Result {
+        public final int manifestPrs;
+        public final int warmedPrs;
+        public final int failedPrs;
+        public final int files;
+        public final long elapsedMillis;
+        public final boolean timedOut;
+
+        private Result(int manifestPrs, int warmedPrs, int failedPrs, int files, long elapsedMillis, boolean timedOut) {
+            this.manifestPrs = manifestPrs;
+            this.warmedPrs = warmedPrs;
+            this.failedPrs = failedPrs;
+            this.files = files;
+            this.elapsedMillis = elapsedMillis;
+            this.timedOut = timedOut;
+        }
+    }
+}
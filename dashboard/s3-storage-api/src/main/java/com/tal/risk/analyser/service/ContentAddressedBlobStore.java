@@ -0,0 +1,279 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Stores file bodies once under a hash-addressed key so identical content shared by several
+ * PRs takes up space only once.
+ *
+ * Layout:
+ *   _blobs/sha256/{hash}                 the body itself
+ *   _blobs/refs/{hash}/{referrer key}    one empty marker per object referencing the body
+ *   _blobs/orphans/{hash}                written when the last reference goes
+ *   _blobs/deleting/{hash}/{sweep id}    held by a sweep while it deletes the body
+ *
+ * The markers act as the reference count: each reference is its own object, so concurrent
+ * writers never race on a shared counter.
+ *
+ * Releasing the last reference does not delete the blob, since a concurrent acquire may have
+ * just found it in place. Instead, a periodic sweep deletes blobs that have been orphaned for
+ * longer than {@code storage.dedup.shared-blobs.grace-period-ms}. Before deleting, the sweep
+ * writes a deleting marker and checks the references again; an acquire writes its reference,
+ * then waits for any deleting marker to go before checking the blob and uploading it again if
+ * it is missing. Either the sweep sees the new reference and keeps the blob, or the acquire
+ * sees the deletion through and restores the body.
+ */
+@Component
+@Slf4j
+public class ContentAddressedBlobStore {
+
+    static final String BLOB_PREFIX = "_blobs/sha256/";
+    static final String REFS_PREFIX = "_blobs/refs/";
+    static final String ORPHANS_PREFIX = "_blobs/orphans/";
+    static final String DELETING_PREFIX = "_blobs/deleting/";
+
+    @Autowired
+    private AmazonS3 amazonS3;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Value("${storage.dedup.shared-blobs.enabled:false}")
+    private boolean sharedBlobsEnabled;
+
+    @Value("${storage.dedup.shared-blobs.grace-period-ms:86400000}")
+    private long gracePeriodMillis;
+
+    /**
+     * How long an acquire waits for a sweep deleting the blob; older deleting markers are left over from a failed sweep
+     */
+    @Value("${storage.dedup.shared-blobs.delete-wait-ms:30000}")
+    private long deleteWaitMillis;
+
+    /**
+     * Hex-encoded SHA-256 digest of the given content
+     */
+    public static String sha256Hex(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * S3 key under which a body with the given content is stored
+     */
+    public String blobKey(byte[] body) {
+        return BLOB_PREFIX + sha256Hex(body);
+    }
+
+    /**
+     * Records that referrerKey uses the blob, uploading the body if no copy is stored yet
+     *
+     * @param blobKey     Hash-addressed key from {@link #blobKey(byte[])}
+     * @param body        The body to store
+     * @param referrerKey Key of the object that references the blob
+     */
+    public void acquire(String blobKey, byte[] body, String referrerKey) {
+        // Reference first, so a sweep that has not yet checked the references keeps the blob
+        putObject(refKey(blobKey, referrerKey), new byte[0], "application/octet-stream");
+        // A sweep that checked before our reference landed will delete the blob; let it finish, then restore the body
+        awaitDeletion(blobKey);
+
+        if (!amazonS3.doesObjectExist(bucketName, blobKey)) {
+            putObject(blobKey, body, "text/plain; charset=utf-8");
+            log.info("Stored new content-addressed blob: {} ({} bytes)", blobKey, body.length);
+        } else {
+            log.debug("Reusing content-addressed blob: {} for {}", blobKey, referrerKey);
+        }
+    }
+
+    /**
+     * Drops referrerKey's reference to the blob, marking the blob as orphaned once nothing references it.
+     * Orphaned blobs are deleted by {@link #sweep()}.
+     */
+    public void release(String blobKey, String referrerKey) {
+        amazonS3.deleteObject(bucketName, refKey(blobKey, referrerKey));
+
+        if (!hasKeys(refsPrefix(blobKey))) {
+            putObject(orphanKey(blobKey), new byte[0], "application/octet-stream");
+            log.info("Content-addressed blob is no longer referenced: {}", blobKey);
+        }
+    }
+
+    /**
+     * Deletes the blobs that have been orphaned for longer than the grace period
+     *
+     * @return Number of blobs deleted
+     */
+    @Scheduled(initialDelayString = "${storage.dedup.shared-blobs.sweep-interval-ms:3600000}",
+               fixedDelayString = "${storage.dedup.shared-blobs.sweep-interval-ms:3600000}")
+    public int sweep() {
+        if (!sharedBlobsEnabled) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        int deleted = 0;
+        try {
+            for (S3ObjectSummary marker : list(DELETING_PREFIX)) {
+                if (marker.getLastModified().getTime() < now - deleteWaitMillis) {
+                    amazonS3.deleteObject(bucketName, marker.getKey());
+                }
+            }
+            for (S3ObjectSummary orphan : list(ORPHANS_PREFIX)) {
+                if (orphan.getLastModified().getTime() > now - gracePeriodMillis) {
+                    continue;
+                }
+                String blobKey = BLOB_PREFIX + orphan.getKey().substring(ORPHANS_PREFIX.length());
+                if (deleteIfUnreferenced(blobKey)) {
+                    deleted++;
+                }
+                amazonS3.deleteObject(bucketName, orphan.getKey());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not sweep content-addressed blobs: {}", e.getMessage());
+        }
+        if (deleted > 0) {
+            log.info("Deleted {} unreferenced content-addressed blob(s)", deleted);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes a blob unless it has been referenced again, holding a deleting marker meanwhile
+     */
+    private boolean deleteIfUnreferenced(String blobKey) {
+        if (hasKeys(refsPrefix(blobKey))) {
+            return false;
+        }
+        String deletingKey = deletingPrefix(blobKey) + UUID.randomUUID();
+        putObject(deletingKey, new byte[0], "application/octet-stream");
+        try {
+            // Any acquire whose reference lands after this check sees the marker and restores the body
+            if (hasKeys(refsPrefix(blobKey))) {
+                return false;
+            }
+            amazonS3.deleteObject(bucketName, blobKey);
+            return true;
+        } finally {
+            amazonS3.deleteObject(bucketName, deletingKey);
+        }
+    }
+
+    /**
+     * Waits until no sweep is deleting the blob, or until the markers are old enough to be left over from a failed one
+     */
+    private void awaitDeletion(String blobKey) {
+        long deadline = System.currentTimeMillis() + deleteWaitMillis;
+        while (hasKeys(deletingPrefix(blobKey))) {
+            if (System.currentTimeMillis() >= deadline) {
+                log.warn("Gave up waiting for a sweep of content-addressed blob: {}", blobKey);
+                return;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a sweep of " + blobKey, e);
+            }
+        }
+    }
+
+    /**
+     * Number of objects currently referencing the blob
+     */
+    public int referenceCount(String blobKey) {
+        ListObjectsV2Request request = new ListObjectsV2Request()
+            .withBucketName(bucketName)
+            .withPrefix(refsPrefix(blobKey));
+        int count = 0;
+        ListObjectsV2Result result;
+        do {
+            result = amazonS3.listObjectsV2(request);
+            count += result.getKeyCount();
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+        return count;
+    }
+
+    /**
+     * Reads a blob body as UTF-8 text
+     */
+    public String read(String blobKey) throws IOException {
+        S3Object s3Object = amazonS3.getObject(bucketName, blobKey);
+        try (InputStream in = s3Object.getObjectContent()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String refsPrefix(String blobKey) {
+        return REFS_PREFIX + blobKey.substring(BLOB_PREFIX.length()) + "/";
+    }
+
+    private static String orphanKey(String blobKey) {
+        return ORPHANS_PREFIX + blobKey.substring(BLOB_PREFIX.length());
+    }
+
+    private static String deletingPrefix(String blobKey) {
+        return DELETING_PREFIX + blobKey.substring(BLOB_PREFIX.length()) + "/";
+    }
+
+    private boolean hasKeys(String prefix) {
+        ListObjectsV2Request request = new ListObjectsV2Request()
+            .withBucketName(bucketName)
+            .withPrefix(prefix)
+            .withMaxKeys(1);
+        return amazonS3.listObjectsV2(request).getKeyCount() > 0;
+    }
+
+    private List<S3ObjectSummary> list(String prefix) {
+        ListObjectsV2Request request = new ListObjectsV2Request()
+            .withBucketName(bucketName)
+            .withPrefix(prefix);
+        List<S3ObjectSummary> objects = new ArrayList<>();
+        ListObjectsV2Result result;
+        do {
+            result = amazonS3.listObjectsV2(request);
+            objects.addAll(result.getObjectSummaries());
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+        return objects;
+    }
+
+    private static String refKey(String blobKey, String referrerKey) {
+        return refsPrefix(blobKey) + referrerKey;
+    }
+
+    private void putObject(String key, byte[] content, String contentType) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        metadata.setContentType(contentType);
+        amazonS3.putObject(bucketName, key, new ByteArrayInputStream(content), metadata);
+    }
+}
@@ -0,0 +1,654 @@
+package com.tal.risk.analyser.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.connector.CoyoteOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of test-case files in memory-mapped segment files on local disk.
+ *
+ * The layout mirrors {@link OffHeapSlabStore}: entries (key, ETag, and file name and test cases
+ * as UTF-8 JSON string literals) are appended to the current segment, and when the budget is
+ * used up the oldest segment is reclaimed as a whole. Each entry carries a CRC32 of its contents
+ * and each segment a generation number, so the segments alone are enough to rebuild the index.
+ *
+ * To avoid that scan on every start, the index is also written to {@value #INDEX_FILE} whenever a
+ * segment is reclaimed and on shutdown. On start the snapshot is used if its segment generations
+ * still match, and only entries appended to the head segment after it was written are scanned.
+ * Entries taken from a snapshot are checked against their CRC on first read.
+ *
+ * Hits are sent with {@link FileChannel#transferTo}, so the bytes go from the page cache to the
+ * response without passing through the heap.
+ */
+@Slf4j
+final class DiskCacheStore implements Closeable {
+
+    static final String INDEX_FILE = "index.bin";
+
+    private static final int SEGMENT_MAGIC = 0x54435347;
+    private static final int ENTRY_MAGIC = 0x54434631;
+    private static final int INDEX_MAGIC = 0x54434958;
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Segment header: magic, format version, generation (0 for an unused segment)
+     */
+    private static final int SEGMENT_HEADER_BYTES = 16;
+
+    /**
+     * Entry header: magic, CRC32 of the rest of the entry, key, ETag, file name and test cases lengths
+     */
+    private static final int ENTRY_HEADER_BYTES = 24;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FileChannel[] channels;
+    private final MappedByteBuffer[] segments;
+    private final long[] generations;
+    private final int[] segmentUsed;
+    private final int[] segmentPins;
+    private int head;
+    private long lastGeneration;
+
+    private final Map<String, Entry> index = new HashMap<>();
+    private long liveBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong corrupt = new AtomicLong();
+
+    private DiskCacheStore(Path directory, int segmentCount, int segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.channels = new FileChannel[segmentCount];
+        this.segments = new MappedByteBuffer[segmentCount];
+        this.generations = new long[segmentCount];
+        this.segmentUsed = new int[segmentCount];
+        this.segmentPins = new int[segmentCount];
+    }
+
+    /**
+     * Opens the store in a directory, picking up the entries left by an earlier run
+     *
+     * @param maxBytes     Disk budget; rounded down to whole segments, at least one
+     * @param segmentBytes Size of one segment file, and so of the largest entry
+     */
+    static DiskCacheStore open(Path directory, long maxBytes, int segmentBytes) throws IOException {
+        Files.createDirectories(directory);
+        int segmentCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / segmentBytes));
+        DiskCacheStore store = new DiskCacheStore(directory, segmentCount, segmentBytes);
+        try {
+            store.openSegments();
+            store.loadIndex();
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Stores a file whose name and test cases are encoded as JSON string literals, replacing
+     * whatever was stored under the key
+     *
+     * @return Whether the file was stored; false if it is larger than a segment, or the segment
+     *         that would have to be reclaimed is being read
+     */
+    boolean put(String key, String eTag, byte[] nameJson, byte[] testCasesJson) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] eTagBytes = eTag.getBytes(StandardCharsets.UTF_8);
+        long length = (long) ENTRY_HEADER_BYTES + keyBytes.length + eTagBytes.length + nameJson.length + testCasesJson.length;
+        if (length > segmentBytes - SEGMENT_HEADER_BYTES) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(eTagBytes);
+        crc.update(nameJson);
+        crc.update(testCasesJson);
+
+        lock.lock();
+        try {
+            int offset = allocate((int) length);
+            if (offset < 0) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            ByteBuffer segment = segments[head].duplicate();
+            segment.position(offset);
+            segment.putInt(ENTRY_MAGIC).putInt((int) crc.getValue())
+                .putInt(keyBytes.length).putInt(eTagBytes.length).putInt(nameJson.length).putInt(testCasesJson.length);
+            segment.put(keyBytes).put(eTagBytes).put(nameJson).put(testCasesJson);
+
+            index(key, new Entry(head, offset, eTag, keyBytes.length, eTagBytes.length, nameJson.length, testCasesJson.length, true));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Looks up a file stored at the given ETag and pins it for reading. The returned hit must be closed.
+     *
+     * @return The hit, or null if the key is not stored at that ETag
+     */
+    Hit acquire(String key, String eTag) {
+        lock.lock();
+        try {
+            Entry entry = index.get(key);
+            if (entry == null || !entry.eTag.equals(eTag)) {
+                return null;
+            }
+            if (!entry.verified) {
+                if (!crcMatches(segments[entry.segment], entry.offset)) {
+                    log.warn("Dropping corrupt disk cache entry for {}", key);
+                    corrupt.incrementAndGet();
+                    unindex(key);
+                    return null;
+                }
+                entry.verified = true;
+            }
+            segmentPins[entry.segment]++;
+            return new Hit(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether the key is stored at the given ETag; does not count as a read
+     */
+    boolean contains(String key, String eTag) {
+        lock.lock();
+        try {
+            Entry entry = index.get(key);
+            return entry != null && entry.eTag.equals(eTag);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The ETag the key is stored at; does not count as a read
+     *
+     * @return The ETag, or null if the key is not stored
+     */
+    String eTagOf(String key) {
+        lock.lock();
+        try {
+            Entry entry = index.get(key);
+            return entry == null ? null : entry.eTag;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int liveEntries() {
+        lock.lock();
+        try {
+            return index.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long liveBytes() {
+        lock.lock();
+        try {
+            return liveBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long evictions() {
+        return evictions.get();
+    }
+
+    long rejected() {
+        return rejected.get();
+    }
+
+    long corrupt() {
+        return corrupt.get();
+    }
+
+    /**
+     * Writes the index snapshot, flushes the segments and releases the files
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (segments[head] != null) {
+                for (MappedByteBuffer segment : segments) {
+                    if (segment != null) {
+                        segment.force();
+                    }
+                }
+                writeIndex();
+            }
+        } finally {
+            for (FileChannel channel : channels) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+            lock.unlock();
+        }
+    }
+
+    private void openSegments() throws IOException {
+        for (int i = 0; i < channels.length; i++) {
+            FileChannel channel = FileChannel.open(segmentPath(i),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channels[i] = channel;
+            boolean resized = channel.size() != segmentBytes;
+            if (resized) {
+                // New file, or the segment size was changed: start the segment over
+                channel.truncate(0);
+                channel.write(ByteBuffer.allocate(1), segmentBytes - 1);
+            }
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            if (resized || segments[i].getInt(0) != SEGMENT_MAGIC || segments[i].getInt(4) != FORMAT_VERSION) {
+                writeSegmentHeader(i, 0);
+            }
+            generations[i] = segments[i].getLong(8);
+            segmentUsed[i] = SEGMENT_HEADER_BYTES;
+            if (generations[i] > lastGeneration) {
+                lastGeneration = generations[i];
+                head = i;
+            }
+        }
+
+        // Segments beyond a reduced budget are dropped
+        for (int i = channels.length; Files.exists(segmentPath(i)); i++) {
+            Files.delete(segmentPath(i));
+        }
+        if (lastGeneration == 0) {
+            writeSegmentHeader(head, ++lastGeneration);
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        int scanFrom;
+        try {
+            scanFrom = readIndex();
+            log.info("Loaded disk cache index with {} entries from {}", index.size(), directory);
+        } catch (NoSuchFileException e) {
+            scanFrom = -1;
+        } catch (IOException e) {
+            log.warn("Disk cache index in {} is not usable ({}); rebuilding it from the segments", directory, e.getMessage());
+            scanFrom = -1;
+        }
+
+        if (scanFrom < 0) {
+            index.clear();
+            liveBytes = 0;
+            Integer[] order = new Integer[segments.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            java.util.Arrays.sort(order, (a, b) -> Long.compare(generations[a], generations[b]));
+            for (int segment : order) {
+                if (generations[segment] != 0) {
+                    segmentUsed[segment] = scan(segment, SEGMENT_HEADER_BYTES);
+                }
+            }
+            log.info("Rebuilt disk cache index with {} entries from the segments in {}", index.size(), directory);
+        } else {
+            // Entries written to the head segment after the snapshot
+            segmentUsed[head] = scan(head, scanFrom);
+        }
+    }
+
+    /**
+     * Indexes the intact entries of a segment from an offset on, stopping at the first entry
+     * that is missing or torn
+     *
+     * @return Offset after the last intact entry
+     */
+    private int scan(int segment, int from) {
+        MappedByteBuffer buffer = segments[segment];
+        int offset = from;
+        while (offset + ENTRY_HEADER_BYTES <= segmentBytes && buffer.getInt(offset) == ENTRY_MAGIC) {
+            int keyLength = buffer.getInt(offset + 8);
+            int eTagLength = buffer.getInt(offset + 12);
+            int nameLength = buffer.getInt(offset + 16);
+            int testCasesLength = buffer.getInt(offset + 20);
+            long length = (long) ENTRY_HEADER_BYTES + keyLength + eTagLength + nameLength + testCasesLength;
+            if (keyLength < 0 || eTagLength < 0 || nameLength < 0 || testCasesLength < 0
+                    || offset + length > segmentBytes || !crcMatches(buffer, offset)) {
+                break;
+            }
+            String key = readString(buffer, offset + ENTRY_HEADER_BYTES, keyLength);
+            String eTag = readString(buffer, offset + ENTRY_HEADER_BYTES + keyLength, eTagLength);
+            index(key, new Entry(segment, offset, eTag, keyLength, eTagLength, nameLength, testCasesLength, true));
+            offset += (int) length;
+        }
+        return offset;
+    }
+
+    /**
+     * Reserves space for an entry in the head segment, moving on to the next segment when it is full
+     *
+     * @return Offset of the space in the head segment, or -1 if the next segment is pinned
+     */
+    private int allocate(int length) {
+        if (segmentUsed[head] + length <= segmentBytes) {
+            int offset = segmentUsed[head];
+            segmentUsed[head] += length;
+            return offset;
+        }
+
+        int next = (head + 1) % segments.length;
+        if (segmentPins[next] > 0) {
+            return -1;
+        }
+        Iterator<Map.Entry<String, Entry>> entries = index.entrySet().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next().getValue();
+            if (entry.segment == next) {
+                entries.remove();
+                liveBytes -= entry.length();
+                evictions.incrementAndGet();
+            }
+        }
+        segments[head].force();
+        writeSegmentHeader(next, ++lastGeneration);
+        head = next;
+        segmentUsed[head] = SEGMENT_HEADER_BYTES + length;
+        try {
+            writeIndex();
+        } catch (IOException e) {
+            log.warn("Could not write the disk cache index in {}: {}", directory, e.getMessage());
+        }
+        return SEGMENT_HEADER_BYTES;
+    }
+
+    private void writeSegmentHeader(int segment, long generation) {
+        MappedByteBuffer buffer = segments[segment];
+        buffer.putInt(0, SEGMENT_MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        // Clear the first entry slot so an old entry is not mistaken for a new one
+        if (segmentBytes >= SEGMENT_HEADER_BYTES + 4) {
+            buffer.putInt(SEGMENT_HEADER_BYTES, 0);
+        }
+        buffer.putLong(8, generation);
+        generations[segment] = generation;
+    }
+
+    private void index(String key, Entry entry) {
+        Entry previous = index.put(key, entry);
+        if (previous != null) {
+            liveBytes -= previous.length();
+        }
+        liveBytes += entry.length();
+    }
+
+    private void unindex(String key) {
+        Entry removed = index.remove(key);
+        if (removed != null) {
+            liveBytes -= removed.length();
+        }
+    }
+
+    /**
+     * Writes the index to a temporary file and moves it into place
+     */
+    private void writeIndex() throws IOException {
+        Path temporary = directory.resolve(INDEX_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(segmentBytes);
+            out.writeInt(segments.length);
+            for (int i = 0; i < segments.length; i++) {
+                out.writeLong(generations[i]);
+                out.writeInt(segmentUsed[i]);
+            }
+            out.writeInt(head);
+            out.writeInt(index.size());
+            for (Map.Entry<String, Entry> mapping : index.entrySet()) {
+                Entry entry = mapping.getValue();
+                out.writeUTF(mapping.getKey());
+                out.writeUTF(entry.eTag);
+                out.writeInt(entry.segment);
+                out.writeInt(entry.offset);
+                out.writeInt(entry.keyLength);
+                out.writeInt(entry.eTagLength);
+                out.writeInt(entry.nameLength);
+                out.writeInt(entry.testCasesLength);
+            }
+        }
+        Files.move(temporary, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the index snapshot if it matches the segments on disk
+     *
+     * @return Offset in the head segment up to which the snapshot covers the entries
+     */
+    private int readIndex() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(INDEX_FILE))))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != FORMAT_VERSION
+                    || in.readInt() != segmentBytes || in.readInt() != segments.length) {
+                throw new IOException("written with a different format or layout");
+            }
+            int[] used = new int[segments.length];
+            for (int i = 0; i < segments.length; i++) {
+                if (in.readLong() != generations[i]) {
+                    throw new IOException("segment " + i + " changed since it was written");
+                }
+                used[i] = in.readInt();
+            }
+            if (in.readInt() != head) {
+                throw new IOException("head segment changed since it was written");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                String eTag = in.readUTF();
+                Entry entry = new Entry(in.readInt(), in.readInt(), eTag, in.readInt(), in.readInt(), in.readInt(), in.readInt(), false);
+                if (entry.segment < 0 || entry.segment >= segments.length || entry.offset < SEGMENT_HEADER_BYTES
+                        || entry.offset + entry.length() > used[entry.segment]) {
+                    throw new IOException("entry for " + key + " lies outside its segment");
+                }
+                index(key, entry);
+            }
+            System.arraycopy(used, 0, segmentUsed, 0, used.length);
+            return used[head];
+        }
+    }
+
+    private boolean crcMatches(MappedByteBuffer buffer, int offset) {
+        int length = buffer.getInt(offset + 8) + buffer.getInt(offset + 12) + buffer.getInt(offset + 16) + buffer.getInt(offset + 20);
+        ByteBuffer contents = buffer.duplicate();
+        contents.limit(offset + ENTRY_HEADER_BYTES + length).position(offset + ENTRY_HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+        return (int) crc.getValue() == buffer.getInt(offset + 4);
+    }
+
+    private static String readString(MappedByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.duplicate().position(offset).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("segment-%04d.dat", segment));
+    }
+
+    private void release(int segment) {
+        lock.lock();
+        try {
+            segmentPins[segment]--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Entry {
+        private final int segment;
+        private final int offset;
+        private final String eTag;
+        private final int keyLength;
+        private final int eTagLength;
+        private final int nameLength;
+        private final int testCasesLength;
+        private boolean verified;
+
+        private Entry(int segment, int offset, String eTag, int keyLength, int eTagLength,
+                      int nameLength, int testCasesLength, boolean verified) {
+            this.segment = segment;
+            this.offset = offset;
+            this.eTag = eTag;
+            this.keyLength = keyLength;
+            this.eTagLength = eTagLength;
+            this.nameLength = nameLength;
+            this.testCasesLength = testCasesLength;
+            this.verified = verified;
+        }
+
+        private int nameOffset() {
+            return offset + ENTRY_HEADER_BYTES + keyLength + eTagLength;
+        }
+
+        private int testCasesOffset() {
+            return nameOffset() + nameLength;
+        }
+
+        private int length() {
+            return ENTRY_HEADER_BYTES + keyLength + eTagLength + nameLength + testCasesLength;
+        }
+    }
+
+    /**
+     * A stored file, pinned in its segment until closed
+     */
+    final class Hit implements CacheHit {
+        private final Entry entry;
+        private boolean closed;
+
+        private Hit(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public void writeFileName(OutputStream out) throws IOException {
+            transfer(entry.nameOffset(), entry.nameLength, out);
+        }
+
+        @Override
+        public void writeTestCases(OutputStream out) throws IOException {
+            transfer(entry.testCasesOffset(), entry.testCasesLength, out);
+        }
+
+        @Override
+        public String fileName() {
+            return CacheHit.decode(fileNameJson());
+        }
+
+        @Override
+        public String testCases() {
+            return CacheHit.decode(testCasesJson());
+        }
+
+        /**
+         * Entries on disk are not tracked for prefetching
+         */
+        @Override
+        public boolean isFirstUseOfPrefetch() {
+            return false;
+        }
+
+        byte[] fileNameJson() {
+            return read(entry.nameOffset(), entry.nameLength);
+        }
+
+        byte[] testCasesJson() {
+            return read(entry.testCasesOffset(), entry.testCasesLength);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(entry.segment);
+            }
+        }
+
+        private byte[] read(int offset, int length) {
+            byte[] bytes = new byte[length];
+            segments[entry.segment].duplicate().position(offset).get(bytes);
+            return bytes;
+        }
+
+        private void transfer(long position, long count, OutputStream out) throws IOException {
+            WritableByteChannel target = out instanceof CoyoteOutputStream
+                ? new CoyoteChannel((CoyoteOutputStream) out)
+                : Channels.newChannel(out);
+            FileChannel channel = channels[entry.segment];
+            while (count > 0) {
+                long transferred = channel.transferTo(position, count, target);
+                position += transferred;
+                count -= transferred;
+            }
+        }
+    }
+
+    /**
+     * Lets transferTo hand buffers to Tomcat's response stream as they are
+     */
+    private static final class CoyoteChannel implements WritableByteChannel {
+        private final CoyoteOutputStream out;
+
+        private CoyoteChannel(CoyoteOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int length = source.remaining();
+            out.write(source);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.ApiResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Answers retried store requests from a record of recent {@code Idempotency-Key}s, so a client
+ * that timed out and sends the same request again does not upload it again.
+ *
+ * The first request with a key runs; a successful response is then kept for
+ * {@code storage.idempotency.ttl-seconds} and replayed to any request with the same key, with an
+ * {@code Idempotent-Replayed: true} header. A request that arrives while the first is still
+ * running waits for its response for up to {@code storage.idempotency.wait-timeout-ms}. Error
+ * responses are not kept, so a retry after a failure runs again.
+ *
+ * A key belongs to the request it was first used with: reusing it for a different endpoint,
+ * PR or body is answered with 422. At most {@code storage.idempotency.max-keys} keys are kept,
+ * the oldest going first. Keys live in this instance's memory, so behind a load balancer a retry
+ * only benefits if it reaches the same instance; stores overwrite by key, so a retry that is not
+ * recognised is still safe, only not cheaper.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    static final int MAX_KEY_LENGTH = 255;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${storage.idempotency.enabled:true}")
+    private boolean enabled;
+
+    @Value("${storage.idempotency.max-keys:10000}")
+    private int maxKeys;
+
+    @Value("${storage.idempotency.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    @Value("${storage.idempotency.wait-timeout-ms:30000}")
+    private long waitTimeoutMillis;
+
+    /**
+     * Keys by first use, oldest first
+     */
+    private final LinkedHashMap<String, Entry> keys = new LinkedHashMap<>();
+    private final ReentrantLock keysLock = new ReentrantLock();
+
+    /**
+     * Runs a store request once per idempotency key
+     *
+     * @param key         The Idempotency-Key header, or null to just run the request
+     * @param fingerprint Identifies the request the key was sent with, e.g. its route and body; only
+     *                    computed when a key is given
+     * @param request     Runs the request and returns its response
+     * @return The request's response, or the response of the earlier request with the same key
+     */
+    public ResponseEntity<ApiResponse> execute(String key, Supplier<?> fingerprint,
+                                               Supplier<ResponseEntity<ApiResponse>> request) {
+        if (!enabled || key == null) {
+            return request.get();
+        }
+        if (key.trim().isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            return new ResponseEntity<>(
+                    ApiResponse.error(HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters"),
+                    HttpStatus.BAD_REQUEST);
+        }
+        Object requestFingerprint;
+        try {
+            requestFingerprint = fingerprint.get();
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(ApiResponse.error(e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+
+        long now = System.nanoTime();
+        Entry entry;
+        Entry existing;
+        keysLock.lock();
+        try {
+            expire(now);
+            existing = keys.get(key);
+            if (existing == null) {
+                entry = new Entry(requestFingerprint, now);
+                keys.put(key, entry);
+                trim();
+            } else {
+                entry = null;
+            }
+        } finally {
+            keysLock.unlock();
+        }
+
+        if (existing != null) {
+            return replay(key, existing, requestFingerprint);
+        }
+
+        ResponseEntity<ApiResponse> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            forget(key, entry);
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            forget(key, entry);
+        }
+        entry.response.complete(response);
+        count("executed");
+        return response;
+    }
+
+    /**
+     * Fingerprint of a request for {@link #execute}: the route and the SHA-256 of the body as
+     * serialized to JSON. Only the hash is kept, not the body.
+     *
+     * @param route The endpoint and path variables, e.g. "store/PR-1"
+     * @param body  The request body
+     * @throws IllegalArgumentException if the body cannot be serialized
+     */
+    public Object fingerprint(String route, Object body) {
+        try {
+            return route + "#" + ContentAddressedBlobStore.sha256Hex(objectMapper.writeValueAsBytes(body));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Request body cannot be serialized: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Number of keys currently remembered, in flight or completed
+     */
+    public int size() {
+        keysLock.lock();
+        try {
+            return keys.size();
+        } finally {
+            keysLock.unlock();
+        }
+    }
+
+    private ResponseEntity<ApiResponse> replay(String key, Entry existing, Object fingerprint) {
+        if (!existing.fingerprint.equals(fingerprint)) {
+            count("mismatched");
+            return new ResponseEntity<>(
+                    ApiResponse.error(HEADER + " " + key + " was already used for a different request"),
+                    HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        boolean inFlight = !existing.response.isDone();
+        ResponseEntity<ApiResponse> response;
+        try {
+            response = existing.response.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            count("timed-out");
+            return new ResponseEntity<>(
+                    ApiResponse.error("A request with " + HEADER + " " + key + " is still in progress; retry later"),
+                    HttpStatus.CONFLICT);
+        } catch (ExecutionException e) {
+            // The first request failed without a response; the caller sees the same failure
+            throw e.getCause() instanceof RuntimeException
+                ? (RuntimeException) e.getCause()
+                : new RuntimeException("Failed to run the request", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the request with " + HEADER + " " + key, e);
+        }
+        count(inFlight ? "waited" : "replayed");
+        log.info("Answering request with {} {} from the {} request", HEADER, key, inFlight ? "concurrent" : "earlier");
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        headers.set(REPLAYED_HEADER, "true");
+        return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+    }
+
+    private void forget(String key, Entry entry) {
+        keysLock.lock();
+        try {
+            keys.remove(key, entry);
+        } finally {
+            keysLock.unlock();
+        }
+    }
+
+    /**
+     * Drops keys older than the TTL; the map is in order of first use, so they are at its head
+     */
+    private void expire(long now) {
+        long ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        Iterator<Entry> eldest = keys.values().iterator();
+        while (eldest.hasNext()) {
+            if (now - eldest.next().createdAt < ttlNanos) {
+                break;
+            }
+            eldest.remove();
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> eldest = keys.entrySet().iterator();
+        while (keys.size() > maxKeys && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private void count(String result) {
+        if (meterRegistry != null) {
+            Counter.builder("storage.idempotency.requests")
+                .tag("result", result)
+                .description("Store requests with an Idempotency-Key, by how they were answered")
+                .register(meterRegistry)
+                .increment();
+        }
+    }
+
+    private static final class Entry {
+        private final Object fingerprint;
+        private final long createdAt;
+        private final CompletableFuture<ResponseEntity<ApiResponse>> response = new CompletableFuture<>();
+
+        private Entry(Object fingerprint, long createdAt) {
+            this.fingerprint = fingerprint;
+            this.createdAt = createdAt;
+        }
+    }
+}
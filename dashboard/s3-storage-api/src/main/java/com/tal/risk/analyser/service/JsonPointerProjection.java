@@ -0,0 +1,145 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts the values at a set of JSON Pointers (RFC 6901) from a token stream.
+ * Only the requested values are materialized; every other subtree is skipped
+ * token by token, and parsing stops as soon as all pointers have been resolved.
+ */
+public final class JsonPointerProjection {
+
+    private final Map<String, JsonNode> values = new LinkedHashMap<>();
+    private final int requested;
+    private boolean stoppedEarly;
+
+    private JsonPointerProjection(int requested) {
+        this.requested = requested;
+    }
+
+    /**
+     * Evaluates the pointers against the JSON value the parser is positioned before
+     *
+     * @param parser   Parser over the document; it is left wherever evaluation stopped
+     * @param pointers JSON Pointer expressions, e.g. "/data/risk/score"
+     * @return The projection, keyed by pointer expression in request order
+     * @throws IllegalArgumentException if a pointer expression is invalid
+     */
+    public static JsonPointerProjection project(JsonParser parser, Collection<String> pointers) throws IOException {
+        List<Target> targets = new ArrayList<>();
+        for (String expression : new LinkedHashSet<>(pointers)) {
+            targets.add(new Target(expression, JsonPointer.compile(expression)));
+        }
+
+        JsonPointerProjection projection = new JsonPointerProjection(targets.size());
+        if (parser.nextToken() != null && !targets.isEmpty()) {
+            projection.visit(parser, targets);
+            // Stopping while still inside the top-level value means the rest of the input was never read
+            projection.stoppedEarly = projection.isComplete() && !parser.getParsingContext().inRoot();
+        }
+        return projection;
+    }
+
+    /**
+     * Values found, keyed by pointer expression; pointers that matched nothing are absent
+     */
+    public Map<String, JsonNode> getValues() {
+        return values;
+    }
+
+    /**
+     * Whether evaluation finished before the end of the input because every pointer was resolved
+     */
+    public boolean isStoppedEarly() {
+        return stoppedEarly;
+    }
+
+    private boolean isComplete() {
+        return values.size() == requested;
+    }
+
+    /**
+     * Visits the value at the parser's current token; on return the parser is on the value's last token
+     */
+    private void visit(JsonParser parser, List<Target> targets) throws IOException {
+        for (Target target : targets) {
+            if (target.remaining.matches()) {
+                // A pointer ends here: materialize this subtree once and resolve everything below it from the tree
+                JsonNode node = parser.readValueAsTree();
+                for (Target resolved : targets) {
+                    JsonNode value = node == null ? null : node.at(resolved.remaining);
+                    if (value != null && !value.isMissingNode()) {
+                        values.put(resolved.expression, value);
+                    }
+                }
+                return;
+            }
+        }
+
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                List<Target> matching = new ArrayList<>();
+                for (Target target : targets) {
+                    if (target.remaining.matchesProperty(name)) {
+                        matching.add(target.next());
+                    }
+                }
+                if (matching.isEmpty()) {
+                    parser.skipChildren();
+                } else {
+                    visit(parser, matching);
+                    if (isComplete()) {
+                        return;
+                    }
+                }
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            int index = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                List<Target> matching = new ArrayList<>();
+                for (Target target : targets) {
+                    if (target.remaining.matchesElement(index)) {
+                        matching.add(target.next());
+                    }
+                }
+                if (matching.isEmpty()) {
+                    parser.skipChildren();
+                } else {
+                    visit(parser, matching);
+                    if (isComplete()) {
+                        return;
+                    }
+                }
+                index++;
+            }
+        }
+    }
+
+    private static final class Target {
+        private final String expression;
+        private final JsonPointer remaining;
+
+        private Target(String expression, JsonPointer remaining) {
+            this.expression = expression;
+            this.remaining = remaining;
+        }
+
+        private Target next() {
+            return new Target(expression, remaining.tail());
+        }
+    }
+}
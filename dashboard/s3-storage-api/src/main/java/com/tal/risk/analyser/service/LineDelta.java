@@ -0,0 +1,373 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Line-based deltas between text revisions.
+ *
+ * A delta is a list of operations that turns one revision into another: retain the next N
+ * lines, delete the given lines, or insert the given lines. Deleted and inserted lines are
+ * both recorded, so a delta can be inverted, and two consecutive deltas can be composed into
+ * one without access to the text they apply to.
+ */
+public final class LineDelta {
+
+    /**
+     * Above this edit distance the middle section is recorded as a full replacement instead of a minimal diff
+     */
+    static final int MAX_EDIT_DISTANCE = 2000;
+
+    private LineDelta() {
+    }
+
+    /**
+     * A single delta operation; exactly one of the fields is set
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Op {
+        private Integer retain;
+        private List<String> delete;
+        private List<String> insert;
+
+        static Op retain(int count) {
+            return new Op(count, null, null);
+        }
+
+        static Op delete(List<String> lines) {
+            return new Op(null, new ArrayList<>(lines), null);
+        }
+
+        static Op insert(List<String> lines) {
+            return new Op(null, null, new ArrayList<>(lines));
+        }
+
+        int length() {
+            return retain != null ? retain : delete != null ? delete.size() : insert.size();
+        }
+    }
+
+    /**
+     * Splits text into lines so that {@link #join(List)} restores it exactly
+     */
+    public static List<String> splitLines(String text) {
+        return Arrays.asList(text.split("\n", -1));
+    }
+
+    public static String join(List<String> lines) {
+        return String.join("\n", lines);
+    }
+
+    /**
+     * Computes the delta that turns {@code from} into {@code to} (Myers' O(ND) algorithm)
+     */
+    public static List<Op> diff(List<String> from, List<String> to) {
+        int prefix = 0;
+        while (prefix < from.size() && prefix < to.size() && from.get(prefix).equals(to.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < from.size() - prefix && suffix < to.size() - prefix
+                && from.get(from.size() - 1 - suffix).equals(to.get(to.size() - 1 - suffix))) {
+            suffix++;
+        }
+
+        Builder builder = new Builder();
+        builder.retain(prefix);
+        myers(from.subList(prefix, from.size() - suffix), to.subList(prefix, to.size() - suffix), builder);
+        builder.retain(suffix);
+        return builder.build();
+    }
+
+    /**
+     * Applies a delta to the lines of the revision it was computed from
+     */
+    public static List<String> apply(List<String> base, List<Op> ops) {
+        List<String> result = new ArrayList<>();
+        int position = 0;
+        for (Op op : ops) {
+            if (op.getRetain() != null) {
+                result.addAll(base.subList(position, position + op.getRetain()));
+                position += op.getRetain();
+            } else if (op.getDelete() != null) {
+                position += op.getDelete().size();
+            } else {
+                result.addAll(op.getInsert());
+            }
+        }
+        if (position != base.size()) {
+            throw new IllegalStateException("Delta covers " + position + " lines but base has " + base.size());
+        }
+        return result;
+    }
+
+    /**
+     * Inverts a delta: the result turns the target revision back into the source revision
+     */
+    public static List<Op> invert(List<Op> ops) {
+        List<Op> inverted = new ArrayList<>(ops.size());
+        for (Op op : ops) {
+            if (op.getRetain() != null) {
+                inverted.add(Op.retain(op.getRetain()));
+            } else if (op.getDelete() != null) {
+                inverted.add(Op.insert(op.getDelete()));
+            } else {
+                inverted.add(Op.delete(op.getInsert()));
+            }
+        }
+        return new Builder().appendAll(inverted).build();
+    }
+
+    /**
+     * Composes two consecutive deltas (A to B, then B to C) into a single delta from A to C
+     */
+    public static List<Op> compose(List<Op> first, List<Op> second) {
+        Builder builder = new Builder();
+        Cursor a = new Cursor(first);
+        Cursor b = new Cursor(second);
+
+        while (a.hasNext() || b.hasNext()) {
+            if (a.hasNext() && a.peek().getDelete() != null) {
+                // Removed before the second delta ever saw it
+                builder.append(a.take(a.remaining()));
+            } else if (b.hasNext() && b.peek().getInsert() != null) {
+                // Added by the second delta, independent of the first
+                builder.append(b.take(b.remaining()));
+            } else if (a.hasNext() && b.hasNext()) {
+                int length = Math.min(a.remaining(), b.remaining());
+                Op left = a.take(length);
+                Op right = b.take(length);
+                if (left.getRetain() != null) {
+                    builder.append(right);
+                } else if (right.getRetain() != null) {
+                    builder.append(left);
+                }
+                // An insert that the second delta deletes again cancels out
+            } else {
+                throw new IllegalStateException("Deltas cannot be composed: lengths do not line up");
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Renders a delta as unified-diff hunks (without context lines)
+     */
+    public static String toUnifiedDiff(List<Op> ops, String fromLabel, String toLabel) {
+        StringBuilder out = new StringBuilder();
+        out.append("--- ").append(fromLabel).append('\n');
+        out.append("+++ ").append(toLabel).append('\n');
+
+        int fromLine = 0;
+        int toLine = 0;
+        int i = 0;
+        while (i < ops.size()) {
+            Op op = ops.get(i);
+            if (op.getRetain() != null) {
+                fromLine += op.getRetain();
+                toLine += op.getRetain();
+                i++;
+                continue;
+            }
+            List<String> removed = new ArrayList<>();
+            List<String> added = new ArrayList<>();
+            while (i < ops.size() && ops.get(i).getRetain() == null) {
+                if (ops.get(i).getDelete() != null) {
+                    removed.addAll(ops.get(i).getDelete());
+                } else {
+                    added.addAll(ops.get(i).getInsert());
+                }
+                i++;
+            }
+            out.append("@@ -").append(hunkRange(fromLine, removed.size()))
+                .append(" +").append(hunkRange(toLine, added.size())).append(" @@\n");
+            removed.forEach(line -> out.append('-').append(line).append('\n'));
+            added.forEach(line -> out.append('+').append(line).append('\n'));
+            fromLine += removed.size();
+            toLine += added.size();
+        }
+        return out.toString();
+    }
+
+    private static String hunkRange(int start, int count) {
+        // Unified diff convention: 1-based start, or the preceding line for empty ranges
+        return (count == 0 ? start : start + 1) + "," + count;
+    }
+
+    private static void myers(List<String> a, List<String> b, Builder builder) {
+        int n = a.size();
+        int m = b.size();
+        int max = n + m;
+        if (max == 0) {
+            return;
+        }
+
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+        int distance = -1;
+
+        search:
+        for (int d = 0; d <= Math.min(max, MAX_EDIT_DISTANCE); d++) {
+            // Only diagonals -(d+1)..(d+1) can be read while backtracking from step d
+            trace.add(Arrays.copyOfRange(v, offset - d - 1, offset + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]))
+                    ? v[offset + k + 1]
+                    : v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a.get(x).equals(b.get(y))) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    distance = d;
+                    break search;
+                }
+            }
+        }
+
+        if (distance < 0) {
+            // Too different for a minimal diff to be worth the cost: record a full replacement
+            builder.delete(a);
+            builder.insert(b);
+            return;
+        }
+
+        // Walk the trace backwards, collecting edits from the end
+        List<Op> reversed = new ArrayList<>();
+        int x = n;
+        int y = m;
+        for (int d = distance; d >= 0; d--) {
+            int[] snapshot = trace.get(d);
+            int snapshotOffset = d + 1;
+            int k = x - y;
+            int prevK = (k == -d || (k != d && snapshot[snapshotOffset + k - 1] < snapshot[snapshotOffset + k + 1]))
+                ? k + 1
+                : k - 1;
+            int prevX = snapshot[snapshotOffset + prevK];
+            int prevY = prevX - prevK;
+            int diagonal = 0;
+            while (x > prevX && y > prevY) {
+                diagonal++;
+                x--;
+                y--;
+            }
+            if (diagonal > 0) {
+                reversed.add(Op.retain(diagonal));
+            }
+            if (d > 0) {
+                if (x == prevX) {
+                    reversed.add(Op.insert(Collections.singletonList(b.get(y - 1))));
+                } else {
+                    reversed.add(Op.delete(Collections.singletonList(a.get(x - 1))));
+                }
+            }
+            x = prevX;
+            y = prevY;
+        }
+        Collections.reverse(reversed);
+        builder.appendAll(reversed);
+    }
+
+    /**
+     * Accumulates operations, merging neighbours of the same kind
+     */
+    private static final class Builder {
+        private final List<Op> ops = new ArrayList<>();
+
+        Builder retain(int count) {
+            return count > 0 ? append(Op.retain(count)) : this;
+        }
+
+        Builder delete(List<String> lines) {
+            return lines.isEmpty() ? this : append(Op.delete(lines));
+        }
+
+        Builder insert(List<String> lines) {
+            return lines.isEmpty() ? this : append(Op.insert(lines));
+        }
+
+        Builder appendAll(List<Op> toAppend) {
+            toAppend.forEach(this::append);
+            return this;
+        }
+
+        Builder append(Op op) {
+            if (op.length() == 0) {
+                return this;
+            }
+            Op last = ops.isEmpty() ? null : ops.get(ops.size() - 1);
+            if (last != null && last.getRetain() != null && op.getRetain() != null) {
+                last.setRetain(last.getRetain() + op.getRetain());
+            } else if (last != null && last.getDelete() != null && op.getDelete() != null) {
+                last.getDelete().addAll(op.getDelete());
+            } else if (last != null && last.getInsert() != null && op.getInsert() != null) {
+                last.getInsert().addAll(op.getInsert());
+            } else {
+                ops.add(new Op(op.getRetain(),
+                    op.getDelete() == null ? null : new ArrayList<>(op.getDelete()),
+                    op.getInsert() == null ? null : new ArrayList<>(op.getInsert())));
+            }
+            return this;
+        }
+
+        List<Op> build() {
+            return ops;
+        }
+    }
+
+    /**
+     * Reads operations in arbitrary-length slices
+     */
+    private static final class Cursor {
+        private final List<Op> ops;
+        private int index;
+        private int consumed;
+
+        Cursor(List<Op> ops) {
+            this.ops = ops;
+        }
+
+        boolean hasNext() {
+            return index < ops.size();
+        }
+
+        Op peek() {
+            return ops.get(index);
+        }
+
+        int remaining() {
+            return peek().length() - consumed;
+        }
+
+        Op take(int length) {
+            Op op = peek();
+            Op slice;
+            if (op.getRetain() != null) {
+                slice = Op.retain(length);
+            } else if (op.getDelete() != null) {
+                slice = Op.delete(op.getDelete().subList(consumed, consumed + length));
+            } else {
+                slice = Op.insert(op.getInsert().subList(consumed, consumed + length));
+            }
+            consumed += length;
+            if (consumed == op.length()) {
+                index++;
+                consumed = 0;
+            }
+            return slice;
+        }
+    }
+}
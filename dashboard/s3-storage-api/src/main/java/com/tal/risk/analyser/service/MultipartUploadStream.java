@@ -0,0 +1,156 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uploads what is written to it as the parts of an S3 multipart upload, holding at most one part
+ * in memory. Nothing is sent until the first part is full, so a body smaller than one part never
+ * starts an upload and can be taken with {@link #bufferedBytes()} instead.
+ *
+ * The upload only becomes visible with {@link #complete()}; {@link #abort()} discards it.
+ */
+final class MultipartUploadStream extends OutputStream {
+
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+    private final AmazonS3 amazonS3;
+    private final String bucketName;
+    private final String key;
+    private final ObjectMetadata metadata;
+    private final int partBytes;
+    private final MessageDigest sha256;
+
+    private byte[] buffer;
+    private int buffered;
+    private long size;
+
+    private String uploadId;
+    private final List<PartETag> parts = new ArrayList<>();
+
+    MultipartUploadStream(AmazonS3 amazonS3, String bucketName, String key, ObjectMetadata metadata, int partBytes) {
+        this.amazonS3 = amazonS3;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.metadata = metadata;
+        this.partBytes = partBytes;
+        this.buffer = new byte[Math.min(INITIAL_BUFFER_BYTES, partBytes)];
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) {
+        sha256.update(bytes, off, len);
+        size += len;
+        while (len > 0) {
+            if (buffered == buffer.length) {
+                if (buffer.length < partBytes) {
+                    buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, partBytes));
+                } else {
+                    uploadPart();
+                }
+            }
+            int count = Math.min(len, buffer.length - buffered);
+            System.arraycopy(bytes, off, buffer, buffered, count);
+            buffered += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Whether parts have been sent, i.e. the body did not fit in one part
+     */
+    boolean isMultipart() {
+        return uploadId != null;
+    }
+
+    /**
+     * The whole body, if it fit in one part and no upload was started
+     */
+    byte[] bufferedBytes() {
+        if (isMultipart()) {
+            throw new IllegalStateException("The body has been uploaded in parts");
+        }
+        return Arrays.copyOf(buffer, buffered);
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * SHA-256 of everything written so far
+     */
+    String sha256Hex() {
+        try {
+            byte[] digest = ((MessageDigest) sha256.clone()).digest();
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sends the last part and makes the object visible under its key
+     */
+    CompleteMultipartUploadResult complete() {
+        if (buffered > 0 || parts.isEmpty()) {
+            uploadPart();
+        }
+        return amazonS3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, parts));
+    }
+
+    /**
+     * Discards the parts sent so far
+     */
+    void abort() {
+        if (uploadId != null) {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+            uploadId = null;
+        }
+    }
+
+    private void uploadPart() {
+        if (uploadId == null) {
+            uploadId = amazonS3.initiateMultipartUpload(
+                new InitiateMultipartUploadRequest(bucketName, key, metadata)).getUploadId();
+        }
+        UploadPartRequest part = new UploadPartRequest()
+            .withBucketName(bucketName)
+            .withKey(key)
+            .withUploadId(uploadId)
+            .withPartNumber(parts.size() + 1)
+            .withInputStream(new ByteArrayInputStream(buffer, 0, buffered))
+            .withPartSize(buffered);
+        parts.add(amazonS3.uploadPart(part).getPartETag());
+        buffered = 0;
+    }
+}
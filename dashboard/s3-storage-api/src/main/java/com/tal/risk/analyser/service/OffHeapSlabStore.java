@@ -0,0 +1,506 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.apache.catalina.connector.CoyoteOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed-budget store of test-case files in direct {@link ByteBuffer} slabs, outside the Java heap.
+ *
+ * Each entry holds the S3 key, the ETag it was read at, and the file name and test cases as
+ * ready-to-write JSON string literals in UTF-8, so a hit can be copied to the response as is.
+ * Entries are appended to the current slab; when it is full, writing moves on to the next slab,
+ * and the oldest one is reclaimed as a whole. Eviction is thus by bytes, oldest first, and the
+ * store never fragments. An entry larger than a slab is not stored.
+ *
+ * The index is an open-addressing hash table of primitive arrays: key hash, slab and offset of
+ * the entry, and state. Keys are compared against the bytes in the slab, so the index holds no
+ * objects. Readers pin the slab they read from; a pinned slab is not reclaimed, and a write that
+ * would need it is skipped instead.
+ */
+final class OffHeapSlabStore {
+
+    /**
+     * Entry header: key hash, key length, ETag length, file name length, test cases length
+     */
+    private static final int HEADER_BYTES = 5 * Integer.BYTES;
+
+    private static final byte EMPTY = 0;
+    private static final byte LIVE = 1;
+    private static final byte DELETED = 2;
+
+    private static final byte PREFETCHED = 1;
+    private static final byte USED = 2;
+
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+    private static final ThreadLocal<byte[]> COPY_BUFFER = ThreadLocal.withInitial(() -> new byte[8192]);
+
+    private final int slabBytes;
+    private final ByteBuffer[] slabs;
+    private final int[] slabUsed;
+    private final int[] slabPins;
+    private int head;
+    private int liveEntries;
+    private long liveBytes;
+
+    private int[] hashes;
+    private long[] locations;
+    private byte[] states;
+    private byte[] marks;
+    private int occupied;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong wastedPrefetches = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param maxBytes  Memory budget; rounded down to whole slabs, at least one
+     * @param slabBytes Size of one slab, and so of the largest entry
+     */
+    OffHeapSlabStore(long maxBytes, int slabBytes) {
+        this.slabBytes = slabBytes;
+        int slabCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / slabBytes));
+        this.slabs = new ByteBuffer[slabCount];
+        this.slabUsed = new int[slabCount];
+        this.slabPins = new int[slabCount];
+        allocateIndex(INITIAL_INDEX_CAPACITY);
+    }
+
+    /**
+     * Stores a file, replacing whatever was stored under the key
+     *
+     * @return Whether the file was stored; false if it is larger than a slab, or the slab
+     *         that would have to be reclaimed is being read
+     */
+    boolean put(String key, String eTag, String fileName, String testCases, boolean prefetched) {
+        return putQuoted(key, eTag, quote(fileName), quote(testCases), prefetched);
+    }
+
+    /**
+     * Stores a file whose name and test cases are already encoded as JSON string literals
+     */
+    boolean putQuoted(String key, String eTag, byte[] nameJson, byte[] testCasesJson, boolean prefetched) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] eTagBytes = eTag.getBytes(StandardCharsets.UTF_8);
+        long length = (long) HEADER_BYTES + keyBytes.length + eTagBytes.length + nameJson.length + testCasesJson.length;
+        if (length > slabBytes) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        int hash = hash(key);
+
+        lock.lock();
+        try {
+            int existing = find(hash, keyBytes);
+            if (existing >= 0) {
+                remove(existing);
+            }
+            int offset = allocate((int) length);
+            if (offset < 0) {
+                rejected.incrementAndGet();
+                return false;
+            }
+
+            ByteBuffer slab = slabs[head].duplicate();
+            slab.position(offset);
+            slab.putInt(hash).putInt(keyBytes.length).putInt(eTagBytes.length).putInt(nameJson.length).putInt(testCasesJson.length);
+            slab.put(keyBytes).put(eTagBytes).put(nameJson).put(testCasesJson);
+
+            insert(hash, location(head, offset), prefetched ? PREFETCHED : 0);
+            liveEntries++;
+            liveBytes += length;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Looks up a file stored at the given ETag and pins it for reading. The returned hit must be closed.
+     *
+     * @return The hit, or null if the key is not stored at that ETag
+     */
+    Hit acquire(String key, String eTag) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        lock.lock();
+        try {
+            int slot = find(hash, keyBytes);
+            if (slot < 0) {
+                return null;
+            }
+            int slab = slabOf(locations[slot]);
+            int offset = offsetOf(locations[slot]);
+            if (!eTagMatches(slabs[slab], offset, eTag.getBytes(StandardCharsets.UTF_8))) {
+                return null;
+            }
+            boolean firstUseOfPrefetch = marks[slot] == PREFETCHED;
+            marks[slot] |= USED;
+            slabPins[slab]++;
+            return new Hit(this, slab, slabs[slab], offset, firstUseOfPrefetch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether the key is stored at the given ETag; does not count as a read
+     */
+    boolean contains(String key, String eTag) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        lock.lock();
+        try {
+            int slot = find(hash, keyBytes);
+            return slot >= 0 && eTagMatches(slabs[slabOf(locations[slot])], offsetOf(locations[slot]),
+                eTag.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The ETag the key is stored at; does not count as a read
+     *
+     * @return The ETag, or null if the key is not stored
+     */
+    String eTagOf(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        lock.lock();
+        try {
+            int slot = find(hash, keyBytes);
+            if (slot < 0) {
+                return null;
+            }
+            ByteBuffer slab = slabs[slabOf(locations[slot])];
+            int offset = offsetOf(locations[slot]);
+            byte[] eTagBytes = new byte[slab.getInt(offset + 8)];
+            slab.get(offset + HEADER_BYTES + slab.getInt(offset + 4), eTagBytes);
+            return new String(eTagBytes, StandardCharsets.UTF_8);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long liveBytes() {
+        lock.lock();
+        try {
+            return liveBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int liveEntries() {
+        lock.lock();
+        try {
+            return liveEntries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Direct memory allocated so far; slabs are allocated on first use
+     */
+    long reservedBytes() {
+        lock.lock();
+        try {
+            long reserved = 0;
+            for (ByteBuffer slab : slabs) {
+                reserved += slab != null ? slab.capacity() : 0;
+            }
+            return reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long evictions() {
+        return evictions.get();
+    }
+
+    long wastedPrefetches() {
+        return wastedPrefetches.get();
+    }
+
+    long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Writes a slice of a slab to a stream. Tomcat's response stream accepts the buffer itself;
+     * any other stream is fed through a small per-thread array.
+     */
+    static void transferTo(ByteBuffer source, OutputStream out) throws IOException {
+        ByteBuffer remaining = source.duplicate();
+        if (out instanceof CoyoteOutputStream) {
+            ((CoyoteOutputStream) out).write(remaining);
+            return;
+        }
+        byte[] chunk = COPY_BUFFER.get();
+        while (remaining.hasRemaining()) {
+            int length = Math.min(chunk.length, remaining.remaining());
+            remaining.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Reserves space for an entry in the current slab, moving on to the next slab when it is full
+     *
+     * @return Offset of the space in the head slab, or -1 if the next slab is pinned
+     */
+    private int allocate(int length) {
+        if (slabs[head] != null && slabUsed[head] + length <= slabBytes) {
+            int offset = slabUsed[head];
+            slabUsed[head] += length;
+            return offset;
+        }
+
+        int next = slabs[head] == null ? head : (head + 1) % slabs.length;
+        if (slabs[next] == null) {
+            slabs[next] = ByteBuffer.allocateDirect(slabBytes);
+        } else {
+            if (slabPins[next] > 0) {
+                return -1;
+            }
+            reclaim(next);
+        }
+        head = next;
+        slabUsed[head] = length;
+        return 0;
+    }
+
+    /**
+     * Evicts every entry still indexed in a slab and makes the whole slab free
+     */
+    private void reclaim(int slab) {
+        ByteBuffer buffer = slabs[slab];
+        int offset = 0;
+        while (offset < slabUsed[slab]) {
+            int length = entryLength(buffer, offset);
+            int slot = findLocation(buffer.getInt(offset), location(slab, offset));
+            if (slot >= 0) {
+                remove(slot);
+                evictions.incrementAndGet();
+            }
+            offset += length;
+        }
+        slabUsed[slab] = 0;
+    }
+
+    private void remove(int slot) {
+        if (marks[slot] == PREFETCHED) {
+            wastedPrefetches.incrementAndGet();
+        }
+        ByteBuffer slab = slabs[slabOf(locations[slot])];
+        liveEntries--;
+        liveBytes -= entryLength(slab, offsetOf(locations[slot]));
+        states[slot] = DELETED;
+        marks[slot] = 0;
+    }
+
+    private void insert(int hash, long location, byte mark) {
+        if ((occupied + 1) * 10L > hashes.length * 6L) {
+            rehash();
+        }
+        int mask = hashes.length - 1;
+        int slot = hash & mask;
+        while (states[slot] == LIVE) {
+            slot = (slot + 1) & mask;
+        }
+        if (states[slot] == EMPTY) {
+            occupied++;
+        }
+        hashes[slot] = hash;
+        locations[slot] = location;
+        states[slot] = LIVE;
+        marks[slot] = mark;
+    }
+
+    /**
+     * Rebuilds the index without tombstones, doubling it if live entries fill more than a quarter
+     */
+    private void rehash() {
+        int[] oldHashes = hashes;
+        long[] oldLocations = locations;
+        byte[] oldStates = states;
+        byte[] oldMarks = marks;
+        int capacity = liveEntries * 4 >= oldHashes.length ? oldHashes.length * 2 : oldHashes.length;
+        allocateIndex(capacity);
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldStates[i] == LIVE) {
+                insert(oldHashes[i], oldLocations[i], oldMarks[i]);
+            }
+        }
+    }
+
+    private void allocateIndex(int capacity) {
+        hashes = new int[capacity];
+        locations = new long[capacity];
+        states = new byte[capacity];
+        marks = new byte[capacity];
+        occupied = 0;
+    }
+
+    private int find(int hash, byte[] keyBytes) {
+        int mask = hashes.length - 1;
+        for (int slot = hash & mask; states[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (states[slot] == LIVE && hashes[slot] == hash
+                    && keyMatches(slabs[slabOf(locations[slot])], offsetOf(locations[slot]), keyBytes)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int findLocation(int hash, long location) {
+        int mask = hashes.length - 1;
+        for (int slot = hash & mask; states[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (states[slot] == LIVE && locations[slot] == location) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void release(int slab) {
+        lock.lock();
+        try {
+            slabPins[slab]--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean keyMatches(ByteBuffer slab, int offset, byte[] keyBytes) {
+        return slab.getInt(offset + 4) == keyBytes.length && bytesMatch(slab, offset + HEADER_BYTES, keyBytes);
+    }
+
+    private static boolean eTagMatches(ByteBuffer slab, int offset, byte[] eTagBytes) {
+        return slab.getInt(offset + 8) == eTagBytes.length
+            && bytesMatch(slab, offset + HEADER_BYTES + slab.getInt(offset + 4), eTagBytes);
+    }
+
+    private static boolean bytesMatch(ByteBuffer slab, int position, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (slab.get(position + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int entryLength(ByteBuffer slab, int offset) {
+        return HEADER_BYTES + slab.getInt(offset + 4) + slab.getInt(offset + 8) + slab.getInt(offset + 12) + slab.getInt(offset + 16);
+    }
+
+    /**
+     * Encodes a value as a JSON string literal in UTF-8
+     */
+    static byte[] quote(String value) {
+        if (value == null) {
+            return "null".getBytes(StandardCharsets.US_ASCII);
+        }
+        byte[] escaped = JsonStringEncoder.getInstance().quoteAsUTF8(value);
+        byte[] quoted = new byte[escaped.length + 2];
+        quoted[0] = '"';
+        System.arraycopy(escaped, 0, quoted, 1, escaped.length);
+        quoted[quoted.length - 1] = '"';
+        return quoted;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static long location(int slab, int offset) {
+        return ((long) slab << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int slabOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    /**
+     * A stored file, pinned in its slab until closed
+     */
+    static final class Hit implements CacheHit {
+        private final OffHeapSlabStore store;
+        private final int slab;
+        private final ByteBuffer fileNameJson;
+        private final ByteBuffer testCasesJson;
+        private final boolean firstUseOfPrefetch;
+        private boolean closed;
+
+        private Hit(OffHeapSlabStore store, int slab, ByteBuffer buffer, int offset, boolean firstUseOfPrefetch) {
+            this.store = store;
+            this.slab = slab;
+            this.firstUseOfPrefetch = firstUseOfPrefetch;
+            int nameStart = offset + HEADER_BYTES + buffer.getInt(offset + 4) + buffer.getInt(offset + 8);
+            int testCasesStart = nameStart + buffer.getInt(offset + 12);
+            this.fileNameJson = slice(buffer, nameStart, buffer.getInt(offset + 12));
+            this.testCasesJson = slice(buffer, testCasesStart, buffer.getInt(offset + 16));
+        }
+
+        @Override
+        public void writeFileName(OutputStream out) throws IOException {
+            transferTo(fileNameJson, out);
+        }
+
+        @Override
+        public void writeTestCases(OutputStream out) throws IOException {
+            transferTo(testCasesJson, out);
+        }
+
+        @Override
+        public boolean isFirstUseOfPrefetch() {
+            return firstUseOfPrefetch;
+        }
+
+        @Override
+        public String fileName() {
+            return decode(fileNameJson);
+        }
+
+        @Override
+        public String testCases() {
+            return decode(testCasesJson);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                store.release(slab);
+            }
+        }
+
+        private static ByteBuffer slice(ByteBuffer buffer, int start, int length) {
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(start + length).position(start);
+            return slice.slice().asReadOnlyBuffer();
+        }
+
+        private static String decode(ByteBuffer json) {
+            byte[] bytes = new byte[json.remaining()];
+            json.duplicate().get(bytes);
+            return CacheHit.decode(bytes);
+        }
+    }
+}
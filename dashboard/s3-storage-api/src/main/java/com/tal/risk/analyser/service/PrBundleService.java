@@ -0,0 +1,183 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeFileResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Serves a PR's summary and test-case files in a single response.
+ *
+ * The summary and every file are fetched concurrently, and the response is written as they
+ * arrive: the summary first, then the files in completion order. A page can therefore render
+ * after one round trip, and the server-side latency is that of the slowest single fetch.
+ *
+ * The summary is read on the calling thread while the listing runs on the fan-out executor:
+ * reading a sectioned summary fans out on that executor and waits for it, so it must not hold
+ * one of its threads while doing so.
+ */
+@Service
+@Slf4j
+public class PrBundleService {
+
+    @Autowired
+    private S3StorageService s3StorageService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("s3FanOutExecutor")
+    private ExecutorService s3FanOutExecutor;
+
+    /**
+     * Starts fetching everything the bundle holds
+     *
+     * @param prId Pull Request ID
+     * @return The bundle, whose parts are still being fetched
+     * @throws IllegalArgumentException if the PR ID is empty
+     * @throws NoSuchElementException if the PR has neither a summary nor any files
+     */
+    public PrBundle open(String prId) {
+        if (prId == null || prId.trim().isEmpty()) {
+            throw new IllegalArgumentException("PR_ID cannot be empty");
+        }
+
+        CompletableFuture<List<String>> listing =
+            CompletableFuture.supplyAsync(() -> s3StorageService.listCodeFileKeys(prId), s3FanOutExecutor);
+        // The summary is read here while the listing runs
+        CompletableFuture<Map<String, Object>> summary;
+        try {
+            summary = CompletableFuture.completedFuture(s3StorageService.getSummaryData(prId));
+        } catch (RuntimeException e) {
+            summary = CompletableFuture.failedFuture(e);
+        }
+        List<String> keys;
+        try {
+            keys = listing.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+
+        if (keys.isEmpty()) {
+            try {
+                summary.join();
+            } catch (CompletionException e) {
+                throw new NoSuchElementException("No data found for PR_ID: " + prId);
+            }
+        }
+
+        BlockingQueue<FileResult> completed = new LinkedBlockingQueue<>();
+        List<CompletableFuture<Map<String, String>>> files = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            CompletableFuture<Map<String, String>> file =
+                CompletableFuture.supplyAsync(() -> s3StorageService.getCodeData(key), s3FanOutExecutor);
+            file.whenComplete((codeData, error) -> completed.add(new FileResult(key, codeData, error)));
+            files.add(file);
+        }
+        return new PrBundle(prId, summary, files, completed);
+    }
+
+    /**
+     * Writes the bundle as an {@code ApiResponse} JSON document, flushing after each part
+     */
+    public void write(PrBundle bundle, OutputStream out) throws IOException {
+        Map<String, String> errors = new LinkedHashMap<>();
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("status", "success");
+            json.writeStringField("message", "PR bundle retrieved successfully");
+            json.writeObjectFieldStart("data");
+            json.writeStringField("prId", bundle.prId);
+
+            json.writeFieldName("summary");
+            try {
+                json.writeObject(bundle.summary.join());
+            } catch (CompletionException e) {
+                json.writeNull();
+                errors.put("summary", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            }
+            json.flush();
+
+            int count = 0;
+            json.writeArrayFieldStart("files");
+            for (int i = 0; i < bundle.files.size(); i++) {
+                FileResult result = bundle.completed.take();
+                if (result.error != null) {
+                    Throwable cause = result.error instanceof CompletionException && result.error.getCause() != null
+                        ? result.error.getCause() : result.error;
+                    log.error("Error fetching {} for bundle of PR: {}", result.key, bundle.prId, cause);
+                    errors.put(result.key, cause.getMessage());
+                    continue;
+                }
+                json.writeObject(new CodeFileResponse(result.codeData.get("fileName"), result.codeData.get("testCases")));
+                json.flush();
+                count++;
+            }
+            json.writeEndArray();
+            json.writeNumberField("count", count);
+
+            if (!errors.isEmpty()) {
+                json.writeObjectField("errors", errors);
+            }
+            json.writeEndObject();
+            json.writeEndObject();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the bundle", e);
+        } finally {
+            // Nothing left to wait for if the client went away
+            bundle.summary.cancel(true);
+            bundle.files.forEach(file -> file.cancel(true));
+        }
+    }
+
+    /**
+     * A PR's summary and files, being fetched
+     */
+    public static final class PrBundle {
+        private final String prId;
+        private final CompletableFuture<Map<String, Object>> summary;
+        private final List<CompletableFuture<Map<String, String>>> files;
+        private final BlockingQueue<FileResult> completed;
+
+        private PrBundle(String prId, CompletableFuture<Map<String, Object>> summary,
+                         List<CompletableFuture<Map<String, String>>> files, BlockingQueue<FileResult> completed) {
+            this.prId = prId;
+            this.summary = summary;
+            this.files = files;
+            this.completed = completed;
+        }
+    }
+
+    private static final class FileResult {
+        private final String key;
+        private final Map<String, String> codeData;
+        private final Throwable error;
+
+        private FileResult(String key, Map<String, String> codeData, Throwable error) {
+            this.key = key;
+            this.codeData = codeData;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.tal.risk.analyser.model.PrCatalogEntry;
+import com.tal.risk.analyser.model.PrCatalogPage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory catalog of the PRs stored in the bucket, for listing them without paging through
+ * the bucket on every request.
+ *
+ * The catalog is loaded on first use from a listing of the top-level prefixes (delimiter "/"),
+ * which returns one entry per PR rather than one per object. It is then kept up to date by the
+ * store paths, which record every PR they write to, and reconciled with the bucket every
+ * {@code storage.catalog.refresh-interval-ms} to pick up writes from other instances and
+ * deletions. Prefixes starting with an underscore, such as {@code _blobs/}, are internal and
+ * left out.
+ *
+ * A PR's last-modified time is known once it has been written through this instance. For PRs
+ * only seen in a listing, it is looked up with a listing of the PR the first time it is
+ * returned, and remembered until the next refresh.
+ */
+@Service
+@Slf4j
+public class PrCatalogService {
+
+    @Autowired
+    private AmazonS3 amazonS3;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Autowired
+    @Qualifier("s3FanOutExecutor")
+    private ExecutorService s3FanOutExecutor;
+
+    @Value("${storage.catalog.default-page-size:100}")
+    private int defaultPageSize;
+
+    @Value("${storage.catalog.max-page-size:1000}")
+    private int maxPageSize;
+
+    /**
+     * PRs by top-level prefix ("{prId}/"), in the order S3 lists them
+     */
+    private final ConcurrentSkipListMap<String, Entry> prs = new ConcurrentSkipListMap<>();
+
+    private volatile boolean loaded;
+
+    /**
+     * Serializes loads and refreshes; a lock rather than a monitor, so virtual threads are not pinned
+     */
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    /**
+     * Records a write to a PR, adding it to the catalog if it is new
+     */
+    public void recordWrite(String prId) {
+        if (prId == null || prId.isEmpty() || prId.startsWith("_")) {
+            return;
+        }
+        Instant now = Instant.now();
+        prs.put(prId + "/", new Entry(now, now));
+    }
+
+    /**
+     * Lists stored PRs in key order
+     *
+     * @param prefix    Optional PR ID prefix to filter on
+     * @param pageSize  PRs per page, up to storage.catalog.max-page-size; null for the default
+     * @param pageToken Token from the previous page, or null for the first page
+     * @return The page, with a token for the next one unless it is the last
+     * @throws IllegalArgumentException if the page size or token is invalid
+     */
+    public PrCatalogPage listPrs(String prefix, Integer pageSize, String pageToken) {
+        int size = pageSize != null ? pageSize : defaultPageSize;
+        if (size < 1 || size > maxPageSize) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + maxPageSize);
+        }
+        String keyPrefix = prefix == null ? "" : prefix;
+        String after = pageToken != null ? decodePageToken(keyPrefix, pageToken) : null;
+        if (!loaded) {
+            load();
+        }
+
+        NavigableMap<String, Entry> candidates = after != null ? prs.tailMap(after, false) : prs.tailMap(keyPrefix, true);
+        List<String> keys = new ArrayList<>(size);
+        String next = null;
+        for (String key : candidates.keySet()) {
+            if (!key.startsWith(keyPrefix)) {
+                break;
+            }
+            if (keys.size() == size) {
+                next = keys.get(keys.size() - 1);
+                break;
+            }
+            keys.add(key);
+        }
+
+        List<PrCatalogEntry> entries = new ArrayList<>(keys.size());
+        for (Map.Entry<String, Instant> resolved : resolveLastModified(keys).entrySet()) {
+            String key = resolved.getKey();
+            entries.add(new PrCatalogEntry(key.substring(0, key.length() - 1),
+                resolved.getValue() != null ? resolved.getValue().toString() : null));
+        }
+        return new PrCatalogPage(entries, entries.size(), next != null ? encodePageToken(next) : null);
+    }
+
+    /**
+     * Number of PRs in the catalog
+     */
+    public int size() {
+        return prs.size();
+    }
+
+    /**
+     * Reconciles the catalog with the bucket, once it has been loaded
+     */
+    @Scheduled(initialDelayString = "${storage.catalog.refresh-interval-ms:300000}",
+               fixedDelayString = "${storage.catalog.refresh-interval-ms:300000}")
+    public void refresh() {
+        if (!loaded) {
+            return;
+        }
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.warn("Could not refresh the PR catalog: {}", e.getMessage());
+        }
+    }
+
+    private void load() {
+        loadLock.lock();
+        try {
+            if (!loaded) {
+                reconcile();
+                loaded = true;
+                log.info("Loaded the PR catalog: {} PRs", prs.size());
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * Adds the PRs found in the bucket and drops those no longer there, keeping any written since the listing started
+     */
+    void reconcile() {
+        loadLock.lock();
+        try {
+            Instant started = Instant.now();
+            Set<String> listed = new HashSet<>();
+            ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(bucketName)
+                .withDelimiter("/");
+            ListObjectsV2Result result;
+            do {
+                result = amazonS3.listObjectsV2(request);
+                for (String commonPrefix : result.getCommonPrefixes()) {
+                    if (!commonPrefix.startsWith("_")) {
+                        listed.add(commonPrefix);
+                        // Times not recorded here may have been overtaken by other instances, so look them up again
+                        prs.compute(commonPrefix, (key, entry) ->
+                            entry != null && entry.recordedAt != null ? entry : Entry.UNKNOWN);
+                    }
+                }
+                request.setContinuationToken(result.getNextContinuationToken());
+            } while (result.isTruncated());
+
+            prs.entrySet().removeIf(entry -> !listed.contains(entry.getKey())
+                && (entry.getValue().recordedAt == null || entry.getValue().recordedAt.isBefore(started)));
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * Last-modified times of the given PRs, looking up the unknown ones in parallel
+     */
+    private Map<String, Instant> resolveLastModified(List<String> keys) {
+        Map<String, Instant> times = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Instant>> lookups = new LinkedHashMap<>();
+        for (String key : keys) {
+            Entry entry = prs.get(key);
+            if (entry != null && entry.lastModified != null) {
+                times.put(key, entry.lastModified);
+            } else {
+                times.put(key, null);
+                lookups.put(key, CompletableFuture.supplyAsync(() -> lastModified(key), s3FanOutExecutor));
+            }
+        }
+        try {
+            for (Map.Entry<String, CompletableFuture<Instant>> lookup : lookups.entrySet()) {
+                Instant lastModified = lookup.getValue().join();
+                times.put(lookup.getKey(), lastModified);
+                if (lastModified != null) {
+                    // Keep a time recorded by a write in the meantime
+                    prs.computeIfPresent(lookup.getKey(), (key, entry) ->
+                        entry.lastModified != null ? entry : new Entry(lastModified, entry.recordedAt));
+                }
+            }
+        } catch (CompletionException e) {
+            lookups.values().forEach(lookup -> lookup.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return times;
+    }
+
+    /**
+     * Latest modification time of the objects under a prefix, or null if it is empty
+     */
+    private Instant lastModified(String prefix) {
+        ListObjectsV2Request request = new ListObjectsV2Request()
+            .withBucketName(bucketName)
+            .withPrefix(prefix);
+        Instant latest = null;
+        ListObjectsV2Result result;
+        do {
+            result = amazonS3.listObjectsV2(request);
+            for (S3ObjectSummary objectSummary : result.getObjectSummaries()) {
+                if (objectSummary.getLastModified() != null) {
+                    Instant modified = objectSummary.getLastModified().toInstant();
+                    if (latest == null || modified.isAfter(latest)) {
+                        latest = modified;
+                    }
+                }
+            }
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+        return latest;
+    }
+
+    private static String encodePageToken(String lastKey) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodePageToken(String prefix, String pageToken) {
+        String lastKey;
+        try {
+            lastKey = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+        if (!lastKey.startsWith(prefix) || !lastKey.endsWith("/")) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+        return lastKey;
+    }
+
+    private static final class Entry {
+        static final Entry UNKNOWN = new Entry(null, null);
+
+        /**
+         * Latest write to the PR, if known
+         */
+        final Instant lastModified;
+
+        /**
+         * When this instance recorded a write to the PR, if it did
+         */
+        final Instant recordedAt;
+
+        Entry(Instant lastModified, Instant recordedAt) {
+            this.lastModified = lastModified;
+            this.recordedAt = recordedAt;
+        }
+    }
+}
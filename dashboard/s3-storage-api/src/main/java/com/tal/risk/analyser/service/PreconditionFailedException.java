@@ -0,0 +1,15 @@
+package com.tal.risk.analyser.service;
+
+/**
+ * Thrown when a conditional request does not match the current state of the stored object
+ */
+public class PreconditionFailedException extends RuntimeException {
+
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+
+    public PreconditionFailedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,246 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.tal.risk.analyser.model.PresignedFile;
+import com.tal.risk.analyser.model.PresignedUpload;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Issues presigned S3 URLs so clients can transfer file bodies directly with the bucket
+ * instead of through this service.
+ *
+ * Expiry times are rounded up to the end of a signing window, so every request within the
+ * same window gets an identical URL for a given key. URLs are therefore signed once per key
+ * and window, and stay cacheable by browsers and proxies for the rest of the window. Every
+ * URL handed out is valid for at least {@code storage.presign.ttl-seconds}.
+ */
+@Service
+@Slf4j
+public class PresignedUrlService {
+
+    @Autowired
+    private AmazonS3 amazonS3;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Autowired
+    @Qualifier("s3FanOutExecutor")
+    private ExecutorService s3FanOutExecutor;
+
+    @Value("${storage.presign.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${storage.presign.window-seconds:60}")
+    private long windowSeconds;
+
+    @Value("${storage.presign.cache-max-entries:10000}")
+    private int cacheMaxEntries;
+
+    @Value("${storage.dedup.shared-blobs.enabled:false}")
+    private boolean sharedBlobsEnabled;
+
+    @Value("${storage.raw-files.enabled:false}")
+    private boolean rawFilesEnabled;
+
+    /**
+     * Content type presigned uploads must declare; it is part of the signature
+     */
+    static final String UPLOAD_CONTENT_TYPE = "application/json";
+
+    private final ConcurrentHashMap<String, SignedUrl> signedUrls = new ConcurrentHashMap<>();
+
+    /**
+     * Lists the test-case files of a PR with presigned GET URLs; no file body is downloaded
+     *
+     * @param prId Pull Request ID
+     * @return One entry per stored file, in key order
+     * @throws NoSuchElementException if the PR has no files
+     */
+    public List<PresignedFile> presignCodeFiles(String prId) {
+        if (prId == null || prId.trim().isEmpty()) {
+            throw new IllegalArgumentException("PR_ID cannot be empty");
+        }
+
+        String prefix = prId + "/TestCases/";
+        ListObjectsV2Request request = new ListObjectsV2Request()
+            .withBucketName(bucketName)
+            .withPrefix(prefix);
+        List<S3ObjectSummary> summaries = new ArrayList<>();
+        ListObjectsV2Result result;
+        do {
+            result = amazonS3.listObjectsV2(request);
+            for (S3ObjectSummary summary : result.getObjectSummaries()) {
+                if (summary.getKey().endsWith(".json")) {
+                    summaries.add(summary);
+                }
+            }
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+
+        if (summaries.isEmpty()) {
+            throw new NoSuchElementException("No data found for PR_ID: " + prId);
+        }
+
+        long expiry = expiryMillis();
+        String expiresAt = Instant.ofEpochMilli(expiry).toString();
+        List<PresignedFile> files = new ArrayList<>(summaries.size());
+        for (S3ObjectSummary summary : summaries) {
+            String key = summary.getKey();
+            files.add(new PresignedFile(
+                key.substring(prefix.length(), key.length() - ".json".length()),
+                key,
+                summary.getSize(),
+                summary.getETag(),
+                summary.getLastModified() != null ? summary.getLastModified().toInstant().toString() : null,
+                presign(HttpMethod.GET, key, expiry, null),
+                null,
+                expiresAt));
+        }
+
+        if (sharedBlobsEnabled || rawFilesEnabled) {
+            linkSharedBlobs(files, expiry);
+        }
+        return files;
+    }
+
+    /**
+     * Issues a presigned PUT URL for the canonical key of a test-case file. The uploaded body must
+     * be the stored JSON document, {"fileName": ..., "testCases": ...}, sent as application/json.
+     *
+     * @param prId     Pull Request ID
+     * @param fileName Name of the test-case file
+     * @return The URL and the headers the upload has to send
+     * @throws IllegalArgumentException if the PR ID or file name is missing
+     */
+    public PresignedUpload presignCodeUpload(String prId, String fileName) {
+        if (prId == null || prId.trim().isEmpty()) {
+            throw new IllegalArgumentException("PR_ID cannot be empty");
+        }
+        if (fileName == null || fileName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Filename is required");
+        }
+
+        String s3Key = S3StorageService.codeFileKey(prId, fileName);
+        long expiry = expiryMillis();
+        String url = presign(HttpMethod.PUT, s3Key, expiry, UPLOAD_CONTENT_TYPE);
+        log.info("Issued presigned upload URL for PR: {}, file: {}, S3 key: {}", prId, fileName, s3Key);
+
+        return new PresignedUpload(prId, fileName, s3Key, url, HttpMethod.PUT.name(),
+            Collections.singletonMap("Content-Type", UPLOAD_CONTENT_TYPE), Instant.ofEpochMilli(expiry).toString());
+    }
+
+    /**
+     * Adds a direct URL for the test cases of files that only reference a shared blob or a raw file.
+     * Only object metadata is read, in parallel.
+     */
+    private void linkSharedBlobs(List<PresignedFile> files, long expiry) {
+        List<CompletableFuture<Void>> heads = new ArrayList<>();
+        for (PresignedFile file : files) {
+            heads.add(CompletableFuture.runAsync(() -> {
+                ObjectMetadata metadata;
+                try {
+                    metadata = amazonS3.getObjectMetadata(bucketName, file.getS3Key());
+                } catch (AmazonS3Exception e) {
+                    if (e.getStatusCode() == 404) {
+                        return;
+                    }
+                    throw e;
+                }
+                String blobKey = metadata.getUserMetaDataOf(S3StorageService.BLOB_KEY_METADATA);
+                if (blobKey == null) {
+                    blobKey = metadata.getUserMetaDataOf(S3StorageService.RAW_FILE_METADATA);
+                }
+                if (blobKey != null) {
+                    file.setTestCasesUrl(presign(HttpMethod.GET, blobKey, expiry, null));
+                }
+            }, s3FanOutExecutor));
+        }
+        try {
+            CompletableFuture.allOf(heads.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Expiry for URLs issued now: at least the TTL away, rounded up to the end of the signing window
+     */
+    long expiryMillis() {
+        long window = Math.max(1, windowSeconds) * 1000;
+        long earliest = System.currentTimeMillis() + ttlSeconds * 1000;
+        return (earliest / window + 1) * window;
+    }
+
+    /**
+     * Signs a URL, reusing the one already signed for the same method, key, content type and expiry
+     */
+    String presign(HttpMethod method, String key, long expiry, String contentType) {
+        String cacheKey = method + " " + key + " " + expiry + (contentType != null ? " " + contentType : "");
+        SignedUrl cached = signedUrls.get(cacheKey);
+        if (cached != null) {
+            return cached.url;
+        }
+
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucketName, key, method)
+            .withExpiration(new Date(expiry));
+        if (contentType != null) {
+            request.setContentType(contentType);
+        }
+        String url = amazonS3.generatePresignedUrl(request).toString();
+
+        if (signedUrls.size() >= cacheMaxEntries) {
+            evictExpired();
+        }
+        signedUrls.putIfAbsent(cacheKey, new SignedUrl(url, expiry));
+        return url;
+    }
+
+    /**
+     * Drops URLs from earlier signing windows; they are never handed out again
+     */
+    private void evictExpired() {
+        long current = expiryMillis();
+        signedUrls.values().removeIf(signed -> signed.expiry < current);
+        if (signedUrls.size() >= cacheMaxEntries) {
+            // Every entry belongs to the current window: start over rather than grow without bound
+            log.warn("Presigned URL cache is full ({} entries) within one signing window; clearing it", signedUrls.size());
+            signedUrls.clear();
+        }
+    }
+
+    private static final class SignedUrl {
+        private final String url;
+        private final long expiry;
+
+        private SignedUrl(String url, long expiry) {
+            this.url = url;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.tal.risk.analyser.service;
+
+/**
+ * Thrown when a requested byte range does not overlap the stored object
+ */
+public class RangeNotSatisfiableException extends RuntimeException {
+
+    private final long length;
+
+    public RangeNotSatisfiableException(String message, long length) {
+        super(message);
+        this.length = length;
+    }
+
+    /**
+     * Length of the whole object, for the Content-Range of the response
+     */
+    public long getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,230 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the raw text of test-case files, whole or by byte range, without going through JSON.
+ *
+ * Files stored with {@code storage.raw-files.enabled} are read from their raw text object, and
+ * a requested range becomes a ranged GET, so only the bytes asked for leave S3. Files stored
+ * inline in their JSON file are read whole and the range is applied here. Only a single range
+ * is supported; a Range header with several ranges, or one that cannot be parsed, is ignored
+ * and the whole file is returned, as HTTP allows.
+ */
+@Service
+@Slf4j
+public class RawFileService {
+
+    private static final Pattern SINGLE_RANGE = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+
+    @Autowired
+    private AmazonS3 amazonS3;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Autowired
+    private S3StorageService s3StorageService;
+
+    /**
+     * Opens the raw text of a test-case file
+     *
+     * @param prId     Pull Request ID
+     * @param fileName Name of the test-case file
+     * @param range    Value of the Range header, or null for the whole file
+     * @return The requested bytes, to be closed by the caller
+     * @throws NoSuchElementException if the file does not exist
+     * @throws RangeNotSatisfiableException if the range starts past the end of the file
+     */
+    public RawFile open(String prId, String fileName, String range) {
+        if (prId == null || prId.trim().isEmpty()) {
+            throw new IllegalArgumentException("PR_ID cannot be empty");
+        }
+        if (fileName == null || fileName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Filename cannot be empty");
+        }
+        long[] requested = parseRange(range);
+        String rawKey = S3StorageService.rawFileKey(prId, fileName);
+        try {
+            GetObjectRequest request = new GetObjectRequest(bucketName, rawKey);
+            if (requested != null) {
+                if (requested[0] < 0) {
+                    // S3 takes suffix ranges too, but the SDK cannot express them
+                    long length = amazonS3.getObjectMetadata(bucketName, rawKey).getContentLength();
+                    if (requested[1] == 0 || length == 0) {
+                        throw new RangeNotSatisfiableException("Range not satisfiable: " + range, length);
+                    }
+                    request.setRange(Math.max(0, length - requested[1]), length - 1);
+                } else if (requested[1] < 0) {
+                    request.setRange(requested[0]);
+                } else {
+                    request.setRange(requested[0], requested[1]);
+                }
+            }
+            S3Object s3Object = amazonS3.getObject(request);
+            ObjectMetadata metadata = s3Object.getObjectMetadata();
+            Long[] contentRange = metadata.getContentRange();
+            long start = contentRange != null ? contentRange[0] : 0;
+            return new RawFile(s3Object.getObjectContent(), start, metadata.getContentLength(),
+                metadata.getInstanceLength(), requested != null, metadata.getETag());
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 416) {
+                long length = amazonS3.getObjectMetadata(bucketName, rawKey).getContentLength();
+                throw new RangeNotSatisfiableException("Range not satisfiable: " + range, length);
+            }
+            if (e.getStatusCode() != 404) {
+                throw e;
+            }
+        }
+        return openInline(prId, fileName, range, requested);
+    }
+
+    /**
+     * Serves a file stored inline from its JSON file
+     */
+    private RawFile openInline(String prId, String fileName, String range, long[] requested) {
+        String testCases = s3StorageService.getStoredTestCases(S3StorageService.codeFileKey(prId, fileName));
+        if (testCases == null) {
+            throw new NoSuchElementException("File not found: " + fileName);
+        }
+        byte[] body = testCases.getBytes(StandardCharsets.UTF_8);
+        long start = 0;
+        long end = body.length - 1;
+        if (requested != null) {
+            if (requested[0] < 0) {
+                start = Math.max(0, body.length - requested[1]);
+            } else {
+                start = requested[0];
+                end = requested[1] < 0 ? end : Math.min(end, requested[1]);
+            }
+            if (start >= body.length || (requested[0] < 0 && requested[1] == 0)) {
+                throw new RangeNotSatisfiableException("Range not satisfiable: " + range, body.length);
+            }
+        }
+        log.debug("Serving inline test cases of {} for PR: {} as a raw file", fileName, prId);
+        return new RawFile(new ByteArrayInputStream(body, (int) start, (int) (end - start + 1)),
+            start, end - start + 1, body.length, requested != null, null);
+    }
+
+    /**
+     * Parses a single byte range
+     *
+     * @return {first, last} with last -1 if open-ended, {-1, suffix length} for a suffix range,
+     *         or null if the whole file should be returned
+     */
+    static long[] parseRange(String range) {
+        if (range == null) {
+            return null;
+        }
+        Matcher matcher = SINGLE_RANGE.matcher(range.trim());
+        if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+            return null;
+        }
+        try {
+            if (matcher.group(1).isEmpty()) {
+                return new long[]{-1, Long.parseLong(matcher.group(2))};
+            }
+            long first = Long.parseLong(matcher.group(1));
+            long last = matcher.group(2).isEmpty() ? -1 : Long.parseLong(matcher.group(2));
+            return last >= 0 && last < first ? null : new long[]{first, last};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Bytes of a raw file, whole or a range of it
+     */
+    public static final class RawFile implements Closeable {
+        private final InputStream content;
+        private final long start;
+        private final long contentLength;
+        private final long length;
+        private final boolean partial;
+        private final String eTag;
+
+        RawFile(InputStream content, long start, long contentLength, long length, boolean partial, String eTag) {
+            this.content = content;
+            this.start = start;
+            this.contentLength = contentLength;
+            this.length = length;
+            this.partial = partial;
+            this.eTag = eTag;
+        }
+
+        public InputStream getContent() {
+            return content;
+        }
+
+        /**
+         * Offset of the first byte returned
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Number of bytes returned
+         */
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        /**
+         * Length of the whole file
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Whether a range was requested and served
+         */
+        public boolean isPartial() {
+            return partial;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * Value of the Content-Range header for a partial response
+         */
+        public String contentRange() {
+            return "bytes " + start + "-" + (start + contentLength - 1) + "/" + length;
+        }
+
+        /**
+         * Drops the connection instead of draining the rest of the body, for a client that went away
+         */
+        public void abort() {
+            if (content instanceof S3ObjectInputStream) {
+                ((S3ObjectInputStream) content).abort();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            content.close();
+        }
+    }
+}
@@ -1,23 +1,37 @@
 package com.tal.risk.analyser.service;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.tal.risk.analyser.model.CodeFileEntry;
+import com.tal.risk.analyser.model.CodeFilePage;
 import com.tal.risk.analyser.model.CodeFileResponse;
+import com.tal.risk.analyser.model.CodeFileResult;
 import com.tal.risk.analyser.model.CodeStoreRequest;
+import com.tal.risk.analyser.model.SummaryPatchResult;
 import com.tal.risk.analyser.model.SummaryStoreRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 
 @Service
 @Slf4j
@@ -32,6 +46,98 @@ public class S3StorageService {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Value("${storage.summary.patch-max-attempts:5}")
+    private int summaryPatchMaxAttempts;
+
+    @Value("${storage.summary.sections.enabled:false}")
+    private boolean summarySectionsEnabled;
+
+    @Autowired
+    @Qualifier("s3FanOutExecutor")
+    private ExecutorService s3FanOutExecutor;
+
+    @Value("${storage.dedup.enabled:true}")
+    private boolean dedupEnabled;
+
+    @Value("${storage.dedup.shared-blobs.enabled:false}")
+    private boolean sharedBlobsEnabled;
+
+    @Value("${storage.dedup.shared-blobs.min-bytes:65536}")
+    private int sharedBlobMinBytes;
+
+    @Autowired
+    private ContentAddressedBlobStore blobStore;
+
+    @Value("${storage.versioning.enabled:false}")
+    private boolean versioningEnabled;
+
+    @Autowired
+    private TestCaseVersionService versionService;
+
+    @Value("${storage.cache.enabled:false}")
+    private boolean cacheEnabled;
+
+    @Value("${storage.raw-files.enabled:false}")
+    private boolean rawFilesEnabled;
+
+    @Value("${storage.retrieve.default-page-size:100}")
+    private int defaultPageSize;
+
+    @Value("${storage.retrieve.max-page-size:1000}")
+    private int maxPageSize;
+
+    @Autowired
+    private TestCaseCache testCaseCache;
+
+    @Autowired
+    private SummaryCache summaryCache;
+
+    @Value("${storage.catalog.enabled:false}")
+    private boolean catalogEnabled;
+
+    @Autowired
+    private PrCatalogService prCatalogService;
+
+    /**
+     * User metadata holding the SHA-256 of the stored bytes, used to skip identical re-uploads
+     */
+    static final String CONTENT_HASH_METADATA = "content-sha256";
+
+    /**
+     * User metadata holding the shared blob a test-case file references
+     */
+    static final String BLOB_KEY_METADATA = "blob-key";
+
+    /**
+     * Field replacing testCases in a stored file whose body lives in a shared blob
+     */
+    static final String TEST_CASES_BLOB = "testCasesBlob";
+
+    /**
+     * Field replacing testCases in a stored file whose body is kept as a raw text object
+     */
+    static final String TEST_CASES_FILE = "testCasesFile";
+
+    /**
+     * Field holding the SHA-256 of a raw text object, so the referencing file changes with it
+     */
+    static final String TEST_CASES_SHA256 = "testCasesSha256";
+
+    /**
+     * User metadata holding the raw text object a test-case file references
+     */
+    static final String RAW_FILE_METADATA = "raw-file-key";
+
+    /**
+     * Content type of raw test-case files
+     */
+    static final String RAW_FILE_CONTENT_TYPE = "text/plain; charset=utf-8";
+
+    /**
+     * User metadata marking a test-case file uploaded directly through a presigned URL
+     */
+    static final String UPLOAD_COMPLETED_METADATA = "upload-completed-at";
+
     /**
      * Stores code data in S3 for a specific PR ID
      *
@@ -65,15 +171,34 @@ public class S3StorageService {
             }
             
             // Use the fileName directly for the S3 key instead of adding timestamp and UUID
-            String sanitizedFileName = codeStoreRequest.getContent().getFileName().replaceAll("[^a-zA-Z0-9.-]", "_");
+            String sanitizedFileName = sanitizeFileName(codeStoreRequest.getContent().getFileName());
             
             // Format: /{PR_ID}/TestCases/{sanitizedFileName}.json - this will overwrite any existing file with the same name
-            String s3Key = String.format("%s/TestCases/%s.json", prId, sanitizedFileName);
+            String s3Key = codeFileKey(prId, codeStoreRequest.getContent().getFileName());
+            
+            if (rawFilesEnabled) {
+                return storeRawCodeData(prId, codeStoreRequest.getContent().getFileName(),
+                    codeStoreRequest.getContent().getTestCases());
+            }
+            
+            // Large bodies can be stored once under a hash-addressed key shared across PRs
+            byte[] body = null;
+            String blobKey = null;
+            if (dedupEnabled && sharedBlobsEnabled) {
+                body = codeStoreRequest.getContent().getTestCases().getBytes(StandardCharsets.UTF_8);
+                if (body.length >= sharedBlobMinBytes) {
+                    blobKey = blobStore.blobKey(body);
+                }
+            }
             
             // Create JSON content with the code data
             Map<String, String> jsonContent = new HashMap<>();
             jsonContent.put("fileName", codeStoreRequest.getContent().getFileName());
-            jsonContent.put("testCases", codeStoreRequest.getContent().getTestCases());
+            if (blobKey != null) {
+                jsonContent.put(TEST_CASES_BLOB, blobKey);
+            } else {
+                jsonContent.put("testCases", codeStoreRequest.getContent().getTestCases());
+            }
             
             String jsonData = objectMapper.writeValueAsString(jsonContent);
             byte[] contentBytes = jsonData.getBytes(StandardCharsets.UTF_8);
@@ -83,6 +208,30 @@ public class S3StorageService {
             metadata.setContentLength(contentBytes.length);
             metadata.setContentType("application/json");
             
+            // The version being replaced, whose shared body or raw text object is released once this one is stored;
+            // read regardless of the settings, which may have changed since it was written
+            ObjectMetadata existing = headObject(s3Key);
+            if (dedupEnabled) {
+                // Skip the upload entirely when byte-identical content is already stored under this key
+                String contentHash = ContentAddressedBlobStore.sha256Hex(contentBytes);
+                if (existing != null && contentHash.equals(existing.getUserMetaDataOf(CONTENT_HASH_METADATA))) {
+                    log.info("Skipped storing unchanged code data for PR: {}, file: {}, S3 key: {}", 
+                        prId, codeStoreRequest.getContent().getFileName(), s3Key);
+                    return s3Key;
+                }
+                metadata.addUserMetadata(CONTENT_HASH_METADATA, contentHash);
+                if (blobKey != null) {
+                    metadata.addUserMetadata(BLOB_KEY_METADATA, blobKey);
+                    blobStore.acquire(blobKey, body, s3Key);
+                }
+            }
+            
+            if (versioningEnabled) {
+                // Keep the revision being replaced as a delta before it is overwritten
+                versionService.recordRevision(prId, codeStoreRequest.getContent().getFileName(), sanitizedFileName,
+                    () -> getStoredTestCases(s3Key), codeStoreRequest.getContent().getTestCases());
+            }
+            
             // Upload the file to S3
             amazonS3.putObject(
                 bucketName, 
@@ -91,6 +240,13 @@ public class S3StorageService {
                 metadata
             );
             
+            if (cacheEnabled) {
+                testCaseCache.invalidate(prId);
+            }
+            
+            releaseReplaced(existing, s3Key, blobKey);
+            
+            recordCatalogWrite(prId);
             log.info("Successfully stored code data for PR: {}, file: {}, S3 key: {}", 
                 prId, codeStoreRequest.getContent().getFileName(), s3Key);
             
@@ -105,6 +261,106 @@ public class S3StorageService {
         }
     }
     
+    /**
+     * Releases what the version of a test-case file that was just overwritten referenced and the new one
+     * does not: a shared body, or a raw text object
+     *
+     * @param existing Metadata of the overwritten version, or null if there was none
+     * @param s3Key    Key of the test-case file
+     * @param blobKey  Shared body referenced by the new version, or null
+     */
+    void releaseReplaced(ObjectMetadata existing, String s3Key, String blobKey) {
+        if (existing == null) {
+            return;
+        }
+        String previousBlobKey = existing.getUserMetaDataOf(BLOB_KEY_METADATA);
+        if (previousBlobKey != null && !previousBlobKey.equals(blobKey)) {
+            blobStore.release(previousBlobKey, s3Key);
+        }
+        String previousRawKey = existing.getUserMetaDataOf(RAW_FILE_METADATA);
+        if (previousRawKey != null) {
+            amazonS3.deleteObject(bucketName, previousRawKey);
+        }
+    }
+
+    /**
+     * Stores the test cases of a file as a raw text object, /{PR_ID}/Files/{sanitizedFileName},
+     * referenced from a small JSON file under the usual key
+     */
+    private String storeRawCodeData(String prId, String fileName, String testCases) throws java.io.IOException {
+        String rawKey = rawFileKey(prId, fileName);
+        byte[] body = testCases.getBytes(StandardCharsets.UTF_8);
+        String bodyHash = ContentAddressedBlobStore.sha256Hex(body);
+
+        ObjectMetadata existing = dedupEnabled ? headObject(rawKey) : null;
+        if (existing != null && bodyHash.equals(existing.getUserMetaDataOf(CONTENT_HASH_METADATA))) {
+            log.info("Skipped storing unchanged raw file for PR: {}, file: {}, S3 key: {}", prId, fileName, rawKey);
+        } else {
+            if (versioningEnabled) {
+                String s3Key = codeFileKey(prId, fileName);
+                versionService.recordRevision(prId, fileName, sanitizeFileName(fileName),
+                    () -> getStoredTestCases(s3Key), testCases);
+            }
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(body.length);
+            metadata.setContentType(RAW_FILE_CONTENT_TYPE);
+            metadata.addUserMetadata(CONTENT_HASH_METADATA, bodyHash);
+            amazonS3.putObject(bucketName, rawKey, new ByteArrayInputStream(body), metadata);
+        }
+        return storeRawFileReference(prId, fileName, bodyHash);
+    }
+
+    /**
+     * Stores the JSON file referencing the raw text object of a test-case file, once the object is in place
+     *
+     * @param prId     Pull Request ID
+     * @param fileName Name of the test-case file
+     * @param bodyHash SHA-256 of the raw text object
+     * @return S3 object key of the JSON file
+     */
+    String storeRawFileReference(String prId, String fileName, String bodyHash) throws java.io.IOException {
+        String s3Key = codeFileKey(prId, fileName);
+        String rawKey = rawFileKey(prId, fileName);
+
+        Map<String, String> jsonContent = new HashMap<>();
+        jsonContent.put("fileName", fileName);
+        jsonContent.put(TEST_CASES_FILE, rawKey);
+        jsonContent.put(TEST_CASES_SHA256, bodyHash);
+        byte[] contentBytes = objectMapper.writeValueAsBytes(jsonContent);
+
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(contentBytes.length);
+        metadata.setContentType("application/json");
+        metadata.addUserMetadata(RAW_FILE_METADATA, rawKey);
+
+        // Read even without deduplication, so a shared body the previous version kept is released
+        ObjectMetadata existing = headObject(s3Key);
+        if (dedupEnabled) {
+            String contentHash = ContentAddressedBlobStore.sha256Hex(contentBytes);
+            if (existing != null && contentHash.equals(existing.getUserMetaDataOf(CONTENT_HASH_METADATA))) {
+                log.info("Skipped storing unchanged code data for PR: {}, file: {}, S3 key: {}", prId, fileName, s3Key);
+                return s3Key;
+            }
+            metadata.addUserMetadata(CONTENT_HASH_METADATA, contentHash);
+        }
+
+        amazonS3.putObject(bucketName, s3Key, new ByteArrayInputStream(contentBytes), metadata);
+
+        if (cacheEnabled) {
+            testCaseCache.invalidate(prId);
+        }
+
+        // The previous version may have kept its body in a shared blob
+        String previousBlobKey = existing != null ? existing.getUserMetaDataOf(BLOB_KEY_METADATA) : null;
+        if (previousBlobKey != null) {
+            blobStore.release(previousBlobKey, s3Key);
+        }
+
+        recordCatalogWrite(prId);
+        log.info("Successfully stored raw file for PR: {}, file: {}, S3 key: {} -> {}", prId, fileName, s3Key, rawKey);
+        return s3Key;
+    }
+    
     /**
      * Stores summary data in S3 for a specific PR ID
      *
@@ -126,6 +382,11 @@ public class S3StorageService {
                 throw new IllegalArgumentException("Github URL and summary data are required");
             }
             
+            if (summarySectionsEnabled) {
+                return storeSummarySections(prId, summaryStoreRequest.getContent().getGithubUrl(),
+                    summaryStoreRequest.getContent().getData());
+            }
+            
             // Format: /{PR_ID}/Summary/summary.json
             String s3Key = String.format("%s/Summary/summary.json", prId);
             
@@ -142,6 +403,17 @@ public class S3StorageService {
             metadata.setContentLength(contentBytes.length);
             metadata.setContentType("application/json");
             
+            if (dedupEnabled) {
+                // Skip the upload entirely when byte-identical content is already stored
+                String contentHash = ContentAddressedBlobStore.sha256Hex(contentBytes);
+                ObjectMetadata existing = headObject(s3Key);
+                if (existing != null && contentHash.equals(existing.getUserMetaDataOf(CONTENT_HASH_METADATA))) {
+                    log.info("Skipped storing unchanged summary data for PR: {}, S3 key: {}", prId, s3Key);
+                    return s3Key;
+                }
+                metadata.addUserMetadata(CONTENT_HASH_METADATA, contentHash);
+            }
+            
             // Upload the file to S3 (overwrite if exists)
             amazonS3.putObject(
                 bucketName, 
@@ -150,6 +422,7 @@ public class S3StorageService {
                 metadata
             );
             
+            recordCatalogWrite(prId);
             log.info("Successfully stored summary data for PR: {}, S3 key: {}", prId, s3Key);
             
             return s3Key;
@@ -158,7 +431,541 @@ public class S3StorageService {
             throw new RuntimeException("Failed to store summary data in S3", e);
         }
     }
-    
+    
+    /**
+     * Applies a JSON Merge Patch (RFC 7396) to the stored summary of a PR.
+     * The summary is read, patched and written back conditionally on the ETag that was read,
+     * so concurrent patches from different agents never overwrite each other. Without an
+     * explicit If-Match the read-patch-write cycle is retried when another writer wins the race.
+     * Summaries stored in the section-partitioned layout are patched section by section.
+     *
+     * @param prId    The Pull Request ID
+     * @param patch   The merge patch to apply to the summary document
+     * @param ifMatch Optional ETag the summary must currently have ("*" requires it to exist)
+     * @return The patched summary and its new ETag
+     * @throws IllegalArgumentException if the patch is invalid or the result fails validation
+     * @throws PreconditionFailedException if the If-Match condition does not hold
+     */
+    public SummaryPatchResult patchSummaryData(String prId, JsonNode patch, String ifMatch) {
+        try {
+            if (prId == null || prId.trim().isEmpty()) {
+                throw new IllegalArgumentException("PR_ID cannot be empty");
+            }
+
+            if (patch == null || !patch.isObject()) {
+                throw new IllegalArgumentException("Merge patch must be a JSON object");
+            }
+
+            // Format: /{PR_ID}/Summary/summary.json
+            String s3Key = String.format("%s/Summary/summary.json", prId);
+            String expectedETag = normalizeETag(ifMatch);
+
+            MergedObject merged;
+            try {
+                merged = mergeObjectConditionally(s3Key, patch, expectedETag, false, S3StorageService::validateSummaryDocument);
+            } catch (java.util.NoSuchElementException e) {
+                if (amazonS3.doesObjectExist(bucketName, sectionIndexKey(prId))) {
+                    if (expectedETag != null) {
+                        throw new IllegalArgumentException("If-Match is not supported for section-partitioned summaries");
+                    }
+                    return patchSummarySections(prId, patch);
+                }
+                if (expectedETag != null) {
+                    throw new PreconditionFailedException("Summary for PR " + prId + " does not exist");
+                }
+                if (summarySectionsEnabled) {
+                    JsonNode document = JsonMergePatch.apply(null, patch);
+                    validateSummaryDocument(document);
+                    return patchSummarySections(prId, patch);
+                }
+                merged = mergeObjectConditionally(s3Key, patch, null, true, S3StorageService::validateSummaryDocument);
+            }
+
+            recordCatalogWrite(prId);
+            log.info("Successfully patched summary data for PR: {}, S3 key: {}", prId, s3Key);
+
+            return new SummaryPatchResult(s3Key, merged.eTag,
+                objectMapper.convertValue(merged.document, new TypeReference<Map<String, Object>>() {}));
+        } catch (IllegalArgumentException | PreconditionFailedException e) {
+            log.error("Error patching summary data for PR: {}: {}", prId, e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            log.error("Error patching summary data in S3 for PR: " + prId, e);
+            throw new RuntimeException("Failed to patch summary data in S3", e);
+        }
+    }
+
+    /**
+     * Patches a section-partitioned summary. Every section named in the patch's data block is
+     * merged with its own conditional write, so agents working on different sections never contend.
+     */
+    private SummaryPatchResult patchSummarySections(String prId, JsonNode patch) throws Exception {
+        // Sections already stored keep the key the index has for them, which may predate the current naming
+        JsonNode currentIndex = readJsonObject(sectionIndexKey(prId));
+        JsonNode storedKeys = currentIndex != null ? currentIndex.path("sections") : objectMapper.createObjectNode();
+        ObjectNode indexPatch = objectMapper.createObjectNode();
+        ObjectNode sectionsPatch = indexPatch.putObject("sections");
+        ObjectNode patchedData = objectMapper.createObjectNode();
+
+        java.util.Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if ("githubUrl".equals(field.getKey())) {
+                indexPatch.set("githubUrl", field.getValue());
+            } else if ("data".equals(field.getKey()) && field.getValue().isObject()) {
+                java.util.Iterator<Map.Entry<String, JsonNode>> sections = field.getValue().fields();
+                while (sections.hasNext()) {
+                    Map.Entry<String, JsonNode> section = sections.next();
+                    String sectionKey = storedKeys.path(section.getKey()).isTextual()
+                        ? storedKeys.path(section.getKey()).asText()
+                        : sectionKey(prId, section.getKey());
+                    if (section.getValue().isNull()) {
+                        amazonS3.deleteObject(bucketName, sectionKey);
+                        sectionsPatch.putNull(section.getKey());
+                    } else {
+                        MergedObject merged = mergeObjectConditionally(sectionKey, section.getValue(), null, true, document -> { });
+                        sectionsPatch.put(section.getKey(), sectionKey);
+                        patchedData.set(section.getKey(), merged.document);
+                    }
+                }
+            } else {
+                throw new IllegalArgumentException("Only githubUrl and data can be patched");
+            }
+        }
+
+        MergedObject index = mergeObjectConditionally(sectionIndexKey(prId), indexPatch, null, true, document -> {
+            if (!document.path("githubUrl").isTextual() || document.path("githubUrl").asText().trim().isEmpty()) {
+                throw new IllegalArgumentException("Github URL and summary data are required");
+            }
+        });
+
+        // The whole summary is returned, as for the legacy layout: the sections just merged as written,
+        // the others read back
+        java.util.List<String> names = new java.util.ArrayList<>();
+        index.document.path("sections").fieldNames().forEachRemaining(names::add);
+        java.util.List<String> unpatched = new java.util.ArrayList<>();
+        for (String name : names) {
+            if (!patchedData.has(name)) {
+                unpatched.add(name);
+            }
+        }
+        Map<?, ?> unpatchedData = (Map<?, ?>) assembleSummary(index.document, unpatched).get("data");
+        Map<String, Object> data = new java.util.LinkedHashMap<>();
+        for (String name : names) {
+            if (patchedData.has(name)) {
+                data.put(name, objectMapper.convertValue(patchedData.get(name), Object.class));
+            } else if (unpatchedData.containsKey(name)) {
+                data.put(name, unpatchedData.get(name));
+            }
+        }
+        Map<String, Object> summaryData = new HashMap<>();
+        summaryData.put("githubUrl", index.document.path("githubUrl").asText());
+        summaryData.put("data", data);
+
+        recordCatalogWrite(prId);
+        log.info("Successfully patched {} summary section(s) for PR: {}", patchedData.size(), prId);
+
+        return new SummaryPatchResult(sectionIndexKey(prId), index.eTag, summaryData);
+    }
+
+    /**
+     * Reads a JSON object, applies a merge patch and writes it back conditionally on the ETag it was
+     * read with. When another writer wins the race the cycle is retried, unless the caller pinned an ETag.
+     *
+     * @throws java.util.NoSuchElementException if the object is missing and createIfMissing is false
+     */
+    private MergedObject mergeObjectConditionally(String s3Key, JsonNode patch, String expectedETag,
+                                                  boolean createIfMissing,
+                                                  java.util.function.Consumer<JsonNode> validator) throws Exception {
+        int maxAttempts = Math.max(1, summaryPatchMaxAttempts);
+
+        for (int attempt = 1; ; attempt++) {
+            JsonNode current = null;
+            String currentETag = null;
+            try {
+                S3Object s3Object = amazonS3.getObject(bucketName, s3Key);
+                try (InputStream in = s3Object.getObjectContent()) {
+                    current = objectMapper.readTree(in);
+                }
+                currentETag = s3Object.getObjectMetadata().getETag();
+            } catch (AmazonS3Exception e) {
+                if (e.getStatusCode() != 404) {
+                    throw e;
+                }
+                if (!createIfMissing) {
+                    throw new java.util.NoSuchElementException("No object found for key: " + s3Key);
+                }
+            }
+
+            if (expectedETag != null && (currentETag == null
+                    || (!"*".equals(expectedETag) && !expectedETag.equals(currentETag)))) {
+                throw new PreconditionFailedException(
+                    "Object " + s3Key + " does not match If-Match \"" + expectedETag + "\"");
+            }
+
+            JsonNode merged = JsonMergePatch.apply(current, patch);
+            validator.accept(merged);
+
+            byte[] contentBytes = objectMapper.writeValueAsBytes(merged);
+
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(contentBytes.length);
+            metadata.setContentType("application/json");
+
+            // Only write if nobody else has written since we read
+            PutObjectRequest putRequest = new PutObjectRequest(
+                bucketName, s3Key, new ByteArrayInputStream(contentBytes), metadata);
+            if (currentETag != null) {
+                putRequest.putCustomRequestHeader("If-Match", "\"" + currentETag + "\"");
+            } else {
+                putRequest.putCustomRequestHeader("If-None-Match", "*");
+            }
+
+            try {
+                PutObjectResult putResult = amazonS3.putObject(putRequest);
+                return new MergedObject(merged, putResult != null ? putResult.getETag() : null);
+            } catch (AmazonS3Exception e) {
+                if (!isConditionalWriteConflict(e)) {
+                    throw e;
+                }
+                if (expectedETag != null || attempt >= maxAttempts) {
+                    throw new PreconditionFailedException("Object " + s3Key + " was modified concurrently", e);
+                }
+                log.warn("Concurrent update of {}, retrying merge patch ({}/{})", s3Key, attempt + 1, maxAttempts);
+            }
+        }
+    }
+
+    private static void validateSummaryDocument(JsonNode document) {
+        if (!document.path("githubUrl").isTextual() || document.path("githubUrl").asText().trim().isEmpty()
+                || !document.path("data").isObject()) {
+            throw new IllegalArgumentException("Github URL and summary data are required");
+        }
+    }
+
+    /**
+     * Replaces characters that are not safe in S3 keys
+     */
+    public static String sanitizeFileName(String fileName) {
+        return fileName.replaceAll("[^a-zA-Z0-9.-]", "_");
+    }
+
+    /**
+     * S3 key of a test-case file: /{PR_ID}/TestCases/{sanitizedFileName}.json
+     */
+    public static String codeFileKey(String prId, String fileName) {
+        return String.format("%s/TestCases/%s.json", prId, sanitizeFileName(fileName));
+    }
+
+    /**
+     * S3 key of the raw text of a test-case file: /{PR_ID}/Files/{sanitizedFileName}
+     */
+    public static String rawFileKey(String prId, String fileName) {
+        return String.format("%s/Files/%s", prId, sanitizeFileName(fileName));
+    }
+
+    /**
+     * Adds a PR that has just been written to the PR catalog, so listings need not wait for the next refresh
+     */
+    void recordCatalogWrite(String prId) {
+        if (catalogEnabled) {
+            prCatalogService.recordWrite(prId);
+        }
+    }
+
+    /**
+     * Reads the test cases currently stored under a test-case file key
+     *
+     * @return The test cases, or null if the file does not exist
+     */
+    public String getStoredTestCases(String s3Key) {
+        try {
+            JsonNode stored = readJsonObject(s3Key);
+            if (stored == null) {
+                return null;
+            }
+            return resolveTestCases(objectMapper.convertValue(stored, new TypeReference<Map<String, Object>>() {}));
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Fetches an object's metadata
+     *
+     * @return The metadata, or null if the object does not exist
+     */
+    private ObjectMetadata headObject(String s3Key) {
+        try {
+            return amazonS3.getObjectMetadata(bucketName, s3Key);
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the test cases of a stored file, following the reference if the body lives in a shared blob
+     * or a raw text object
+     */
+    private String resolveTestCases(Map<String, ?> storedData) throws java.io.IOException {
+        Object blobKey = storedData.get(TEST_CASES_BLOB);
+        if (storedData.get("testCases") == null && blobKey != null) {
+            return blobStore.read(blobKey.toString());
+        }
+        Object rawKey = storedData.get(TEST_CASES_FILE);
+        if (storedData.get("testCases") == null && rawKey != null) {
+            return blobStore.read(rawKey.toString());
+        }
+        return (String) storedData.get("testCases");
+    }
+
+    /**
+     * Replaces a shared-blob reference in stored code data with the test cases it points to
+     */
+    private Map<String, String> inlineTestCases(Map<String, String> codeData) throws java.io.IOException {
+        if (codeData == null || (codeData.get(TEST_CASES_BLOB) == null && codeData.get(TEST_CASES_FILE) == null)) {
+            return codeData;
+        }
+        Map<String, String> inlined = new HashMap<>(codeData);
+        inlined.put("testCases", resolveTestCases(codeData));
+        inlined.remove(TEST_CASES_BLOB);
+        inlined.remove(TEST_CASES_FILE);
+        inlined.remove(TEST_CASES_SHA256);
+        return inlined;
+    }
+
+    /**
+     * Strips weak-validator prefix and quotes from an HTTP entity tag
+     */
+    private static String normalizeETag(String eTag) {
+        if (eTag == null || eTag.trim().isEmpty()) {
+            return null;
+        }
+        String value = eTag.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    /**
+     * S3 answers a failed conditional write with 412, or 409 when two conditional writes race
+     */
+    private static boolean isConditionalWriteConflict(AmazonS3Exception e) {
+        return e.getStatusCode() == 412 || e.getStatusCode() == 409;
+    }
+
+    /**
+     * A merged JSON document together with the ETag it was written with
+     */
+    private static final class MergedObject {
+        private final JsonNode document;
+        private final String eTag;
+
+        private MergedObject(JsonNode document, String eTag) {
+            this.document = document;
+            this.eTag = eTag;
+        }
+    }
+
+    /**
+     * Stores a summary in the section-partitioned layout: every top-level key of the data block
+     * becomes its own object under /{PR_ID}/Summary/sections/, listed in a small index object.
+     * Sections left over from a previous store and the legacy summary.json are removed.
+     *
+     * @return S3 key of the section index
+     */
+    private String storeSummarySections(String prId, String githubUrl, Map<String, Object> data) throws Exception {
+        String prefix = String.format("%s/Summary/sections/", prId);
+        String indexKey = sectionIndexKey(prId);
+
+        Map<String, String> sections = new java.util.LinkedHashMap<>();
+        java.util.List<java.util.concurrent.CompletableFuture<Void>> uploads = new java.util.ArrayList<>();
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            String sectionKey = sectionKey(prId, entry.getKey());
+            byte[] sectionBytes = objectMapper.writeValueAsBytes(entry.getValue());
+            sections.put(entry.getKey(), sectionKey);
+            uploads.add(java.util.concurrent.CompletableFuture.runAsync(
+                () -> putJson(sectionKey, sectionBytes), s3FanOutExecutor));
+        }
+        joinAll(uploads);
+
+        Map<String, Object> index = new HashMap<>();
+        index.put("githubUrl", githubUrl);
+        index.put("sections", sections);
+        putJson(indexKey, objectMapper.writeValueAsBytes(index));
+
+        // Remove sections that are no longer part of the summary
+        com.amazonaws.services.s3.model.ListObjectsV2Request request = new com.amazonaws.services.s3.model.ListObjectsV2Request()
+            .withBucketName(bucketName)
+            .withPrefix(prefix);
+        com.amazonaws.services.s3.model.ListObjectsV2Result result;
+        do {
+            result = amazonS3.listObjectsV2(request);
+            for (com.amazonaws.services.s3.model.S3ObjectSummary objectSummary : result.getObjectSummaries()) {
+                String key = objectSummary.getKey();
+                if (!key.equals(indexKey) && !sections.containsValue(key)) {
+                    amazonS3.deleteObject(bucketName, key);
+                }
+            }
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+
+        amazonS3.deleteObject(bucketName, String.format("%s/Summary/summary.json", prId));
+
+        recordCatalogWrite(prId);
+        log.info("Successfully stored {} summary section(s) for PR: {}, index key: {}", sections.size(), prId, indexKey);
+
+        return indexKey;
+    }
+
+    /**
+     * Retrieves selected sections of the summary for a specific PR ID. For section-partitioned
+     * summaries only the requested section objects are fetched, in parallel; for legacy summaries
+     * the single summary.json is read and filtered.
+     *
+     * @param prId     The PR ID for which to retrieve summary data
+     * @param sections Names of the top-level data keys to return
+     * @return Map with githubUrl and a data block containing the requested sections that exist
+     */
+    public Map<String, Object> getSummarySections(String prId, java.util.Collection<String> sections) {
+        if (prId == null || prId.trim().isEmpty()) {
+            throw new IllegalArgumentException("PR_ID cannot be empty");
+        }
+
+        try {
+            JsonNode index = readJsonObject(sectionIndexKey(prId));
+            if (index != null) {
+                java.util.List<String> names = new java.util.ArrayList<>();
+                for (String section : sections) {
+                    if (index.path("sections").has(section)) {
+                        names.add(section);
+                    }
+                }
+                return assembleSummary(index, names);
+            }
+        } catch (Exception e) {
+            log.error("Error retrieving summary sections from S3 for PR: {}", prId, e);
+            throw new RuntimeException("Failed to retrieve summary sections from S3", e);
+        }
+
+        // Legacy layout: read the single summary.json and keep only the requested sections
+        Map<String, Object> summary = getSummaryData(prId);
+        Map<String, Object> data = new java.util.LinkedHashMap<>();
+        if (summary.get("data") instanceof Map) {
+            Map<?, ?> fullData = (Map<?, ?>) summary.get("data");
+            for (String section : sections) {
+                if (fullData.containsKey(section)) {
+                    data.put(section, fullData.get(section));
+                }
+            }
+        }
+        Map<String, Object> filtered = new HashMap<>();
+        filtered.put("githubUrl", summary.get("githubUrl"));
+        filtered.put("data", data);
+        return filtered;
+    }
+
+    /**
+     * Fetches the named sections listed in a section index in parallel and assembles the legacy summary view
+     */
+    private Map<String, Object> assembleSummary(JsonNode index, java.util.List<String> names) throws Exception {
+        java.util.List<java.util.concurrent.CompletableFuture<JsonNode>> reads = new java.util.ArrayList<>();
+        for (String name : names) {
+            String sectionKey = index.path("sections").path(name).asText();
+            reads.add(java.util.concurrent.CompletableFuture.supplyAsync(() -> {
+                try {
+                    return readJsonObject(sectionKey);
+                } catch (java.io.IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            }, s3FanOutExecutor));
+        }
+        joinAll(reads);
+
+        Map<String, Object> data = new java.util.LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            JsonNode section = reads.get(i).join();
+            if (section != null) {
+                data.put(names.get(i), objectMapper.convertValue(section, Object.class));
+            }
+        }
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("githubUrl", index.path("githubUrl").asText());
+        summary.put("data", data);
+        return summary;
+    }
+
+    private static String sectionIndexKey(String prId) {
+        return String.format("%s/Summary/sections/_index.json", prId);
+    }
+
+    /**
+     * Key of a section object. The name is percent-encoded, keeping only letters, digits, '.', '-'
+     * and '_' (but not a leading one), so distinct names never share an object and none can be the
+     * index's "_index".
+     */
+    static String sectionKey(String prId, String section) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : section.getBytes(StandardCharsets.UTF_8)) {
+            int c = b & 0xff;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '-' || (c == '_' && encoded.length() > 0)) {
+                encoded.append((char) c);
+            } else {
+                encoded.append('%').append(String.format("%02X", c));
+            }
+        }
+        return String.format("%s/Summary/sections/%s.json", prId, encoded);
+    }
+
+    /**
+     * Reads and parses a JSON object from S3
+     *
+     * @return The parsed document, or null if the object does not exist
+     */
+    private JsonNode readJsonObject(String s3Key) throws java.io.IOException {
+        try {
+            S3Object s3Object = amazonS3.getObject(bucketName, s3Key);
+            try (InputStream in = s3Object.getObjectContent()) {
+                return objectMapper.readTree(in);
+            }
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private void putJson(String s3Key, byte[] contentBytes) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(contentBytes.length);
+        metadata.setContentType("application/json");
+        amazonS3.putObject(bucketName, s3Key, new ByteArrayInputStream(contentBytes), metadata);
+    }
+
+    /**
+     * Waits for all futures, rethrowing the first failure with its original cause
+     */
+    private static void joinAll(java.util.List<? extends java.util.concurrent.CompletableFuture<?>> futures) throws Exception {
+        try {
+            java.util.concurrent.CompletableFuture.allOf(futures.toArray(new java.util.concurrent.CompletableFuture[0])).join();
+        } catch (java.util.concurrent.CompletionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     /**
      * Checks if a folder exists in S3 bucket
      *
@@ -214,7 +1021,7 @@ public class S3StorageService {
                 // Parse the JSON content
                 Map<String, String> codeData = objectMapper.readValue(jsonContent, Map.class);
                 
-                return codeData;
+                return inlineTestCases(codeData);
             } else {
                 // List all objects with the PR ID prefix
                 String prefix = prId + "/";
@@ -232,6 +1039,14 @@ public class S3StorageService {
                 
                 // Get the first object's key
                 String key = result.getObjectSummaries().get(0).getKey();
+                if (key.startsWith(prefix + "Files/")) {
+                    // Raw files sort first; sanitized names never contain '~', so this skips past all of them
+                    result = amazonS3.listObjectsV2(request.withStartAfter(prefix + "Files/~"));
+                    if (result.getKeyCount() == 0) {
+                        throw new RuntimeException("No data found for PR_ID: " + prId);
+                    }
+                    key = result.getObjectSummaries().get(0).getKey();
+                }
                 
                 // Get the object content
                 com.amazonaws.services.s3.model.S3Object s3Object = amazonS3.getObject(bucketName, key);
@@ -241,7 +1056,7 @@ public class S3StorageService {
                 // Parse the JSON content
                 Map<String, String> codeData = objectMapper.readValue(jsonContent, Map.class);
                 
-                return codeData;
+                return inlineTestCases(codeData);
             }
         } catch (Exception e) {
             log.error("Error retrieving code data from S3 for PR: {}", prId, e);
@@ -266,15 +1081,33 @@ public class S3StorageService {
             // Format: /{PR_ID}/Summary/summary.json
             String s3Key = String.format("%s/Summary/summary.json", prId);
             
-            // Get the object from S3
-            com.amazonaws.services.s3.model.S3Object s3Object = amazonS3.getObject(bucketName, s3Key);
-            byte[] content = s3Object.getObjectContent().readAllBytes();
-            String jsonContent = new String(content, StandardCharsets.UTF_8);
+            // Get the object from S3, or revalidate the cached copy
+            String jsonContent;
+            if (cacheEnabled) {
+                jsonContent = readSummaryCached(s3Key);
+            } else {
+                com.amazonaws.services.s3.model.S3Object s3Object = amazonS3.getObject(bucketName, s3Key);
+                byte[] content = s3Object.getObjectContent().readAllBytes();
+                jsonContent = new String(content, StandardCharsets.UTF_8);
+            }
             
             // Parse the JSON content
             return objectMapper.readValue(jsonContent, new com.fasterxml.jackson.core.type.TypeReference<Map<String, Object>>() {});
         } catch (com.amazonaws.services.s3.model.AmazonS3Exception e) {
             if (e.getStatusCode() == 404) {
+                // No legacy summary.json: reassemble the full view from the section-partitioned layout
+                try {
+                    JsonNode index = readJsonObject(sectionIndexKey(prId));
+                    if (index != null) {
+                        java.util.List<String> names = new java.util.ArrayList<>();
+                        index.path("sections").fieldNames().forEachRemaining(names::add);
+                        return assembleSummary(index, names);
+                    }
+                } catch (Exception sectionsException) {
+                    log.error("Error assembling summary sections from S3 for PR: {}", prId, sectionsException);
+                    throw new RuntimeException("Failed to retrieve summary data from S3", sectionsException);
+                }
+                
                 // Object not found
                 log.error("Summary data not found for PR ID: {}", prId);
                 throw new RuntimeException("Summary data not found for PR ID: " + prId, e);
@@ -287,6 +1120,286 @@ public class S3StorageService {
         }
     }
     
+    /**
+     * Reads a summary document through the cache: a cached copy is revalidated with a conditional GET
+     * and only downloaded again if it changed
+     */
+    private String readSummaryCached(String s3Key) throws java.io.IOException {
+        String cachedETag = summaryCache.cachedETag(s3Key);
+        com.amazonaws.services.s3.model.GetObjectRequest request = new com.amazonaws.services.s3.model.GetObjectRequest(bucketName, s3Key);
+        if (cachedETag != null) {
+            request.withNonmatchingETagConstraint(cachedETag);
+        }
+        // The SDK returns null when S3 answers 304 Not Modified
+        S3Object s3Object = amazonS3.getObject(request);
+        if (s3Object == null) {
+            String cached = summaryCache.get(s3Key, cachedETag);
+            if (cached != null) {
+                return cached;
+            }
+            // Evicted since it was revalidated
+            s3Object = amazonS3.getObject(bucketName, s3Key);
+        }
+        try (S3Object object = s3Object) {
+            String jsonContent = new String(object.getObjectContent().readAllBytes(), StandardCharsets.UTF_8);
+            summaryCache.put(s3Key, object.getObjectMetadata().getETag(), jsonContent);
+            return jsonContent;
+        }
+    }
+
+    /**
+     * Retrieves selected fields of the summary for a specific PR ID without deserializing the whole document.
+     * The summary is evaluated with a streaming parser: subtrees that are not requested are skipped and
+     * the download is abandoned as soon as every requested field has been found.
+     *
+     * @param prId   The PR ID for which to retrieve summary data
+     * @param fields JSON Pointers into the summary document, e.g. "/data/risk/score"
+     * @return Map of pointer to value for every pointer that resolved
+     * @throws IllegalArgumentException if the PR ID or a pointer is invalid
+     */
+    public Map<String, Object> getSummaryFields(String prId, java.util.Collection<String> fields) {
+        if (prId == null || prId.trim().isEmpty()) {
+            throw new IllegalArgumentException("PR_ID cannot be empty");
+        }
+        validatePointers(fields);
+
+        try {
+            // Format: /{PR_ID}/Summary/summary.json
+            String s3Key = String.format("%s/Summary/summary.json", prId);
+            try {
+                return projectObject(s3Key, fields);
+            } catch (AmazonS3Exception e) {
+                if (e.getStatusCode() != 404) {
+                    throw e;
+                }
+            }
+
+            JsonNode index = readJsonObject(sectionIndexKey(prId));
+            if (index != null) {
+                return projectSections(prId, index, fields);
+            }
+        } catch (Exception e) {
+            log.error("Error retrieving summary fields from S3 for PR: {}", prId, e);
+            throw new RuntimeException("Failed to retrieve summary data from S3", e);
+        }
+
+        log.error("Summary data not found for PR ID: {}", prId);
+        throw new RuntimeException("Summary data not found for PR ID: " + prId);
+    }
+
+    /**
+     * Resolves pointers against a section-partitioned summary: pointers into /data/{section} are
+     * evaluated against that section object only; anything spanning sections uses the assembled view.
+     */
+    private Map<String, Object> projectSections(String prId, JsonNode index, java.util.Collection<String> fields) throws Exception {
+        Map<String, Object> values = new java.util.LinkedHashMap<>();
+        Map<String, Map<String, String>> bySection = new java.util.LinkedHashMap<>();
+        java.util.List<String> spanning = new java.util.ArrayList<>();
+
+        for (String field : fields) {
+            com.fasterxml.jackson.core.JsonPointer pointer = com.fasterxml.jackson.core.JsonPointer.compile(field);
+            com.fasterxml.jackson.core.JsonPointer sectionPointer = pointer.matchesProperty("data") ? pointer.tail() : null;
+            if (pointer.matchesProperty("githubUrl") && pointer.tail().matches()) {
+                values.put(field, index.path("githubUrl").asText());
+            } else if (sectionPointer != null && sectionPointer.getMatchingProperty() != null && !sectionPointer.matches()) {
+                String section = sectionPointer.getMatchingProperty();
+                if (index.path("sections").has(section)) {
+                    bySection.computeIfAbsent(section, name -> new java.util.LinkedHashMap<>())
+                        .put(field, sectionPointer.tail().toString());
+                }
+            } else {
+                spanning.add(field);
+            }
+        }
+
+        java.util.List<java.util.concurrent.CompletableFuture<Map<String, Object>>> reads = new java.util.ArrayList<>();
+        for (Map.Entry<String, Map<String, String>> section : bySection.entrySet()) {
+            String sectionKey = index.path("sections").path(section.getKey()).asText();
+            Map<String, String> relative = section.getValue();
+            reads.add(java.util.concurrent.CompletableFuture.supplyAsync(() -> {
+                try {
+                    Map<String, Object> sectionValues = projectObject(sectionKey, relative.values());
+                    Map<String, Object> resolved = new java.util.LinkedHashMap<>();
+                    relative.forEach((field, pointer) -> {
+                        if (sectionValues.containsKey(pointer)) {
+                            resolved.put(field, sectionValues.get(pointer));
+                        }
+                    });
+                    return resolved;
+                } catch (java.io.IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            }, s3FanOutExecutor));
+        }
+        joinAll(reads);
+        for (java.util.concurrent.CompletableFuture<Map<String, Object>> read : reads) {
+            values.putAll(read.join());
+        }
+
+        if (!spanning.isEmpty()) {
+            JsonNode summary = objectMapper.valueToTree(getSummaryData(prId));
+            for (String field : spanning) {
+                JsonNode value = summary.at(field);
+                if (!value.isMissingNode()) {
+                    values.put(field, objectMapper.convertValue(value, Object.class));
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Retrieves selected fields of every test-case file for a specific PR ID.
+     * Each file is evaluated with a streaming parser, so unrequested content (typically the
+     * large testCases body) is skipped rather than deserialized.
+     *
+     * @param prId   The Pull Request ID
+     * @param fields JSON Pointers into each stored file, e.g. "/fileName"
+     * @return One map of pointer to value per file
+     * @throws java.util.NoSuchElementException if no files are found for the PR ID
+     */
+    public java.util.List<Map<String, Object>> getCodeFileFields(String prId, java.util.Collection<String> fields) {
+        validatePointers(fields);
+        try {
+            String prefix = prId + "/TestCases/";
+            
+            com.amazonaws.services.s3.model.ListObjectsV2Request request = new com.amazonaws.services.s3.model.ListObjectsV2Request()
+                .withBucketName(bucketName)
+                .withPrefix(prefix);
+                
+            com.amazonaws.services.s3.model.ListObjectsV2Result result = amazonS3.listObjectsV2(request);
+            
+            if (result.getKeyCount() == 0) {
+                throw new java.util.NoSuchElementException("No data found for PR_ID: " + prId);
+            }
+            
+            java.util.List<Map<String, Object>> files = new java.util.ArrayList<>();
+            for (com.amazonaws.services.s3.model.S3ObjectSummary objectSummary : result.getObjectSummaries()) {
+                String key = objectSummary.getKey();
+                if (key.endsWith("/") || !key.endsWith(".json")) {
+                    continue;
+                }
+                if (!fields.contains("/testCases")) {
+                    files.add(projectObject(key, fields));
+                    continue;
+                }
+                
+                // Also ask for the shared-blob and raw-file references so bodies stored out of line can be followed
+                java.util.Set<String> withBlob = new java.util.LinkedHashSet<>(fields);
+                withBlob.add("/" + TEST_CASES_BLOB);
+                withBlob.add("/" + TEST_CASES_FILE);
+                Map<String, Object> values = projectObject(key, withBlob);
+                Object blobKey = values.remove("/" + TEST_CASES_BLOB);
+                Object rawKey = values.remove("/" + TEST_CASES_FILE);
+                if (!values.containsKey("/testCases") && blobKey != null) {
+                    values.put("/testCases", blobStore.read(blobKey.toString()));
+                } else if (!values.containsKey("/testCases") && rawKey != null) {
+                    values.put("/testCases", blobStore.read(rawKey.toString()));
+                }
+                files.add(values);
+            }
+            return files;
+        } catch (java.util.NoSuchElementException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error retrieving code file fields from S3 for PR: {}", prId, e);
+            throw new RuntimeException("Failed to retrieve code files from S3", e);
+        }
+    }
+
+    /**
+     * Streams an S3 object through a JSON Pointer projection. When every pointer resolves before the
+     * end of the object the connection is aborted instead of draining the remaining bytes.
+     */
+    private Map<String, Object> projectObject(String s3Key, java.util.Collection<String> fields) throws java.io.IOException {
+        S3Object s3Object = amazonS3.getObject(bucketName, s3Key);
+        com.amazonaws.services.s3.model.S3ObjectInputStream in = s3Object.getObjectContent();
+        try (com.fasterxml.jackson.core.JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            JsonPointerProjection projection = JsonPointerProjection.project(parser, fields);
+            if (projection.isStoppedEarly()) {
+                in.abort();
+            }
+            Map<String, Object> values = new java.util.LinkedHashMap<>();
+            projection.getValues().forEach((field, value) -> values.put(field, objectMapper.convertValue(value, Object.class)));
+            return values;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Records a test-case file that a client uploaded directly to S3 through a presigned URL.
+     * Only the start of the object is read, to check that it is the file it claims to be; the
+     * completion is then recorded in the object's metadata with a server-side copy.
+     *
+     * @param prId     Pull Request ID
+     * @param fileName Name of the uploaded file
+     * @return S3 key and ETag of the recorded upload
+     * @throws IllegalArgumentException if the uploaded object is not a valid test-case file
+     * @throws java.util.NoSuchElementException if nothing has been uploaded for the file
+     */
+    public Map<String, Object> completeCodeUpload(String prId, String fileName) {
+        if (prId == null || prId.trim().isEmpty()) {
+            throw new IllegalArgumentException("PR_ID cannot be empty");
+        }
+        if (fileName == null || fileName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Filename is required");
+        }
+
+        String s3Key = codeFileKey(prId, fileName);
+        try {
+            ObjectMetadata uploaded = headObject(s3Key);
+            if (uploaded == null) {
+                throw new java.util.NoSuchElementException("No upload found for file: " + fileName);
+            }
+
+            Object storedFileName;
+            try {
+                storedFileName = projectObject(s3Key, java.util.Collections.singletonList("/fileName")).get("/fileName");
+            } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+                throw new IllegalArgumentException("Uploaded file is not valid JSON: " + e.getOriginalMessage());
+            }
+            if (!(storedFileName instanceof String) || !codeFileKey(prId, (String) storedFileName).equals(s3Key)) {
+                throw new IllegalArgumentException("Uploaded file must be a JSON object whose fileName is " + fileName);
+            }
+
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType("application/json");
+            metadata.addUserMetadata(UPLOAD_COMPLETED_METADATA, java.time.Instant.now().toString());
+            com.amazonaws.services.s3.model.CopyObjectResult copy = amazonS3.copyObject(
+                new com.amazonaws.services.s3.model.CopyObjectRequest(bucketName, s3Key, bucketName, s3Key)
+                    .withNewObjectMetadata(metadata));
+
+            if (cacheEnabled) {
+                testCaseCache.invalidate(prId);
+            }
+            recordCatalogWrite(prId);
+            log.info("Recorded direct upload for PR: {}, file: {}, S3 key: {}", prId, fileName, s3Key);
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("s3Key", s3Key);
+            result.put("etag", copy.getETag());
+            result.put("size", uploaded.getContentLength());
+            return result;
+        } catch (IllegalArgumentException | java.util.NoSuchElementException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error recording direct upload for PR: {}, file: {}", prId, fileName, e);
+            throw new RuntimeException("Failed to record uploaded code data", e);
+        }
+    }
+
+    private static void validatePointers(java.util.Collection<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            throw new IllegalArgumentException("At least one field is required");
+        }
+        for (String field : fields) {
+            if (field == null || (!field.isEmpty() && !field.startsWith("/"))) {
+                throw new IllegalArgumentException("Invalid JSON Pointer: " + field);
+            }
+        }
+    }
+
     /**
      * Verifies that the uploaded data exists in S3
      *
@@ -319,7 +1432,7 @@ public class S3StorageService {
             String storedFileName = storedData.get("fileName");
             
             String expectedTestCases = request.getContent().getTestCases();
-            String storedTestCases = storedData.get("testCases");
+            String storedTestCases = resolveTestCases(storedData);
             
             return expectedFileName.equals(storedFileName) && expectedTestCases.equals(storedTestCases);
         } catch (Exception e) {
@@ -328,6 +1441,146 @@ public class S3StorageService {
         }
     }
     
+    /**
+     * Lists the S3 keys of all test-case files stored for a PR, in key order
+     *
+     * @param prId The Pull Request ID
+     * @return The keys; empty if the PR has no files
+     */
+    public java.util.List<String> listCodeFileKeys(String prId) {
+        java.util.List<String> keys = new java.util.ArrayList<>();
+        for (com.amazonaws.services.s3.model.S3ObjectSummary objectSummary : listCodeFileObjects(prId)) {
+            keys.add(objectSummary.getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * Lists all test-case files stored for a PR, with their ETags, in key order
+     */
+    private java.util.List<com.amazonaws.services.s3.model.S3ObjectSummary> listCodeFileObjects(String prId) {
+        com.amazonaws.services.s3.model.ListObjectsV2Request request = new com.amazonaws.services.s3.model.ListObjectsV2Request()
+            .withBucketName(bucketName)
+            .withPrefix(prId + "/TestCases/");
+        java.util.List<com.amazonaws.services.s3.model.S3ObjectSummary> objects = new java.util.ArrayList<>();
+        com.amazonaws.services.s3.model.ListObjectsV2Result result;
+        do {
+            result = amazonS3.listObjectsV2(request);
+            for (com.amazonaws.services.s3.model.S3ObjectSummary objectSummary : result.getObjectSummaries()) {
+                if (objectSummary.getKey().endsWith(".json")) {
+                    objects.add(objectSummary);
+                }
+            }
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+        return objects;
+    }
+
+    /**
+     * Loads a PR's test-case files into the cache ahead of a request for them. Files already cached
+     * at their current ETag are not downloaded again.
+     *
+     * @param prId     The Pull Request ID
+     * @param maxFiles Upper bound on the files downloaded
+     * @param proceed  Checked before each download; prefetching stops once it returns false
+     * @return Number of files downloaded
+     */
+    public int prefetchCodeFiles(String prId, int maxFiles, java.util.function.BooleanSupplier proceed) {
+        java.util.List<com.amazonaws.services.s3.model.S3ObjectSummary> objects = testCaseCache.getListing(prId);
+        if (objects == null) {
+            objects = listCodeFileObjects(prId);
+            testCaseCache.putListing(prId, objects);
+        }
+
+        int fetched = 0;
+        for (com.amazonaws.services.s3.model.S3ObjectSummary objectSummary : objects) {
+            if (fetched >= maxFiles || !proceed.getAsBoolean()) {
+                break;
+            }
+            if (!testCaseCache.contains(objectSummary.getKey(), objectSummary.getETag())) {
+                fetchCodeFile(objectSummary.getKey(), true);
+                fetched++;
+            }
+        }
+        return fetched;
+    }
+
+    /**
+     * Retrieves a single test-case file by name, from the key {@link #storeCodeData} stores it under,
+     * without listing the PR. With the cache enabled, a cached copy is revalidated with a conditional
+     * GET and served without downloading the body again. Otherwise the client's If-None-Match is
+     * passed on to S3, so a current copy costs no download either.
+     *
+     * @param prId        Pull Request ID
+     * @param fileName    Name of the test-case file
+     * @param ifNoneMatch Optional ETag of the client's copy
+     * @return The file and its ETag, or only the ETag if the client's copy is current
+     * @throws java.util.NoSuchElementException if the file does not exist
+     */
+    public CodeFileResult getCodeFile(String prId, String fileName, String ifNoneMatch) {
+        if (prId == null || prId.trim().isEmpty()) {
+            throw new IllegalArgumentException("PR_ID cannot be empty");
+        }
+        if (fileName == null || fileName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Filename cannot be empty");
+        }
+        String s3Key = codeFileKey(prId, fileName);
+        String clientETag = normalizeETag(ifNoneMatch);
+        String cachedETag = cacheEnabled ? testCaseCache.cachedETag(s3Key) : null;
+        String expectedETag = cachedETag != null ? cachedETag : clientETag;
+        try {
+            com.amazonaws.services.s3.model.GetObjectRequest request = new com.amazonaws.services.s3.model.GetObjectRequest(bucketName, s3Key);
+            if (expectedETag != null) {
+                request.withNonmatchingETagConstraint(expectedETag);
+            }
+            // The SDK returns null when S3 answers 304 Not Modified
+            S3Object s3Object = amazonS3.getObject(request);
+            if (s3Object == null && cachedETag != null) {
+                CodeFileResponse cached = testCaseCache.get(s3Key, cachedETag);
+                if (cached != null) {
+                    return new CodeFileResult(s3Key, cachedETag, cached, cachedETag.equals(clientETag));
+                }
+                // Evicted since it was revalidated
+                s3Object = amazonS3.getObject(bucketName, s3Key);
+            } else if (s3Object == null) {
+                return new CodeFileResult(s3Key, clientETag, null, true);
+            }
+            String eTag = s3Object.getObjectMetadata().getETag();
+            CodeFileResponse file = readCodeFile(s3Object, s3Key, false);
+            return new CodeFileResult(s3Key, eTag, file, eTag != null && eTag.equals(clientETag));
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                throw new java.util.NoSuchElementException("File not found: " + fileName);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Downloads one test-case file, caching it under the ETag it was read at when the cache is enabled
+     */
+    private CodeFileResponse fetchCodeFile(String key, boolean prefetched) {
+        return readCodeFile(amazonS3.getObject(bucketName, key), key, prefetched);
+    }
+
+    /**
+     * Reads a downloaded test-case file, caching it under the ETag it was read at when the cache is enabled
+     */
+    private CodeFileResponse readCodeFile(S3Object object, String key, boolean prefetched) {
+        try (com.amazonaws.services.s3.model.S3Object s3Object = object) {
+            byte[] content = s3Object.getObjectContent().readAllBytes();
+            java.util.Map<String, String> map = objectMapper.readValue(content, java.util.Map.class);
+            String fileName = map.get("fileName");
+            String testCases = resolveTestCases(map);
+            if (cacheEnabled) {
+                testCaseCache.put(key, s3Object.getObjectMetadata().getETag(), fileName, testCases, prefetched);
+            }
+            return new CodeFileResponse(fileName, testCases);
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
     /**
      * Retrieves all code files for a specific PR ID
      *
@@ -336,6 +1589,9 @@ public class S3StorageService {
      * @throws NoSuchElementException if no files are found for the PR ID
      */
     public java.util.List<CodeFileResponse> getAllCodeFilesForPR(String prId) {
+        if (cacheEnabled) {
+            return getAllCodeFilesCached(prId);
+        }
         try {
             String prefix = prId + "/TestCases/";
             
@@ -371,7 +1627,7 @@ public class S3StorageService {
                 // Create a CodeFileResponse object
                 // Use the fileName from the stored JSON content
                 String fileName = map.get("fileName");
-                String testCases = map.get("testCases");
+                String testCases = resolveTestCases(map);
                 
                 files.add(new CodeFileResponse(fileName, testCases));
             }
@@ -385,4 +1641,232 @@ public class S3StorageService {
             return java.util.Collections.emptyList();
         }
     }
+
+    /**
+     * Variant of {@link #getAllCodeFilesForPR} that serves files from the cache when their
+     * ETag in the PR's listing matches the cached one, and downloads only the rest
+     */
+    private java.util.List<CodeFileResponse> getAllCodeFilesCached(String prId) {
+        try {
+            java.util.List<com.amazonaws.services.s3.model.S3ObjectSummary> objects = listCodeFilesForPR(prId);
+            java.util.List<CodeFileResponse> files = new java.util.ArrayList<>(objects.size());
+            for (com.amazonaws.services.s3.model.S3ObjectSummary objectSummary : objects) {
+                CodeFileResponse cached = testCaseCache.get(objectSummary.getKey(), objectSummary.getETag());
+                files.add(cached != null ? cached : fetchCodeFile(objectSummary.getKey(), false));
+            }
+            return files;
+        } catch (java.util.NoSuchElementException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error retrieving all code files from S3 for PR: {}", prId, e);
+            return java.util.Collections.emptyList();
+        }
+    }
+
+    /**
+     * Whether {@link #writeAllCodeFilesForPR} can serve cached files straight from off-heap memory or the disk cache
+     */
+    public boolean isStreamingRetrievalEnabled() {
+        return cacheEnabled && testCaseCache.isStreamable();
+    }
+
+    /**
+     * Lists a PR's test-case files with their ETags, reusing a recent cached listing
+     *
+     * @param prId The Pull Request ID
+     * @return The files, in key order
+     * @throws java.util.NoSuchElementException if no files are found for the PR ID
+     */
+    public java.util.List<com.amazonaws.services.s3.model.S3ObjectSummary> listCodeFilesForPR(String prId) {
+        java.util.List<com.amazonaws.services.s3.model.S3ObjectSummary> objects = cacheEnabled ? testCaseCache.getListing(prId) : null;
+        if (objects == null) {
+            objects = listCodeFileObjects(prId);
+            if (cacheEnabled) {
+                testCaseCache.putListing(prId, objects);
+            }
+        }
+        if (objects.isEmpty()) {
+            throw new java.util.NoSuchElementException("No data found for PR_ID: " + prId);
+        }
+        return objects;
+    }
+
+    /**
+     * Retrieves one page of a PR's test-case files, in key order. Each page is one S3 listing of
+     * up to pageSize keys; the files on it are downloaded in parallel, or taken from the cache when
+     * it is enabled. In contentless mode nothing is downloaded and only names and sizes are returned.
+     *
+     * The page token wraps the S3 continuation token together with the PR's prefix, so it cannot
+     * be replayed against another PR.
+     *
+     * @param prId        The Pull Request ID
+     * @param pageSize    Files per page, up to storage.retrieve.max-page-size; null for the default
+     * @param pageToken   Token from the previous page, or null for the first page
+     * @param contentless Whether to list the files without their content
+     * @return The page, with a token for the next one unless it is the last
+     * @throws IllegalArgumentException if the page size or token is invalid
+     * @throws java.util.NoSuchElementException if no files are found for the PR ID
+     */
+    public CodeFilePage getCodeFilePage(String prId, Integer pageSize, String pageToken, boolean contentless) {
+        if (prId == null || prId.trim().isEmpty()) {
+            throw new IllegalArgumentException("PR_ID cannot be empty");
+        }
+        int size = pageSize != null ? pageSize : defaultPageSize;
+        if (size < 1 || size > maxPageSize) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + maxPageSize);
+        }
+        String prefix = prId + "/TestCases/";
+        com.amazonaws.services.s3.model.ListObjectsV2Request request = new com.amazonaws.services.s3.model.ListObjectsV2Request()
+            .withBucketName(bucketName)
+            .withPrefix(prefix)
+            .withMaxKeys(size);
+        if (pageToken != null) {
+            request.setContinuationToken(decodePageToken(prefix, pageToken));
+        }
+        com.amazonaws.services.s3.model.ListObjectsV2Result result = amazonS3.listObjectsV2(request);
+
+        java.util.List<com.amazonaws.services.s3.model.S3ObjectSummary> objects = new java.util.ArrayList<>();
+        for (com.amazonaws.services.s3.model.S3ObjectSummary objectSummary : result.getObjectSummaries()) {
+            if (objectSummary.getKey().endsWith(".json")) {
+                objects.add(objectSummary);
+            }
+        }
+        if (objects.isEmpty() && pageToken == null) {
+            throw new java.util.NoSuchElementException("No data found for PR_ID: " + prId);
+        }
+
+        java.util.List<?> files = contentless ? toEntries(prefix, objects) : fetchCodeFiles(objects);
+        String nextPageToken = result.isTruncated() ? encodePageToken(prefix, result.getNextContinuationToken()) : null;
+        return new CodeFilePage(prId, files, files.size(), nextPageToken);
+    }
+
+    private static java.util.List<CodeFileEntry> toEntries(String prefix, java.util.List<com.amazonaws.services.s3.model.S3ObjectSummary> objects) {
+        java.util.List<CodeFileEntry> entries = new java.util.ArrayList<>(objects.size());
+        for (com.amazonaws.services.s3.model.S3ObjectSummary objectSummary : objects) {
+            String key = objectSummary.getKey();
+            entries.add(new CodeFileEntry(
+                key.substring(prefix.length(), key.length() - ".json".length()),
+                key,
+                objectSummary.getSize(),
+                objectSummary.getETag(),
+                objectSummary.getLastModified() != null ? objectSummary.getLastModified().toInstant().toString() : null));
+        }
+        return entries;
+    }
+
+    /**
+     * Downloads listed files in parallel, serving those cached at their listed ETag from the cache
+     */
+    private java.util.List<CodeFileResponse> fetchCodeFiles(java.util.List<com.amazonaws.services.s3.model.S3ObjectSummary> objects) {
+        java.util.List<java.util.concurrent.CompletableFuture<CodeFileResponse>> reads = new java.util.ArrayList<>(objects.size());
+        for (com.amazonaws.services.s3.model.S3ObjectSummary objectSummary : objects) {
+            CodeFileResponse cached = cacheEnabled ? testCaseCache.get(objectSummary.getKey(), objectSummary.getETag()) : null;
+            reads.add(cached != null
+                ? java.util.concurrent.CompletableFuture.completedFuture(cached)
+                : java.util.concurrent.CompletableFuture.supplyAsync(() -> fetchCodeFile(objectSummary.getKey(), false), s3FanOutExecutor));
+        }
+        java.util.List<CodeFileResponse> files = new java.util.ArrayList<>(reads.size());
+        try {
+            for (java.util.concurrent.CompletableFuture<CodeFileResponse> read : reads) {
+                files.add(read.join());
+            }
+        } catch (java.util.concurrent.CompletionException e) {
+            reads.forEach(read -> read.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return files;
+    }
+
+    private static String encodePageToken(String prefix, String continuationToken) {
+        return java.util.Base64.getUrlEncoder().withoutPadding()
+            .encodeToString((prefix + "\n" + continuationToken).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodePageToken(String prefix, String pageToken) {
+        String decoded;
+        try {
+            decoded = new String(java.util.Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+        if (!decoded.startsWith(prefix + "\n") || decoded.length() == prefix.length() + 1) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+        return decoded.substring(prefix.length() + 1);
+    }
+
+    /**
+     * Writes the response of the retrieve endpoint for the given files of a PR. Files cached
+     * outside the heap are copied from their slab or segment to the stream without being decoded; the others are
+     * downloaded, cached and serialized as usual. A file that cannot be read is reported under
+     * "errors" instead of failing the response, which is already under way by then.
+     *
+     * @param prId    The Pull Request ID
+     * @param objects The files, as returned by {@link #listCodeFilesForPR}
+     * @param out     The response body
+     */
+    public void writeAllCodeFilesForPR(String prId, java.util.List<com.amazonaws.services.s3.model.S3ObjectSummary> objects,
+                                       java.io.OutputStream out) throws java.io.IOException {
+        Map<String, String> errors = new java.util.LinkedHashMap<>();
+        try (com.fasterxml.jackson.core.JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            // Slab bytes go to the stream directly, so the generator must not flush it on the way
+            json.disable(com.fasterxml.jackson.core.JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            json.writeStartObject();
+            json.writeStringField("status", "success");
+            json.writeStringField("message", "Code files retrieved successfully");
+            json.writeObjectFieldStart("data");
+            json.writeStringField("prId", prId);
+
+            int count = 0;
+            json.writeArrayFieldStart("files");
+            for (com.amazonaws.services.s3.model.S3ObjectSummary objectSummary : objects) {
+                String key = objectSummary.getKey();
+                try (CacheHit hit = testCaseCache.acquire(key, objectSummary.getETag())) {
+                    if (hit != null) {
+                        json.writeStartObject();
+                        writeRawFieldName(json, "id");
+                        hit.writeFileName(out);
+                        writeRawFieldName(json, "content");
+                        hit.writeTestCases(out);
+                        writeRawFieldName(json, "testCases");
+                        hit.writeTestCases(out);
+                        json.writeEndObject();
+                        count++;
+                        continue;
+                    }
+                }
+                CodeFileResponse file;
+                try {
+                    file = fetchCodeFile(key, false);
+                } catch (Exception e) {
+                    log.error("Error retrieving code file {} from S3 for PR: {}", key, prId, e);
+                    errors.put(key, e.getMessage());
+                    continue;
+                }
+                json.writeObject(file);
+                count++;
+            }
+            json.writeEndArray();
+            json.writeNumberField("count", count);
+
+            if (!errors.isEmpty()) {
+                json.writeObjectField("errors", errors);
+            }
+            json.writeEndObject();
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * Starts a field whose value is written to the underlying stream by the caller: the generator
+     * emits the name and separator and is flushed, so the value bytes can follow as they are
+     */
+    private static void writeRawFieldName(com.fasterxml.jackson.core.JsonGenerator json, String name) throws java.io.IOException {
+        json.writeFieldName(name);
+        json.writeRawValue("");
+        json.flush();
+    }
 }
@@ -0,0 +1,319 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import com.tal.risk.analyser.model.StoreJob;
+import com.tal.risk.analyser.model.SummaryStoreRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Runs store requests in the background, so the client does not hold its connection open
+ * for the upload.
+ *
+ * A request is validated with the same rules as the synchronous endpoints, then queued on the
+ * bounded {@code storeJobExecutor}. Its {@code storage.jobs.workers} workers are the uploads S3
+ * gets at once from this path; once {@code storage.jobs.queue-capacity} jobs are waiting, new
+ * ones are rejected rather than queued. Each job holds its whole request in memory until it
+ * finishes, so the payloads of queued and running jobs are also bounded, by
+ * {@code storage.jobs.max-queued-bytes}: a job that does not fit is rejected the same way, unless
+ * no other job holds any, so a single request larger than the budget can still go through.
+ * Jobs are kept in memory only: after a restart, a job ID is unknown and the client should
+ * resend the request, which is harmless because stores overwrite by key.
+ *
+ * Metrics: {@code storage.jobs.queued}, {@code storage.jobs.queued.bytes} and
+ * {@code storage.jobs.queue.lag} (age of the oldest waiting job) for backlog,
+ * {@code storage.jobs.wait} and {@code storage.jobs.duration} per job, and
+ * {@code storage.jobs.completed} by outcome for throughput.
+ */
+@Service
+@Slf4j
+public class StoreJobService {
+
+    @Autowired
+    private S3StorageService s3StorageService;
+
+    @Autowired
+    @Qualifier("storeJobExecutor")
+    private ThreadPoolExecutor storeJobExecutor;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Payload bytes that queued and running jobs may hold in memory at once
+     */
+    @Value("${storage.jobs.max-queued-bytes:268435456}")
+    private long maxQueuedBytes;
+
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+    /**
+     * Finished jobs kept for polling; queued and running jobs are always kept
+     */
+    @Value("${storage.jobs.tracked-jobs:10000}")
+    private int trackedJobs;
+
+    @Value("${storage.jobs.shutdown-timeout-ms:30000}")
+    private long shutdownTimeoutMillis;
+
+    /**
+     * Jobs by ID, oldest first
+     */
+    private final Map<String, StoreJob> jobs = new LinkedHashMap<>();
+    private final ReentrantLock jobsLock = new ReentrantLock();
+
+    private Timer waitTimer;
+    private Timer durationTimer;
+
+    @PostConstruct
+    void init() {
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("storage.jobs.queued", storeJobExecutor, executor -> executor.getQueue().size())
+            .description("Store jobs waiting for a worker").register(meterRegistry);
+        Gauge.builder("storage.jobs.queued.bytes", queuedBytes, AtomicLong::get)
+            .baseUnit("bytes").description("Payload held in memory by queued and running store jobs").register(meterRegistry);
+        Gauge.builder("storage.jobs.running", storeJobExecutor, ThreadPoolExecutor::getActiveCount)
+            .description("Store jobs being processed").register(meterRegistry);
+        Gauge.builder("storage.jobs.queue.lag", this, StoreJobService::queueLagSeconds)
+            .baseUnit("seconds").description("How long the oldest waiting store job has waited").register(meterRegistry);
+        waitTimer = Timer.builder("storage.jobs.wait")
+            .description("Time store jobs spent queued before a worker picked them up").register(meterRegistry);
+        durationTimer = Timer.builder("storage.jobs.duration")
+            .description("Time store jobs spent being processed").register(meterRegistry);
+    }
+
+    /**
+     * Queues a test-case file to be stored
+     *
+     * @return The queued job
+     * @throws IllegalArgumentException if the request is invalid
+     * @throws RejectedExecutionException if the queue or its byte budget is full
+     */
+    public StoreJob submitCodeData(CodeStoreRequest request) {
+        if (request == null || request.getPrId() == null || request.getPrId().trim().isEmpty()) {
+            throw new IllegalArgumentException("PR ID cannot be empty");
+        }
+        if (request.getContent() == null || request.getContent().getFileName() == null ||
+            request.getContent().getFileName().trim().isEmpty() ||
+            request.getContent().getTestCases() == null) {
+            throw new IllegalArgumentException("File name and test cases are required");
+        }
+        StoreJob job = new StoreJob(UUID.randomUUID().toString(), StoreJob.Type.CODE, request.getPrId(),
+            request.getContent().getFileName(), Instant.now().toString());
+        // Strings take up to two bytes per character on the heap
+        long payloadBytes = 2L * (request.getContent().getFileName().length() + request.getContent().getTestCases().length());
+        return submit(job, payloadBytes, () -> s3StorageService.storeCodeData(request));
+    }
+
+    /**
+     * Queues a summary to be stored
+     *
+     * @return The queued job
+     * @throws IllegalArgumentException if the request is invalid
+     * @throws RejectedExecutionException if the queue or its byte budget is full
+     */
+    public StoreJob submitSummaryData(String prId, SummaryStoreRequest request) {
+        if (prId == null || prId.trim().isEmpty()) {
+            throw new IllegalArgumentException("PR_ID cannot be empty");
+        }
+        if (request == null || request.getContent() == null ||
+            request.getContent().getGithubUrl() == null ||
+            request.getContent().getGithubUrl().trim().isEmpty() ||
+            request.getContent().getData() == null) {
+            throw new IllegalArgumentException("Github URL and summary data are required");
+        }
+        StoreJob job = new StoreJob(UUID.randomUUID().toString(), StoreJob.Type.SUMMARY, prId, null,
+            Instant.now().toString());
+        return submit(job, summaryBytes(request), () -> s3StorageService.storeSummaryData(prId, request));
+    }
+
+    /**
+     * A queued, running or recently finished job
+     *
+     * @return The job, or null if it is unknown
+     */
+    public StoreJob getJob(String jobId) {
+        jobsLock.lock();
+        try {
+            return jobs.get(jobId);
+        } finally {
+            jobsLock.unlock();
+        }
+    }
+
+    /**
+     * Stops taking jobs and gives the queued ones time to finish
+     */
+    @PreDestroy
+    void close() {
+        storeJobExecutor.shutdown();
+        try {
+            if (!storeJobExecutor.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("{} store jobs were still queued or running at shutdown",
+                    storeJobExecutor.getQueue().size() + storeJobExecutor.getActiveCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private StoreJob submit(StoreJob job, long payloadBytes, Supplier<String> store) {
+        if (!reserve(payloadBytes)) {
+            count("rejected");
+            throw new RejectedExecutionException("Store jobs already hold " + queuedBytes.get() + " bytes");
+        }
+        jobsLock.lock();
+        try {
+            jobs.put(job.getJobId(), job);
+            trim();
+        } finally {
+            jobsLock.unlock();
+        }
+        try {
+            storeJobExecutor.execute(new JobTask(job, payloadBytes, store));
+        } catch (RejectedExecutionException e) {
+            queuedBytes.addAndGet(-payloadBytes);
+            jobsLock.lock();
+            try {
+                jobs.remove(job.getJobId());
+            } finally {
+                jobsLock.unlock();
+            }
+            count("rejected");
+            throw e;
+        }
+        log.info("Queued {} store job {} for PR: {}", job.getType(), job.getJobId(), job.getPrId());
+        return job;
+    }
+
+    /**
+     * Takes a job's payload out of the byte budget; a job larger than the budget fits only when no other job holds any
+     */
+    private boolean reserve(long payloadBytes) {
+        while (true) {
+            long current = queuedBytes.get();
+            if (current > 0 && current + payloadBytes > maxQueuedBytes) {
+                return false;
+            }
+            if (queuedBytes.compareAndSet(current, current + payloadBytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Size of a summary's payload, as serialized for the upload
+     */
+    private long summaryBytes(SummaryStoreRequest request) {
+        try {
+            return objectMapper.writeValueAsBytes(request.getContent()).length;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Summary data cannot be serialized: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drops the oldest finished jobs beyond the tracked limit
+     */
+    private void trim() {
+        Iterator<StoreJob> eldest = jobs.values().iterator();
+        while (jobs.size() > trackedJobs && eldest.hasNext()) {
+            StoreJob job = eldest.next();
+            if (job.getStatus() == StoreJob.Status.SUCCEEDED || job.getStatus() == StoreJob.Status.FAILED) {
+                eldest.remove();
+            }
+        }
+    }
+
+    double queueLagSeconds() {
+        Runnable oldest = storeJobExecutor.getQueue().peek();
+        if (!(oldest instanceof JobTask)) {
+            return 0;
+        }
+        return (System.nanoTime() - ((JobTask) oldest).queuedAt) / 1e9;
+    }
+
+    private void count(String outcome) {
+        if (meterRegistry != null) {
+            Counter.builder("storage.jobs.completed")
+                .tag("outcome", outcome)
+                .description("Store jobs by outcome")
+                .register(meterRegistry)
+                .increment();
+        }
+    }
+
+    private final class JobTask implements Runnable {
+        private final StoreJob job;
+        private final long payloadBytes;
+        private final Supplier<String> store;
+        private final long queuedAt = System.nanoTime();
+
+        private JobTask(StoreJob job, long payloadBytes, Supplier<String> store) {
+            this.job = job;
+            this.payloadBytes = payloadBytes;
+            this.store = store;
+        }
+
+        @Override
+        public void run() {
+            long started = System.nanoTime();
+            if (waitTimer != null) {
+                waitTimer.record(started - queuedAt, TimeUnit.NANOSECONDS);
+            }
+            job.setStartedAt(Instant.now().toString());
+            job.setStatus(StoreJob.Status.RUNNING);
+            try {
+                job.setS3Key(store.get());
+                job.setFinishedAt(Instant.now().toString());
+                // Counted before the status is published, so a poller that sees it finished also sees the count
+                count("succeeded");
+                job.setStatus(StoreJob.Status.SUCCEEDED);
+            } catch (Throwable e) {
+                // Errors fail the job too, so it is never left RUNNING, but still reach the worker thread
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                job.setError(e == cause ? e.getMessage() : e.getMessage() + ": " + cause.getMessage());
+                job.setFinishedAt(Instant.now().toString());
+                count("failed");
+                job.setStatus(StoreJob.Status.FAILED);
+                log.warn("Store job {} for PR: {} failed: {}", job.getJobId(), job.getPrId(), job.getError());
+                if (e instanceof Error) {
+                    throw (Error) e;
+                }
+            } finally {
+                queuedBytes.addAndGet(-payloadBytes);
+                if (durationTimer != null) {
+                    durationTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores a test-case file from a streamed request body, without holding the test cases in memory.
+ *
+ * The body has the same shape as for /store/{prId} and is read with a {@link StreamingJsonReader}.
+ * The file name is checked as soon as it is read, so a bad request fails before any upload. It
+ * must come before testCases, as it does when CodeStoreRequest is serialized. testCases is then
+ * unescaped and re-encoded as it is read, into the same bytes that {@link S3StorageService#storeCodeData}
+ * would store, and uploaded in parts of {@code storage.ingest.part-bytes}. Memory per upload is
+ * one part, whatever the size of the file.
+ *
+ * A file that fits in one part is handed to {@link S3StorageService#storeCodeData}, so it gets
+ * deduplication, shared blobs and versioning as usual. A larger file is uploaded with a multipart
+ * upload that is completed only once the whole body has been read and validated, and is skipped if
+ * identical content is already stored. Larger files are always stored inline, and no revision is
+ * recorded for them, since both need the whole body at once.
+ *
+ * With {@code storage.raw-files.enabled}, the unescaped test cases are uploaded as the raw text
+ * object instead, and the JSON file referencing it is written once the upload is complete.
+ */
+@Service
+@Slf4j
+public class StreamingCodeStoreService {
+
+    /**
+     * S3's smallest part size, except for the last part
+     */
+    static final int MIN_PART_BYTES = 5 * 1024 * 1024;
+
+    @Autowired
+    private AmazonS3 amazonS3;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private S3StorageService s3StorageService;
+
+    @Autowired
+    private TestCaseCache testCaseCache;
+
+    @Value("${storage.ingest.part-bytes:8388608}")
+    private int partBytes;
+
+    @Value("${storage.dedup.enabled:true}")
+    private boolean dedupEnabled;
+
+    @Value("${storage.versioning.enabled:false}")
+    private boolean versioningEnabled;
+
+    @Value("${storage.cache.enabled:false}")
+    private boolean cacheEnabled;
+
+    @Value("${storage.raw-files.enabled:false}")
+    private boolean rawFilesEnabled;
+
+    @PostConstruct
+    void init() {
+        if (partBytes < MIN_PART_BYTES) {
+            log.warn("storage.ingest.part-bytes {} is below the S3 minimum part size; using {}", partBytes, MIN_PART_BYTES);
+            partBytes = MIN_PART_BYTES;
+        }
+    }
+
+    /**
+     * Stores a test-case file read from a JSON body: {"prId": ..., "content": {"fileName": ..., "testCases": ...}}
+     *
+     * @param prId Pull Request ID; a prId in the body must match it and come before content
+     * @param body The request body
+     * @return PR ID, file name, S3 key and stored size
+     * @throws IllegalArgumentException if the body is malformed or invalid
+     */
+    public Map<String, Object> storeCodeData(String prId, InputStream body) {
+        if (prId == null || prId.trim().isEmpty()) {
+            throw new IllegalArgumentException("PR_ID cannot be empty");
+        }
+        StreamingJsonReader json = new StreamingJsonReader(new InputStreamReader(body, StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT)));
+        MultipartUploadStream upload = null;
+        try {
+            if (json.nextToken() != StreamingJsonReader.Token.START_OBJECT) {
+                throw new IllegalArgumentException("Request body must be a JSON object");
+            }
+            String fileName = null;
+            StreamingJsonReader.Token token;
+            while ((token = json.nextToken()) == StreamingJsonReader.Token.FIELD_NAME) {
+                String field = json.fieldName();
+                token = json.nextToken();
+                if ("prId".equals(field) && token == StreamingJsonReader.Token.STRING) {
+                    String bodyPrId = json.readString(StreamingJsonReader.MAX_NAME_LENGTH);
+                    if (fileName != null) {
+                        throw new IllegalArgumentException("prId must come before content");
+                    }
+                    if (!bodyPrId.trim().isEmpty() && !bodyPrId.equals(prId)) {
+                        throw new IllegalArgumentException("prId in the body does not match the path: " + bodyPrId);
+                    }
+                } else if ("content".equals(field) && token == StreamingJsonReader.Token.START_OBJECT && fileName == null) {
+                    while ((token = json.nextToken()) == StreamingJsonReader.Token.FIELD_NAME) {
+                        String contentField = json.fieldName();
+                        token = json.nextToken();
+                        if ("fileName".equals(contentField) && token == StreamingJsonReader.Token.STRING && upload == null) {
+                            fileName = validateFileName(prId, json.readString(StreamingJsonReader.MAX_NAME_LENGTH));
+                        } else if ("testCases".equals(contentField) && token == StreamingJsonReader.Token.STRING && upload == null) {
+                            if (fileName == null) {
+                                throw new IllegalArgumentException("content.fileName must come before content.testCases");
+                            }
+                            upload = write(prId, fileName, json);
+                        } else {
+                            json.skipValue(token);
+                        }
+                    }
+                } else {
+                    json.skipValue(token);
+                }
+            }
+            if (token != StreamingJsonReader.Token.END_OBJECT || json.nextToken() != StreamingJsonReader.Token.END) {
+                throw new IllegalArgumentException("Request body must be a single JSON object");
+            }
+            if (upload == null) {
+                throw new IllegalArgumentException("Filename and test cases are required");
+            }
+
+            String s3Key;
+            if (!upload.isMultipart()) {
+                CodeStoreRequest.Content content = rawFilesEnabled
+                    ? new CodeStoreRequest.Content(fileName, new String(upload.bufferedBytes(), StandardCharsets.UTF_8))
+                    : objectMapper.readValue(upload.bufferedBytes(), CodeStoreRequest.Content.class);
+                s3Key = s3StorageService.storeCodeData(prId, new CodeStoreRequest(prId, content));
+            } else if (rawFilesEnabled) {
+                s3Key = completeRawMultipart(prId, fileName, upload);
+            } else {
+                s3Key = completeMultipart(prId, fileName, upload);
+            }
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("prId", prId);
+            result.put("fileName", fileName);
+            result.put("s3Key", s3Key);
+            result.put("size", upload.size());
+            return result;
+        } catch (IllegalArgumentException e) {
+            abort(upload);
+            throw e;
+        } catch (CharacterCodingException e) {
+            abort(upload);
+            throw new IllegalArgumentException("Request body is not valid UTF-8");
+        } catch (Exception e) {
+            abort(upload);
+            log.error("Error storing streamed code data for PR: {}", prId, e);
+            throw new RuntimeException("Failed to store code data in S3", e);
+        }
+    }
+
+    private static String validateFileName(String prId, String fileName) {
+        if (fileName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Filename and test cases are required");
+        }
+        if (S3StorageService.codeFileKey(prId, fileName).getBytes(StandardCharsets.UTF_8).length > 1024) {
+            throw new IllegalArgumentException("Filename is too long for an S3 key");
+        }
+        return fileName;
+    }
+
+    /**
+     * Writes the stored JSON, {"fileName": ..., "testCases": ...}, streaming testCases from the request,
+     * or only the test cases when they are stored as a raw text object
+     */
+    private MultipartUploadStream write(String prId, String fileName, StreamingJsonReader json) throws IOException {
+        if (rawFilesEnabled) {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType(S3StorageService.RAW_FILE_CONTENT_TYPE);
+            MultipartUploadStream upload = new MultipartUploadStream(amazonS3, bucketName,
+                S3StorageService.rawFileKey(prId, fileName), metadata, partBytes);
+            try (Writer writer = new OutputStreamWriter(upload, StandardCharsets.UTF_8)) {
+                json.stringValue().transferTo(writer);
+                return upload;
+            } catch (IOException | RuntimeException e) {
+                upload.abort();
+                throw e;
+            }
+        }
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("application/json");
+        MultipartUploadStream upload = new MultipartUploadStream(amazonS3, bucketName,
+            S3StorageService.codeFileKey(prId, fileName), metadata, partBytes);
+        try {
+            // A Writer-based generator escapes exactly as ObjectMapper.writeValueAsString does
+            Writer writer = new OutputStreamWriter(upload, StandardCharsets.UTF_8);
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeStringField("fileName", fileName);
+            generator.writeFieldName("testCases");
+            generator.writeString(json.stringValue(), -1);
+            generator.writeEndObject();
+            generator.close();
+            writer.flush();
+            return upload;
+        } catch (IOException | RuntimeException e) {
+            upload.abort();
+            throw e;
+        }
+    }
+
+    private String completeMultipart(String prId, String fileName, MultipartUploadStream upload) {
+        String s3Key = S3StorageService.codeFileKey(prId, fileName);
+        String contentHash = upload.sha256Hex();
+        ObjectMetadata existing = headObject(s3Key);
+        if (dedupEnabled && existing != null
+                && contentHash.equals(existing.getUserMetaDataOf(S3StorageService.CONTENT_HASH_METADATA))) {
+            upload.abort();
+            log.info("Skipped storing unchanged streamed code data for PR: {}, file: {}, S3 key: {}", prId, fileName, s3Key);
+            return s3Key;
+        }
+
+        upload.complete();
+        if (dedupEnabled) {
+            // The hash is only known once the parts are sent; record it with a server-side copy
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType("application/json");
+            metadata.addUserMetadata(S3StorageService.CONTENT_HASH_METADATA, contentHash);
+            amazonS3.copyObject(new CopyObjectRequest(bucketName, s3Key, bucketName, s3Key).withNewObjectMetadata(metadata));
+        }
+        if (cacheEnabled) {
+            testCaseCache.invalidate(prId);
+        }
+        // The previous version may have referenced a shared body or a raw text object that is no longer used
+        s3StorageService.releaseReplaced(existing, s3Key, null);
+        if (versioningEnabled) {
+            log.info("No revision recorded for streamed file {} of PR: {} ({} bytes)", fileName, prId, upload.size());
+        }
+        s3StorageService.recordCatalogWrite(prId);
+        log.info("Successfully stored streamed code data for PR: {}, file: {}, S3 key: {} ({} bytes)",
+            prId, fileName, s3Key, upload.size());
+        return s3Key;
+    }
+
+    private String completeRawMultipart(String prId, String fileName, MultipartUploadStream upload) throws IOException {
+        String rawKey = S3StorageService.rawFileKey(prId, fileName);
+        String bodyHash = upload.sha256Hex();
+        ObjectMetadata existing = dedupEnabled ? headObject(rawKey) : null;
+        if (existing != null && bodyHash.equals(existing.getUserMetaDataOf(S3StorageService.CONTENT_HASH_METADATA))) {
+            upload.abort();
+            log.info("Skipped storing unchanged streamed raw file for PR: {}, file: {}, S3 key: {}", prId, fileName, rawKey);
+        } else {
+            upload.complete();
+            // The referencing file records the hash as well, but it is kept on the object for deduplication
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType(S3StorageService.RAW_FILE_CONTENT_TYPE);
+            metadata.addUserMetadata(S3StorageService.CONTENT_HASH_METADATA, bodyHash);
+            amazonS3.copyObject(new CopyObjectRequest(bucketName, rawKey, bucketName, rawKey).withNewObjectMetadata(metadata));
+            if (versioningEnabled) {
+                log.info("No revision recorded for streamed file {} of PR: {} ({} bytes)", fileName, prId, upload.size());
+            }
+        }
+        return s3StorageService.storeRawFileReference(prId, fileName, bodyHash);
+    }
+
+    private ObjectMetadata headObject(String s3Key) {
+        try {
+            return amazonS3.getObjectMetadata(bucketName, s3Key);
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static void abort(MultipartUploadStream upload) {
+        if (upload != null) {
+            try {
+                upload.abort();
+            } catch (RuntimeException e) {
+                log.warn("Could not abort multipart upload: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.tal.risk.analyser.service;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pull tokenizer for JSON that never holds a whole string value in memory unless asked to.
+ *
+ * After {@link #nextToken()} returns {@link Token#STRING}, the value is still unread: it can be
+ * read with {@link #readString(int)}, consumed in chunks through {@link #stringValue()}, or left
+ * alone, in which case the next call to {@link #nextToken()} skips it. Field names are always
+ * read whole, up to {@link #MAX_NAME_LENGTH} characters. Numbers and literals are checked for
+ * their shape only, since the callers skip them.
+ *
+ * Malformed input is reported as an {@link IllegalArgumentException} with the character offset.
+ */
+final class StreamingJsonReader {
+
+    enum Token { START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, FIELD_NAME, STRING, NUMBER, TRUE, FALSE, NULL, END }
+
+    static final int MAX_NAME_LENGTH = 1024;
+
+    private static final int MAX_DEPTH = 64;
+
+    /**
+     * What the next non-whitespace character may be
+     */
+    private enum Expect { VALUE, FIRST_ELEMENT, FIRST_FIELD, FIELD, COLON, SEPARATOR, DONE }
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private long offset;
+
+    private final boolean[] objects = new boolean[MAX_DEPTH];
+    private int depth;
+    private Expect expect = Expect.VALUE;
+
+    private boolean stringPending;
+    private String fieldName;
+
+    StreamingJsonReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Advances to the next token, skipping the current string value if it was not read
+     */
+    Token nextToken() throws IOException {
+        if (stringPending) {
+            while (readStringChar() >= 0) {
+                // Skip the rest of the string
+            }
+        }
+        while (true) {
+            int c = nextNonWhitespace();
+            switch (expect) {
+                case COLON:
+                    if (c != ':') {
+                        throw syntax("':'");
+                    }
+                    expect = Expect.VALUE;
+                    continue;
+                case SEPARATOR:
+                    if (depth == 0) {
+                        if (c != -1) {
+                            throw syntax("the end of the document");
+                        }
+                        expect = Expect.DONE;
+                        return Token.END;
+                    }
+                    if (c == ',') {
+                        expect = objects[depth - 1] ? Expect.FIELD : Expect.VALUE;
+                        continue;
+                    }
+                    return close(c);
+                case FIRST_FIELD:
+                    if (c == '}') {
+                        return close(c);
+                    }
+                    return fieldName(c);
+                case FIELD:
+                    return fieldName(c);
+                case FIRST_ELEMENT:
+                    if (c == ']') {
+                        return close(c);
+                    }
+                    return value(c);
+                case VALUE:
+                    return value(c);
+                default:
+                    return Token.END;
+            }
+        }
+    }
+
+    /**
+     * The name read by the last {@link Token#FIELD_NAME}
+     */
+    String fieldName() {
+        return fieldName;
+    }
+
+    /**
+     * Reads the pending string value whole
+     *
+     * @throws IllegalArgumentException if it is longer than maxLength characters
+     */
+    String readString(int maxLength) throws IOException {
+        requirePendingString();
+        StringBuilder value = new StringBuilder();
+        int c;
+        while ((c = readStringChar()) >= 0) {
+            if (value.length() == maxLength) {
+                throw new IllegalArgumentException("String value at offset " + offset + " is longer than " + maxLength + " characters");
+            }
+            value.append((char) c);
+        }
+        return value.toString();
+    }
+
+    /**
+     * The pending string value as a reader of its unescaped characters, read from the input as
+     * the reader is read
+     */
+    Reader stringValue() {
+        requirePendingString();
+        return new Reader() {
+            @Override
+            public int read(char[] chars, int off, int len) throws IOException {
+                if (!stringPending) {
+                    return -1;
+                }
+                int count = 0;
+                while (count < len) {
+                    int c = readStringChar();
+                    if (c < 0) {
+                        break;
+                    }
+                    chars[off + count++] = (char) c;
+                }
+                return count == 0 && !stringPending ? -1 : count;
+            }
+
+            @Override
+            public void close() {
+                // The underlying input belongs to the tokenizer
+            }
+        };
+    }
+
+    /**
+     * Skips the value of the current token: the rest of a string, or a whole object or array
+     */
+    void skipValue(Token current) throws IOException {
+        if (current == Token.START_OBJECT || current == Token.START_ARRAY) {
+            int target = depth - 1;
+            while (depth > target) {
+                if (nextToken() == Token.END) {
+                    throw syntax("a closing bracket");
+                }
+            }
+        } else if (stringPending) {
+            while (readStringChar() >= 0) {
+                // Skip the rest of the string
+            }
+        }
+    }
+
+    private Token value(int c) throws IOException {
+        if (c == '{' || c == '[') {
+            if (depth == MAX_DEPTH) {
+                throw new IllegalArgumentException("JSON is nested deeper than " + MAX_DEPTH + " levels");
+            }
+            objects[depth++] = c == '{';
+            expect = c == '{' ? Expect.FIRST_FIELD : Expect.FIRST_ELEMENT;
+            return c == '{' ? Token.START_OBJECT : Token.START_ARRAY;
+        }
+        expect = Expect.SEPARATOR;
+        if (c == '"') {
+            stringPending = true;
+            return Token.STRING;
+        }
+        if (c == 't') {
+            literal("rue");
+            return Token.TRUE;
+        }
+        if (c == 'f') {
+            literal("alse");
+            return Token.FALSE;
+        }
+        if (c == 'n') {
+            literal("ull");
+            return Token.NULL;
+        }
+        if (c == '-' || (c >= '0' && c <= '9')) {
+            while (true) {
+                int next = peek();
+                if ((next >= '0' && next <= '9') || next == '.' || next == 'e' || next == 'E' || next == '+' || next == '-') {
+                    read();
+                } else {
+                    return Token.NUMBER;
+                }
+            }
+        }
+        throw syntax("a value");
+    }
+
+    private Token fieldName(int c) throws IOException {
+        if (c != '"') {
+            throw syntax("a field name");
+        }
+        stringPending = true;
+        fieldName = readString(MAX_NAME_LENGTH);
+        expect = Expect.COLON;
+        return Token.FIELD_NAME;
+    }
+
+    private Token close(int c) {
+        boolean object = objects[depth - 1];
+        if (c != (object ? '}' : ']')) {
+            throw syntax(object ? "',' or '}'" : "',' or ']'");
+        }
+        depth--;
+        expect = Expect.SEPARATOR;
+        return object ? Token.END_OBJECT : Token.END_ARRAY;
+    }
+
+    private void literal(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) {
+                throw syntax("a literal");
+            }
+        }
+    }
+
+    /**
+     * Next unescaped character of the pending string, or -1 at its closing quote
+     */
+    private int readStringChar() throws IOException {
+        int c = read();
+        if (c == '"') {
+            stringPending = false;
+            return -1;
+        }
+        if (c == '\\') {
+            int escaped = read();
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    return escaped;
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'u':
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0) {
+                            throw syntax("four hex digits");
+                        }
+                        value = value << 4 | digit;
+                    }
+                    return value;
+                default:
+                    throw syntax("an escape sequence");
+            }
+        }
+        if (c == -1) {
+            throw syntax("the end of the string");
+        }
+        if (c < 0x20) {
+            throw syntax("an escaped control character");
+        }
+        return c;
+    }
+
+    private void requirePendingString() {
+        if (!stringPending) {
+            throw new IllegalStateException("The current token is not an unread string");
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        offset++;
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        int count = in.read(buffer, 0, buffer.length);
+        if (count <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        return true;
+    }
+
+    private IllegalArgumentException syntax(String expected) {
+        return new IllegalArgumentException("Malformed JSON at offset " + offset + ": expected " + expected);
+    }
+}
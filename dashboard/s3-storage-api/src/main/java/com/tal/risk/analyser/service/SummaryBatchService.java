@@ -0,0 +1,176 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the summaries of many PRs in a single response.
+ *
+ * Summaries are fetched concurrently, at most {@code storage.summary-batch.parallelism} at a time
+ * so one batch cannot take over the S3 connection pool, and through the cache when it is enabled.
+ * They are fetched on their own executor rather than the S3 fan-out executor, since reading a
+ * sectioned summary fans out on that executor and waits for it.
+ * The response is written as they arrive, in completion order, so a slow PR does not hold back
+ * the others. A PR that cannot be read is reported in {@code errors} and does not fail the batch.
+ */
+@Service
+@Slf4j
+public class SummaryBatchService {
+
+    @Autowired
+    private S3StorageService s3StorageService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("summaryBatchExecutor")
+    private ExecutorService summaryBatchExecutor;
+
+    @Value("${storage.summary-batch.max-prs:100}")
+    private int maxPrs;
+
+    @Value("${storage.summary-batch.parallelism:16}")
+    private int parallelism;
+
+    /**
+     * Starts fetching the summaries
+     *
+     * @param prIds Pull Request IDs
+     * @return The batch, whose summaries are still being fetched
+     * @throws IllegalArgumentException if no PR ID, an empty one or more than storage.summary-batch.max-prs are given
+     */
+    public SummaryBatch open(Collection<String> prIds) {
+        if (prIds == null || prIds.isEmpty()) {
+            throw new IllegalArgumentException("prIds cannot be empty");
+        }
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(prIds));
+        for (String prId : ids) {
+            if (prId == null || prId.trim().isEmpty()) {
+                throw new IllegalArgumentException("PR_ID cannot be empty");
+            }
+        }
+        if (ids.size() > maxPrs) {
+            throw new IllegalArgumentException("At most " + maxPrs + " PRs can be retrieved at once");
+        }
+
+        SummaryBatch batch = new SummaryBatch(ids);
+        for (int i = 0; i < Math.min(parallelism, ids.size()); i++) {
+            fetchNext(batch);
+        }
+        return batch;
+    }
+
+    /**
+     * Starts the next pending fetch of a batch; each completed fetch starts the one after it
+     */
+    private void fetchNext(SummaryBatch batch) {
+        int index = batch.next.getAndIncrement();
+        if (index >= batch.prIds.size() || batch.closed) {
+            return;
+        }
+        String prId = batch.prIds.get(index);
+        CompletableFuture<Map<String, Object>> summary =
+            CompletableFuture.supplyAsync(() -> s3StorageService.getSummaryData(prId), summaryBatchExecutor);
+        batch.fetches.add(summary);
+        summary.whenComplete((summaryData, error) -> {
+            batch.completed.add(new SummaryResult(prId, summaryData, error));
+            fetchNext(batch);
+        });
+    }
+
+    /**
+     * Writes the batch as an {@code ApiResponse} JSON document, flushing after each summary
+     */
+    public void write(SummaryBatch batch, OutputStream out) throws IOException {
+        Map<String, String> errors = new LinkedHashMap<>();
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("status", "success");
+            json.writeStringField("message", "Summary data retrieved successfully");
+            json.writeObjectFieldStart("data");
+
+            int count = 0;
+            json.writeArrayFieldStart("results");
+            for (int i = 0; i < batch.prIds.size(); i++) {
+                SummaryResult result = batch.completed.take();
+                if (result.error != null) {
+                    Throwable cause = result.error instanceof CompletionException && result.error.getCause() != null
+                        ? result.error.getCause() : result.error;
+                    log.error("Error fetching summary for batch, PR: {}", result.prId, cause);
+                    errors.put(result.prId, cause.getMessage());
+                    continue;
+                }
+                json.writeStartObject();
+                json.writeStringField("prId", result.prId);
+                json.writeObjectField("summaryData", result.summaryData);
+                json.writeEndObject();
+                json.flush();
+                count++;
+            }
+            json.writeEndArray();
+            json.writeNumberField("count", count);
+
+            if (!errors.isEmpty()) {
+                json.writeObjectField("errors", errors);
+            }
+            json.writeEndObject();
+            json.writeEndObject();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the summaries", e);
+        } finally {
+            // Nothing left to wait for if the client went away
+            batch.closed = true;
+            batch.fetches.forEach(fetch -> fetch.cancel(true));
+        }
+    }
+
+    /**
+     * The summaries of several PRs, being fetched
+     */
+    public static final class SummaryBatch {
+        private final List<String> prIds;
+        private final AtomicInteger next = new AtomicInteger();
+        private final List<CompletableFuture<Map<String, Object>>> fetches = new CopyOnWriteArrayList<>();
+        private final BlockingQueue<SummaryResult> completed = new LinkedBlockingQueue<>();
+        private volatile boolean closed;
+
+        private SummaryBatch(List<String> prIds) {
+            this.prIds = prIds;
+        }
+    }
+
+    private static final class SummaryResult {
+        private final String prId;
+        private final Map<String, Object> summaryData;
+        private final Throwable error;
+
+        private SummaryResult(String prId, Map<String, Object> summaryData, Throwable error) {
+            this.prId = prId;
+            this.summaryData = summaryData;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.tal.risk.analyser.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory cache of summary documents, validated by ETag.
+ *
+ * Documents are kept per S3 key together with the ETag they were read at. Every read revalidates
+ * the cached copy with a conditional GET, and the document is only downloaded again if it
+ * changed. Entries are evicted least recently used first to stay within
+ * {@code storage.cache.summary.max-bytes}.
+ */
+@Service
+public class SummaryCache {
+
+    @Value("${storage.cache.summary.max-bytes:8388608}")
+    private long maxBytes;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Documents by S3 key, least recently used first
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long sizeBytes;
+
+    /**
+     * Guards entries and sizeBytes; a lock rather than a monitor, so virtual threads are not pinned
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        if (meterRegistry == null) {
+            return;
+        }
+        FunctionCounter.builder("storage.cache.summary.requests", hits, AtomicLong::get)
+            .tag("result", "hit").description("Summary reads served from the cache").register(meterRegistry);
+        FunctionCounter.builder("storage.cache.summary.requests", misses, AtomicLong::get)
+            .tag("result", "miss").description("Summary reads downloaded from S3").register(meterRegistry);
+        Gauge.builder("storage.cache.summary.size", this, SummaryCache::sizeBytes)
+            .baseUnit("bytes").description("Estimated size of the cached summaries").register(meterRegistry);
+    }
+
+    /**
+     * ETag of the cached copy of a summary, to revalidate it with; null if it is not cached
+     */
+    public String cachedETag(String s3Key) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(s3Key);
+            return entry != null ? entry.eTag : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The cached summary, if it was read at the given ETag
+     *
+     * @return The document, or null if it is not cached at that ETag
+     */
+    public String get(String s3Key, String eTag) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(s3Key);
+            if (entry != null && entry.eTag.equals(eTag)) {
+                hits.incrementAndGet();
+                return entry.json;
+            }
+        } finally {
+            lock.unlock();
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches a summary as read at an ETag, replacing any older copy
+     */
+    public void put(String s3Key, String eTag, String json) {
+        if (eTag == null) {
+            return;
+        }
+        Entry entry = new Entry(eTag, json);
+        lock.lock();
+        try {
+            Entry previous = entries.put(s3Key, entry);
+            if (previous != null) {
+                sizeBytes -= previous.sizeBytes();
+            }
+            sizeBytes += entry.sizeBytes();
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (sizeBytes > maxBytes && eldest.hasNext()) {
+                sizeBytes -= eldest.next().getValue().sizeBytes();
+                eldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads served from the cache so far
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Estimated heap size of the cached documents
+     */
+    public long sizeBytes() {
+        lock.lock();
+        try {
+            return sizeBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Entry {
+        private final String eTag;
+        private final String json;
+
+        private Entry(String eTag, String json) {
+            this.eTag = eTag;
+            this.json = json;
+        }
+
+        /**
+         * Strings take up to two bytes per character on the heap
+         */
+        private long sizeBytes() {
+            return 2L * (eTag.length() + json.length());
+        }
+    }
+}
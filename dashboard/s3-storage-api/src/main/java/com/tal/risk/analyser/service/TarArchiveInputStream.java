@@ -0,0 +1,199 @@
+package com.tal.risk.analyser.service;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal streaming tar reader, the counterpart of {@link TarArchiveOutputStream}. Understands
+ * ustar name prefixes and PAX "path" records; entries other than regular files are skipped.
+ */
+final class TarArchiveInputStream extends FilterInputStream {
+
+    private static final int BLOCK = 512;
+
+    private long entryRemaining;
+    private long entryPadding;
+
+    TarArchiveInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Advances to the next regular-file entry, skipping whatever is left of the current one
+     *
+     * @return The entry name, or null at the end of the archive
+     */
+    String nextEntry() throws IOException {
+        skipFully(entryRemaining + entryPadding);
+        entryRemaining = 0;
+        entryPadding = 0;
+
+        String paxPath = null;
+        byte[] header = new byte[BLOCK];
+        while (true) {
+            if (!readBlock(header) || isZero(header)) {
+                return null;
+            }
+            if (!verifyChecksum(header)) {
+                throw new IOException("Invalid tar header checksum");
+            }
+
+            long size = parseOctal(header, 124, 12);
+            byte type = header[156];
+            if (type == 'x') {
+                paxPath = readPaxPath(size);
+                continue;
+            }
+            if (type != '0' && type != 0) {
+                skipFully(size + padding(size));
+                paxPath = null;
+                continue;
+            }
+
+            String name = paxPath;
+            if (name == null) {
+                name = string(header, 0, 100);
+                String prefix = string(header, 345, 155);
+                if (!prefix.isEmpty()) {
+                    name = prefix + "/" + name;
+                }
+            }
+            entryRemaining = size;
+            entryPadding = padding(size);
+            return name;
+        }
+    }
+
+    /**
+     * Size of the current entry in bytes
+     */
+    long entrySize() {
+        return entryRemaining;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (entryRemaining <= 0) {
+            return -1;
+        }
+        int read = in.read(b, off, (int) Math.min(len, entryRemaining));
+        if (read < 0) {
+            throw new EOFException("Truncated tar entry");
+        }
+        entryRemaining -= read;
+        return read;
+    }
+
+    private String readPaxPath(long size) throws IOException {
+        byte[] records = in.readNBytes((int) size);
+        if (records.length < size) {
+            throw new EOFException("Truncated tar extended header");
+        }
+        skipFully(padding(size));
+
+        String path = null;
+        int position = 0;
+        while (position < records.length) {
+            int space = indexOf(records, (byte) ' ', position);
+            if (space < 0) {
+                break;
+            }
+            int length = Integer.parseInt(new String(records, position, space - position, StandardCharsets.US_ASCII));
+            String record = new String(records, space + 1, length - (space - position) - 2, StandardCharsets.UTF_8);
+            if (record.startsWith("path=")) {
+                path = record.substring("path=".length());
+            }
+            position += length;
+        }
+        return path;
+    }
+
+    private boolean readBlock(byte[] block) throws IOException {
+        int read = in.readNBytes(block, 0, BLOCK);
+        if (read == 0) {
+            return false;
+        }
+        if (read < BLOCK) {
+            throw new EOFException("Truncated tar header");
+        }
+        return true;
+    }
+
+    private void skipFully(long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Truncated tar archive");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static long padding(long size) {
+        long remainder = size % BLOCK;
+        return remainder == 0 ? 0 : BLOCK - remainder;
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean verifyChecksum(byte[] header) {
+        long expected = parseOctal(header, 148, 8);
+        long actual = 0;
+        for (int i = 0; i < header.length; i++) {
+            actual += (i >= 148 && i < 156) ? ' ' : header[i] & 0xFF;
+        }
+        return expected == actual;
+    }
+
+    private static long parseOctal(byte[] header, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+            if (b == 0 || b == ' ') {
+                if (value != 0) {
+                    break;
+                }
+                continue;
+            }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+
+    private static String string(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,164 @@
+package com.tal.risk.analyser.service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal POSIX (ustar) tar writer for regular files. Names that do not fit the ustar
+ * name/prefix fields are carried in a PAX extended header.
+ */
+final class TarArchiveOutputStream extends FilterOutputStream {
+
+    private static final int BLOCK = 512;
+
+    private long entryRemaining;
+    private long entrySize;
+
+    TarArchiveOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Starts a regular-file entry; exactly {@code size} bytes must be written before the next entry
+     */
+    void putEntry(String name, long size, long modifiedMillis) throws IOException {
+        if (entryRemaining != 0) {
+            throw new IllegalStateException("Previous tar entry is incomplete");
+        }
+        long mtime = modifiedMillis / 1000;
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+        String headerName = name;
+        String headerPrefix = "";
+        if (nameBytes.length > 100) {
+            int split = splitPoint(name);
+            if (split > 0) {
+                headerPrefix = name.substring(0, split);
+                headerName = name.substring(split + 1);
+            } else {
+                byte[] record = paxRecord("path", name);
+                writeHeader("PaxHeaders/" + Math.abs(name.hashCode()), "", record.length, mtime, (byte) 'x');
+                out.write(record);
+                pad(record.length);
+                headerName = asciiTail(name, 100);
+            }
+        }
+
+        writeHeader(headerName, headerPrefix, size, mtime, (byte) '0');
+        entrySize = size;
+        entryRemaining = size;
+    }
+
+    /**
+     * Pads the current entry to the block boundary
+     */
+    void closeEntry() throws IOException {
+        if (entryRemaining != 0) {
+            throw new IllegalStateException("Tar entry is missing " + entryRemaining + " bytes");
+        }
+        pad(entrySize);
+        entrySize = 0;
+    }
+
+    /**
+     * Writes the end-of-archive marker (two zero blocks); the underlying stream is left open
+     */
+    void finish() throws IOException {
+        out.write(new byte[BLOCK * 2]);
+        out.flush();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len > entryRemaining) {
+            throw new IllegalStateException("Write exceeds the declared tar entry size");
+        }
+        out.write(b, off, len);
+        entryRemaining -= len;
+    }
+
+    private void writeHeader(String name, String prefix, long size, long mtime, byte type) throws IOException {
+        byte[] header = new byte[BLOCK];
+        putString(header, 0, 100, name);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, mtime);
+        header[156] = type;
+        putString(header, 257, 6, "ustar");
+        header[263] = '0';
+        header[264] = '0';
+        putString(header, 345, 155, prefix);
+
+        // The checksum is computed with its own field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        putOctal(header, 148, 7, checksum);
+        out.write(header);
+    }
+
+    private void pad(long written) throws IOException {
+        int remainder = (int) (written % BLOCK);
+        if (remainder != 0) {
+            out.write(new byte[BLOCK - remainder]);
+        }
+    }
+
+    /**
+     * Finds a '/' such that the name splits into a prefix of at most 155 bytes and a name of at most 100
+     */
+    private static int splitPoint(String name) {
+        for (int i = name.indexOf('/'); i >= 0; i = name.indexOf('/', i + 1)) {
+            int prefixLength = name.substring(0, i).getBytes(StandardCharsets.UTF_8).length;
+            int nameLength = name.substring(i + 1).getBytes(StandardCharsets.UTF_8).length;
+            if (prefixLength <= 155 && nameLength <= 100 && nameLength > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] paxRecord(String key, String value) {
+        // Each record is "<length> <key>=<value>\n", where the length includes its own digits
+        String body = " " + key + "=" + value + "\n";
+        int bodyLength = body.getBytes(StandardCharsets.UTF_8).length;
+        int length = bodyLength + String.valueOf(bodyLength).length();
+        while (length != bodyLength + String.valueOf(length).length()) {
+            length = bodyLength + String.valueOf(length).length();
+        }
+        return (length + body).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String asciiTail(String name, int max) {
+        String ascii = name.replaceAll("[^\\x20-\\x7E]", "_");
+        return ascii.length() <= max ? ascii : ascii.substring(ascii.length() - max);
+    }
+
+    private static void putString(byte[] header, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length));
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        if (octal.length() > length - 1) {
+            throw new IllegalArgumentException("Value too large for tar header field: " + value);
+        }
+        String padded = "0".repeat(length - 1 - octal.length()) + octal;
+        putString(header, offset, length - 1, padded);
+        header[offset + length - 1] = 0;
+    }
+}
@@ -0,0 +1,473 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.tal.risk.analyser.model.CodeFileResponse;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory cache of test-case files, validated by ETag.
+ *
+ * File bodies are kept per S3 key together with the ETag they were read at, and are only served
+ * for that ETag. A listing of the PR's files, which carries the current ETags, is therefore enough
+ * to tell which cached bodies are still valid, and only changed files are downloaded again.
+ * Listings themselves are kept for {@code storage.cache.listing-ttl-ms} and dropped when this
+ * instance writes to the PR.
+ *
+ * With {@code storage.cache.off-heap.enabled}, bodies are kept in an {@link OffHeapSlabStore}
+ * instead of as heap strings, and hits can be written to a response without being decoded.
+ *
+ * With {@code storage.cache.disk.enabled}, every cached file is also written to a
+ * {@link DiskCacheStore} on local disk. It outlives restarts and in-memory evictions, and its
+ * entries are checked against the listing's ETags like any other. Disk hits are moved back into
+ * memory as they are read.
+ *
+ * Entries loaded by the prefetcher are tracked until they are either read (a prefetch hit) or
+ * evicted or replaced unread (wasted), and both outcomes are published as metrics.
+ */
+@Service
+@Slf4j
+public class TestCaseCache {
+
+    @Value("${storage.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${storage.cache.listing-ttl-ms:10000}")
+    private long listingTtlMillis;
+
+    @Value("${storage.cache.off-heap.enabled:false}")
+    private boolean offHeapEnabled;
+
+    @Value("${storage.cache.off-heap.max-bytes:268435456}")
+    private long offHeapMaxBytes;
+
+    @Value("${storage.cache.off-heap.slab-bytes:4194304}")
+    private int offHeapSlabBytes;
+
+    @Value("${storage.cache.disk.enabled:false}")
+    private boolean diskEnabled;
+
+    @Value("${storage.cache.disk.path:${java.io.tmpdir}/s3-storage-api-cache}")
+    private String diskPath;
+
+    @Value("${storage.cache.disk.max-bytes:1073741824}")
+    private long diskMaxBytes;
+
+    @Value("${storage.cache.disk.segment-bytes:67108864}")
+    private int diskSegmentBytes;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Off-heap body storage; null when bodies are kept on the heap
+     */
+    private OffHeapSlabStore offHeap;
+
+    /**
+     * Second tier on local disk; null when disabled or when it could not be opened
+     */
+    private DiskCacheStore disk;
+
+    /**
+     * Bodies by S3 key, least recently used first
+     */
+    private final LinkedHashMap<String, CachedFile> files = new LinkedHashMap<>(256, 0.75f, true);
+    private long sizeBytes;
+
+    /**
+     * Guards files and sizeBytes; a lock rather than a monitor, so virtual threads are not pinned
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final ConcurrentHashMap<String, Listing> listings = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong prefetchedFiles = new AtomicLong();
+    private final AtomicLong prefetchUsed = new AtomicLong();
+    private final AtomicLong prefetchWasted = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        if (offHeapEnabled) {
+            offHeap = new OffHeapSlabStore(offHeapMaxBytes, offHeapSlabBytes);
+            log.info("Caching test-case files off-heap in slabs of {} bytes, up to {} bytes", offHeapSlabBytes, offHeapMaxBytes);
+        }
+        if (diskEnabled) {
+            try {
+                disk = DiskCacheStore.open(Paths.get(diskPath), diskMaxBytes, diskSegmentBytes);
+                log.info("Caching test-case files on disk in {}, up to {} bytes; {} files already cached",
+                    diskPath, diskMaxBytes, disk.liveEntries());
+            } catch (IOException e) {
+                log.warn("Could not open the disk cache in {}, continuing without it: {}", diskPath, e.getMessage());
+            }
+        }
+        if (meterRegistry == null) {
+            return;
+        }
+        FunctionCounter.builder("storage.cache.requests", hits, AtomicLong::get)
+            .tag("result", "hit").description("Test-case file reads served from the cache").register(meterRegistry);
+        FunctionCounter.builder("storage.cache.requests", misses, AtomicLong::get)
+            .tag("result", "miss").description("Test-case file reads that went to S3").register(meterRegistry);
+        FunctionCounter.builder("storage.cache.evictions", this, cache -> cache.stats().evictions)
+            .description("Test-case files evicted to stay within storage.cache.max-bytes").register(meterRegistry);
+        Gauge.builder("storage.cache.size", this, TestCaseCache::sizeBytes)
+            .baseUnit("bytes").description("Estimated size of the cached test-case files").register(meterRegistry);
+        if (offHeap != null) {
+            Gauge.builder("storage.cache.off-heap.reserved", offHeap, OffHeapSlabStore::reservedBytes)
+                .baseUnit("bytes").description("Direct memory allocated for cache slabs").register(meterRegistry);
+            FunctionCounter.builder("storage.cache.off-heap.rejected", offHeap, OffHeapSlabStore::rejected)
+                .description("Files not cached because they exceed a slab or their slab was being read").register(meterRegistry);
+        }
+        if (disk != null) {
+            FunctionCounter.builder("storage.cache.disk.hits", diskHits, AtomicLong::get)
+                .description("Test-case file reads served from the disk cache").register(meterRegistry);
+            Gauge.builder("storage.cache.disk.size", disk, DiskCacheStore::liveBytes)
+                .baseUnit("bytes").description("Size of the test-case files cached on disk").register(meterRegistry);
+            FunctionCounter.builder("storage.cache.disk.evictions", disk, DiskCacheStore::evictions)
+                .description("Files dropped from the disk cache when its oldest segment was reused").register(meterRegistry);
+        }
+        FunctionCounter.builder("storage.prefetch.files", prefetchUsed, AtomicLong::get)
+            .tag("outcome", "used").description("Prefetched files read before leaving the cache").register(meterRegistry);
+        FunctionCounter.builder("storage.prefetch.files", this, cache -> cache.stats().prefetchWasted)
+            .tag("outcome", "wasted").description("Prefetched files evicted or replaced without being read").register(meterRegistry);
+        Gauge.builder("storage.prefetch.hit.ratio", this, cache -> cache.prefetchHitRatio())
+            .description("Share of resolved prefetched files that were read").register(meterRegistry);
+    }
+
+    /**
+     * Flushes the disk cache and writes its index, so the next start does not have to rebuild it
+     */
+    @PreDestroy
+    void close() {
+        if (disk != null) {
+            try {
+                disk.close();
+            } catch (IOException e) {
+                log.warn("Could not close the disk cache in {}: {}", diskPath, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns a cached listing of a PR's test-case files, if one is recent enough
+     *
+     * @return The listing, or null if it has to be read from S3
+     */
+    public List<S3ObjectSummary> getListing(String prId) {
+        Listing listing = listings.get(prId);
+        if (listing == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - listing.listedAt > listingTtlMillis) {
+            listings.remove(prId, listing);
+            return null;
+        }
+        return listing.objects;
+    }
+
+    /**
+     * Records the current listing of a PR's test-case files
+     */
+    public void putListing(String prId, List<S3ObjectSummary> objects) {
+        listings.put(prId, new Listing(Collections.unmodifiableList(objects), System.currentTimeMillis()));
+    }
+
+    /**
+     * Forgets the listing of a PR after one of its files changed. Cached bodies stay: they are
+     * only served for the ETag they were read at.
+     */
+    public void invalidate(String prId) {
+        listings.remove(prId);
+    }
+
+    /**
+     * Returns a cached file if it was read at the given ETag
+     *
+     * @return A copy of the cached file, or null on a miss
+     */
+    public CodeFileResponse get(String s3Key, String eTag) {
+        if (offHeap != null) {
+            try (CacheHit hit = acquire(s3Key, eTag)) {
+                return hit == null ? null : new CodeFileResponse(hit.fileName(), hit.testCases());
+            }
+        }
+        CachedFile cached;
+        lock.lock();
+        try {
+            cached = files.get(s3Key);
+            if (cached != null && cached.eTag.equals(eTag)) {
+                if (cached.prefetched && !cached.used) {
+                    prefetchUsed.incrementAndGet();
+                }
+                cached.used = true;
+            } else {
+                cached = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (cached == null) {
+            try (CacheHit hit = acquireFromDisk(s3Key, eTag)) {
+                if (hit == null) {
+                    misses.incrementAndGet();
+                    return null;
+                }
+                cached = new CachedFile(eTag, hit.fileName(), hit.testCases(), false);
+                putOnHeap(s3Key, cached);
+            }
+        }
+        hits.incrementAndGet();
+        return new CodeFileResponse(cached.fileName, cached.testCases);
+    }
+
+    /**
+     * Returns a file cached off-heap or on disk if it was read at the given ETag, pinned until the
+     * hit is closed. Files kept on the heap are not returned.
+     *
+     * @return The hit, or null on a miss
+     */
+    CacheHit acquire(String s3Key, String eTag) {
+        CacheHit hit = offHeap != null && eTag != null ? offHeap.acquire(s3Key, eTag) : null;
+        if (hit == null) {
+            DiskCacheStore.Hit diskHit = acquireFromDisk(s3Key, eTag);
+            if (diskHit != null && offHeap != null) {
+                offHeap.putQuoted(s3Key, eTag, diskHit.fileNameJson(), diskHit.testCasesJson(), false);
+            }
+            hit = diskHit;
+        }
+        if (hit == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (hit.isFirstUseOfPrefetch()) {
+            prefetchUsed.incrementAndGet();
+        }
+        hits.incrementAndGet();
+        return hit;
+    }
+
+    /**
+     * Whether hits can be streamed with {@link #acquire}, which needs bodies off-heap or on disk
+     */
+    public boolean isStreamable() {
+        return offHeap != null || disk != null;
+    }
+
+    /**
+     * Whether the file is cached at the given ETag; does not count as a read
+     */
+    public boolean contains(String s3Key, String eTag) {
+        if (eTag == null) {
+            return false;
+        }
+        if (disk != null && disk.contains(s3Key, eTag)) {
+            return true;
+        }
+        if (offHeap != null) {
+            return offHeap.contains(s3Key, eTag);
+        }
+        lock.lock();
+        try {
+            CachedFile cached = files.get(s3Key);
+            return cached != null && cached.eTag.equals(eTag);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The ETag a file is cached at, so it can be revalidated with a conditional GET; does not count as a read
+     *
+     * @return The ETag, or null if the file is not cached
+     */
+    public String cachedETag(String s3Key) {
+        if (offHeap != null) {
+            String eTag = offHeap.eTagOf(s3Key);
+            if (eTag != null) {
+                return eTag;
+            }
+        } else {
+            lock.lock();
+            try {
+                CachedFile cached = files.get(s3Key);
+                if (cached != null) {
+                    return cached.eTag;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return disk != null ? disk.eTagOf(s3Key) : null;
+    }
+
+    /**
+     * Caches a file read at the given ETag
+     *
+     * @param prefetched Whether the file was loaded ahead of any request for it
+     */
+    public void put(String s3Key, String eTag, String fileName, String testCases, boolean prefetched) {
+        if (eTag == null) {
+            return;
+        }
+        if (offHeap != null || disk != null) {
+            byte[] nameJson = OffHeapSlabStore.quote(fileName);
+            byte[] testCasesJson = OffHeapSlabStore.quote(testCases);
+            if (disk != null) {
+                disk.put(s3Key, eTag, nameJson, testCasesJson);
+            }
+            if (offHeap != null) {
+                if (offHeap.putQuoted(s3Key, eTag, nameJson, testCasesJson, prefetched) && prefetched) {
+                    prefetchedFiles.incrementAndGet();
+                }
+                return;
+            }
+        }
+        CachedFile entry = new CachedFile(eTag, fileName, testCases, prefetched);
+        if (entry.sizeBytes > maxBytes) {
+            return;
+        }
+        if (prefetched) {
+            prefetchedFiles.incrementAndGet();
+        }
+        putOnHeap(s3Key, entry);
+    }
+
+    private void putOnHeap(String s3Key, CachedFile entry) {
+        if (entry.sizeBytes > maxBytes) {
+            return;
+        }
+        lock.lock();
+        try {
+            CachedFile previous = files.put(s3Key, entry);
+            if (previous != null) {
+                sizeBytes -= previous.sizeBytes;
+                discarded(previous);
+            }
+            sizeBytes += entry.sizeBytes;
+
+            Iterator<CachedFile> eldest = files.values().iterator();
+            while (sizeBytes > maxBytes && eldest.hasNext()) {
+                CachedFile evicted = eldest.next();
+                eldest.remove();
+                sizeBytes -= evicted.sizeBytes;
+                evictions.incrementAndGet();
+                discarded(evicted);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats stats() {
+        long offHeapEvictions = offHeap != null ? offHeap.evictions() : 0;
+        long offHeapWasted = offHeap != null ? offHeap.wastedPrefetches() : 0;
+        return new Stats(hits.get(), misses.get(), evictions.get() + offHeapEvictions, prefetchedFiles.get(),
+            prefetchUsed.get(), prefetchWasted.get() + offHeapWasted);
+    }
+
+    long sizeBytes() {
+        if (offHeap != null) {
+            return offHeap.liveBytes();
+        }
+        lock.lock();
+        try {
+            return sizeBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private DiskCacheStore.Hit acquireFromDisk(String s3Key, String eTag) {
+        DiskCacheStore.Hit hit = disk != null && eTag != null ? disk.acquire(s3Key, eTag) : null;
+        if (hit != null) {
+            diskHits.incrementAndGet();
+        }
+        return hit;
+    }
+
+    private double prefetchHitRatio() {
+        Stats stats = stats();
+        long resolved = stats.prefetchUsed + stats.prefetchWasted;
+        return resolved == 0 ? 0 : (double) stats.prefetchUsed / resolved;
+    }
+
+    private void discarded(CachedFile entry) {
+        if (entry.prefetched && !entry.used) {
+            prefetchWasted.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counters since startup
+     */
+    public static final class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long prefetched;
+        public final long prefetchUsed;
+        public final long prefetchWasted;
+
+        private Stats(long hits, long misses, long evictions, long prefetched, long prefetchUsed, long prefetchWasted) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.prefetched = prefetched;
+            this.prefetchUsed = prefetchUsed;
+            this.prefetchWasted = prefetchWasted;
+        }
+    }
+
+    private static final class CachedFile {
+        private final String eTag;
+        private final String fileName;
+        private final String testCases;
+        private final boolean prefetched;
+        private final long sizeBytes;
+        private boolean used;
+
+        private CachedFile(String eTag, String fileName, String testCases, boolean prefetched) {
+            this.eTag = eTag;
+            this.fileName = fileName;
+            this.testCases = testCases;
+            this.prefetched = prefetched;
+            // Two bytes per char, plus a rough allowance for the entry itself
+            this.sizeBytes = 2L * (length(fileName) + length(testCases) + eTag.length()) + 64;
+        }
+
+        private static int length(String value) {
+            return value == null ? 0 : value.length();
+        }
+    }
+
+    private static final class Listing {
+        private final List<S3ObjectSummary> objects;
+        private final long listedAt;
+
+        private Listing(List<S3ObjectSummary> objects, long listedAt) {
+            this.objects = objects;
+            this.listedAt = listedAt;
+        }
+    }
+}
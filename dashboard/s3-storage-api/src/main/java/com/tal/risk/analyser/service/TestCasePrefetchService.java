@@ -0,0 +1,177 @@
+package com.tal.risk.analyser.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Warms a PR's test-case files into the {@link TestCaseCache} when its summary is read, since the
+ * dashboard almost always asks for the files within seconds.
+ *
+ * Prefetching runs on its own low-priority executor with a bounded queue and never waits for a
+ * slot: triggers are dropped when the queue is full, when the same PR is already being prefetched,
+ * or while foreground S3 fan-out work is queued. A task also stops between downloads as soon as
+ * foreground work backs up, and downloads at most {@code storage.prefetch.max-files} files.
+ *
+ * The share of prefetched files that end up being read is watched over windows of resolved files.
+ * While it stays below {@code storage.prefetch.min-hit-ratio}, only every
+ * {@value #PROBE_INTERVAL}th trigger is prefetched, so the ratio is still measured and prefetching
+ * resumes once clients start reading the files again.
+ */
+@Service
+@Slf4j
+public class TestCasePrefetchService {
+
+    /**
+     * Prefetched files that must be read or wasted before the hit ratio is re-evaluated
+     */
+    static final int LEARNING_WINDOW = 20;
+
+    /**
+     * While prefetching does not pay off, one trigger in this many is still prefetched
+     */
+    static final int PROBE_INTERVAL = 10;
+
+    @Autowired
+    private S3StorageService s3StorageService;
+
+    @Autowired
+    private TestCaseCache testCaseCache;
+
+    @Autowired
+    @Qualifier("prefetchExecutor")
+    private ThreadPoolExecutor prefetchExecutor;
+
+    @Autowired
+    @Qualifier("s3FanOutExecutor")
+    private ExecutorService s3FanOutExecutor;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${storage.cache.enabled:false}")
+    private boolean cacheEnabled;
+
+    @Value("${storage.prefetch.enabled:false}")
+    private boolean prefetchEnabled;
+
+    @Value("${storage.prefetch.max-files:50}")
+    private int maxFiles;
+
+    @Value("${storage.prefetch.min-hit-ratio:0.2}")
+    private double minHitRatio;
+
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicLong triggers = new AtomicLong();
+
+    private volatile double observedHitRatio = 1.0;
+    private long windowUsed;
+    private long windowWasted;
+    private final ReentrantLock windowLock = new ReentrantLock();
+
+    /**
+     * Called after a PR's summary has been served. Returns immediately.
+     *
+     * @param prId Pull Request ID whose files are likely to be requested next
+     * @return Whether a prefetch was scheduled
+     */
+    public boolean onSummaryRead(String prId) {
+        if (!cacheEnabled || !prefetchEnabled || prId == null || prId.trim().isEmpty()) {
+            return false;
+        }
+        if (!worthPrefetching()) {
+            count("skipped");
+            return false;
+        }
+        if (foregroundBusy()) {
+            count("busy");
+            return false;
+        }
+        if (!inFlight.add(prId)) {
+            count("duplicate");
+            return false;
+        }
+
+        try {
+            prefetchExecutor.execute(() -> prefetch(prId));
+            count("scheduled");
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(prId);
+            count("dropped");
+            return false;
+        }
+    }
+
+    private void prefetch(String prId) {
+        try {
+            int fetched = s3StorageService.prefetchCodeFiles(prId, maxFiles, () -> !foregroundBusy());
+            log.debug("Prefetched {} test-case files for PR: {}", fetched, prId);
+            count("completed");
+        } catch (Exception e) {
+            log.warn("Prefetching test-case files for PR: {} failed: {}", prId, e.getMessage());
+            count("failed");
+        } finally {
+            inFlight.remove(prId);
+        }
+    }
+
+    /**
+     * Whether this trigger should be prefetched, given how many prefetched files were read lately
+     */
+    private boolean worthPrefetching() {
+        long trigger = triggers.incrementAndGet();
+        updateHitRatio();
+        return observedHitRatio >= minHitRatio || trigger % PROBE_INTERVAL == 0;
+    }
+
+    private void updateHitRatio() {
+        TestCaseCache.Stats stats = testCaseCache.stats();
+        windowLock.lock();
+        try {
+            long used = stats.prefetchUsed - windowUsed;
+            long wasted = stats.prefetchWasted - windowWasted;
+            if (used + wasted >= LEARNING_WINDOW) {
+                observedHitRatio = (double) used / (used + wasted);
+                windowUsed = stats.prefetchUsed;
+                windowWasted = stats.prefetchWasted;
+            }
+        } finally {
+            windowLock.unlock();
+        }
+    }
+
+    /**
+     * Whether foreground S3 work is waiting for a fan-out thread
+     */
+    private boolean foregroundBusy() {
+        return s3FanOutExecutor instanceof ThreadPoolExecutor
+            && !((ThreadPoolExecutor) s3FanOutExecutor).getQueue().isEmpty();
+    }
+
+    double observedHitRatio() {
+        return observedHitRatio;
+    }
+
+    private void count(String outcome) {
+        if (meterRegistry != null) {
+            Counter.builder("storage.prefetch.tasks")
+                .tag("outcome", outcome)
+                .description("Prefetch triggers by outcome")
+                .register(meterRegistry)
+                .increment();
+        }
+    }
+}
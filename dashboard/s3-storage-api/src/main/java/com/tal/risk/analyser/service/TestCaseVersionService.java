@@ -0,0 +1,312 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.TestCaseVersion;
+import com.tal.risk.analyser.model.TestCaseVersionHistory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Delta-encoded version history for test-case files.
+ *
+ * The latest revision stays in full at its usual {PR_ID}/TestCases/ key. Earlier revisions are
+ * kept only as line deltas, each turning revision N into revision N+1:
+ *   /{PR_ID}/Versions/{sanitizedFileName}/manifest.json   the list of revisions
+ *   /{PR_ID}/Versions/{sanitizedFileName}/v{N}.json       delta from revision N to N+1
+ *
+ * Because deltas record both removed and added lines, a diff between any two revisions is
+ * composed from the deltas alone, without downloading any full revision.
+ */
+@Service
+@Slf4j
+public class TestCaseVersionService {
+
+    @Autowired
+    private AmazonS3 amazonS3;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("s3FanOutExecutor")
+    private ExecutorService s3FanOutExecutor;
+
+    @Value("${storage.versioning.max-attempts:5}")
+    private int maxAttempts;
+
+    private static final TypeReference<List<LineDelta.Op>> OPS_TYPE = new TypeReference<List<LineDelta.Op>>() {};
+
+    /**
+     * Records a new revision of a test-case file before it is overwritten. The delta from the
+     * current revision to the new one is stored and the manifest is updated conditionally, so
+     * concurrent writers of the same file cannot corrupt the chain.
+     *
+     * @param prId              Pull Request ID
+     * @param fileName          Original file name
+     * @param sanitizedFileName File name as used in S3 keys
+     * @param currentContent    Loads the test cases currently stored (null if there are none)
+     * @param newContent        The test cases about to be stored
+     */
+    public void recordRevision(String prId, String fileName, String sanitizedFileName,
+                               Supplier<String> currentContent, String newContent) {
+        String manifestKey = manifestKey(prId, sanitizedFileName);
+        int attempts = Math.max(1, maxAttempts);
+
+        for (int attempt = 1; ; attempt++) {
+            VersionedManifest manifest = readManifest(manifestKey);
+            String current = currentContent.get();
+
+            TestCaseVersionHistory history = manifest != null
+                ? manifest.history
+                : new TestCaseVersionHistory(prId, fileName, new ArrayList<>());
+            List<TestCaseVersion> versions = history.getVersions();
+            TestCaseVersion latest = versions.isEmpty() ? null : versions.get(versions.size() - 1);
+
+            if (current != null && latest != null
+                    && !latest.getSha256().equals(ContentAddressedBlobStore.sha256Hex(current.getBytes(StandardCharsets.UTF_8)))) {
+                if (attempt < attempts) {
+                    // Another writer has updated the manifest but not yet the file itself
+                    log.warn("Version history of {} is ahead of the stored file, retrying ({}/{})", manifestKey, attempt + 1, attempts);
+                    pause(attempt);
+                    continue;
+                }
+                // The file was overwritten outside versioned mode: start a new chain from what is stored now
+                log.warn("Version history of {} is out of sync with the stored file; earlier revisions can no longer be reconstructed", manifestKey);
+                versions.add(revision(latest.getVersion() + 1, current));
+                latest = versions.get(versions.size() - 1);
+            }
+
+            if (current != null && current.equals(newContent)) {
+                return;
+            }
+
+            if (current != null) {
+                if (latest == null) {
+                    // First versioned write of a file that already existed
+                    versions.add(revision(1, current));
+                    latest = versions.get(0);
+                }
+                List<LineDelta.Op> delta = LineDelta.diff(LineDelta.splitLines(current), LineDelta.splitLines(newContent));
+                String deltaKey = deltaKey(prId, sanitizedFileName, latest.getVersion());
+                putJson(deltaKey, write(delta), null, null);
+                latest.setDeltaKey(deltaKey);
+            }
+            TestCaseVersion added = revision(latest == null ? 1 : latest.getVersion() + 1, newContent);
+            versions.add(added);
+
+            try {
+                putJson(manifestKey, write(history), manifest != null ? manifest.eTag : null, manifest == null);
+                log.info("Recorded revision {} of {} for PR: {}", added.getVersion(), fileName, prId);
+                return;
+            } catch (AmazonS3Exception e) {
+                if ((e.getStatusCode() != 412 && e.getStatusCode() != 409) || attempt >= attempts) {
+                    throw e;
+                }
+                log.warn("Concurrent update of {}, retrying ({}/{})", manifestKey, attempt + 1, attempts);
+            }
+        }
+    }
+
+    /**
+     * Lists the revisions of a test-case file
+     *
+     * @throws NoSuchElementException if the file has no version history
+     */
+    public TestCaseVersionHistory getHistory(String prId, String sanitizedFileName) {
+        VersionedManifest manifest = readManifest(manifestKey(prId, sanitizedFileName));
+        if (manifest == null) {
+            throw new NoSuchElementException("No version history found for file: " + sanitizedFileName);
+        }
+        return manifest.history;
+    }
+
+    /**
+     * Reconstructs an earlier revision by walking the deltas back from the latest revision
+     *
+     * @param latestContent The latest revision, as stored in full
+     */
+    public String getRevision(String prId, String sanitizedFileName, int version, String latestContent) {
+        List<TestCaseVersion> versions = getHistory(prId, sanitizedFileName).getVersions();
+        int latest = versions.get(versions.size() - 1).getVersion();
+        if (version == latest) {
+            return latestContent;
+        }
+
+        List<List<LineDelta.Op>> deltas = readDeltas(versions, version, latest);
+        List<String> lines = LineDelta.splitLines(latestContent);
+        for (int i = deltas.size() - 1; i >= 0; i--) {
+            lines = LineDelta.apply(lines, LineDelta.invert(deltas.get(i)));
+        }
+        return LineDelta.join(lines);
+    }
+
+    /**
+     * Computes the diff between two revisions by composing the stored deltas between them
+     *
+     * @return Map with the composed delta ("ops") and its unified-diff rendering ("unified")
+     */
+    public Map<String, Object> diff(String prId, String sanitizedFileName, int from, int to) {
+        TestCaseVersionHistory history = getHistory(prId, sanitizedFileName);
+        List<TestCaseVersion> versions = history.getVersions();
+
+        List<List<LineDelta.Op>> deltas = readDeltas(versions, Math.min(from, to), Math.max(from, to));
+        List<LineDelta.Op> ops = deltas.isEmpty() ? new ArrayList<>() : deltas.get(0);
+        for (int i = 1; i < deltas.size(); i++) {
+            ops = LineDelta.compose(ops, deltas.get(i));
+        }
+        if (from > to) {
+            ops = LineDelta.invert(ops);
+        }
+
+        Map<String, Object> diff = new HashMap<>();
+        diff.put("prId", prId);
+        diff.put("fileName", history.getFileName());
+        diff.put("from", from);
+        diff.put("to", to);
+        diff.put("ops", ops);
+        diff.put("unified", LineDelta.toUnifiedDiff(ops,
+            history.getFileName() + "@v" + from, history.getFileName() + "@v" + to));
+        return diff;
+    }
+
+    /**
+     * Fetches, in parallel, the deltas from revision {@code from} up to revision {@code to}
+     */
+    private List<List<LineDelta.Op>> readDeltas(List<TestCaseVersion> versions, int from, int to) {
+        int first = versions.get(0).getVersion();
+        int latest = versions.get(versions.size() - 1).getVersion();
+        if (from < first || to > latest || from > to) {
+            throw new IllegalArgumentException("Versions must be between " + first + " and " + latest);
+        }
+
+        List<CompletableFuture<List<LineDelta.Op>>> reads = new ArrayList<>();
+        for (int version = from; version < to; version++) {
+            String deltaKey = versions.get(version - first).getDeltaKey();
+            if (deltaKey == null) {
+                throw new IllegalStateException("Version " + version + " can no longer be reconstructed");
+            }
+            reads.add(CompletableFuture.supplyAsync(() -> readJson(deltaKey, OPS_TYPE), s3FanOutExecutor));
+        }
+
+        List<List<LineDelta.Op>> deltas = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<LineDelta.Op>> read : reads) {
+                deltas.add(read.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return deltas;
+    }
+
+    private static TestCaseVersion revision(int version, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new TestCaseVersion(version, ContentAddressedBlobStore.sha256Hex(bytes),
+            LineDelta.splitLines(content).size(), bytes.length, Instant.now().toString(), null);
+    }
+
+    private static String manifestKey(String prId, String sanitizedFileName) {
+        return String.format("%s/Versions/%s/manifest.json", prId, sanitizedFileName);
+    }
+
+    private static String deltaKey(String prId, String sanitizedFileName, int version) {
+        return String.format("%s/Versions/%s/v%d.json", prId, sanitizedFileName, version);
+    }
+
+    private VersionedManifest readManifest(String manifestKey) {
+        try {
+            S3Object s3Object = amazonS3.getObject(bucketName, manifestKey);
+            try (InputStream in = s3Object.getObjectContent()) {
+                return new VersionedManifest(objectMapper.readValue(in, TestCaseVersionHistory.class),
+                    s3Object.getObjectMetadata().getETag());
+            }
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T readJson(String s3Key, TypeReference<T> type) {
+        S3Object s3Object = amazonS3.getObject(bucketName, s3Key);
+        try (InputStream in = s3Object.getObjectContent()) {
+            return objectMapper.readValue(in, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] write(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void putJson(String s3Key, byte[] content, String ifMatch, Boolean ifNoneMatch) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        metadata.setContentType("application/json");
+        PutObjectRequest request = new PutObjectRequest(bucketName, s3Key, new ByteArrayInputStream(content), metadata);
+        if (ifMatch != null) {
+            request.putCustomRequestHeader("If-Match", "\"" + ifMatch + "\"");
+        } else if (Boolean.TRUE.equals(ifNoneMatch)) {
+            request.putCustomRequestHeader("If-None-Match", "*");
+        }
+        amazonS3.putObject(request);
+    }
+
+    private static void pause(int attempt) {
+        try {
+            Thread.sleep(50L * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a concurrent revision", e);
+        }
+    }
+
+    private static final class VersionedManifest {
+        private final TestCaseVersionHistory history;
+        private final String eTag;
+
+        private VersionedManifest(TestCaseVersionHistory history, String eTag) {
+            this.history = history;
+            this.eTag = eTag;
+        }
+    }
+}
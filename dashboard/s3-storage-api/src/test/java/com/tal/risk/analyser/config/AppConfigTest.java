@@ -0,0 +1,48 @@
+package com.tal.risk.analyser.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AppConfigTest {
+
+    @Test
+    void summaryBatchExecutorIsBoundedOnVirtualThreads() throws Exception {
+        AppConfig config = new AppConfig();
+        ReflectionTestUtils.setField(config, "virtualThreads", true);
+        ExecutorService executor = config.summaryBatchExecutor(2);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        try {
+            for (int i = 0; i < 4; i++) {
+                executor.execute(() -> {
+                    assertTrue(Thread.currentThread().isVirtual());
+                    mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                });
+            }
+            Thread.sleep(100);
+            assertEquals(2, running.get());
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(2, mostRunning.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.tal.risk.analyser.config;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class S3ReadHedgerTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    private SlowAmazonS3 target;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        target = new SlowAmazonS3();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void slowReadIsAnsweredByTheHedge() {
+        AmazonS3 client = new S3ReadHedger(target, executor, 0.95, 10, 5, 0.05, 1, null).proxy();
+        warmUp(client, 10);
+
+        // The first request for the key is slow; the hedge sent after 5 ms is not
+        target.slowMs = 1000;
+        long started = System.nanoTime();
+        assertEquals("slow", client.getObjectMetadata(BUCKET_NAME, "slow").getUserMetaDataOf("key"));
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+
+        assertTrue(elapsedMs < 1000, "took " + elapsedMs + " ms");
+        assertEquals(2, target.requests("slow"));
+    }
+
+    @Test
+    void hedgesAreLimitedByTheBudget() {
+        AmazonS3 client = new S3ReadHedger(target, executor, 0.95, 10, 5, 0.05, 1, null).proxy();
+        warmUp(client, 10);
+
+        // Every read is slow, as in an incident: after the burst, hedges are only earned at 5% of reads
+        target.slowMs = 50;
+        int hedges = 0;
+        for (int i = 0; i < 20; i++) {
+            client.getObjectMetadata(BUCKET_NAME, "key-" + i);
+            if (target.requests("key-" + i) > 1) {
+                hedges++;
+            }
+        }
+        assertTrue(hedges >= 1 && hedges <= 2, "sent " + hedges + " hedges");
+    }
+
+    @Test
+    void errorsAndWritesPassThrough() {
+        AmazonS3 client = new S3ReadHedger(target, executor, 0.95, 10, 5, 0.05, 1, null).proxy();
+
+        AmazonS3Exception e = assertThrows(AmazonS3Exception.class, () -> client.getObjectMetadata(BUCKET_NAME, "missing"));
+        assertEquals(404, e.getStatusCode());
+        warmUp(client, 10);
+        assertThrows(AmazonS3Exception.class, () -> client.getObjectMetadata(BUCKET_NAME, "missing"));
+
+        client.putObject(BUCKET_NAME, "key", (InputStream) null, new ObjectMetadata());
+        assertEquals(1, target.puts.get());
+    }
+
+    private static void warmUp(AmazonS3 client, int reads) {
+        for (int i = 0; i < reads; i++) {
+            client.getObjectMetadata(BUCKET_NAME, "key");
+        }
+    }
+
+    /**
+     * Answers HEADs at once, except the first request for each key once slowMs is set
+     */
+    private static final class SlowAmazonS3 extends AbstractAmazonS3 {
+        volatile long slowMs;
+
+        final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+        final AtomicInteger puts = new AtomicInteger();
+
+        int requests(String key) {
+            AtomicInteger count = requests.get(key);
+            return count == null ? 0 : count.get();
+        }
+
+        @Override
+        public ObjectMetadata getObjectMetadata(String bucketName, String key) {
+            int request = requests.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            if (request == 1 && slowMs > 0) {
+                try {
+                    Thread.sleep(slowMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if ("missing".equals(key)) {
+                AmazonS3Exception e = new AmazonS3Exception("Not Found");
+                e.setStatusCode(404);
+                throw e;
+            }
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.addUserMetadata("key", key);
+            return metadata;
+        }
+
+        @Override
+        public PutObjectResult putObject(String bucketName, String key, InputStream input, ObjectMetadata metadata) {
+            puts.incrementAndGet();
+            return new PutObjectResult();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.tal.risk.analyser.controller;
+
+import com.tal.risk.analyser.service.RawFileService;
+import com.tal.risk.analyser.service.S3StorageService;
+import com.tal.risk.analyser.service.TestCaseVersionService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.NoSuchElementException;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest({RawFileController.class, TestCaseVersionController.class})
+public class RawFileControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private RawFileService rawFileService;
+
+    @MockBean
+    private S3StorageService s3StorageService;
+
+    @MockBean
+    private TestCaseVersionService versionService;
+
+    @Test
+    public void fileNamedVersionsIsServedRawRatherThanAsAHistory() throws Exception {
+        when(rawFileService.open("PR-1", "versions", null))
+            .thenThrow(new NoSuchElementException("File not found: versions"));
+
+        mockMvc.perform(get("/api/v1/retrieve/{prId}/files/versions", "PR-1"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message").value("File not found: versions"));
+
+        verify(rawFileService).open("PR-1", "versions", null);
+        verify(versionService, never()).getHistory(any(), any());
+    }
+
+    @Test
+    public void otherFilesStillHaveAHistory() throws Exception {
+        when(versionService.getHistory("PR-1", "A.java"))
+            .thenThrow(new NoSuchElementException("No versions of A.java"));
+
+        mockMvc.perform(get("/api/v1/retrieve/{prId}/{fileName}/versions", "PR-1", "A.java"))
+                .andExpect(status().isNotFound());
+
+        verify(versionService).getHistory("PR-1", "A.java");
+        verify(rawFileService, never()).open(any(), any(), any());
+    }
+}
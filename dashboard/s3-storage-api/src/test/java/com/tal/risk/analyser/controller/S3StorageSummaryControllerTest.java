@@ -1,26 +1,43 @@
 package com.tal.risk.analyser.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeFileResponse;
+import com.tal.risk.analyser.model.CodeFileEntry;
+import com.tal.risk.analyser.model.CodeFilePage;
+import com.tal.risk.analyser.model.CodeFileResult;
+import com.tal.risk.analyser.model.StoreJob;
 import com.tal.risk.analyser.model.SummaryStoreRequest;
+import com.tal.risk.analyser.service.IdempotencyService;
 import com.tal.risk.analyser.service.S3StorageService;
+import com.tal.risk.analyser.service.StoreJobService;
+import com.tal.risk.analyser.service.StreamingCodeStoreService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(S3StorageController.class)
+@Import(IdempotencyService.class)
 public class S3StorageSummaryControllerTest {
 
     @Autowired
@@ -29,6 +46,12 @@ public class S3StorageSummaryControllerTest {
     @MockBean
     private S3StorageService s3StorageService;
 
+    @MockBean
+    private StoreJobService storeJobService;
+
+    @MockBean
+    private StreamingCodeStoreService streamingCodeStoreService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -83,4 +106,109 @@ public class S3StorageSummaryControllerTest {
                 .andExpect(jsonPath("$.status").value("error"))
                 .andExpect(jsonPath("$.message").value("Github URL and summary data are required"));
     }
+
+    @Test
+    public void storeSummaryDataAsyncReturnsAcceptedJob() throws Exception {
+        String prId = "TEST-PR-123";
+        SummaryStoreRequest request = new SummaryStoreRequest();
+        SummaryStoreRequest.Content content = new SummaryStoreRequest.Content();
+        content.setGithubUrl("https://github.com/test/repo");
+        content.setData(new HashMap<>());
+        request.setContent(content);
+
+        StoreJob job = new StoreJob("job-1", StoreJob.Type.SUMMARY, prId, null, "2024-05-01T00:00:00Z");
+        when(storeJobService.submitSummaryData(eq(prId), any(SummaryStoreRequest.class))).thenReturn(job);
+
+        mockMvc.perform(post("/api/v1/store/summary/{prId}", prId)
+                .param("async", "true")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/v1/jobs/job-1"))
+                .andExpect(jsonPath("$.data.jobId").value("job-1"))
+                .andExpect(jsonPath("$.data.status").value("QUEUED"));
+        verify(s3StorageService, never()).storeSummaryData(any(), any());
+    }
+
+    @Test
+    public void storeSummaryDataAsyncWithFullQueueIsUnavailable() throws Exception {
+        SummaryStoreRequest request = new SummaryStoreRequest();
+        when(storeJobService.submitSummaryData(eq("TEST-PR-123"), any(SummaryStoreRequest.class)))
+                .thenThrow(new RejectedExecutionException("full"));
+
+        mockMvc.perform(post("/api/v1/store/summary/{prId}", "TEST-PR-123")
+                .param("async", "true")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists("Retry-After"));
+    }
+
+    @Test
+    public void retriedSummaryStoreWithIdempotencyKeyIsNotStoredAgain() throws Exception {
+        String prId = "TEST-PR-123";
+        SummaryStoreRequest request = new SummaryStoreRequest();
+        SummaryStoreRequest.Content content = new SummaryStoreRequest.Content();
+        content.setGithubUrl("https://github.com/test/repo");
+        content.setData(new HashMap<>());
+        request.setContent(content);
+        when(s3StorageService.storeSummaryData(eq(prId), any(SummaryStoreRequest.class)))
+                .thenReturn(prId + "/Summary/summary.json");
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            mockMvc.perform(post("/api/v1/store/summary/{prId}", prId)
+                    .header("Idempotency-Key", "retry-1")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isCreated())
+                    .andExpect(jsonPath("$.data.s3Key").value(prId + "/Summary/summary.json"));
+        }
+        verify(s3StorageService, times(1)).storeSummaryData(eq(prId), any(SummaryStoreRequest.class));
+
+        // The same key for a different body is refused
+        content.setGithubUrl("https://github.com/test/other");
+        mockMvc.perform(post("/api/v1/store/summary/{prId}", prId)
+                .header("Idempotency-Key", "retry-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    public void singleCodeFileIsRetrievedWithItsETag() throws Exception {
+        when(s3StorageService.getCodeFile("TEST-PR-123", "A.java", null)).thenReturn(new CodeFileResult(
+            "TEST-PR-123/TestCases/A.java.json", "abc", new CodeFileResponse("A.java", "@Test void a() {}"), false));
+        when(s3StorageService.getCodeFile("TEST-PR-123", "A.java", "\"abc\"")).thenReturn(new CodeFileResult(
+            "TEST-PR-123/TestCases/A.java.json", "abc", null, true));
+
+        mockMvc.perform(get("/api/v1/retrieve/{prId}/file/{fileName}", "TEST-PR-123", "A.java"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"abc\""))
+                .andExpect(jsonPath("$.data.s3Key").value("TEST-PR-123/TestCases/A.java.json"))
+                .andExpect(jsonPath("$.data.file.testCases").value("@Test void a() {}"));
+
+        mockMvc.perform(get("/api/v1/retrieve/{prId}/file/{fileName}", "TEST-PR-123", "A.java")
+                .header("If-None-Match", "\"abc\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void codeFilesAreRetrievedByPage() throws Exception {
+        CodeFileEntry entry = new CodeFileEntry("A.java", "TEST-PR-123/TestCases/A.java.json", 42, "abc", null);
+        when(s3StorageService.getCodeFilePage("TEST-PR-123", 1, "token-1", true)).thenReturn(
+            new CodeFilePage("TEST-PR-123", Collections.singletonList(entry), 1, "token-2"));
+
+        mockMvc.perform(get("/api/v1/retrieve/{prId}", "TEST-PR-123")
+                .param("pageSize", "1")
+                .param("pageToken", "token-1")
+                .param("mode", "contentless"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.files[0].id").value("A.java"))
+                .andExpect(jsonPath("$.data.files[0].size").value(42))
+                .andExpect(jsonPath("$.data.nextPageToken").value("token-2"));
+
+        mockMvc.perform(get("/api/v1/retrieve/{prId}", "TEST-PR-123").param("mode", "everything"))
+                .andExpect(status().isBadRequest());
+        verify(s3StorageService, never()).getAllCodeFilesForPR(any());
+    }
 }
@@ -1,19 +1,31 @@
 package com.tal.risk.analyser.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.SummaryBatchRequest;
 import com.tal.risk.analyser.model.SummaryRetrieveRequest;
+import com.tal.risk.analyser.service.CacheWarmupService;
+import com.tal.risk.analyser.service.IdempotencyService;
 import com.tal.risk.analyser.service.S3StorageService;
+import com.tal.risk.analyser.service.SummaryBatchService;
+import com.tal.risk.analyser.service.TestCasePrefetchService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -21,6 +33,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(SummaryRetrievalController.class)
+@Import(IdempotencyService.class)
 public class SummaryRetrievalControllerTest {
 
     @Autowired
@@ -29,6 +42,15 @@ public class SummaryRetrievalControllerTest {
     @MockBean
     private S3StorageService s3StorageService;
 
+    @MockBean
+    private TestCasePrefetchService testCasePrefetchService;
+
+    @MockBean
+    private CacheWarmupService cacheWarmupService;
+
+    @MockBean
+    private SummaryBatchService summaryBatchService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -65,6 +87,9 @@ public class SummaryRetrievalControllerTest {
                 .andExpect(jsonPath("$.data.prId").value(prId))
                 .andExpect(jsonPath("$.data.summaryData.githubUrl").value("https://github.com/example/repo/pull/123"))
                 .andExpect(jsonPath("$.data.summaryData.data").value("This is test summary data"));
+
+        verify(testCasePrefetchService, times(2)).onSummaryRead(prId);
+        verify(cacheWarmupService, times(2)).recordAccess(prId);
     }
 
     @Test
@@ -100,4 +125,38 @@ public class SummaryRetrievalControllerTest {
                 .andExpect(jsonPath("$.status").value("error"))
                 .andExpect(jsonPath("$.message").value("Failed to retrieve summary data: Summary data not found for PR ID: " + prId));
     }
+
+    @Test
+    public void testRetrieveSummary_Sections() throws Exception {
+        String prId = "TEST-PR-123";
+
+        Map<String, Object> riskSection = new HashMap<>();
+        riskSection.put("level", "HIGH");
+        Map<String, Object> data = new HashMap<>();
+        data.put("risk", riskSection);
+        Map<String, Object> mockSummaryData = new HashMap<>();
+        mockSummaryData.put("githubUrl", "https://github.com/example/repo/pull/123");
+        mockSummaryData.put("data", data);
+
+        when(s3StorageService.getSummarySections(prId, Arrays.asList("risk", "modules"))).thenReturn(mockSummaryData);
+
+        mockMvc.perform(get("/api/v1/summary/retrieve/{prId}", prId).param("sections", "risk,modules"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("success"))
+                .andExpect(jsonPath("$.data.summaryData.data.risk.level").value("HIGH"));
+
+        verify(s3StorageService, never()).getSummaryData(prId);
+    }
+
+    @Test
+    public void testRetrieveSummaryBatch_Invalid() throws Exception {
+        when(summaryBatchService.open(any())).thenThrow(new IllegalArgumentException("prIds cannot be empty"));
+
+        mockMvc.perform(post("/api/v1/summary/retrieve/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new SummaryBatchRequest(Collections.emptyList()))))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.message").value("Validation error: prIds cannot be empty"));
+    }
 }
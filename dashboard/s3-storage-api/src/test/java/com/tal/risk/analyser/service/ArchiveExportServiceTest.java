@@ -0,0 +1,161 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import com.tal.risk.analyser.model.SummaryStoreRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArchiveExportServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    private InMemoryAmazonS3 amazonS3;
+    private ExecutorService executor;
+    private ArchiveExportService exportService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+        executor = Executors.newFixedThreadPool(4);
+
+        ContentAddressedBlobStore blobStore = new ContentAddressedBlobStore();
+        ReflectionTestUtils.setField(blobStore, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(blobStore, "bucketName", BUCKET_NAME);
+
+        S3StorageService s3StorageService = new S3StorageService();
+        ReflectionTestUtils.setField(s3StorageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(s3StorageService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(s3StorageService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(s3StorageService, "blobStore", blobStore);
+        ReflectionTestUtils.setField(s3StorageService, "dedupEnabled", true);
+        ReflectionTestUtils.setField(s3StorageService, "sharedBlobsEnabled", true);
+        ReflectionTestUtils.setField(s3StorageService, "sharedBlobMinBytes", 64);
+
+        exportService = new ArchiveExportService();
+        ReflectionTestUtils.setField(exportService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(exportService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(exportService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(exportService, "s3FanOutExecutor", executor);
+        ReflectionTestUtils.setField(exportService, "blobStore", blobStore);
+        ReflectionTestUtils.setField(exportService, "prefetch", 3);
+        ReflectionTestUtils.setField(exportService, "listPageSize", 2);
+
+        for (int pr = 1; pr <= 3; pr++) {
+            for (int file = 1; file <= 2; file++) {
+                s3StorageService.storeCodeData(new CodeStoreRequest("PR-" + pr,
+                    new CodeStoreRequest.Content("Test" + file + ".java", "class Test" + file + " {}")));
+            }
+            SummaryStoreRequest summary = new SummaryStoreRequest();
+            summary.setContent(new SummaryStoreRequest.Content("https://github.com/test/repo/pull/" + pr,
+                Collections.singletonMap("risk", "LOW")));
+            s3StorageService.storeSummaryData("PR-" + pr, summary);
+        }
+        // A large body lands in a shared blob; the export must carry the test cases themselves
+        s3StorageService.storeCodeData(new CodeStoreRequest("PR-3",
+            new CodeStoreRequest.Content("Big.java", "x".repeat(100))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void zipContainsTestCasesAndSummariesInKeyOrder() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int exported = exportService.export("", null, null, ArchiveExportService.Format.ZIP, out);
+
+        Map<String, byte[]> entries = readZip(out.toByteArray());
+        assertEquals(10, exported);
+        List<String> names = new ArrayList<>(entries.keySet());
+        assertEquals(ArchiveExportService.MANIFEST_ENTRY, names.remove(names.size() - 1));
+        List<String> sorted = new ArrayList<>(names);
+        Collections.sort(sorted);
+        assertEquals(sorted, names);
+        assertTrue(names.stream().noneMatch(name -> name.startsWith("_blobs/")));
+
+        JsonNode big = objectMapper.readTree(entries.get("PR-3/TestCases/Big.java.json"));
+        assertEquals("x".repeat(100), big.get("testCases").asText());
+        JsonNode manifest = objectMapper.readTree(entries.get(ArchiveExportService.MANIFEST_ENTRY));
+        assertEquals("PR-3/TestCases/Test2.java.json", manifest.get("lastKey").asText());
+    }
+
+    @Test
+    void tarGzCanBeResumedFromTheLastEntry() throws Exception {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        exportService.export("PR-", null, null, ArchiveExportService.Format.TAR_GZ, first);
+        List<String> all = readTarNames(first.toByteArray());
+        assertEquals(11, all.size());
+
+        String cursor = all.get(4);
+        ByteArrayOutputStream resumed = new ByteArrayOutputStream();
+        int exported = exportService.export("PR-", null, cursor, ArchiveExportService.Format.TAR_GZ, resumed);
+
+        assertEquals(5, exported);
+        assertEquals(all.subList(5, all.size()), readTarNames(resumed.toByteArray()));
+    }
+
+    @Test
+    void sinceAndPrefixFilterTheExport() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, exportService.export("PR-1/", null, null, ArchiveExportService.Format.ZIP, out));
+
+        out.reset();
+        Instant future = Instant.now().plusSeconds(3600);
+        assertEquals(0, exportService.export("", future, null, ArchiveExportService.Format.ZIP, out));
+
+        assertEquals(Instant.parse("2024-05-01T00:00:00Z"), ArchiveExportService.parseSince("2024-05-01"));
+        assertThrows(IllegalArgumentException.class, () -> ArchiveExportService.parseSince("yesterday"));
+        assertThrows(IllegalArgumentException.class, () -> ArchiveExportService.Format.of("rar"));
+    }
+
+    private static Map<String, byte[]> readZip(byte[] archive) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        return entries;
+    }
+
+    private static List<String> readTarNames(byte[] archive) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(archive))) {
+            byte[] header = new byte[512];
+            while (in.readNBytes(header, 0, 512) == 512 && header[0] != 0) {
+                String name = new String(header, 0, 100, StandardCharsets.UTF_8).replace("\0", "");
+                String prefix = new String(header, 345, 155, StandardCharsets.UTF_8).replace("\0", "");
+                long size = Long.parseLong(new String(header, 124, 11, StandardCharsets.US_ASCII), 8);
+                names.add(prefix.isEmpty() ? name : prefix + "/" + name);
+                in.skipNBytes((size + 511) / 512 * 512);
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,151 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.ImportFailure;
+import com.tal.risk.analyser.model.ImportProgress;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkImportServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    private final AtomicBoolean failNextPut = new AtomicBoolean();
+    private InMemoryAmazonS3 amazonS3;
+    private ExecutorService importExecutor;
+    private ExecutorService fanOutExecutor;
+    private BulkImportService importService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3() {
+            @Override
+            public synchronized PutObjectResult putObject(PutObjectRequest request) {
+                if (failNextPut.compareAndSet(true, false)) {
+                    AmazonS3Exception e = new AmazonS3Exception("Slow down");
+                    e.setStatusCode(503);
+                    throw e;
+                }
+                return super.putObject(request);
+            }
+        };
+        importExecutor = Executors.newFixedThreadPool(2);
+        fanOutExecutor = Executors.newFixedThreadPool(2);
+
+        S3StorageService s3StorageService = new S3StorageService();
+        ReflectionTestUtils.setField(s3StorageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(s3StorageService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(s3StorageService, "bucketName", BUCKET_NAME);
+
+        importService = new BulkImportService();
+        ReflectionTestUtils.setField(importService, "s3StorageService", s3StorageService);
+        ReflectionTestUtils.setField(importService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(importService, "importExecutor", importExecutor);
+        ReflectionTestUtils.setField(importService, "maxInFlight", 2);
+        ReflectionTestUtils.setField(importService, "maxAttempts", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        importExecutor.shutdownNow();
+        fanOutExecutor.shutdownNow();
+    }
+
+    @Test
+    void ndjsonRecordsAreStoredAndInvalidOnesReported() throws Exception {
+        String body = String.join("\n",
+            "{\"type\":\"code\",\"prId\":\"PR-1\",\"content\":{\"fileName\":\"A.java\",\"testCases\":\"class A {}\"}}",
+            "{\"prId\":\"PR-1\",\"content\":{\"fileName\":\"B.java\",\"testCases\":\"class B {}\"}}",
+            "{\"type\":\"summary\",\"prId\":\"PR-1\",\"content\":{\"githubUrl\":\"https://github.com/t/r/pull/1\",\"data\":{\"risk\":\"LOW\"}}}",
+            "",
+            "{\"type\":\"code\",\"prId\":\"PR-2\",\"content\":{\"fileName\":\"C.java\"}}",
+            "{not json",
+            "{\"type\":\"summary\",\"content\":{\"githubUrl\":\"u\",\"data\":{}}}");
+
+        ImportProgress progress = importService.importRecords("import-1", stream(body), BulkImportService.Format.NDJSON);
+
+        assertEquals(ImportProgress.Status.COMPLETED, progress.getStatus());
+        assertEquals(6, progress.getReceived().get());
+        assertEquals(3, progress.getStored().get());
+        assertEquals(3, progress.getFailed().get());
+        assertTrue(progress.getFailures().stream().noneMatch(ImportFailure::isRetryable));
+        assertTrue(progress.getFailures().stream().anyMatch(f -> f.getRecord().equals("line 6")));
+        assertNotNull(amazonS3.content("PR-1/TestCases/B.java.json"));
+        assertNotNull(amazonS3.content("PR-1/Summary/summary.json"));
+        assertSame(progress, importService.getProgress("import-1"));
+    }
+
+    @Test
+    void transientFailuresAreRetried() throws Exception {
+        failNextPut.set(true);
+        String body = "{\"type\":\"code\",\"prId\":\"PR-1\",\"content\":{\"fileName\":\"A.java\",\"testCases\":\"class A {}\"}}\n";
+
+        ImportProgress progress = importService.importRecords(null, stream(body), BulkImportService.Format.NDJSON);
+
+        assertEquals(1, progress.getStored().get());
+        assertEquals(0, progress.getFailed().get());
+    }
+
+    @Test
+    void exportedArchiveCanBeImported() throws Exception {
+        String body = String.join("\n",
+            "{\"prId\":\"PR-1\",\"content\":{\"fileName\":\"A.java\",\"testCases\":\"class A {}\"}}",
+            "{\"prId\":\"PR-2\",\"content\":{\"fileName\":\"B.java\",\"testCases\":\"class B {}\"}}",
+            "{\"type\":\"summary\",\"prId\":\"PR-2\",\"content\":{\"githubUrl\":\"https://github.com/t/r/pull/2\",\"data\":{\"risk\":\"HIGH\"}}}");
+        importService.importRecords(null, stream(body), BulkImportService.Format.NDJSON);
+
+        ArchiveExportService exportService = new ArchiveExportService();
+        ReflectionTestUtils.setField(exportService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(exportService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(exportService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(exportService, "s3FanOutExecutor", fanOutExecutor);
+        ReflectionTestUtils.setField(exportService, "prefetch", 2);
+        ReflectionTestUtils.setField(exportService, "listPageSize", 10);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        exportService.export("", null, null, ArchiveExportService.Format.TAR_GZ, archive);
+
+        String summary = amazonS3.content("PR-2/Summary/summary.json");
+        amazonS3.objects().clear();
+        ImportProgress progress = importService.importRecords(null,
+            new ByteArrayInputStream(archive.toByteArray()), BulkImportService.Format.TAR);
+
+        assertEquals(3, progress.getStored().get());
+        assertEquals(0, progress.getFailed().get());
+        assertEquals(objectMapper.readTree(summary), objectMapper.readTree(amazonS3.content("PR-2/Summary/summary.json")));
+        assertTrue(amazonS3.content("PR-1/TestCases/A.java.json").contains("class A {}"));
+    }
+
+    @Test
+    void truncatedArchiveFailsTheImport() throws Exception {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        TarArchiveOutputStream tar = new TarArchiveOutputStream(archive);
+        tar.putEntry("PR-1/TestCases/A.java.json", 1000, System.currentTimeMillis());
+        tar.write(new byte[1000], 0, 1000);
+        byte[] truncated = java.util.Arrays.copyOf(archive.toByteArray(), 800);
+
+        ImportProgress progress = importService.importRecords(null,
+            new ByteArrayInputStream(truncated), BulkImportService.Format.TAR);
+
+        assertEquals(ImportProgress.Status.FAILED, progress.getStatus());
+        assertNotNull(progress.getError());
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
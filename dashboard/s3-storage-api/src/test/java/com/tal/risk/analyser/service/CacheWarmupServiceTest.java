@@ -0,0 +1,140 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheWarmupServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private InMemoryAmazonS3 amazonS3;
+    private Path manifest;
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+        manifest = directory.resolve("recent-prs.json");
+    }
+
+    @Test
+    void manifestListsTheMostReadPrsFirst() throws Exception {
+        CacheWarmupService warmup = warmupService(newStorageService(), 2);
+        warmup.recordAccess("PR-1");
+        warmup.recordAccess("PR-2");
+        warmup.recordAccess("PR-2");
+        warmup.recordAccess("PR-3");
+        warmup.recordAccess("PR-3");
+        warmup.recordAccess("PR-3");
+
+        warmup.writeManifest();
+
+        JsonNode prs = objectMapper.readTree(manifest.toFile()).get("prs");
+        assertEquals(2, prs.size());
+        assertEquals("PR-3", prs.get(0).get("prId").asText());
+        assertEquals(3, prs.get(0).get("reads").asInt());
+        assertEquals("PR-2", prs.get(1).get("prId").asText());
+    }
+
+    @Test
+    void startupLoadsTheManifestedPrsIntoTheCache() {
+        S3StorageService writer = newStorageService();
+        for (int i = 0; i < 3; i++) {
+            writer.storeCodeData(new CodeStoreRequest("PR-" + i, new CodeStoreRequest.Content("A.java", "a" + i)));
+            writer.storeCodeData(new CodeStoreRequest("PR-" + i, new CodeStoreRequest.Content("B.java", "b" + i)));
+        }
+        CacheWarmupService before = warmupService(writer, 10);
+        for (int i = 0; i < 3; i++) {
+            before.recordAccess("PR-" + i);
+        }
+        before.recordAccess("PR-missing");
+        before.writeManifest();
+
+        // A new instance with a cold cache
+        S3StorageService storage = newStorageService();
+        CacheWarmupService warmup = warmupService(storage, 10);
+        CacheWarmupService.Result result = warmup.warmUp();
+
+        assertEquals(4, result.manifestPrs);
+        assertEquals(4, result.warmedPrs);
+        assertEquals(6, result.files);
+        assertFalse(result.timedOut);
+        assertEquals(CacheWarmupService.State.DONE, warmup.getState());
+
+        int gets = amazonS3.getCount.get();
+        assertEquals("b1", storage.getAllCodeFilesForPR("PR-1").get(1).getTestCases());
+        assertEquals(gets, amazonS3.getCount.get());
+    }
+
+    @Test
+    void warmUpStopsAtTheTimeBudget() throws Exception {
+        Files.writeString(manifest, "{\"prs\":[{\"prId\":\"PR-1\",\"reads\":4}]}");
+        CacheWarmupService warmup = warmupService(newStorageService(), 10);
+        ReflectionTestUtils.setField(warmup, "timeBudgetMillis", 0L);
+
+        CacheWarmupService.Result result = warmup.warmUp();
+
+        assertTrue(result.timedOut);
+        assertEquals(0, result.warmedPrs);
+        assertEquals(0, amazonS3.getCount.get());
+    }
+
+    @Test
+    void readinessIsHeldOnlyWhileWarming() {
+        CacheWarmupService warmup = warmupService(newStorageService(), 10);
+        ReflectionTestUtils.setField(warmup, "holdReadiness", true);
+        CacheWarmupHealthIndicator indicator = new CacheWarmupHealthIndicator();
+        ReflectionTestUtils.setField(indicator, "cacheWarmupService", warmup);
+
+        ReflectionTestUtils.setField(warmup, "state", CacheWarmupService.State.WARMING);
+        assertEquals(Status.OUT_OF_SERVICE, indicator.health().getStatus());
+
+        warmup.warmUp();
+        assertEquals(Status.UP, indicator.health().getStatus());
+        assertEquals(0, indicator.health().getDetails().get("manifestPrs"));
+    }
+
+    private S3StorageService newStorageService() {
+        TestCaseCache cache = new TestCaseCache();
+        ReflectionTestUtils.setField(cache, "maxBytes", 1L << 20);
+        ReflectionTestUtils.setField(cache, "listingTtlMillis", 60_000L);
+        cache.init();
+
+        S3StorageService service = new S3StorageService();
+        ReflectionTestUtils.setField(service, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(service, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(service, "cacheEnabled", true);
+        ReflectionTestUtils.setField(service, "testCaseCache", cache);
+        return service;
+    }
+
+    private CacheWarmupService warmupService(S3StorageService storage, int maxPrs) {
+        CacheWarmupService warmup = new CacheWarmupService();
+        ReflectionTestUtils.setField(warmup, "s3StorageService", storage);
+        ReflectionTestUtils.setField(warmup, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(warmup, "cacheEnabled", true);
+        ReflectionTestUtils.setField(warmup, "warmupEnabled", true);
+        ReflectionTestUtils.setField(warmup, "manifestPath", manifest.toString());
+        ReflectionTestUtils.setField(warmup, "maxPrs", maxPrs);
+        ReflectionTestUtils.setField(warmup, "trackedPrs", 100);
+        ReflectionTestUtils.setField(warmup, "maxFiles", 50);
+        ReflectionTestUtils.setField(warmup, "concurrency", 2);
+        ReflectionTestUtils.setField(warmup, "timeBudgetMillis", 10_000L);
+        return warmup;
+    }
+}
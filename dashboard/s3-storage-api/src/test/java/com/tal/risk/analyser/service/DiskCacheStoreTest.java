@@ -0,0 +1,165 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiskCacheStoreTest {
+
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storesAndStreamsEntries() throws Exception {
+        String testCases = "line \"one\"\n\ttwo ✓";
+        try (DiskCacheStore store = DiskCacheStore.open(directory, 4 * SEGMENT_BYTES, SEGMENT_BYTES)) {
+            assertTrue(put(store, "PR-1/TestCases/A.json", "etag-1", "A.java", testCases));
+
+            try (DiskCacheStore.Hit hit = store.acquire("PR-1/TestCases/A.json", "etag-1")) {
+                assertEquals("A.java", hit.fileName());
+                assertEquals(testCases, hit.testCases());
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                hit.writeTestCases(out);
+                assertEquals(new ObjectMapper().writeValueAsString(testCases), out.toString(StandardCharsets.UTF_8));
+            }
+            assertNull(store.acquire("PR-1/TestCases/A.json", "etag-2"));
+            assertNull(store.acquire("PR-1/TestCases/B.json", "etag-1"));
+        }
+    }
+
+    @Test
+    void entriesSurviveAReopenThroughTheIndex() throws Exception {
+        try (DiskCacheStore store = DiskCacheStore.open(directory, 4 * SEGMENT_BYTES, SEGMENT_BYTES)) {
+            put(store, "a", "e1", "A.java", "first");
+            put(store, "a", "e2", "A.java", "second");
+            put(store, "b", "e1", "B.java", "b");
+        }
+        assertTrue(Files.exists(directory.resolve(DiskCacheStore.INDEX_FILE)));
+
+        try (DiskCacheStore store = DiskCacheStore.open(directory, 4 * SEGMENT_BYTES, SEGMENT_BYTES)) {
+            assertEquals(2, store.liveEntries());
+            assertFalse(store.contains("a", "e1"));
+            try (DiskCacheStore.Hit hit = store.acquire("a", "e2")) {
+                assertEquals("second", hit.testCases());
+            }
+            // Appended after the index was loaded, and found by scanning on the next start
+            put(store, "c", "e1", "C.java", "c");
+        }
+        Files.delete(directory.resolve(DiskCacheStore.INDEX_FILE));
+
+        try (DiskCacheStore store = DiskCacheStore.open(directory, 4 * SEGMENT_BYTES, SEGMENT_BYTES)) {
+            assertEquals(3, store.liveEntries());
+            try (DiskCacheStore.Hit hit = store.acquire("c", "e1")) {
+                assertEquals("c", hit.testCases());
+            }
+        }
+    }
+
+    @Test
+    void entriesAfterACrashAreRecoveredUpToATornWrite() throws Exception {
+        DiskCacheStore crashed = DiskCacheStore.open(directory, 4 * SEGMENT_BYTES, SEGMENT_BYTES);
+        put(crashed, "a", "e", "A.java", "a");
+        put(crashed, "b", "e", "B.java", "b");
+        // No close: neither the index nor a clean shutdown
+
+        // Corrupt the last byte of the second entry
+        try (FileChannel channel = FileChannel.open(directory.resolve("segment-0000.dat"), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = indexOf(channel, "\"b\"") + 1;
+            channel.write(ByteBuffer.wrap(new byte[]{'x'}), position);
+        }
+
+        try (DiskCacheStore store = DiskCacheStore.open(directory, 4 * SEGMENT_BYTES, SEGMENT_BYTES)) {
+            assertTrue(store.contains("a", "e"));
+            assertFalse(store.contains("b", "e"));
+        }
+    }
+
+    @Test
+    void oldestSegmentIsReusedWithinTheBudget() throws Exception {
+        try (DiskCacheStore store = DiskCacheStore.open(directory, 2 * SEGMENT_BYTES, SEGMENT_BYTES)) {
+            for (int i = 0; i < 20; i++) {
+                assertTrue(put(store, "key-" + i, "e", "F" + i, repeat('x', 1000)));
+            }
+            assertTrue(store.evictions() > 0);
+            assertTrue(store.liveBytes() <= 2L * SEGMENT_BYTES);
+            assertTrue(store.contains("key-19", "e"));
+            assertFalse(store.contains("key-0", "e"));
+
+            // A segment being read is not reused
+            try (DiskCacheStore.Hit hit = store.acquire("key-19", "e")) {
+                int rejected = 0;
+                for (int i = 20; i < 30; i++) {
+                    if (!put(store, "key-" + i, "e", "F" + i, repeat('y', 1000))) {
+                        rejected++;
+                    }
+                }
+                assertTrue(rejected > 0);
+                assertEquals(repeat('x', 1000), hit.testCases());
+            }
+        }
+        try (DiskCacheStore store = DiskCacheStore.open(directory, 2 * SEGMENT_BYTES, SEGMENT_BYTES)) {
+            assertTrue(store.contains("key-19", "e"));
+            assertFalse(store.contains("key-0", "e"));
+        }
+    }
+
+    @Test
+    void cacheServesDiskEntriesAfterARestart() {
+        TestCaseCache first = cache();
+        first.put("PR-1/TestCases/A.json", "etag-1", "A.java", "cases", false);
+        first.close();
+
+        TestCaseCache second = cache();
+        assertTrue(second.contains("PR-1/TestCases/A.json", "etag-1"));
+        assertEquals("cases", second.get("PR-1/TestCases/A.json", "etag-1").getTestCases());
+        assertNull(second.get("PR-1/TestCases/A.json", "etag-2"));
+        assertEquals(1, second.stats().hits);
+        assertEquals(1, second.stats().misses);
+        second.close();
+    }
+
+    private TestCaseCache cache() {
+        TestCaseCache cache = new TestCaseCache();
+        ReflectionTestUtils.setField(cache, "maxBytes", 1L << 20);
+        ReflectionTestUtils.setField(cache, "listingTtlMillis", 60_000L);
+        ReflectionTestUtils.setField(cache, "diskEnabled", true);
+        ReflectionTestUtils.setField(cache, "diskPath", directory.toString());
+        ReflectionTestUtils.setField(cache, "diskMaxBytes", 1L << 20);
+        ReflectionTestUtils.setField(cache, "diskSegmentBytes", 64 * 1024);
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        cache.init();
+        return cache;
+    }
+
+    private static boolean put(DiskCacheStore store, String key, String eTag, String fileName, String testCases) {
+        return store.put(key, eTag, OffHeapSlabStore.quote(fileName), OffHeapSlabStore.quote(testCases));
+    }
+
+    private static long indexOf(FileChannel channel, String text) throws Exception {
+        ByteBuffer contents = ByteBuffer.allocate((int) channel.size());
+        channel.read(contents, 0);
+        String segment = new String(contents.array(), StandardCharsets.ISO_8859_1);
+        return segment.lastIndexOf(text);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        java.util.Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
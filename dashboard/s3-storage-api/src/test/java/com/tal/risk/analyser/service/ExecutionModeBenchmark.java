@@ -0,0 +1,147 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.tal.risk.analyser.S3StorageApiApplication;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares request throughput with platform and virtual threads while every S3 read takes
+ * {@value #S3_LATENCY_MILLIS} ms, at {@value #CONCURRENCY} concurrent requests.
+ *
+ * Not part of the regular test run:
+ * <pre>
+ * mvn test -Dtest=ExecutionModeBenchmark -Dbenchmark=true
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class ExecutionModeBenchmark {
+
+    private static final String BUCKET_NAME = "benchmark-bucket";
+    private static final long S3_LATENCY_MILLIS = 500;
+    private static final int CONCURRENCY = 1000;
+    private static final int WARMUP_REQUESTS = 1000;
+    private static final int REQUESTS = 5000;
+
+    @Test
+    void compareThroughput() throws Exception {
+        Result platform = run(false);
+        Result virtual = run(true);
+
+        System.out.printf("%n%-10s %12s %10s %10s %8s%n", "threads", "requests/s", "p50 ms", "p99 ms", "errors");
+        platform.print("platform");
+        virtual.print("virtual");
+        assertEquals(0, platform.errors + virtual.errors);
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        ServletWebServerApplicationContext context = (ServletWebServerApplicationContext) new SpringApplicationBuilder(S3StorageApiApplication.class)
+            .run("--server.port=0",
+                "--aws.s3.bucket-name=" + BUCKET_NAME,
+                "--storage.execution.virtual-threads=" + virtualThreads,
+                "--spring.main.banner-mode=off",
+                "--logging.level.com.tal.risk.analyser=WARN");
+        try {
+            SlowAmazonS3 amazonS3 = new SlowAmazonS3();
+            byte[] summary = "{\"prId\":\"PR-1\",\"data\":{\"risk\":{\"score\":3}}}".getBytes(StandardCharsets.UTF_8);
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(summary.length);
+            amazonS3.putObject(BUCKET_NAME, "PR-1/Summary/summary.json", new ByteArrayInputStream(summary), metadata);
+            ReflectionTestUtils.setField(context.getBean(S3StorageService.class), "amazonS3", amazonS3);
+
+            URI uri = URI.create("http://localhost:" + context.getWebServer().getPort() + "/api/v1/summary/retrieve/PR-1");
+            load(uri, WARMUP_REQUESTS);
+            return load(uri, REQUESTS);
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * Sends the requests with at most CONCURRENCY in flight
+     */
+    private Result load(URI uri, int requests) throws InterruptedException {
+        long[] latencies = new long[requests];
+        AtomicInteger errors = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(CONCURRENCY);
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient client = HttpClient.newBuilder().executor(clients).connectTimeout(Duration.ofSeconds(10)).build();
+            HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(60)).build();
+            long started = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                inFlight.acquire();
+                int index = i;
+                clients.execute(() -> {
+                    long sent = System.nanoTime();
+                    try {
+                        if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        latencies[index] = System.nanoTime() - sent;
+                        inFlight.release();
+                    }
+                });
+            }
+            inFlight.acquire(CONCURRENCY);
+            long elapsed = System.nanoTime() - started;
+            Arrays.sort(latencies);
+            return new Result(requests * 1e9 / elapsed,
+                TimeUnit.NANOSECONDS.toMillis(latencies[requests / 2]),
+                TimeUnit.NANOSECONDS.toMillis(latencies[(int) (requests * 0.99)]),
+                errors.get());
+        }
+    }
+
+    private static final class SlowAmazonS3 extends InMemoryAmazonS3 {
+        @Override
+        public S3Object getObject(String bucketName, String key) {
+            try {
+                Thread.sleep(S3_LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.getObject(bucketName, key);
+        }
+    }
+
+    private static final class Result {
+        private final double throughput;
+        private final long p50Millis;
+        private final long p99Millis;
+        private final int errors;
+
+        private Result(double throughput, long p50Millis, long p99Millis, int errors) {
+            this.throughput = throughput;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+            this.errors = errors;
+        }
+
+        private void print(String threads) {
+            System.out.printf("%-10s %12.0f %10d %10d %8d%n", threads, throughput, p50Millis, p99Millis, errors);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.ApiResponse;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyServiceTest {
+
+    private IdempotencyService service;
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        service = new IdempotencyService();
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "maxKeys", 100);
+        ReflectionTestUtils.setField(service, "ttlSeconds", 3600L);
+        ReflectionTestUtils.setField(service, "waitTimeoutMillis", 5000L);
+    }
+
+    @Test
+    void retryIsAnsweredWithTheFirstResponse() {
+        ResponseEntity<ApiResponse> first = service.execute("k1", () -> "store/PR-1#1", () -> created("PR-1/TestCases/A.json"));
+        ResponseEntity<ApiResponse> retry = service.execute("k1", () -> "store/PR-1#1", () -> created("other"));
+
+        assertEquals(1, runs.get());
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertSame(first.getBody(), retry.getBody());
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+
+        // Without a key every request runs
+        service.execute(null, () -> "store/PR-1#1", () -> created("a"));
+        service.execute(null, () -> "store/PR-1#1", () -> created("a"));
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    void fingerprintIsOnlyComputedForRequestsWithAKey() {
+        AtomicInteger fingerprints = new AtomicInteger();
+        service.execute(null, () -> "route#" + fingerprints.incrementAndGet(), () -> created("a"));
+        assertEquals(0, fingerprints.get());
+
+        ResponseEntity<ApiResponse> unserializable = service.execute("k1", () -> {
+            throw new IllegalArgumentException("Request body cannot be serialized");
+        }, () -> created("b"));
+        assertEquals(HttpStatus.BAD_REQUEST, unserializable.getStatusCode());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void concurrentDuplicateWaitsForTheRequestInFlight() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity<ApiResponse>> first = CompletableFuture.supplyAsync(() ->
+            service.execute("k1", () -> "route#1", () -> {
+                started.countDown();
+                await(release);
+                return created("key");
+            }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<ResponseEntity<ApiResponse>> duplicate = CompletableFuture.supplyAsync(() ->
+            service.execute("k1", () -> "route#1", () -> created("again")));
+        Thread.sleep(50);
+        assertFalse(duplicate.isDone());
+
+        release.countDown();
+        assertSame(first.get(5, TimeUnit.SECONDS).getBody(), duplicate.get(5, TimeUnit.SECONDS).getBody());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void failedRequestsAreNotRemembered() {
+        ResponseEntity<ApiResponse> failed = service.execute("k1", () -> "route#1", () -> {
+            runs.incrementAndGet();
+            return new ResponseEntity<>(ApiResponse.error("S3 unavailable"), HttpStatus.INTERNAL_SERVER_ERROR);
+        });
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, failed.getStatusCode());
+
+        ResponseEntity<ApiResponse> retry = service.execute("k1", () -> "route#1", () -> created("key"));
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void keyReusedForAnotherRequestIsRefused() {
+        service.execute("k1", () -> "store/PR-1#1", () -> created("a"));
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, service.execute("k1", () -> "store/PR-2#1", () -> created("b")).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, service.execute(" ", () -> "store/PR-1#1", () -> created("c")).getStatusCode());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void fingerprintTellsApartBodiesWithTheSameHashCode() {
+        // "Aa" and "BB" share a String hash code
+        Object first = service.fingerprint("store/PR-1", new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A.java", "Aa")));
+        Object same = service.fingerprint("store/PR-1", new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A.java", "Aa")));
+        Object other = service.fingerprint("store/PR-1", new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A.java", "BB")));
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        assertEquals(first, same);
+        assertNotEquals(first, other);
+        assertNotEquals(first, service.fingerprint("store/PR-2", new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A.java", "Aa"))));
+    }
+
+    @Test
+    void keysExpireAndAreBounded() {
+        ReflectionTestUtils.setField(service, "maxKeys", 2);
+        service.execute("k1", () -> "route#1", () -> created("a"));
+        service.execute("k2", () -> "route#1", () -> created("b"));
+        service.execute("k3", () -> "route#1", () -> created("c"));
+        assertEquals(2, service.size());
+
+        // k1 was dropped, so it runs again
+        service.execute("k1", () -> "route#1", () -> created("a"));
+        assertEquals(4, runs.get());
+
+        ReflectionTestUtils.setField(service, "ttlSeconds", 0L);
+        service.execute("k4", () -> "route#1", () -> created("d"));
+        assertEquals(1, service.size());
+    }
+
+    private ResponseEntity<ApiResponse> created(String s3Key) {
+        runs.incrementAndGet();
+        return new ResponseEntity<>(ApiResponse.success("stored", s3Key), HttpStatus.CREATED);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
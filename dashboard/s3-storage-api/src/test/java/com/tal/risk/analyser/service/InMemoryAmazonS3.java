@@ -0,0 +1,325 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal in-memory S3 for service tests that exercise several objects at once.
+ * Supports the conditional-write headers (If-Match / If-None-Match) used by the service,
+ * conditional and ranged GETs, and multipart uploads (without S3's minimum part size).
+ */
+class InMemoryAmazonS3 extends AbstractAmazonS3 {
+
+    private final ConcurrentSkipListMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+
+    final AtomicInteger getCount = new AtomicInteger();
+    final AtomicInteger listCount = new AtomicInteger();
+    final AtomicInteger putCount = new AtomicInteger();
+    final AtomicInteger presignCount = new AtomicInteger();
+    final AtomicInteger partCount = new AtomicInteger();
+
+    /**
+     * Parts of multipart uploads in progress, by upload ID
+     */
+    private final Map<String, java.util.TreeMap<Integer, byte[]>> uploads = new java.util.concurrent.ConcurrentHashMap<>();
+    private final Map<String, ObjectMetadata> uploadMetadata = new java.util.concurrent.ConcurrentHashMap<>();
+
+    static final class StoredObject {
+        final byte[] content;
+        final ObjectMetadata metadata;
+
+        StoredObject(byte[] content, ObjectMetadata metadata) {
+            this.content = content;
+            this.metadata = metadata;
+        }
+    }
+
+    Map<String, StoredObject> objects() {
+        return objects;
+    }
+
+    String content(String key) {
+        StoredObject object = objects.get(key);
+        return object == null ? null : new String(object.content, java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public S3Object getObject(String bucketName, String key) {
+        return getObject(new GetObjectRequest(bucketName, key));
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest request) {
+        getCount.incrementAndGet();
+        StoredObject stored = objects.get(request.getKey());
+        if (stored == null) {
+            throw notFound(request.getKey());
+        }
+        if (request.getNonmatchingETagConstraints().contains(stored.metadata.getETag())) {
+            // What the SDK returns for 304 Not Modified
+            return null;
+        }
+        S3Object s3Object = new S3Object();
+        s3Object.setBucketName(request.getBucketName());
+        s3Object.setKey(request.getKey());
+        s3Object.setObjectMetadata(stored.metadata.clone());
+        long[] range = request.getRange();
+        if (range != null) {
+            if (range[0] >= stored.content.length) {
+                throw status(416, request.getKey());
+            }
+            int start = (int) range[0];
+            int end = (int) Math.min(range[1], stored.content.length - 1);
+            s3Object.getObjectMetadata().setContentLength(end - start + 1);
+            s3Object.getObjectMetadata().setHeader("Content-Range", "bytes " + start + "-" + end + "/" + stored.content.length);
+            s3Object.setObjectContent(new ByteArrayInputStream(stored.content, start, end - start + 1));
+            return s3Object;
+        }
+        s3Object.setObjectContent(new ByteArrayInputStream(stored.content));
+        return s3Object;
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(String bucketName, String key) {
+        StoredObject stored = objects.get(key);
+        if (stored == null) {
+            throw notFound(key);
+        }
+        return stored.metadata.clone();
+    }
+
+    @Override
+    public boolean doesObjectExist(String bucketName, String objectName) {
+        return objects.containsKey(objectName);
+    }
+
+    @Override
+    public PutObjectResult putObject(String bucketName, String key, InputStream input, ObjectMetadata metadata) {
+        return putObject(new PutObjectRequest(bucketName, key, input, metadata));
+    }
+
+    @Override
+    public synchronized PutObjectResult putObject(PutObjectRequest request) {
+        putCount.incrementAndGet();
+        StoredObject existing = objects.get(request.getKey());
+        Map<String, String> headers = request.getCustomRequestHeaders();
+        if (headers != null) {
+            String ifMatch = headers.get("If-Match");
+            if (ifMatch != null && (existing == null
+                    || !ifMatch.replace("\"", "").equals(existing.metadata.getETag()))) {
+                throw status(412, request.getKey());
+            }
+            if ("*".equals(headers.get("If-None-Match")) && existing != null) {
+                throw status(412, request.getKey());
+            }
+        }
+
+        byte[] content;
+        try (InputStream in = request.getInputStream()) {
+            content = in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        ObjectMetadata metadata = request.getMetadata() != null ? request.getMetadata().clone() : new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        metadata.setHeader("ETag", DigestUtils.md5DigestAsHex(content));
+        metadata.setLastModified(new Date());
+        objects.put(request.getKey(), new StoredObject(content, metadata));
+
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(metadata.getETag());
+        result.setMetadata(metadata);
+        return result;
+    }
+
+    @Override
+    public void deleteObject(String bucketName, String key) {
+        objects.remove(key);
+    }
+
+    @Override
+    public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+        listCount.incrementAndGet();
+        String prefix = request.getPrefix() == null ? "" : request.getPrefix();
+        int maxKeys = request.getMaxKeys() == null ? 1000 : request.getMaxKeys();
+        String after = request.getContinuationToken() != null ? request.getContinuationToken() : request.getStartAfter();
+
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        result.setBucketName(request.getBucketName());
+        result.setPrefix(prefix);
+        int count = 0;
+        String lastKey = null;
+        for (Map.Entry<String, StoredObject> entry : objects.tailMap(prefix, true).entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            if (after != null && key.compareTo(after) <= 0) {
+                continue;
+            }
+            if (request.getDelimiter() != null) {
+                int delimiterIndex = key.indexOf(request.getDelimiter(), prefix.length());
+                if (delimiterIndex >= 0) {
+                    String commonPrefix = key.substring(0, delimiterIndex + request.getDelimiter().length());
+                    if (!result.getCommonPrefixes().contains(commonPrefix)) {
+                        if (count == maxKeys) {
+                            result.setTruncated(true);
+                            result.setNextContinuationToken(lastKey);
+                            break;
+                        }
+                        result.getCommonPrefixes().add(commonPrefix);
+                        count++;
+                    }
+                    lastKey = key;
+                    continue;
+                }
+            }
+            if (count == maxKeys) {
+                result.setTruncated(true);
+                result.setNextContinuationToken(lastKey);
+                break;
+            }
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName(request.getBucketName());
+            summary.setKey(key);
+            summary.setSize(entry.getValue().content.length);
+            summary.setETag(entry.getValue().metadata.getETag());
+            summary.setLastModified(entry.getValue().metadata.getLastModified());
+            result.getObjectSummaries().add(summary);
+            count++;
+            lastKey = key;
+        }
+        result.setKeyCount(count);
+        return result;
+    }
+
+    @Override
+    public synchronized com.amazonaws.services.s3.model.CopyObjectResult copyObject(
+            com.amazonaws.services.s3.model.CopyObjectRequest request) {
+        StoredObject source = objects.get(request.getSourceKey());
+        if (source == null) {
+            throw notFound(request.getSourceKey());
+        }
+        ObjectMetadata metadata = request.getNewObjectMetadata() != null
+            ? request.getNewObjectMetadata().clone() : source.metadata.clone();
+        metadata.setContentLength(source.content.length);
+        metadata.setHeader("ETag", source.metadata.getETag());
+        metadata.setLastModified(new Date());
+        objects.put(request.getDestinationKey(), new StoredObject(source.content, metadata));
+
+        com.amazonaws.services.s3.model.CopyObjectResult result = new com.amazonaws.services.s3.model.CopyObjectResult();
+        result.setETag(metadata.getETag());
+        return result;
+    }
+
+    @Override
+    public java.net.URL generatePresignedUrl(com.amazonaws.services.s3.model.GeneratePresignedUrlRequest request) {
+        int signature = presignCount.incrementAndGet();
+        try {
+            return new java.net.URL(String.format("https://%s.s3.local/%s?X-Method=%s&X-Expires=%d&X-Signature=%d",
+                request.getBucketName(), request.getKey(), request.getMethod(),
+                request.getExpiration().getTime() / 1000, signature));
+        } catch (java.net.MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public com.amazonaws.services.s3.model.InitiateMultipartUploadResult initiateMultipartUpload(
+            com.amazonaws.services.s3.model.InitiateMultipartUploadRequest request) {
+        String uploadId = java.util.UUID.randomUUID().toString();
+        uploads.put(uploadId, new java.util.TreeMap<>());
+        uploadMetadata.put(uploadId, request.getObjectMetadata() != null ? request.getObjectMetadata() : new ObjectMetadata());
+        com.amazonaws.services.s3.model.InitiateMultipartUploadResult result = new com.amazonaws.services.s3.model.InitiateMultipartUploadResult();
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public com.amazonaws.services.s3.model.UploadPartResult uploadPart(com.amazonaws.services.s3.model.UploadPartRequest request) {
+        java.util.TreeMap<Integer, byte[]> parts = uploads.get(request.getUploadId());
+        if (parts == null) {
+            throw notFound(request.getUploadId());
+        }
+        byte[] content;
+        try (InputStream in = request.getInputStream()) {
+            content = in.readNBytes((int) request.getPartSize());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        partCount.incrementAndGet();
+        synchronized (parts) {
+            parts.put(request.getPartNumber(), content);
+        }
+        com.amazonaws.services.s3.model.UploadPartResult result = new com.amazonaws.services.s3.model.UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(DigestUtils.md5DigestAsHex(content));
+        return result;
+    }
+
+    @Override
+    public com.amazonaws.services.s3.model.CompleteMultipartUploadResult completeMultipartUpload(
+            com.amazonaws.services.s3.model.CompleteMultipartUploadRequest request) {
+        java.util.TreeMap<Integer, byte[]> parts = uploads.remove(request.getUploadId());
+        if (parts == null) {
+            throw notFound(request.getUploadId());
+        }
+        java.io.ByteArrayOutputStream content = new java.io.ByteArrayOutputStream();
+        for (com.amazonaws.services.s3.model.PartETag part : request.getPartETags()) {
+            content.writeBytes(parts.get(part.getPartNumber()));
+        }
+        ObjectMetadata metadata = uploadMetadata.remove(request.getUploadId()).clone();
+        byte[] bytes = content.toByteArray();
+        metadata.setContentLength(bytes.length);
+        metadata.setHeader("ETag", DigestUtils.md5DigestAsHex(bytes) + "-" + request.getPartETags().size());
+        metadata.setLastModified(new Date());
+        objects.put(request.getKey(), new StoredObject(bytes, metadata));
+
+        com.amazonaws.services.s3.model.CompleteMultipartUploadResult result = new com.amazonaws.services.s3.model.CompleteMultipartUploadResult();
+        result.setKey(request.getKey());
+        result.setETag(metadata.getETag());
+        return result;
+    }
+
+    @Override
+    public void abortMultipartUpload(com.amazonaws.services.s3.model.AbortMultipartUploadRequest request) {
+        uploads.remove(request.getUploadId());
+        uploadMetadata.remove(request.getUploadId());
+    }
+
+    /**
+     * Multipart uploads started but neither completed nor aborted
+     */
+    int openUploads() {
+        return uploads.size();
+    }
+
+    private static AmazonS3Exception notFound(String key) {
+        return status(404, key);
+    }
+
+    private static AmazonS3Exception status(int statusCode, String key) {
+        AmazonS3Exception e = new AmazonS3Exception("Status " + statusCode + " for key " + key);
+        e.setStatusCode(statusCode);
+        return e;
+    }
+}
@@ -0,0 +1,66 @@
+package com.tal.risk.analyser.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineDeltaTest {
+
+    @Test
+    void diffAppliesAndInverts() {
+        List<String> from = LineDelta.splitLines("a\nb\nc\nd\ne");
+        List<String> to = LineDelta.splitLines("a\nc\nd\nx\ne\nf");
+
+        List<LineDelta.Op> delta = LineDelta.diff(from, to);
+
+        assertEquals(to, LineDelta.apply(from, delta));
+        assertEquals(from, LineDelta.apply(to, LineDelta.invert(delta)));
+    }
+
+    @Test
+    void composedDeltaMatchesSuccessiveApplication() {
+        Random random = new Random(42);
+        List<String> v1 = randomLines(random, 40);
+        List<String> v2 = mutate(random, v1);
+        List<String> v3 = mutate(random, v2);
+
+        List<LineDelta.Op> composed = LineDelta.compose(LineDelta.diff(v1, v2), LineDelta.diff(v2, v3));
+
+        assertEquals(v3, LineDelta.apply(v1, composed));
+        assertEquals(v1, LineDelta.apply(v3, LineDelta.invert(composed)));
+    }
+
+    @Test
+    void unifiedDiffListsChangedLines() {
+        List<LineDelta.Op> delta = LineDelta.diff(LineDelta.splitLines("a\nb\nc"), LineDelta.splitLines("a\nB\nc"));
+
+        String unified = LineDelta.toUnifiedDiff(delta, "old", "new");
+
+        assertEquals("--- old\n+++ new\n@@ -2,1 +2,1 @@\n-b\n+B\n", unified);
+    }
+
+    private static List<String> randomLines(Random random, int count) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add("line " + random.nextInt(10));
+        }
+        return lines;
+    }
+
+    private static List<String> mutate(Random random, List<String> lines) {
+        List<String> mutated = new ArrayList<>(lines);
+        for (int i = 0; i < 8; i++) {
+            int position = random.nextInt(mutated.size() + 1);
+            if (random.nextBoolean() && position < mutated.size()) {
+                mutated.remove(position);
+            } else {
+                mutated.add(position, "new " + random.nextInt(100));
+            }
+        }
+        return mutated;
+    }
+}
@@ -0,0 +1,157 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapSlabStoreTest {
+
+    private static final int SLAB_BYTES = 4096;
+
+    @Test
+    void storesAndReadsBackJsonLiterals() throws Exception {
+        OffHeapSlabStore store = new OffHeapSlabStore(4 * SLAB_BYTES, SLAB_BYTES);
+        String testCases = "line \"one\"\n\ttwo \\ ünïcødé ✓";
+
+        assertTrue(store.put("PR-1/TestCases/A.json", "etag-1", "A.java", testCases, false));
+
+        try (OffHeapSlabStore.Hit hit = store.acquire("PR-1/TestCases/A.json", "etag-1")) {
+            assertEquals("A.java", hit.fileName());
+            assertEquals(testCases, hit.testCases());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            hit.writeTestCases(out);
+            assertEquals(new ObjectMapper().writeValueAsString(testCases), out.toString(StandardCharsets.UTF_8));
+        }
+        assertNull(store.acquire("PR-1/TestCases/A.json", "etag-2"));
+        assertNull(store.acquire("PR-1/TestCases/B.json", "etag-1"));
+    }
+
+    @Test
+    void replacingAnEntryKeepsOneLiveCopy() {
+        OffHeapSlabStore store = new OffHeapSlabStore(4 * SLAB_BYTES, SLAB_BYTES);
+
+        store.put("k", "e1", "A.java", "first", false);
+        long firstBytes = store.liveBytes();
+        store.put("k", "e2", "A.java", "second", false);
+
+        assertEquals(1, store.liveEntries());
+        assertEquals(firstBytes + 1, store.liveBytes());
+        assertFalse(store.contains("k", "e1"));
+        assertTrue(store.contains("k", "e2"));
+    }
+
+    @Test
+    void oldestSlabIsReclaimedWithinTheBudget() {
+        OffHeapSlabStore store = new OffHeapSlabStore(2 * SLAB_BYTES, SLAB_BYTES);
+        String body = repeat('x', 1000);
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(store.put("key-" + i, "e", "F" + i, body, false));
+        }
+
+        assertEquals(2L * SLAB_BYTES, store.reservedBytes());
+        assertTrue(store.liveBytes() <= 2L * SLAB_BYTES);
+        assertTrue(store.evictions() > 0);
+        assertTrue(store.contains("key-19", "e"));
+        assertFalse(store.contains("key-0", "e"));
+        assertEquals(20 - store.evictions(), store.liveEntries());
+    }
+
+    @Test
+    void rejectsEntriesLargerThanASlabAndPinnedSlabs() {
+        OffHeapSlabStore store = new OffHeapSlabStore(SLAB_BYTES, SLAB_BYTES);
+        assertFalse(store.put("big", "e", "Big.java", repeat('x', SLAB_BYTES), false));
+
+        store.put("a", "e", "A.java", repeat('a', 3000), false);
+        try (OffHeapSlabStore.Hit hit = store.acquire("a", "e")) {
+            // The only slab is being read, so it cannot be reclaimed for the new entry
+            assertFalse(store.put("b", "e", "B.java", repeat('b', 3000), false));
+            assertEquals(repeat('a', 3000), hit.testCases());
+        }
+        assertTrue(store.put("b", "e", "B.java", repeat('b', 3000), false));
+        assertFalse(store.contains("a", "e"));
+        assertEquals(2, store.rejected());
+    }
+
+    @Test
+    void indexGrowsAndSurvivesTombstones() {
+        OffHeapSlabStore store = new OffHeapSlabStore(64L * 1024 * 1024, 1024 * 1024);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 5000; i++) {
+                assertTrue(store.put("PR/TestCases/F" + i + ".json", "e" + round, "F" + i, "v" + round, false));
+            }
+        }
+        assertEquals(5000, store.liveEntries());
+        for (int i = 0; i < 5000; i += 499) {
+            try (OffHeapSlabStore.Hit hit = store.acquire("PR/TestCases/F" + i + ".json", "e2")) {
+                assertEquals("v2", hit.testCases());
+            }
+        }
+    }
+
+    @Test
+    void unreadPrefetchesAreWastedWhenEvicted() {
+        OffHeapSlabStore store = new OffHeapSlabStore(SLAB_BYTES, SLAB_BYTES);
+        store.put("read", "e", "R.java", repeat('r', 1500), true);
+        store.put("unread", "e", "U.java", repeat('u', 1500), true);
+        try (OffHeapSlabStore.Hit hit = store.acquire("read", "e")) {
+            assertTrue(hit.isFirstUseOfPrefetch());
+        }
+        try (OffHeapSlabStore.Hit hit = store.acquire("read", "e")) {
+            assertFalse(hit.isFirstUseOfPrefetch());
+        }
+
+        store.put("next", "e", "N.java", repeat('n', 1500), false);
+
+        assertEquals(2, store.evictions());
+        assertEquals(1, store.wastedPrefetches());
+    }
+
+    @Test
+    void streamedRetrievalMatchesTheRegularResponse() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        TestCaseCache cache = new TestCaseCache();
+        ReflectionTestUtils.setField(cache, "listingTtlMillis", 60_000L);
+        ReflectionTestUtils.setField(cache, "offHeapEnabled", true);
+        ReflectionTestUtils.setField(cache, "offHeapMaxBytes", 1L << 20);
+        ReflectionTestUtils.setField(cache, "offHeapSlabBytes", 64 * 1024);
+        cache.init();
+
+        InMemoryAmazonS3 amazonS3 = new InMemoryAmazonS3();
+        S3StorageService service = new S3StorageService();
+        ReflectionTestUtils.setField(service, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(service, "bucketName", "test-bucket");
+        ReflectionTestUtils.setField(service, "cacheEnabled", true);
+        ReflectionTestUtils.setField(service, "testCaseCache", cache);
+        service.storeCodeData(new CodeStoreRequest("PR-9", new CodeStoreRequest.Content("A.java", "a \"quoted\" ✓")));
+        service.storeCodeData(new CodeStoreRequest("PR-9", new CodeStoreRequest.Content("B.java", "b\nb")));
+
+        JsonNode expected = objectMapper.valueToTree(service.getAllCodeFilesForPR("PR-9"));
+        int gets = amazonS3.getCount.get();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.writeAllCodeFilesForPR("PR-9", service.listCodeFilesForPR("PR-9"), out);
+        JsonNode response = objectMapper.readTree(out.toByteArray());
+
+        assertEquals(gets, amazonS3.getCount.get());
+        assertEquals("success", response.get("status").asText());
+        assertEquals(2, response.at("/data/count").asInt());
+        assertEquals(expected, response.at("/data/files"));
+        assertEquals("a \"quoted\" ✓", response.at("/data/files/0/testCases").asText());
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        java.util.Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
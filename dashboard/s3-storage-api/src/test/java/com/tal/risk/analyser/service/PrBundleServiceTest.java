@@ -0,0 +1,129 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import com.tal.risk.analyser.model.SummaryStoreRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrBundleServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ExecutorService executor;
+    private S3StorageService s3StorageService;
+    private PrBundleService bundleService;
+
+    @BeforeEach
+    void setUp() {
+        InMemoryAmazonS3 amazonS3 = new InMemoryAmazonS3();
+        executor = Executors.newFixedThreadPool(4);
+
+        s3StorageService = new S3StorageService();
+        ReflectionTestUtils.setField(s3StorageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(s3StorageService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(s3StorageService, "bucketName", BUCKET_NAME);
+
+        bundleService = new PrBundleService();
+        ReflectionTestUtils.setField(bundleService, "s3StorageService", s3StorageService);
+        ReflectionTestUtils.setField(bundleService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(bundleService, "s3FanOutExecutor", executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void bundleContainsSummaryAndAllFiles() throws Exception {
+        storeSummary("PR-1");
+        for (int i = 0; i < 5; i++) {
+            s3StorageService.storeCodeData(new CodeStoreRequest("PR-1",
+                new CodeStoreRequest.Content("Test" + i + ".java", "class Test" + i + " {}")));
+        }
+
+        JsonNode response = write("PR-1");
+
+        assertEquals("success", response.get("status").asText());
+        JsonNode data = response.get("data");
+        assertEquals("LOW", data.at("/summary/data/risk").asText());
+        assertEquals(5, data.get("count").asInt());
+        assertEquals(5, data.get("files").size());
+        assertTrue(data.get("files").get(0).get("testCases").asText().startsWith("class Test"));
+        assertFalse(data.has("errors"));
+    }
+
+    @Test
+    void missingSummaryIsReportedAlongsideTheFiles() throws Exception {
+        s3StorageService.storeCodeData(new CodeStoreRequest("PR-2", new CodeStoreRequest.Content("A.java", "class A {}")));
+
+        JsonNode data = write("PR-2").get("data");
+
+        assertTrue(data.get("summary").isNull());
+        assertTrue(data.at("/errors/summary").asText().contains("not found"));
+        assertEquals(1, data.get("count").asInt());
+    }
+
+    @Test
+    void sectionedSummaryIsReadWithASingleFanOutThread() throws Exception {
+        // Section reads fan out on the same executor as the bundle's fetches
+        executor.shutdownNow();
+        executor = Executors.newFixedThreadPool(1);
+        ReflectionTestUtils.setField(bundleService, "s3FanOutExecutor", executor);
+        ReflectionTestUtils.setField(s3StorageService, "s3FanOutExecutor", executor);
+        ReflectionTestUtils.setField(s3StorageService, "summarySectionsEnabled", true);
+        SummaryStoreRequest request = new SummaryStoreRequest();
+        request.setContent(new SummaryStoreRequest.Content("https://github.com/test/repo/pull/1",
+            Map.of("risk", "LOW", "notes", "n", "files", List.of("A.java"))));
+        s3StorageService.storeSummaryData("PR-3", request);
+        s3StorageService.storeCodeData(new CodeStoreRequest("PR-3", new CodeStoreRequest.Content("A.java", "class A {}")));
+
+        JsonNode data = CompletableFuture.supplyAsync(() -> {
+            try {
+                return write("PR-3");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).get(10, TimeUnit.SECONDS).get("data");
+
+        assertEquals("LOW", data.at("/summary/data/risk").asText());
+        assertEquals("n", data.at("/summary/data/notes").asText());
+        assertEquals(1, data.get("count").asInt());
+    }
+
+    @Test
+    void unknownPrIsNotFound() {
+        assertThrows(NoSuchElementException.class, () -> bundleService.open("PR-404"));
+        assertThrows(IllegalArgumentException.class, () -> bundleService.open(" "));
+    }
+
+    private JsonNode write(String prId) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bundleService.write(bundleService.open(prId), out);
+        return objectMapper.readTree(out.toByteArray());
+    }
+
+    private void storeSummary(String prId) {
+        SummaryStoreRequest request = new SummaryStoreRequest();
+        request.setContent(new SummaryStoreRequest.Content("https://github.com/test/repo/pull/1",
+            Collections.singletonMap("risk", "LOW")));
+        s3StorageService.storeSummaryData(prId, request);
+    }
+}
@@ -0,0 +1,132 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import com.tal.risk.analyser.model.PrCatalogEntry;
+import com.tal.risk.analyser.model.PrCatalogPage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrCatalogServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    private InMemoryAmazonS3 amazonS3;
+    private ExecutorService executor;
+    private PrCatalogService catalogService;
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+        executor = Executors.newFixedThreadPool(4);
+
+        catalogService = new PrCatalogService();
+        ReflectionTestUtils.setField(catalogService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(catalogService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(catalogService, "s3FanOutExecutor", executor);
+        ReflectionTestUtils.setField(catalogService, "defaultPageSize", 100);
+        ReflectionTestUtils.setField(catalogService, "maxPageSize", 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void catalogIsLoadedOnceFromTopLevelPrefixes() {
+        put("PR-1/TestCases/A.java.json");
+        put("PR-1/Summary/summary.json");
+        put("PR-2/TestCases/B.java.json");
+        put("PR-10/TestCases/C.java.json");
+        put("_blobs/ab/abcdef");
+
+        PrCatalogPage page = catalogService.listPrs(null, null, null);
+        assertEquals(List.of("PR-1", "PR-10", "PR-2"), ids(page));
+        assertNull(page.getNextPageToken());
+        for (PrCatalogEntry entry : page.getPrs()) {
+            assertNotNull(entry.getLastModified());
+        }
+
+        // Known times are not looked up again, and the catalog is not reloaded
+        int lists = amazonS3.listCount.get();
+        assertEquals(List.of("PR-1", "PR-10", "PR-2"), ids(catalogService.listPrs(null, null, null)));
+        assertEquals(lists, amazonS3.listCount.get());
+    }
+
+    @Test
+    void pagesFollowEachOtherWithinAPrefix() {
+        for (int i = 1; i <= 5; i++) {
+            put("PR-" + i + "/Summary/summary.json");
+        }
+        put("OTHER-1/Summary/summary.json");
+
+        List<String> ids = new ArrayList<>();
+        String pageToken = null;
+        int pages = 0;
+        do {
+            PrCatalogPage page = catalogService.listPrs("PR-", 2, pageToken);
+            ids.addAll(ids(page));
+            pageToken = page.getNextPageToken();
+            pages++;
+        } while (pageToken != null);
+
+        assertEquals(List.of("PR-1", "PR-2", "PR-3", "PR-4", "PR-5"), ids);
+        assertEquals(3, pages);
+
+        // A token only works for the prefix it was issued for
+        String token = catalogService.listPrs("PR-", 2, null).getNextPageToken();
+        assertThrows(IllegalArgumentException.class, () -> catalogService.listPrs("OTHER-", 2, token));
+        assertThrows(IllegalArgumentException.class, () -> catalogService.listPrs(null, 2, "not a token!"));
+        assertThrows(IllegalArgumentException.class, () -> catalogService.listPrs(null, 0, null));
+        assertThrows(IllegalArgumentException.class, () -> catalogService.listPrs(null, 1001, null));
+    }
+
+    @Test
+    void storesAreListedAtOnceAndDeletionsOnRefresh() {
+        S3StorageService storageService = new S3StorageService();
+        ReflectionTestUtils.setField(storageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(storageService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(storageService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(storageService, "catalogEnabled", true);
+        ReflectionTestUtils.setField(storageService, "prCatalogService", catalogService);
+
+        put("PR-1/Summary/summary.json");
+        assertEquals(List.of("PR-1"), ids(catalogService.listPrs(null, null, null)));
+
+        storageService.storeCodeData(new CodeStoreRequest("PR-2", new CodeStoreRequest.Content("A.java", "@Test void a() {}")));
+        int lists = amazonS3.listCount.get();
+        PrCatalogPage page = catalogService.listPrs(null, null, null);
+        assertEquals(List.of("PR-1", "PR-2"), ids(page));
+        assertNotNull(page.getPrs().get(1).getLastModified());
+        assertEquals(lists, amazonS3.listCount.get());
+
+        amazonS3.deleteObject(BUCKET_NAME, "PR-1/Summary/summary.json");
+        catalogService.refresh();
+        assertEquals(List.of("PR-2"), ids(catalogService.listPrs(null, null, null)));
+    }
+
+    private void put(String key) {
+        byte[] content = "{}".getBytes(StandardCharsets.UTF_8);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        amazonS3.putObject(BUCKET_NAME, key, new ByteArrayInputStream(content), metadata);
+    }
+
+    private static List<String> ids(PrCatalogPage page) {
+        return page.getPrs().stream().map(PrCatalogEntry::getPrId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,139 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.tal.risk.analyser.model.PresignedFile;
+import com.tal.risk.analyser.model.PresignedUpload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PresignedUrlServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    private InMemoryAmazonS3 amazonS3;
+    private ExecutorService executor;
+    private S3StorageService s3StorageService;
+    private PresignedUrlService presignedUrlService;
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+        executor = Executors.newFixedThreadPool(2);
+
+        ContentAddressedBlobStore blobStore = new ContentAddressedBlobStore();
+        ReflectionTestUtils.setField(blobStore, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(blobStore, "bucketName", BUCKET_NAME);
+
+        s3StorageService = new S3StorageService();
+        ReflectionTestUtils.setField(s3StorageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(s3StorageService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(s3StorageService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(s3StorageService, "blobStore", blobStore);
+        ReflectionTestUtils.setField(s3StorageService, "dedupEnabled", true);
+        ReflectionTestUtils.setField(s3StorageService, "sharedBlobsEnabled", true);
+        ReflectionTestUtils.setField(s3StorageService, "sharedBlobMinBytes", 64);
+
+        presignedUrlService = new PresignedUrlService();
+        ReflectionTestUtils.setField(presignedUrlService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(presignedUrlService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(presignedUrlService, "s3FanOutExecutor", executor);
+        ReflectionTestUtils.setField(presignedUrlService, "ttlSeconds", 300L);
+        ReflectionTestUtils.setField(presignedUrlService, "windowSeconds", 3600L);
+        ReflectionTestUtils.setField(presignedUrlService, "cacheMaxEntries", 100);
+        ReflectionTestUtils.setField(presignedUrlService, "sharedBlobsEnabled", true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void manifestListsFilesWithoutDownloadingThem() {
+        store("A.java", "class A {}");
+        store("My Test.java", "x".repeat(100));
+        int getsBefore = amazonS3.getCount.get();
+
+        List<PresignedFile> files = presignedUrlService.presignCodeFiles("PR-1");
+
+        assertEquals(getsBefore, amazonS3.getCount.get());
+        assertEquals(2, files.size());
+        assertEquals("A.java", files.get(0).getId());
+        assertTrue(files.get(0).getUrl().contains("PR-1/TestCases/A.java.json"));
+        assertNull(files.get(0).getTestCasesUrl());
+        assertEquals("My_Test.java", files.get(1).getId());
+        assertTrue(files.get(1).getTestCasesUrl().contains(ContentAddressedBlobStore.BLOB_PREFIX));
+        assertTrue(java.time.Instant.parse(files.get(0).getExpiresAt())
+            .isAfter(java.time.Instant.now().plusSeconds(299)));
+    }
+
+    @Test
+    void urlsAreSignedOncePerKeyAndWindow() {
+        store("A.java", "class A {}");
+
+        String first = presignedUrlService.presignCodeFiles("PR-1").get(0).getUrl();
+        String second = presignedUrlService.presignCodeFiles("PR-1").get(0).getUrl();
+
+        assertEquals(first, second);
+        assertEquals(1, amazonS3.presignCount.get());
+    }
+
+    @Test
+    void directUploadIsPresignedAndRecorded() throws Exception {
+        PresignedUpload upload = presignedUrlService.presignCodeUpload("PR-1", "My Test.java");
+        assertEquals("PR-1/TestCases/My_Test.java.json", upload.getS3Key());
+        assertEquals("PUT", upload.getMethod());
+        assertEquals("application/json", upload.getHeaders().get("Content-Type"));
+        assertThrows(IllegalArgumentException.class, () -> presignedUrlService.presignCodeUpload("PR-1", " "));
+
+        // Nothing uploaded yet
+        assertThrows(NoSuchElementException.class, () -> s3StorageService.completeCodeUpload("PR-1", "My Test.java"));
+
+        // The client PUTs straight to S3 with the presigned URL
+        putDirect(upload.getS3Key(), "{\"fileName\":\"My Test.java\",\"testCases\":\"class T {}\"}");
+        Map<String, Object> recorded = s3StorageService.completeCodeUpload("PR-1", "My Test.java");
+
+        assertEquals(upload.getS3Key(), recorded.get("s3Key"));
+        assertNotNull(amazonS3.getObjectMetadata(BUCKET_NAME, upload.getS3Key())
+            .getUserMetaDataOf(S3StorageService.UPLOAD_COMPLETED_METADATA));
+        assertEquals("class T {}", s3StorageService.getCodeData(upload.getS3Key()).get("testCases"));
+    }
+
+    @Test
+    void uploadOfTheWrongContentIsRejected() {
+        putDirect("PR-1/TestCases/A.java.json", "{\"fileName\":\"B.java\",\"testCases\":\"\"}");
+        assertThrows(IllegalArgumentException.class, () -> s3StorageService.completeCodeUpload("PR-1", "A.java"));
+
+        putDirect("PR-1/TestCases/A.java.json", "not json");
+        assertThrows(IllegalArgumentException.class, () -> s3StorageService.completeCodeUpload("PR-1", "A.java"));
+    }
+
+    @Test
+    void unknownPrIsReported() {
+        assertThrows(NoSuchElementException.class, () -> presignedUrlService.presignCodeFiles("PR-404"));
+    }
+
+    private void putDirect(String key, String body) {
+        byte[] bytes = body.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(bytes.length);
+        metadata.setContentType("application/json");
+        amazonS3.putObject(BUCKET_NAME, key, new java.io.ByteArrayInputStream(bytes), metadata);
+    }
+
+    private void store(String fileName, String testCases) {
+        s3StorageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content(fileName, testCases)));
+    }
+}
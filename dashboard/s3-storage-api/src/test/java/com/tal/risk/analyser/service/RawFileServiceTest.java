@@ -0,0 +1,172 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RawFileServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private InMemoryAmazonS3 amazonS3;
+    private S3StorageService storageService;
+    private StreamingCodeStoreService streamingService;
+    private RawFileService rawFileService;
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+
+        ContentAddressedBlobStore blobStore = new ContentAddressedBlobStore();
+        ReflectionTestUtils.setField(blobStore, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(blobStore, "bucketName", BUCKET_NAME);
+
+        storageService = new S3StorageService();
+        ReflectionTestUtils.setField(storageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(storageService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(storageService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(storageService, "dedupEnabled", true);
+        ReflectionTestUtils.setField(storageService, "blobStore", blobStore);
+        ReflectionTestUtils.setField(storageService, "rawFilesEnabled", true);
+
+        streamingService = new StreamingCodeStoreService();
+        ReflectionTestUtils.setField(streamingService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(streamingService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(streamingService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(streamingService, "s3StorageService", storageService);
+        ReflectionTestUtils.setField(streamingService, "dedupEnabled", true);
+        ReflectionTestUtils.setField(streamingService, "rawFilesEnabled", true);
+        ReflectionTestUtils.setField(streamingService, "partBytes", 1024);
+
+        rawFileService = new RawFileService();
+        ReflectionTestUtils.setField(rawFileService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(rawFileService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(rawFileService, "s3StorageService", storageService);
+    }
+
+    @Test
+    void testCasesAreStoredAsATextObjectBesideASmallReference() throws Exception {
+        String testCases = "@Test void a() {}\n@Test void é() {}\n";
+        String s3Key = storageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A.java", testCases)));
+
+        assertEquals("PR-1/TestCases/A.java.json", s3Key);
+        assertEquals(testCases, amazonS3.content("PR-1/Files/A.java"));
+        assertEquals(S3StorageService.RAW_FILE_CONTENT_TYPE,
+            amazonS3.getObjectMetadata(BUCKET_NAME, "PR-1/Files/A.java").getContentType());
+        assertFalse(amazonS3.content(s3Key).contains("@Test"));
+        assertEquals("PR-1/Files/A.java",
+            amazonS3.getObjectMetadata(BUCKET_NAME, s3Key).getUserMetaDataOf(S3StorageService.RAW_FILE_METADATA));
+
+        // Readers follow the reference
+        assertEquals(testCases, storageService.getStoredTestCases(s3Key));
+        assertEquals(testCases, storageService.getCodeData("PR-1").get("testCases"));
+
+        // Storing the same test cases again writes nothing
+        int puts = amazonS3.putCount.get();
+        storageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A.java", testCases)));
+        assertEquals(puts, amazonS3.putCount.get());
+    }
+
+    @Test
+    void rangesAreServedWithRangedGets() throws Exception {
+        storageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A.java", "0123456789")));
+
+        try (RawFileService.RawFile file = rawFileService.open("PR-1", "A.java", null)) {
+            assertFalse(file.isPartial());
+            assertEquals("0123456789", read(file));
+        }
+        try (RawFileService.RawFile file = rawFileService.open("PR-1", "A.java", "bytes=2-4")) {
+            assertTrue(file.isPartial());
+            assertEquals("234", read(file));
+            assertEquals("bytes 2-4/10", file.contentRange());
+        }
+        try (RawFileService.RawFile file = rawFileService.open("PR-1", "A.java", "bytes=7-")) {
+            assertEquals("789", read(file));
+        }
+        try (RawFileService.RawFile file = rawFileService.open("PR-1", "A.java", "bytes=-2")) {
+            assertEquals("89", read(file));
+            assertEquals("bytes 8-9/10", file.contentRange());
+        }
+        // Several ranges are not supported, so the whole file is returned
+        try (RawFileService.RawFile file = rawFileService.open("PR-1", "A.java", "bytes=0-1,4-5")) {
+            assertFalse(file.isPartial());
+            assertEquals(10, file.getContentLength());
+        }
+
+        RangeNotSatisfiableException e = assertThrows(RangeNotSatisfiableException.class,
+            () -> rawFileService.open("PR-1", "A.java", "bytes=10-"));
+        assertEquals(10, e.getLength());
+        assertThrows(NoSuchElementException.class, () -> rawFileService.open("PR-1", "B.java", null));
+    }
+
+    @Test
+    void filesStoredInlineAreServedToo() throws Exception {
+        ReflectionTestUtils.setField(storageService, "rawFilesEnabled", false);
+        storageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A.java", "0123456789")));
+        assertNull(amazonS3.content("PR-1/Files/A.java"));
+
+        try (RawFileService.RawFile file = rawFileService.open("PR-1", "A.java", "bytes=3-5")) {
+            assertEquals("345", read(file));
+            assertEquals("bytes 3-5/10", file.contentRange());
+        }
+        assertThrows(RangeNotSatisfiableException.class, () -> rawFileService.open("PR-1", "A.java", "bytes=12-20"));
+
+        // Switching to raw files replaces the inline copy, and back again removes the raw object
+        ReflectionTestUtils.setField(storageService, "rawFilesEnabled", true);
+        storageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A.java", "abc")));
+        assertEquals("abc", amazonS3.content("PR-1/Files/A.java"));
+        ReflectionTestUtils.setField(storageService, "rawFilesEnabled", false);
+        storageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A.java", "def")));
+        assertNull(amazonS3.content("PR-1/Files/A.java"));
+    }
+
+    @Test
+    void inlineStoreWithoutDeduplicationRemovesTheRawObject() throws Exception {
+        ReflectionTestUtils.setField(storageService, "dedupEnabled", false);
+        storageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A.java", "old")));
+        assertEquals("old", amazonS3.content("PR-1/Files/A.java"));
+
+        ReflectionTestUtils.setField(storageService, "rawFilesEnabled", false);
+        storageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A.java", "new")));
+
+        assertNull(amazonS3.content("PR-1/Files/A.java"));
+        try (RawFileService.RawFile file = rawFileService.open("PR-1", "A.java", null)) {
+            assertEquals("new", read(file));
+        }
+    }
+
+    @Test
+    void streamedFilesAreUploadedAsRawText() throws Exception {
+        StringBuilder testCases = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            testCases.append("@Test void case").append(i).append("() { assertEquals(\"\\t✓\", run()); }\n");
+        }
+        String body = objectMapper.writeValueAsString(
+            new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("Large.java", testCases.toString())));
+
+        streamingService.storeCodeData("PR-1", new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(amazonS3.partCount.get() > 1);
+        assertEquals(testCases.toString(), amazonS3.content("PR-1/Files/Large.java"));
+        assertEquals(testCases.toString(), storageService.getStoredTestCases("PR-1/TestCases/Large.java.json"));
+
+        // An unchanged body is discarded once it has been hashed
+        int puts = amazonS3.putCount.get();
+        streamingService.storeCodeData("PR-1", new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0, amazonS3.openUploads());
+        assertEquals(puts, amazonS3.putCount.get());
+    }
+
+    private static String read(RawFileService.RawFile file) throws Exception {
+        return new String(file.getContent().readAllBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,88 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeFileResult;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class S3StorageCodeFileLookupServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    private InMemoryAmazonS3 amazonS3;
+    private TestCaseCache cache;
+    private S3StorageService storageService;
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+
+        cache = new TestCaseCache();
+        ReflectionTestUtils.setField(cache, "maxBytes", 1L << 20);
+        ReflectionTestUtils.setField(cache, "listingTtlMillis", 60_000L);
+        cache.init();
+
+        storageService = new S3StorageService();
+        ReflectionTestUtils.setField(storageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(storageService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(storageService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(storageService, "testCaseCache", cache);
+
+        storageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("My Test.java", "@Test void a() {}")));
+        storageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("Other.java", "@Test void b() {}")));
+        amazonS3.getCount.set(0);
+    }
+
+    @Test
+    void fileIsReadFromItsKeyWithoutListing() {
+        CodeFileResult result = storageService.getCodeFile("PR-1", "My Test.java", null);
+
+        assertEquals("PR-1/TestCases/My_Test.java.json", result.getS3Key());
+        assertEquals("My Test.java", result.getFile().getId());
+        assertEquals("@Test void a() {}", result.getFile().getTestCases());
+        assertEquals(amazonS3.getObjectMetadata(BUCKET_NAME, result.getS3Key()).getETag(), result.getEtag());
+        assertFalse(result.isNotModified());
+        assertEquals(1, amazonS3.getCount.get());
+        assertEquals(0, amazonS3.listCount.get());
+
+        assertThrows(NoSuchElementException.class, () -> storageService.getCodeFile("PR-1", "Missing.java", null));
+        assertThrows(IllegalArgumentException.class, () -> storageService.getCodeFile("PR-1", " ", null));
+    }
+
+    @Test
+    void cachedFileIsRevalidatedWithoutDownloadingIt() {
+        ReflectionTestUtils.setField(storageService, "cacheEnabled", true);
+
+        CodeFileResult first = storageService.getCodeFile("PR-1", "Other.java", null);
+        CodeFileResult second = storageService.getCodeFile("PR-1", "Other.java", null);
+
+        assertEquals(first.getEtag(), second.getEtag());
+        assertEquals("@Test void b() {}", second.getFile().getTestCases());
+        assertEquals(1, cache.stats().hits);
+        assertEquals(0, amazonS3.listCount.get());
+
+        // A changed file fails the revalidation and is downloaded again
+        storageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("Other.java", "@Test void c() {}")));
+        CodeFileResult changed = storageService.getCodeFile("PR-1", "Other.java", null);
+        assertNotEquals(first.getEtag(), changed.getEtag());
+        assertEquals("@Test void c() {}", changed.getFile().getTestCases());
+    }
+
+    @Test
+    void clientCopyThatIsCurrentIsNotSentAgain() {
+        String eTag = storageService.getCodeFile("PR-1", "Other.java", null).getEtag();
+
+        CodeFileResult result = storageService.getCodeFile("PR-1", "Other.java", "W/\"" + eTag + "\"");
+        assertTrue(result.isNotModified());
+        assertNull(result.getFile());
+        assertEquals(eTag, result.getEtag());
+
+        assertFalse(storageService.getCodeFile("PR-1", "Other.java", "\"stale\"").isNotModified());
+    }
+}
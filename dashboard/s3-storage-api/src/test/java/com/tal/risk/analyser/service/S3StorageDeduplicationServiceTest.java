@@ -0,0 +1,156 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeFileResponse;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import com.tal.risk.analyser.model.SummaryStoreRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class S3StorageDeduplicationServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+    private static final String BODY = "public class SharedTest { /* identical generated tests */ }";
+
+    private InMemoryAmazonS3 amazonS3;
+    private ContentAddressedBlobStore blobStore;
+    private S3StorageService s3StorageService;
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+        blobStore = new ContentAddressedBlobStore();
+        ReflectionTestUtils.setField(blobStore, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(blobStore, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(blobStore, "sharedBlobsEnabled", true);
+        ReflectionTestUtils.setField(blobStore, "gracePeriodMillis", 0L);
+        ReflectionTestUtils.setField(blobStore, "deleteWaitMillis", 5000L);
+
+        s3StorageService = new S3StorageService();
+        ReflectionTestUtils.setField(s3StorageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(s3StorageService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(s3StorageService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(s3StorageService, "blobStore", blobStore);
+        ReflectionTestUtils.setField(s3StorageService, "dedupEnabled", true);
+    }
+
+    @Test
+    void identicalCodeDataIsNotUploadedTwice() {
+        s3StorageService.storeCodeData(codeRequest("PR-1", "Shared.java", BODY));
+        s3StorageService.storeCodeData(codeRequest("PR-1", "Shared.java", BODY));
+        assertEquals(1, amazonS3.putCount.get());
+
+        s3StorageService.storeCodeData(codeRequest("PR-1", "Shared.java", BODY + " // changed"));
+        assertEquals(2, amazonS3.putCount.get());
+    }
+
+    @Test
+    void identicalSummaryIsNotUploadedTwice() {
+        SummaryStoreRequest request = new SummaryStoreRequest();
+        request.setContent(new SummaryStoreRequest.Content("https://github.com/test/repo/pull/1",
+            Collections.singletonMap("risk", "LOW")));
+
+        s3StorageService.storeSummaryData("PR-1", request);
+        s3StorageService.storeSummaryData("PR-1", request);
+
+        assertEquals(1, amazonS3.putCount.get());
+    }
+
+    @Test
+    void sharedBlobsAreStoredOnceAndReferenceCounted() throws Exception {
+        ReflectionTestUtils.setField(s3StorageService, "sharedBlobsEnabled", true);
+        ReflectionTestUtils.setField(s3StorageService, "sharedBlobMinBytes", 16);
+
+        s3StorageService.storeCodeData(codeRequest("PR-1", "Shared.java", BODY));
+        s3StorageService.storeCodeData(codeRequest("PR-2", "Other.java", BODY));
+
+        String blobKey = ContentAddressedBlobStore.BLOB_PREFIX
+            + ContentAddressedBlobStore.sha256Hex(BODY.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        assertEquals(BODY, amazonS3.content(blobKey));
+        assertEquals(2, blobStore.referenceCount(blobKey));
+        assertFalse(amazonS3.content("PR-2/TestCases/Other.java.json").contains("SharedTest"));
+
+        // Readers follow the reference transparently
+        List<CodeFileResponse> files = s3StorageService.getAllCodeFilesForPR("PR-2");
+        assertEquals(BODY, files.get(0).getTestCases());
+        Map<String, String> codeData = s3StorageService.getCodeData("PR-2/TestCases/Other.java.json");
+        assertEquals(BODY, codeData.get("testCases"));
+        assertEquals(BODY, s3StorageService.getCodeFileFields("PR-2", Collections.singletonList("/testCases"))
+            .get(0).get("/testCases"));
+
+        // Overwriting both references with other content releases the blob, and the sweep deletes it
+        s3StorageService.storeCodeData(codeRequest("PR-1", "Shared.java", "tiny"));
+        assertEquals(1, blobStore.referenceCount(blobKey));
+        assertEquals(0, blobStore.sweep());
+        assertNotNull(amazonS3.content(blobKey));
+        s3StorageService.storeCodeData(codeRequest("PR-2", "Other.java", "tiny"));
+        assertEquals(0, blobStore.referenceCount(blobKey));
+        assertNotNull(amazonS3.content(blobKey));
+        Thread.sleep(2);
+        assertEquals(1, blobStore.sweep());
+        assertNull(amazonS3.content(blobKey));
+    }
+
+    @Test
+    void overwritesWithoutDeduplicationStillReleaseSharedBlobs() throws Exception {
+        ReflectionTestUtils.setField(s3StorageService, "sharedBlobsEnabled", true);
+        ReflectionTestUtils.setField(s3StorageService, "sharedBlobMinBytes", 16);
+        s3StorageService.storeCodeData(codeRequest("PR-1", "Shared.java", BODY));
+        s3StorageService.storeCodeData(codeRequest("PR-2", "Other.java", BODY));
+        String blobKey = ContentAddressedBlobStore.BLOB_PREFIX
+            + ContentAddressedBlobStore.sha256Hex(BODY.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        assertEquals(2, blobStore.referenceCount(blobKey));
+
+        ReflectionTestUtils.setField(s3StorageService, "dedupEnabled", false);
+        s3StorageService.storeCodeData(codeRequest("PR-1", "Shared.java", "tiny"));
+        assertEquals(1, blobStore.referenceCount(blobKey));
+        // Replaced by a raw text object
+        ReflectionTestUtils.setField(s3StorageService, "rawFilesEnabled", true);
+        s3StorageService.storeCodeData(codeRequest("PR-2", "Other.java", "tiny"));
+        assertEquals(0, blobStore.referenceCount(blobKey));
+
+        Thread.sleep(2);
+        assertEquals(1, blobStore.sweep());
+        assertNull(amazonS3.content(blobKey));
+    }
+
+    @Test
+    void reacquiredBlobsSurviveTheSweep() throws Exception {
+        byte[] body = BODY.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        String blobKey = blobStore.blobKey(body);
+        blobStore.acquire(blobKey, body, "PR-1/TestCases/A.java.json");
+        blobStore.release(blobKey, "PR-1/TestCases/A.java.json");
+
+        // Referenced again before the sweep: kept
+        blobStore.acquire(blobKey, body, "PR-2/TestCases/B.java.json");
+        Thread.sleep(2);
+        assertEquals(0, blobStore.sweep());
+        assertEquals(BODY, amazonS3.content(blobKey));
+
+        // Referenced again while a sweep that already checked the references is deleting it: restored
+        blobStore.release(blobKey, "PR-2/TestCases/B.java.json");
+        String deletingKey = ContentAddressedBlobStore.DELETING_PREFIX + blobKey.substring(ContentAddressedBlobStore.BLOB_PREFIX.length()) + "/sweep";
+        amazonS3.putObject(BUCKET_NAME, deletingKey, new java.io.ByteArrayInputStream(new byte[0]), new com.amazonaws.services.s3.model.ObjectMetadata());
+        Thread acquire = new Thread(() -> blobStore.acquire(blobKey, body, "PR-3/TestCases/C.java.json"));
+        acquire.start();
+        Thread.sleep(100);
+        amazonS3.deleteObject(BUCKET_NAME, blobKey);
+        amazonS3.deleteObject(BUCKET_NAME, deletingKey);
+        acquire.join(5000);
+
+        assertFalse(acquire.isAlive());
+        assertEquals(BODY, amazonS3.content(blobKey));
+        assertEquals(1, blobStore.referenceCount(blobKey));
+    }
+
+    private static CodeStoreRequest codeRequest(String prId, String fileName, String testCases) {
+        return new CodeStoreRequest(prId, new CodeStoreRequest.Content(fileName, testCases));
+    }
+}
@@ -0,0 +1,130 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import com.tal.risk.analyser.model.SummaryStoreRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class S3StorageFieldProjectionServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+    private static final String PR_ID = "TEST-PR-123";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private S3StorageService s3StorageService;
+
+    @BeforeEach
+    void setUp() {
+        s3StorageService = new S3StorageService();
+        ReflectionTestUtils.setField(s3StorageService, "amazonS3", new InMemoryAmazonS3());
+        ReflectionTestUtils.setField(s3StorageService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(s3StorageService, "s3FanOutExecutor", executor);
+        ReflectionTestUtils.setField(s3StorageService, "bucketName", BUCKET_NAME);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void projectionSkipsUnrequestedSubtreesAndStopsEarly() throws Exception {
+        // Everything after the requested fields is malformed, so reading it would fail
+        String json = "{\"skip\":{\"deep\":[1,2,{\"x\":\"y\"}]},\"a\":{\"b\":[10,20,30]},\"c\":\"d\",\"rest\": ][";
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            JsonPointerProjection projection = JsonPointerProjection.project(parser, Arrays.asList("/a/b/1", "/c"));
+
+            assertTrue(projection.isStoppedEarly());
+            assertEquals(20, projection.getValues().get("/a/b/1").asInt());
+            assertEquals("d", projection.getValues().get("/c").asText());
+        }
+    }
+
+    @Test
+    void projectionResolvesNestedPointersFromMaterializedSubtree() throws Exception {
+        String json = "{\"a\":{\"b\":{\"c\":1}},\"z\":2}";
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            JsonPointerProjection projection = JsonPointerProjection.project(parser, Arrays.asList("/a", "/a/b/c", "/missing"));
+
+            assertEquals(2, projection.getValues().size());
+            assertEquals(1, projection.getValues().get("/a/b/c").asInt());
+            assertEquals(1, projection.getValues().get("/a").path("b").path("c").asInt());
+            assertFalse(projection.isStoppedEarly());
+        }
+    }
+
+    @Test
+    void getSummaryFieldsReturnsRequestedPointers() {
+        s3StorageService.storeSummaryData(PR_ID, summaryRequest());
+
+        Map<String, Object> fields = s3StorageService.getSummaryFields(PR_ID,
+            Arrays.asList("/githubUrl", "/data/risk/score", "/data/nope"));
+
+        assertEquals(2, fields.size());
+        assertEquals("https://github.com/test/repo/pull/1", fields.get("/githubUrl"));
+        assertEquals(0.8, fields.get("/data/risk/score"));
+    }
+
+    @Test
+    void getSummaryFieldsWorksOnSectionLayout() {
+        ReflectionTestUtils.setField(s3StorageService, "summarySectionsEnabled", true);
+        s3StorageService.storeSummaryData(PR_ID, summaryRequest());
+
+        Map<String, Object> fields = s3StorageService.getSummaryFields(PR_ID,
+            Arrays.asList("/githubUrl", "/data/risk/level", "/data/modules/1", "/data"));
+
+        assertEquals("https://github.com/test/repo/pull/1", fields.get("/githubUrl"));
+        assertEquals("HIGH", fields.get("/data/risk/level"));
+        assertEquals("billing", fields.get("/data/modules/1"));
+        assertEquals(summaryRequest().getContent().getData().keySet(), ((Map<?, ?>) fields.get("/data")).keySet());
+    }
+
+    @Test
+    void getCodeFileFieldsProjectsEachFile() {
+        s3StorageService.storeCodeData(PR_ID, new CodeStoreRequest(PR_ID, new CodeStoreRequest.Content("A.java", "class A {}")));
+        s3StorageService.storeCodeData(PR_ID, new CodeStoreRequest(PR_ID, new CodeStoreRequest.Content("B.java", "class B {}")));
+
+        List<Map<String, Object>> files = s3StorageService.getCodeFileFields(PR_ID, Collections.singletonList("/fileName"));
+
+        assertEquals(2, files.size());
+        assertEquals(Collections.singletonMap("/fileName", "A.java"), files.get(0));
+        assertEquals(Collections.singletonMap("/fileName", "B.java"), files.get(1));
+    }
+
+    @Test
+    void invalidPointerIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+            () -> s3StorageService.getSummaryFields(PR_ID, Collections.singletonList("data/risk")));
+    }
+
+    private static SummaryStoreRequest summaryRequest() {
+        Map<String, Object> risk = new HashMap<>();
+        risk.put("level", "HIGH");
+        risk.put("score", 0.8);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("risk", risk);
+        data.put("modules", Arrays.asList("auth", "billing"));
+
+        SummaryStoreRequest request = new SummaryStoreRequest();
+        request.setContent(new SummaryStoreRequest.Content("https://github.com/test/repo/pull/1", data));
+        return request;
+    }
+}
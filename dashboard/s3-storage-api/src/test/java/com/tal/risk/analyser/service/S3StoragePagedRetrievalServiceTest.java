@@ -0,0 +1,101 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeFileEntry;
+import com.tal.risk.analyser.model.CodeFilePage;
+import com.tal.risk.analyser.model.CodeFileResponse;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class S3StoragePagedRetrievalServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    private InMemoryAmazonS3 amazonS3;
+    private ExecutorService executor;
+    private S3StorageService storageService;
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+        executor = Executors.newFixedThreadPool(4);
+
+        storageService = new S3StorageService();
+        ReflectionTestUtils.setField(storageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(storageService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(storageService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(storageService, "s3FanOutExecutor", executor);
+        ReflectionTestUtils.setField(storageService, "defaultPageSize", 100);
+        ReflectionTestUtils.setField(storageService, "maxPageSize", 1000);
+
+        for (int i = 1; i <= 5; i++) {
+            storageService.storeCodeData(new CodeStoreRequest("PR-1",
+                new CodeStoreRequest.Content("File" + i + ".java", "@Test void case" + i + "() {}")));
+        }
+        storageService.storeCodeData(new CodeStoreRequest("PR-10", new CodeStoreRequest.Content("Other.java", "x")));
+        amazonS3.getCount.set(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void pagesFollowEachOtherUntilTheLastFile() {
+        List<String> names = new ArrayList<>();
+        String pageToken = null;
+        int pages = 0;
+        do {
+            CodeFilePage page = storageService.getCodeFilePage("PR-1", 2, pageToken, false);
+            assertTrue(page.getCount() <= 2);
+            for (Object file : page.getFiles()) {
+                names.add(((CodeFileResponse) file).getId());
+            }
+            pageToken = page.getNextPageToken();
+            pages++;
+        } while (pageToken != null);
+
+        assertEquals(List.of("File1.java", "File2.java", "File3.java", "File4.java", "File5.java"), names);
+        assertEquals(3, pages);
+        assertEquals(5, amazonS3.getCount.get());
+        assertEquals(3, amazonS3.listCount.get());
+    }
+
+    @Test
+    void contentlessPagesDownloadNothing() {
+        CodeFilePage page = storageService.getCodeFilePage("PR-1", null, null, true);
+
+        assertEquals(5, page.getCount());
+        assertNull(page.getNextPageToken());
+        CodeFileEntry entry = (CodeFileEntry) page.getFiles().get(0);
+        assertEquals("File1.java", entry.getId());
+        assertEquals("PR-1/TestCases/File1.java.json", entry.getS3Key());
+        assertEquals(amazonS3.content(entry.getS3Key()).length(), entry.getSize());
+        assertNotNull(entry.getEtag());
+        assertEquals(0, amazonS3.getCount.get());
+    }
+
+    @Test
+    void invalidPagesAreRejected() {
+        String token = storageService.getCodeFilePage("PR-1", 2, null, true).getNextPageToken();
+
+        // A token only works for the PR it was issued for
+        assertThrows(IllegalArgumentException.class, () -> storageService.getCodeFilePage("PR-10", 2, token, true));
+        assertThrows(IllegalArgumentException.class, () -> storageService.getCodeFilePage("PR-1", 2, "not a token!", true));
+        assertThrows(IllegalArgumentException.class, () -> storageService.getCodeFilePage("PR-1", 0, null, true));
+        assertThrows(IllegalArgumentException.class, () -> storageService.getCodeFilePage("PR-1", 1001, null, true));
+        assertThrows(NoSuchElementException.class, () -> storageService.getCodeFilePage("PR-2", 2, null, false));
+    }
+}
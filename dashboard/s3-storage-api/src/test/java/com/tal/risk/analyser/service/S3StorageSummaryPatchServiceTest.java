@@ -0,0 +1,155 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.SummaryPatchResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class S3StorageSummaryPatchServiceTest {
+
+    @Mock
+    private AmazonS3 amazonS3;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private S3StorageService s3StorageService;
+
+    private static final String BUCKET_NAME = "test-bucket";
+    private static final String PR_ID = "TEST-PR-123";
+    private static final String SUMMARY_KEY = PR_ID + "/Summary/summary.json";
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(s3StorageService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(s3StorageService, "summaryPatchMaxAttempts", 3);
+    }
+
+    @Test
+    void mergePatchFollowsRfc7396() throws Exception {
+        JsonNode target = objectMapper.readTree("{\"a\":\"b\",\"c\":{\"d\":\"e\",\"f\":\"g\"}}");
+        JsonNode patch = objectMapper.readTree("{\"a\":\"z\",\"c\":{\"f\":null}}");
+
+        JsonNode result = JsonMergePatch.apply(target, patch);
+
+        assertEquals(objectMapper.readTree("{\"a\":\"z\",\"c\":{\"d\":\"e\"}}"), result);
+        // The target itself is left untouched
+        assertEquals("g", target.path("c").path("f").asText());
+        // Arrays and scalars are replaced, not merged
+        assertEquals(objectMapper.readTree("{\"a\":[1]}"),
+            JsonMergePatch.apply(objectMapper.readTree("{\"a\":[1,2]}"), objectMapper.readTree("{\"a\":[1]}")));
+    }
+
+    @Test
+    void patchSummaryDataMergesSectionAndWritesConditionally() throws Exception {
+        when(amazonS3.getObject(BUCKET_NAME, SUMMARY_KEY)).thenReturn(
+            summaryObject("{\"githubUrl\":\"https://github.com/test/repo\",\"data\":{\"summary\":\"s\"}}", "etag-1"));
+        when(amazonS3.putObject(any(PutObjectRequest.class))).thenReturn(putResult("etag-2"));
+
+        SummaryPatchResult result = s3StorageService.patchSummaryData(
+            PR_ID, objectMapper.readTree("{\"data\":{\"risk\":{\"score\":0.7}}}"), null);
+
+        assertEquals(SUMMARY_KEY, result.getS3Key());
+        assertEquals("etag-2", result.getEtag());
+        Map<?, ?> data = (Map<?, ?>) result.getSummaryData().get("data");
+        assertEquals("s", data.get("summary"));
+        assertEquals(0.7, ((Map<?, ?>) data.get("risk")).get("score"));
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(amazonS3).putObject(captor.capture());
+        assertEquals("\"etag-1\"", captor.getValue().getCustomRequestHeaders().get("If-Match"));
+    }
+
+    @Test
+    void patchSummaryDataRetriesWhenAnotherWriterWins() throws Exception {
+        when(amazonS3.getObject(BUCKET_NAME, SUMMARY_KEY))
+            .thenReturn(summaryObject("{\"githubUrl\":\"u\",\"data\":{}}", "etag-1"))
+            .thenReturn(summaryObject("{\"githubUrl\":\"u\",\"data\":{\"tests\":1}}", "etag-2"));
+        when(amazonS3.putObject(any(PutObjectRequest.class)))
+            .thenThrow(statusException(412))
+            .thenReturn(putResult("etag-3"));
+
+        SummaryPatchResult result = s3StorageService.patchSummaryData(
+            PR_ID, objectMapper.readTree("{\"data\":{\"risk\":\"high\"}}"), null);
+
+        Map<?, ?> data = (Map<?, ?>) result.getSummaryData().get("data");
+        assertEquals(1, data.get("tests"));
+        assertEquals("high", data.get("risk"));
+        verify(amazonS3, times(2)).putObject(any(PutObjectRequest.class));
+    }
+
+    @Test
+    void patchSummaryDataRejectsStaleIfMatch() throws Exception {
+        when(amazonS3.getObject(BUCKET_NAME, SUMMARY_KEY)).thenReturn(
+            summaryObject("{\"githubUrl\":\"u\",\"data\":{}}", "etag-2"));
+
+        assertThrows(PreconditionFailedException.class, () -> s3StorageService.patchSummaryData(
+            PR_ID, objectMapper.readTree("{\"data\":{\"risk\":\"high\"}}"), "\"etag-1\""));
+        verify(amazonS3, never()).putObject(any(PutObjectRequest.class));
+    }
+
+    @Test
+    void patchSummaryDataCreatesSummaryOnlyIfAbsent() throws Exception {
+        when(amazonS3.getObject(eq(BUCKET_NAME), eq(SUMMARY_KEY))).thenThrow(statusException(404));
+        when(amazonS3.putObject(any(PutObjectRequest.class))).thenReturn(putResult("etag-1"));
+
+        s3StorageService.patchSummaryData(
+            PR_ID, objectMapper.readTree("{\"githubUrl\":\"u\",\"data\":{\"risk\":\"low\"}}"), null);
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(amazonS3).putObject(captor.capture());
+        assertEquals("*", captor.getValue().getCustomRequestHeaders().get("If-None-Match"));
+
+        // Removing a required field is rejected
+        when(amazonS3.getObject(eq(BUCKET_NAME), eq(SUMMARY_KEY))).thenReturn(
+            summaryObject("{\"githubUrl\":\"u\",\"data\":{}}", "etag-1"));
+        assertThrows(IllegalArgumentException.class, () -> s3StorageService.patchSummaryData(
+            PR_ID, objectMapper.readTree("{\"githubUrl\":null}"), null));
+    }
+
+    private static S3Object summaryObject(String json, String eTag) {
+        S3Object s3Object = new S3Object();
+        s3Object.setObjectContent(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setHeader("ETag", eTag);
+        s3Object.setObjectMetadata(metadata);
+        return s3Object;
+    }
+
+    private static PutObjectResult putResult(String eTag) {
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(eTag);
+        return result;
+    }
+
+    private static AmazonS3Exception statusException(int statusCode) {
+        AmazonS3Exception e = new AmazonS3Exception("status " + statusCode);
+        e.setStatusCode(statusCode);
+        return e;
+    }
+}
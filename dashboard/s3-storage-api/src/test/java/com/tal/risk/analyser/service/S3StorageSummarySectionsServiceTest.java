@@ -0,0 +1,168 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.SummaryPatchResult;
+import com.tal.risk.analyser.model.SummaryStoreRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class S3StorageSummarySectionsServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+    private static final String PR_ID = "TEST-PR-123";
+    private static final String GITHUB_URL = "https://github.com/test/repo/pull/1";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private InMemoryAmazonS3 amazonS3;
+    private S3StorageService s3StorageService;
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+        s3StorageService = new S3StorageService();
+        ReflectionTestUtils.setField(s3StorageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(s3StorageService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(s3StorageService, "s3FanOutExecutor", executor);
+        ReflectionTestUtils.setField(s3StorageService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(s3StorageService, "summaryPatchMaxAttempts", 3);
+        ReflectionTestUtils.setField(s3StorageService, "summarySectionsEnabled", true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void storeSummaryDataSplitsDataIntoSections() {
+        String key = s3StorageService.storeSummaryData(PR_ID, summaryRequest());
+
+        assertEquals(PR_ID + "/Summary/sections/_index.json", key);
+        assertTrue(amazonS3.doesObjectExist(BUCKET_NAME, PR_ID + "/Summary/sections/risk.json"));
+        assertTrue(amazonS3.doesObjectExist(BUCKET_NAME, PR_ID + "/Summary/sections/modules.json"));
+        assertTrue(amazonS3.doesObjectExist(BUCKET_NAME, PR_ID + "/Summary/sections/impacted%20tests.json"));
+        assertFalse(amazonS3.doesObjectExist(BUCKET_NAME, PR_ID + "/Summary/summary.json"));
+    }
+
+    @Test
+    void getSummarySectionsFetchesOnlyRequestedSections() {
+        s3StorageService.storeSummaryData(PR_ID, summaryRequest());
+        amazonS3.getCount.set(0);
+
+        Map<String, Object> summary = s3StorageService.getSummarySections(PR_ID, Arrays.asList("risk", "missing"));
+
+        assertEquals(GITHUB_URL, summary.get("githubUrl"));
+        Map<?, ?> data = (Map<?, ?>) summary.get("data");
+        assertEquals(1, data.size());
+        assertEquals("HIGH", ((Map<?, ?>) data.get("risk")).get("level"));
+        // The index plus the single requested section
+        assertEquals(2, amazonS3.getCount.get());
+    }
+
+    @Test
+    void getSummaryDataReassemblesLegacyView() {
+        s3StorageService.storeSummaryData(PR_ID, summaryRequest());
+
+        Map<String, Object> summary = s3StorageService.getSummaryData(PR_ID);
+
+        assertEquals(GITHUB_URL, summary.get("githubUrl"));
+        Map<?, ?> data = (Map<?, ?>) summary.get("data");
+        assertEquals(summaryRequest().getContent().getData().keySet(), data.keySet());
+        assertEquals(Arrays.asList("auth", "billing"), data.get("modules"));
+    }
+
+    @Test
+    void getSummarySectionsFiltersLegacySummary() {
+        ReflectionTestUtils.setField(s3StorageService, "summarySectionsEnabled", false);
+        s3StorageService.storeSummaryData(PR_ID, summaryRequest());
+
+        Map<String, Object> summary = s3StorageService.getSummarySections(PR_ID, Arrays.asList("modules"));
+
+        Map<?, ?> data = (Map<?, ?>) summary.get("data");
+        assertEquals(1, data.size());
+        assertEquals(Arrays.asList("auth", "billing"), data.get("modules"));
+    }
+
+    @Test
+    void patchSummaryDataPatchesIndividualSections() throws Exception {
+        s3StorageService.storeSummaryData(PR_ID, summaryRequest());
+
+        SummaryPatchResult result = s3StorageService.patchSummaryData(PR_ID,
+            objectMapper.readTree("{\"data\":{\"risk\":{\"level\":\"LOW\"},\"modules\":null,\"tests\":3}}"), null);
+
+        assertEquals(PR_ID + "/Summary/sections/_index.json", result.getS3Key());
+        Map<String, Object> summary = s3StorageService.getSummaryData(PR_ID);
+        // The patch returns the whole summary, untouched sections included, as in the legacy layout
+        assertEquals(summary, result.getSummaryData());
+        Map<?, ?> data = (Map<?, ?>) summary.get("data");
+        assertFalse(data.containsKey("modules"));
+        assertEquals(3, data.get("tests"));
+        Map<?, ?> risk = (Map<?, ?>) data.get("risk");
+        assertEquals("LOW", risk.get("level"));
+        assertEquals(0.8, risk.get("score"));
+    }
+
+    @Test
+    void sectionNamedLikeTheIndexDoesNotReplaceIt() throws Exception {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("_index", "not the index");
+        data.put("risk", "HIGH");
+        SummaryStoreRequest request = new SummaryStoreRequest();
+        request.setContent(new SummaryStoreRequest.Content(GITHUB_URL, data));
+
+        s3StorageService.storeSummaryData(PR_ID, request);
+        assertTrue(amazonS3.content(PR_ID + "/Summary/sections/_index.json").contains("\"sections\""));
+        assertEquals(data, s3StorageService.getSummaryData(PR_ID).get("data"));
+
+        s3StorageService.patchSummaryData(PR_ID, objectMapper.readTree("{\"data\":{\"_index\":\"patched\"}}"), null);
+        Map<?, ?> patched = (Map<?, ?>) s3StorageService.getSummaryData(PR_ID).get("data");
+        assertEquals("patched", patched.get("_index"));
+        assertEquals("HIGH", patched.get("risk"));
+    }
+
+    @Test
+    void sectionsDifferingOnlyInPunctuationAreStoredApart() throws Exception {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("a b", 1);
+        data.put("a_b", 2);
+        data.put("a/b", 3);
+        SummaryStoreRequest request = new SummaryStoreRequest();
+        request.setContent(new SummaryStoreRequest.Content(GITHUB_URL, data));
+
+        s3StorageService.storeSummaryData(PR_ID, request);
+        assertEquals(data, s3StorageService.getSummaryData(PR_ID).get("data"));
+
+        s3StorageService.patchSummaryData(PR_ID, objectMapper.readTree("{\"data\":{\"a b\":10}}"), null);
+        Map<?, ?> patched = (Map<?, ?>) s3StorageService.getSummaryData(PR_ID).get("data");
+        assertEquals(10, patched.get("a b"));
+        assertEquals(2, patched.get("a_b"));
+        assertEquals(3, patched.get("a/b"));
+    }
+
+    private static SummaryStoreRequest summaryRequest() {
+        Map<String, Object> risk = new HashMap<>();
+        risk.put("level", "HIGH");
+        risk.put("score", 0.8);
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("risk", risk);
+        data.put("modules", Arrays.asList("auth", "billing"));
+        data.put("impacted tests", 12);
+
+        SummaryStoreRequest request = new SummaryStoreRequest();
+        request.setContent(new SummaryStoreRequest.Content(GITHUB_URL, data));
+        return request;
+    }
+}
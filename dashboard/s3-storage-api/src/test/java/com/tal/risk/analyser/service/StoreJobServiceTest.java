@@ -0,0 +1,196 @@
+package com.tal.risk.analyser.service;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import com.tal.risk.analyser.model.StoreJob;
+import com.tal.risk.analyser.model.SummaryStoreRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StoreJobServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    private InMemoryAmazonS3 amazonS3;
+    private ThreadPoolExecutor executor;
+    private SimpleMeterRegistry meterRegistry;
+    private StoreJobService jobService;
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+        meterRegistry = new SimpleMeterRegistry();
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        jobService = jobService(amazonS3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void queuedJobStoresTheFileAndReportsItsKey() throws Exception {
+        StoreJob job = jobService.submitCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A.java", "cases")));
+        assertNotNull(job.getJobId());
+        assertNotNull(job.getSubmittedAt());
+
+        StoreJob finished = awaitFinished(job.getJobId());
+        assertEquals(StoreJob.Status.SUCCEEDED, finished.getStatus());
+        assertEquals("PR-1/TestCases/A.java.json", finished.getS3Key());
+        assertNotNull(finished.getFinishedAt());
+        assertTrue(amazonS3.doesObjectExist(BUCKET_NAME, "PR-1/TestCases/A.java.json"));
+        assertEquals(1.0, meterRegistry.get("storage.jobs.completed").tag("outcome", "succeeded").counter().count());
+        assertEquals(1, meterRegistry.get("storage.jobs.wait").timer().count());
+    }
+
+    @Test
+    void invalidRequestsAreRejectedBeforeQueueing() {
+        assertThrows(IllegalArgumentException.class,
+            () -> jobService.submitCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content(" ", "cases"))));
+        assertThrows(IllegalArgumentException.class,
+            () -> jobService.submitSummaryData("PR-1", new SummaryStoreRequest("PR-1", new SummaryStoreRequest.Content(null, Collections.emptyMap()))));
+        assertEquals(0, executor.getTaskCount());
+    }
+
+    @Test
+    void fullQueueTurnsJobsAwayAndReportsLag() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        StoreJob queued = jobService.submitSummaryData("PR-1", summary());
+        Thread.sleep(20);
+
+        assertThrows(RejectedExecutionException.class, () -> jobService.submitSummaryData("PR-2", summary()));
+        assertEquals(StoreJob.Status.QUEUED, jobService.getJob(queued.getJobId()).getStatus());
+        assertEquals(1.0, meterRegistry.get("storage.jobs.queued").gauge().value());
+        assertTrue(meterRegistry.get("storage.jobs.queue.lag").gauge().value() > 0);
+        assertEquals(1.0, meterRegistry.get("storage.jobs.completed").tag("outcome", "rejected").counter().count());
+
+        release.countDown();
+        assertEquals(StoreJob.Status.SUCCEEDED, awaitFinished(queued.getJobId()).getStatus());
+        assertEquals(0.0, meterRegistry.get("storage.jobs.queue.lag").gauge().value());
+    }
+
+    @Test
+    void queuedPayloadsAreBoundedByBytes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        executor.setMaximumPoolSize(2);
+        executor.setCorePoolSize(2);
+        meterRegistry = new SimpleMeterRegistry();
+        jobService = jobService(new InMemoryAmazonS3() {
+            @Override
+            public PutObjectResult putObject(PutObjectRequest request) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.putObject(request);
+            }
+        });
+        String cases = "x".repeat(300);
+
+        // 600 bytes are held until the job finishes; a second one would exceed the 1024-byte budget
+        StoreJob first = jobService.submitCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("A", cases)));
+        assertThrows(RejectedExecutionException.class,
+            () -> jobService.submitCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("B", cases))));
+        assertEquals(602.0, meterRegistry.get("storage.jobs.queued.bytes").gauge().value());
+        assertEquals(1.0, meterRegistry.get("storage.jobs.completed").tag("outcome", "rejected").counter().count());
+
+        release.countDown();
+        assertEquals(StoreJob.Status.SUCCEEDED, awaitFinished(first.getJobId()).getStatus());
+        assertEquals(0.0, meterRegistry.get("storage.jobs.queued.bytes").gauge().value());
+
+        // Alone, a job larger than the whole budget still goes through
+        StoreJob large = jobService.submitCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("C", "x".repeat(2048))));
+        assertEquals(StoreJob.Status.SUCCEEDED, awaitFinished(large.getJobId()).getStatus());
+    }
+
+    @Test
+    void failedUploadIsReportedOnTheJob() throws Exception {
+        jobService = jobService(new InMemoryAmazonS3() {
+            @Override
+            public PutObjectResult putObject(PutObjectRequest request) {
+                throw new AmazonS3Exception("Slow Down");
+            }
+        });
+
+        StoreJob job = jobService.submitSummaryData("PR-1", summary());
+
+        StoreJob finished = awaitFinished(job.getJobId());
+        assertEquals(StoreJob.Status.FAILED, finished.getStatus());
+        assertNull(finished.getS3Key());
+        assertTrue(finished.getError().contains("Slow Down"));
+    }
+
+    @Test
+    void jobFailedByAnErrorIsNotLeftRunning() throws Exception {
+        jobService = jobService(new InMemoryAmazonS3() {
+            @Override
+            public PutObjectResult putObject(PutObjectRequest request) {
+                throw new StackOverflowError("Too deep");
+            }
+        });
+
+        StoreJob job = jobService.submitSummaryData("PR-1", summary());
+
+        StoreJob finished = awaitFinished(job.getJobId());
+        assertEquals(StoreJob.Status.FAILED, finished.getStatus());
+        assertTrue(finished.getError().contains("Too deep"));
+        assertNotNull(finished.getFinishedAt());
+        assertEquals(1.0, meterRegistry.get("storage.jobs.completed").tag("outcome", "failed").counter().count());
+    }
+
+    private StoreJobService jobService(InMemoryAmazonS3 s3) {
+        S3StorageService storage = new S3StorageService();
+        ReflectionTestUtils.setField(storage, "amazonS3", s3);
+        ReflectionTestUtils.setField(storage, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(storage, "bucketName", BUCKET_NAME);
+
+        StoreJobService service = new StoreJobService();
+        ReflectionTestUtils.setField(service, "s3StorageService", storage);
+        ReflectionTestUtils.setField(service, "storeJobExecutor", executor);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "maxQueuedBytes", 1024L);
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "trackedJobs", 100);
+        service.init();
+        return service;
+    }
+
+    private static SummaryStoreRequest summary() {
+        return new SummaryStoreRequest(null, new SummaryStoreRequest.Content("https://github.com/org/repo/pull/1",
+            Collections.singletonMap("risk", "low")));
+    }
+
+    private StoreJob awaitFinished(String jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        StoreJob job = jobService.getJob(jobId);
+        while ((job.getStatus() == StoreJob.Status.QUEUED || job.getStatus() == StoreJob.Status.RUNNING)
+            && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        return job;
+    }
+}
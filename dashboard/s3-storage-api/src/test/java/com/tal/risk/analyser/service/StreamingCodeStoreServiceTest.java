@@ -0,0 +1,154 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingCodeStoreServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+    private static final int PART_BYTES = 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private InMemoryAmazonS3 amazonS3;
+    private S3StorageService storageService;
+    private StreamingCodeStoreService streamingService;
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+
+        ContentAddressedBlobStore blobStore = new ContentAddressedBlobStore();
+        ReflectionTestUtils.setField(blobStore, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(blobStore, "bucketName", BUCKET_NAME);
+
+        storageService = new S3StorageService();
+        ReflectionTestUtils.setField(storageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(storageService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(storageService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(storageService, "dedupEnabled", true);
+        ReflectionTestUtils.setField(storageService, "blobStore", blobStore);
+
+        streamingService = new StreamingCodeStoreService();
+        ReflectionTestUtils.setField(streamingService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(streamingService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(streamingService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(streamingService, "s3StorageService", storageService);
+        ReflectionTestUtils.setField(streamingService, "dedupEnabled", true);
+        // Below the S3 minimum, which init() would enforce
+        ReflectionTestUtils.setField(streamingService, "partBytes", PART_BYTES);
+    }
+
+    @Test
+    void smallFileIsStoredLikeARegularStore() throws Exception {
+        String body = "{\"prId\":\"PR-1\",\"extra\":{\"a\":[1,-2.5e3,{\"b\":\"c\"}],\"d\":true,\"e\":null},"
+            + "\"content\":{\"fileName\":\"Small.java\",\"ignored\":\"x\",\"testCases\":\"line 1\\nline \\\"2\\\" \\u00e9\"}}";
+
+        Map<String, Object> result = streamingService.storeCodeData("PR-1", stream(body));
+
+        assertEquals("PR-1/TestCases/Small.java.json", result.get("s3Key"));
+        assertEquals(0, amazonS3.partCount.get());
+        assertEquals(storedJson("Small.java", "line 1\nline \"2\" é"), amazonS3.content("PR-1/TestCases/Small.java.json"));
+    }
+
+    @Test
+    void largeFileIsUploadedInPartsAsTheSameBytes() throws Exception {
+        String testCases = largeTestCases();
+        String body = objectMapper.writeValueAsString(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("Large.java", testCases)));
+
+        Map<String, Object> result = streamingService.storeCodeData("PR-1", stream(body));
+
+        String expected = storedJson("Large.java", testCases);
+        assertTrue(amazonS3.partCount.get() > 1);
+        assertEquals(0, amazonS3.openUploads());
+        assertEquals(expected, amazonS3.content("PR-1/TestCases/Large.java.json"));
+        assertEquals((long) expected.getBytes(StandardCharsets.UTF_8).length, result.get("size"));
+        assertEquals(testCases, storageService.getStoredTestCases("PR-1/TestCases/Large.java.json"));
+        assertEquals(ContentAddressedBlobStore.sha256Hex(expected.getBytes(StandardCharsets.UTF_8)),
+            amazonS3.getObjectMetadata(BUCKET_NAME, "PR-1/TestCases/Large.java.json")
+                .getUserMetaDataOf(S3StorageService.CONTENT_HASH_METADATA));
+    }
+
+    @Test
+    void unchangedLargeFileIsNotStoredAgain() throws Exception {
+        String testCases = largeTestCases();
+        CodeStoreRequest request = new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("Large.java", testCases));
+        streamingService.storeCodeData("PR-1", stream(objectMapper.writeValueAsString(request)));
+        String eTag = amazonS3.getObjectMetadata(BUCKET_NAME, "PR-1/TestCases/Large.java.json").getETag();
+
+        streamingService.storeCodeData("PR-1", stream(objectMapper.writeValueAsString(request)));
+        assertEquals(0, amazonS3.openUploads());
+        assertEquals(eTag, amazonS3.getObjectMetadata(BUCKET_NAME, "PR-1/TestCases/Large.java.json").getETag());
+
+        // The regular endpoint recognises the streamed content too
+        int puts = amazonS3.putCount.get();
+        storageService.storeCodeData(request);
+        assertEquals(puts, amazonS3.putCount.get());
+    }
+
+    @Test
+    void largeFileReplacingARawFileDeletesTheRawObject() throws Exception {
+        ReflectionTestUtils.setField(storageService, "rawFilesEnabled", true);
+        storageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("Large.java", "old cases")));
+        assertTrue(amazonS3.doesObjectExist(BUCKET_NAME, S3StorageService.rawFileKey("PR-1", "Large.java")));
+
+        ReflectionTestUtils.setField(storageService, "rawFilesEnabled", false);
+        String testCases = largeTestCases();
+        streamingService.storeCodeData("PR-1", stream(objectMapper.writeValueAsString(
+            new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("Large.java", testCases)))));
+
+        assertTrue(amazonS3.partCount.get() > 1);
+        assertFalse(amazonS3.doesObjectExist(BUCKET_NAME, S3StorageService.rawFileKey("PR-1", "Large.java")));
+        assertEquals(testCases, storageService.getStoredTestCases("PR-1/TestCases/Large.java.json"));
+    }
+
+    @Test
+    void invalidBodiesAreRejectedWithoutStoringAnything() {
+        String testCases = largeTestCases().replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+
+        assertThrows(IllegalArgumentException.class, () -> streamingService.storeCodeData("PR-1",
+            stream("{\"content\":{\"testCases\":\"" + testCases + "\",\"fileName\":\"A.java\"}}")));
+        assertThrows(IllegalArgumentException.class, () -> streamingService.storeCodeData("PR-1",
+            stream("{\"prId\":\"PR-2\",\"content\":{\"fileName\":\"A.java\",\"testCases\":\"x\"}}")));
+        assertThrows(IllegalArgumentException.class, () -> streamingService.storeCodeData("PR-1",
+            stream("{\"content\":{\"fileName\":\" \",\"testCases\":\"x\"}}")));
+        // Cut off after the test cases: the parts already sent are discarded
+        assertThrows(IllegalArgumentException.class, () -> streamingService.storeCodeData("PR-1",
+            stream("{\"content\":{\"fileName\":\"A.java\",\"testCases\":\"" + testCases + "\"")));
+
+        assertTrue(amazonS3.partCount.get() > 0);
+        assertEquals(0, amazonS3.openUploads());
+        assertTrue(amazonS3.objects().isEmpty());
+    }
+
+    private String storedJson(String fileName, String testCases) throws Exception {
+        Map<String, String> stored = new HashMap<>();
+        stored.put("fileName", fileName);
+        stored.put("testCases", testCases);
+        return objectMapper.writeValueAsString(stored);
+    }
+
+    /**
+     * Several parts of test cases with escapes and characters outside the BMP
+     */
+    private static String largeTestCases() {
+        StringBuilder testCases = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            testCases.append("@Test void case").append(i).append("() { assertEquals(\"\\t✓ 🚀\", run()); }\n");
+        }
+        return testCases.toString();
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,193 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.SummaryStoreRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SummaryBatchServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private InMemoryAmazonS3 amazonS3;
+    private ExecutorService executor;
+    private ExecutorService fanOutExecutor;
+    private S3StorageService s3StorageService;
+    private SummaryBatchService batchService;
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+        executor = Executors.newFixedThreadPool(8);
+        fanOutExecutor = Executors.newFixedThreadPool(16);
+
+        s3StorageService = new S3StorageService();
+        configure(s3StorageService);
+
+        batchService = new SummaryBatchService();
+        ReflectionTestUtils.setField(batchService, "s3StorageService", s3StorageService);
+        ReflectionTestUtils.setField(batchService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(batchService, "summaryBatchExecutor", executor);
+        ReflectionTestUtils.setField(batchService, "maxPrs", 10);
+        ReflectionTestUtils.setField(batchService, "parallelism", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        fanOutExecutor.shutdownNow();
+    }
+
+    @Test
+    void everyPrGetsAResultOrAnError() throws Exception {
+        storeSummary("PR-1", "LOW");
+        storeSummary("PR-2", "HIGH");
+
+        JsonNode data = write(List.of("PR-1", "PR-404", "PR-2", "PR-1")).get("data");
+
+        assertEquals(2, data.get("count").asInt());
+        Set<String> risks = new HashSet<>();
+        for (JsonNode result : data.get("results")) {
+            risks.add(result.get("prId").asText() + "=" + result.at("/summaryData/data/risk").asText());
+        }
+        assertEquals(Set.of("PR-1=LOW", "PR-2=HIGH"), risks);
+        assertTrue(data.at("/errors/PR-404").asText().contains("not found"));
+    }
+
+    @Test
+    void fetchesAreBoundedByTheParallelism() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        S3StorageService slowStorage = new S3StorageService() {
+            @Override
+            public Map<String, Object> getSummaryData(String prId) {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                    return super.getSummaryData(prId);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        };
+        configure(slowStorage);
+        ReflectionTestUtils.setField(batchService, "s3StorageService", slowStorage);
+
+        List<String> prIds = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            storeSummary("PR-" + i, "LOW");
+            prIds.add("PR-" + i);
+        }
+
+        assertEquals(8, write(prIds).at("/data/count").asInt());
+        assertTrue(maxInFlight.get() <= 2);
+    }
+
+    @Test
+    void sectionedSummariesDoNotExhaustTheFanOutExecutor() throws Exception {
+        // As many concurrent fetches as fan-out threads, each of which fans out its section reads
+        ExecutorService batchExecutor = Executors.newFixedThreadPool(16);
+        ReflectionTestUtils.setField(batchService, "summaryBatchExecutor", batchExecutor);
+        ReflectionTestUtils.setField(batchService, "parallelism", 16);
+        ReflectionTestUtils.setField(batchService, "maxPrs", 32);
+        ReflectionTestUtils.setField(s3StorageService, "summarySectionsEnabled", true);
+
+        List<String> prIds = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            SummaryStoreRequest request = new SummaryStoreRequest();
+            request.setContent(new SummaryStoreRequest.Content("https://github.com/test/repo/pull/" + i,
+                Map.of("risk", "LOW", "files", List.of("A.java"), "notes", "n" + i)));
+            s3StorageService.storeSummaryData("PR-" + i, request);
+            prIds.add("PR-" + i);
+        }
+
+        try {
+            JsonNode data = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return write(prIds);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }).get(10, TimeUnit.SECONDS).get("data");
+            assertEquals(32, data.get("count").asInt());
+            assertEquals("LOW", data.at("/results/0/summaryData/data/risk").asText());
+        } finally {
+            batchExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void unchangedSummariesAreServedFromTheCache() throws Exception {
+        SummaryCache cache = new SummaryCache();
+        ReflectionTestUtils.setField(cache, "maxBytes", 1L << 20);
+        ReflectionTestUtils.setField(s3StorageService, "cacheEnabled", true);
+        ReflectionTestUtils.setField(s3StorageService, "summaryCache", cache);
+        storeSummary("PR-1", "LOW");
+
+        write(List.of("PR-1"));
+        assertEquals(0, cache.hits());
+        int gets = amazonS3.getCount.get();
+        JsonNode data = write(List.of("PR-1")).get("data");
+        assertEquals("LOW", data.at("/results/0/summaryData/data/risk").asText());
+        assertEquals(1, cache.hits());
+        // Only the conditional GET, answered with 304
+        assertEquals(gets + 1, amazonS3.getCount.get());
+
+        // A changed summary fails the revalidation
+        storeSummary("PR-1", "HIGH");
+        assertEquals("HIGH", write(List.of("PR-1")).at("/data/results/0/summaryData/data/risk").asText());
+    }
+
+    @Test
+    void invalidBatchesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> batchService.open(null));
+        assertThrows(IllegalArgumentException.class, () -> batchService.open(Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> batchService.open(List.of("PR-1", " ")));
+        List<String> tooMany = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            tooMany.add("PR-" + i);
+        }
+        assertThrows(IllegalArgumentException.class, () -> batchService.open(tooMany));
+    }
+
+    private void configure(S3StorageService storageService) {
+        ReflectionTestUtils.setField(storageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(storageService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(storageService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(storageService, "s3FanOutExecutor", fanOutExecutor);
+    }
+
+    private JsonNode write(List<String> prIds) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batchService.write(batchService.open(prIds), out);
+        return objectMapper.readTree(out.toByteArray());
+    }
+
+    private void storeSummary(String prId, String risk) {
+        SummaryStoreRequest request = new SummaryStoreRequest();
+        request.setContent(new SummaryStoreRequest.Content("https://github.com/test/repo/pull/1",
+            Collections.singletonMap("risk", risk)));
+        s3StorageService.storeSummaryData(prId, request);
+    }
+}
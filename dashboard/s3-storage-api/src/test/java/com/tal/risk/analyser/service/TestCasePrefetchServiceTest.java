@@ -0,0 +1,183 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeFileResponse;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCasePrefetchServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+
+    private InMemoryAmazonS3 amazonS3;
+    private S3StorageService s3StorageService;
+    private TestCaseCache cache;
+    private TestCasePrefetchService prefetchService;
+    private ThreadPoolExecutor prefetchExecutor;
+    private ExecutorService fanOutExecutor;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+        meterRegistry = new SimpleMeterRegistry();
+
+        cache = new TestCaseCache();
+        ReflectionTestUtils.setField(cache, "maxBytes", 1L << 20);
+        ReflectionTestUtils.setField(cache, "listingTtlMillis", 60_000L);
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        cache.init();
+
+        s3StorageService = new S3StorageService();
+        ReflectionTestUtils.setField(s3StorageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(s3StorageService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(s3StorageService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(s3StorageService, "cacheEnabled", true);
+        ReflectionTestUtils.setField(s3StorageService, "testCaseCache", cache);
+
+        prefetchExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        fanOutExecutor = Executors.newFixedThreadPool(2);
+
+        prefetchService = new TestCasePrefetchService();
+        ReflectionTestUtils.setField(prefetchService, "s3StorageService", s3StorageService);
+        ReflectionTestUtils.setField(prefetchService, "testCaseCache", cache);
+        ReflectionTestUtils.setField(prefetchService, "prefetchExecutor", prefetchExecutor);
+        ReflectionTestUtils.setField(prefetchService, "s3FanOutExecutor", fanOutExecutor);
+        ReflectionTestUtils.setField(prefetchService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(prefetchService, "cacheEnabled", true);
+        ReflectionTestUtils.setField(prefetchService, "prefetchEnabled", true);
+        ReflectionTestUtils.setField(prefetchService, "maxFiles", 50);
+        ReflectionTestUtils.setField(prefetchService, "minHitRatio", 0.2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        prefetchExecutor.shutdownNow();
+        fanOutExecutor.shutdownNow();
+    }
+
+    @Test
+    void cachedFilesAreRevalidatedByETag() {
+        store("PR-1", "A.java", "a1");
+        store("PR-1", "B.java", "b1");
+
+        assertEquals(2, s3StorageService.getAllCodeFilesForPR("PR-1").size());
+        int gets = amazonS3.getCount.get();
+
+        // Unchanged files come from the cache
+        assertEquals(2, s3StorageService.getAllCodeFilesForPR("PR-1").size());
+        assertEquals(gets, amazonS3.getCount.get());
+
+        // A write through this instance drops the listing, and only the changed file is downloaded
+        store("PR-1", "B.java", "b2");
+        List<CodeFileResponse> files = s3StorageService.getAllCodeFilesForPR("PR-1");
+        assertEquals(gets + 1, amazonS3.getCount.get());
+        assertEquals("a1", files.get(0).getTestCases());
+        assertEquals("b2", files.get(1).getTestCases());
+    }
+
+    @Test
+    void summaryReadWarmsFilesAndCountsHits() throws Exception {
+        store("PR-2", "A.java", "a");
+        store("PR-2", "B.java", "b");
+
+        assertTrue(prefetchService.onSummaryRead("PR-2"));
+        awaitIdle();
+        int gets = amazonS3.getCount.get();
+
+        List<CodeFileResponse> files = s3StorageService.getAllCodeFilesForPR("PR-2");
+
+        assertEquals(2, files.size());
+        assertEquals(gets, amazonS3.getCount.get());
+        assertEquals(2, cache.stats().prefetchUsed);
+        assertEquals(0, cache.stats().prefetchWasted);
+        assertEquals(2.0, meterRegistry.get("storage.prefetch.files").tag("outcome", "used").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("storage.prefetch.tasks").tag("outcome", "completed").counter().count());
+    }
+
+    @Test
+    void unreadPrefetchesAreCountedAsWasted() throws Exception {
+        store("PR-3", "A.java", "a1");
+        prefetchService.onSummaryRead("PR-3");
+        awaitIdle();
+
+        // The file changes before anyone reads the prefetched copy
+        store("PR-3", "A.java", "a2");
+        assertEquals("a2", s3StorageService.getAllCodeFilesForPR("PR-3").get(0).getTestCases());
+
+        assertEquals(0, cache.stats().prefetchUsed);
+        assertEquals(1, cache.stats().prefetchWasted);
+    }
+
+    @Test
+    void triggersAreDroppedWhenThePrefetchQueueIsFull() throws Exception {
+        store("PR-4", "A.java", "a");
+        CountDownLatch release = new CountDownLatch(1);
+        prefetchExecutor.execute(() -> awaitQuietly(release));
+        prefetchExecutor.execute(() -> { });
+
+        assertFalse(prefetchService.onSummaryRead("PR-4"));
+        assertEquals(1.0, meterRegistry.get("storage.prefetch.tasks").tag("outcome", "dropped").counter().count());
+
+        release.countDown();
+        awaitIdle();
+        assertTrue(prefetchService.onSummaryRead("PR-4"));
+    }
+
+    @Test
+    void prefetchingBacksOffWhenFilesAreNotRead() throws Exception {
+        for (int i = 0; i < TestCasePrefetchService.LEARNING_WINDOW; i++) {
+            String prId = "PR-W" + i;
+            store(prId, "A.java", "v1");
+            assertTrue(prefetchService.onSummaryRead(prId));
+            awaitIdle();
+            // Replaced before it was read
+            store(prId, "A.java", "v2");
+            s3StorageService.getAllCodeFilesForPR(prId);
+        }
+
+        int scheduled = 0;
+        for (int i = 0; i < TestCasePrefetchService.PROBE_INTERVAL; i++) {
+            if (prefetchService.onSummaryRead("PR-W0")) {
+                scheduled++;
+                awaitIdle();
+            }
+        }
+        assertEquals(0.0, prefetchService.observedHitRatio());
+        assertEquals(1, scheduled);
+    }
+
+    private void store(String prId, String fileName, String testCases) {
+        s3StorageService.storeCodeData(new CodeStoreRequest(prId, new CodeStoreRequest.Content(fileName, testCases)));
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (prefetchExecutor.getCompletedTaskCount() < prefetchExecutor.getTaskCount()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
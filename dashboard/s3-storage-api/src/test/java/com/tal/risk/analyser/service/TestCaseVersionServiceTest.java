@@ -0,0 +1,110 @@
+package com.tal.risk.analyser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tal.risk.analyser.model.CodeStoreRequest;
+import com.tal.risk.analyser.model.TestCaseVersionHistory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCaseVersionServiceTest {
+
+    private static final String BUCKET_NAME = "test-bucket";
+    private static final String V1 = "class T {\n  void a() {}\n}";
+    private static final String V2 = "class T {\n  void a() {}\n  void b() {}\n}";
+    private static final String V3 = "class T {\n  void b() {}\n  void c() {}\n}";
+
+    private InMemoryAmazonS3 amazonS3;
+    private ExecutorService executor;
+    private TestCaseVersionService versionService;
+    private S3StorageService s3StorageService;
+
+    @BeforeEach
+    void setUp() {
+        amazonS3 = new InMemoryAmazonS3();
+        executor = Executors.newFixedThreadPool(4);
+
+        versionService = new TestCaseVersionService();
+        ReflectionTestUtils.setField(versionService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(versionService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(versionService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(versionService, "s3FanOutExecutor", executor);
+        ReflectionTestUtils.setField(versionService, "maxAttempts", 3);
+
+        s3StorageService = new S3StorageService();
+        ReflectionTestUtils.setField(s3StorageService, "amazonS3", amazonS3);
+        ReflectionTestUtils.setField(s3StorageService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(s3StorageService, "bucketName", BUCKET_NAME);
+        ReflectionTestUtils.setField(s3StorageService, "versioningEnabled", true);
+        ReflectionTestUtils.setField(s3StorageService, "versionService", versionService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void earlierRevisionsAreRebuiltFromDeltas() {
+        store(V1);
+        store(V2);
+        store(V3);
+        store(V3);
+
+        TestCaseVersionHistory history = versionService.getHistory("PR-1", "T.java");
+        assertEquals(3, history.getVersions().size());
+        assertNotNull(amazonS3.content("PR-1/Versions/T.java/v1.json"));
+        assertNull(history.getVersions().get(2).getDeltaKey());
+
+        String latest = s3StorageService.getStoredTestCases(S3StorageService.codeFileKey("PR-1", "T.java"));
+        assertEquals(V3, latest);
+        assertEquals(V1, versionService.getRevision("PR-1", "T.java", 1, latest));
+        assertEquals(V2, versionService.getRevision("PR-1", "T.java", 2, latest));
+    }
+
+    @Test
+    void diffIsComposedFromDeltas() {
+        store(V1);
+        store(V2);
+        store(V3);
+        int getsBefore = amazonS3.getCount.get();
+
+        Map<String, Object> diff = versionService.diff("PR-1", "T.java", 1, 3);
+
+        // Manifest plus two deltas; the full revisions are never downloaded
+        assertEquals(3, amazonS3.getCount.get() - getsBefore);
+        assertEquals("--- T.java@v1\n+++ T.java@v3\n@@ -2,1 +2,2 @@\n-  void a() {}\n+  void b() {}\n+  void c() {}\n",
+            diff.get("unified"));
+
+        Map<String, Object> reverse = versionService.diff("PR-1", "T.java", 3, 1);
+        assertTrue(reverse.get("unified").toString().contains("+  void a() {}"));
+        assertThrows(IllegalArgumentException.class, () -> versionService.diff("PR-1", "T.java", 1, 4));
+    }
+
+    @Test
+    void overwriteOutsideVersioningRestartsTheChain() {
+        store(V1);
+        store(V2);
+        ReflectionTestUtils.setField(s3StorageService, "versioningEnabled", false);
+        store(V3);
+        ReflectionTestUtils.setField(s3StorageService, "versioningEnabled", true);
+        store(V1);
+
+        TestCaseVersionHistory history = versionService.getHistory("PR-1", "T.java");
+        assertEquals(4, history.getVersions().size());
+        assertNull(history.getVersions().get(1).getDeltaKey());
+        assertEquals(V3, versionService.getRevision("PR-1", "T.java", 3, V1));
+        assertThrows(IllegalStateException.class, () -> versionService.getRevision("PR-1", "T.java", 1, V1));
+    }
+
+    private void store(String testCases) {
+        s3StorageService.storeCodeData(new CodeStoreRequest("PR-1", new CodeStoreRequest.Content("T.java", testCases)));
+    }
+}
@@ -0,0 +1,57 @@
+#!/bin/bash
+# Startup benchmark: time from launching the application to its first successful request.
+#
+# Usage: ./startup-benchmark.sh [runs] [-- java arguments...]
+#   ./startup-benchmark.sh 5
+#   ./startup-benchmark.sh 5 -- -XX:SharedArchiveFile=app.jsa -cp "app.jar:lib/*" com.tal.risk.analyser.S3StorageApiApplication --spring.profiles.active=fast-startup
+#
+# Without java arguments, the packaged jar (target/s3-storage-api-0.0.1-SNAPSHOT.jar) is started.
+# The application needs no S3 access to answer GET /api/v1/health, so dummy credentials are enough.
+
+RUNS=${1:-5}
+shift
+if [ "$1" == "--" ]; then
+    shift
+fi
+if [ $# -eq 0 ]; then
+    set -- -jar target/s3-storage-api-0.0.1-SNAPSHOT.jar
+fi
+
+PORT=${BENCHMARK_PORT:-18090}
+URL="http://localhost:${PORT}/api/v1/health"
+LOG=$(mktemp)
+trap 'rm -f "$LOG"' EXIT
+
+now_ms() {
+    date +%s%3N
+}
+
+results=()
+for run in $(seq 1 "$RUNS"); do
+    started=$(now_ms)
+    AWS_ACCESS_KEY_ID=${AWS_ACCESS_KEY_ID:-benchmark} AWS_SECRET_ACCESS_KEY=${AWS_SECRET_ACCESS_KEY:-benchmark} \
+        java "$@" --server.port="$PORT" > "$LOG" 2>&1 &
+    pid=$!
+
+    elapsed=""
+    while kill -0 "$pid" 2> /dev/null; do
+        if curl -sf -o /dev/null "$URL"; then
+            elapsed=$(( $(now_ms) - started ))
+            break
+        fi
+        sleep 0.05
+    done
+
+    kill "$pid" 2> /dev/null
+    wait "$pid" 2> /dev/null
+    if [ -z "$elapsed" ]; then
+        echo "Run $run: the application exited before answering; last log lines:" >&2
+        tail -20 "$LOG" >&2
+        exit 1
+    fi
+    echo "Run $run: first successful request after ${elapsed} ms"
+    results+=("$elapsed")
+done
+
+sorted=($(printf '%s\n' "${results[@]}" | sort -n))
+echo "Time to first successful request over $RUNS runs: min ${sorted[0]} ms, median ${sorted[$(( RUNS / 2 ))]} ms, max ${sorted[$(( RUNS - 1 ))]} ms"